@@ -4,7 +4,8 @@ CREATE TABLE `address` (
   `address_id` int NOT NULL AUTO_INCREMENT,
   `street` varchar(45) NOT NULL,
   `zipcode` int NOT NULL,
-  PRIMARY KEY (`address_id`)
+  PRIMARY KEY (`address_id`),
+  UNIQUE KEY `uq_address_street_zipcode` (`street`, `zipcode`)
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
 CREATE TABLE `person` (
@@ -13,6 +14,7 @@ CREATE TABLE `person` (
   `last_name` varchar(45) NOT NULL,
   `email` varchar(45) NOT NULL,
   `address_id` int NOT NULL,
+  `version` bigint NOT NULL DEFAULT 0,
   PRIMARY KEY (`person_id`),
   KEY `fk_person_address_idx` (`address_id`),
   CONSTRAINT `fk_person_address` FOREIGN KEY (`address_id`) REFERENCES `address` (`address_id`)
@@ -24,6 +26,7 @@ CREATE TABLE `hobby` (
   `wikiLink` varchar(255) NOT NULL,
   `category` varchar(255) NOT NULL,
   `type` varchar(255) NOT NULL,
+  `version` bigint NOT NULL DEFAULT 0,
   PRIMARY KEY (`hobby_id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=452 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci;
 
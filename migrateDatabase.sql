@@ -0,0 +1,28 @@
+-- Brings a database created by an older createDatabase.sql up to date.
+-- The pu persistence unit only creates missing tables, so run this once, in order, against an existing database:
+--   mysql -u <user> -p information < migrateDatabase.sql
+
+USE `information`;
+
+-- Versions behind the ETags and conditional writes of persons and hobbies (see facades.Versions)
+ALTER TABLE `person` ADD COLUMN `version` bigint NOT NULL DEFAULT 0;
+ALTER TABLE `hobby` ADD COLUMN `version` bigint NOT NULL DEFAULT 0;
+
+-- A unique (street, zipcode) key behind the address upsert (see facades.Addresses).
+-- The streets are trimmed like the facades store them, the persons are moved to the oldest of each group of
+-- duplicate addresses, and the other duplicates are deleted before the key is added.
+UPDATE `address` SET `street` = TRIM(`street`) WHERE `street` <> TRIM(`street`);
+
+UPDATE `person` p
+  JOIN `address` a ON a.`address_id` = p.`address_id`
+  JOIN (SELECT `street`, `zipcode`, MIN(`address_id`) AS `address_id` FROM `address` GROUP BY `street`, `zipcode`) k
+    ON k.`street` = a.`street` AND k.`zipcode` = a.`zipcode`
+SET p.`address_id` = k.`address_id`
+WHERE p.`address_id` <> k.`address_id`;
+
+DELETE a FROM `address` a
+  JOIN (SELECT `street`, `zipcode`, MIN(`address_id`) AS `address_id` FROM `address` GROUP BY `street`, `zipcode`) k
+    ON k.`street` = a.`street` AND k.`zipcode` = a.`zipcode`
+WHERE a.`address_id` <> k.`address_id`;
+
+ALTER TABLE `address` ADD UNIQUE KEY `uq_address_street_zipcode` (`street`, `zipcode`);
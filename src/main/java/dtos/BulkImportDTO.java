@@ -0,0 +1,31 @@
+package dtos;
+
+import java.util.List;
+
+/**
+ * A DTO with the outcome of a bulk import: how many persons were created and rejected,
+ * and an {@link ImportResultDTO} for every row.
+ */
+public class BulkImportDTO {
+    private final int created;
+    private final int failed;
+    private final List<ImportResultDTO> results;
+
+    public BulkImportDTO(int created, int failed, List<ImportResultDTO> results) {
+        this.created = created;
+        this.failed = failed;
+        this.results = results;
+    }
+
+    public int getCreated() {
+        return created;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public List<ImportResultDTO> getResults() {
+        return results;
+    }
+}
@@ -0,0 +1,76 @@
+package dtos;
+
+/**
+ * A DTO with a snapshot of the response compression.
+ * <p>
+ * The {@code compressionRatio} is the bytes before compression divided by the bytes after,
+ * and the CPU times are the time spent compressing a response, in milliseconds.
+ */
+public class CompressionStatsDTO {
+    private final int threshold;
+    private final long compressedResponses;
+    private final long uncompressedResponses;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final double compressionRatio;
+    private double cpuTotalMillis;
+    private double cpuP50Millis;
+    private double cpuP99Millis;
+    private double cpuMaxMillis;
+
+    public CompressionStatsDTO(int threshold, long compressedResponses, long uncompressedResponses, long bytesIn, long bytesOut) {
+        this.threshold = threshold;
+        this.compressedResponses = compressedResponses;
+        this.uncompressedResponses = uncompressedResponses;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.compressionRatio = bytesOut == 0 ? 0 : bytesIn / (double) bytesOut;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public long getCompressedResponses() {
+        return compressedResponses;
+    }
+
+    public long getUncompressedResponses() {
+        return uncompressedResponses;
+    }
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public double getCompressionRatio() {
+        return compressionRatio;
+    }
+
+    public double getCpuTotalMillis() {
+        return cpuTotalMillis;
+    }
+
+    public double getCpuP50Millis() {
+        return cpuP50Millis;
+    }
+
+    public double getCpuP99Millis() {
+        return cpuP99Millis;
+    }
+
+    public double getCpuMaxMillis() {
+        return cpuMaxMillis;
+    }
+
+    public void setCpuTime(double totalMillis, double p50Millis, double p99Millis, double maxMillis) {
+        this.cpuTotalMillis = totalMillis;
+        this.cpuP50Millis = p50Millis;
+        this.cpuP99Millis = p99Millis;
+        this.cpuMaxMillis = maxMillis;
+    }
+}
@@ -5,11 +5,15 @@ import entities.Person;
 import entities.Phone;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
 /**
  * A DTO for the {@link entities.Hobby} entity
+ * <p>
+ * The persons who have the hobby are only included when asked for (otherwise {@code persons} is {@code null}),
+ * but the number of persons is always included as {@code memberCount}.
  */
 public class HobbyDTO implements Serializable {
     private Integer id;
@@ -17,7 +21,8 @@ public class HobbyDTO implements Serializable {
     private final String name;
     private final String type;
     private final String wikiLink;
-    private final Set<InnerPersonDTO> persons = new LinkedHashSet<>();
+    private long memberCount;
+    private Set<InnerPersonDTO> persons;
 
     // For mocking up a DTO
     public HobbyDTO(String category, String name, String type, String wikiLink) {
@@ -34,9 +39,41 @@ public class HobbyDTO implements Serializable {
         this.name = hobby.getName();
         this.type = hobby.getType();
         this.wikiLink = hobby.getWikiLink();
+        this.persons = new LinkedHashSet<>();
         for (Person person : hobby.getPersons()) {
             this.persons.add(new InnerPersonDTO(person));
         }
+        this.memberCount = persons.size();
+    }
+
+    // For converting a catalog hobby to a DTO without persons
+    public HobbyDTO(PersonDTO.InnerHobbyDTO hobby, long memberCount) {
+        this.id = hobby.getId();
+        this.category = hobby.getCategory();
+        this.name = hobby.getName();
+        this.type = hobby.getType();
+        this.wikiLink = hobby.getWikiLink();
+        this.memberCount = memberCount;
+    }
+
+    // For reading a DTO from JSON
+    public HobbyDTO(PersonDTO.InnerHobbyDTO hobby, long memberCount, Set<InnerPersonDTO> persons) {
+        this(hobby, memberCount);
+        this.persons = persons;
+    }
+
+    // For converting a catalog hobby and its persons to a DTO
+    public HobbyDTO(PersonDTO.InnerHobbyDTO hobby, Collection<Person> persons) {
+        this.id = hobby.getId();
+        this.category = hobby.getCategory();
+        this.name = hobby.getName();
+        this.type = hobby.getType();
+        this.wikiLink = hobby.getWikiLink();
+        this.persons = new LinkedHashSet<>();
+        for (Person person : persons) {
+            this.persons.add(new InnerPersonDTO(person));
+        }
+        this.memberCount = persons.size();
     }
 
     public Integer getId() {
@@ -59,6 +96,15 @@ public class HobbyDTO implements Serializable {
         return wikiLink;
     }
 
+    public long getMemberCount() {
+        return memberCount;
+    }
+
+    /**
+     * Returns the persons who have the hobby.
+     *
+     * @return {@link Set} – or {@code null} if the persons were not included.
+     */
     public Set<InnerPersonDTO> getPersons() {
         return persons;
     }
@@ -0,0 +1,34 @@
+package dtos;
+
+/**
+ * A lightweight DTO for a hobby found by a search – just enough for a type-ahead list.
+ */
+public class HobbyMatchDTO {
+    private final Integer id;
+    private final String name;
+    private final String category;
+
+    public HobbyMatchDTO(Integer id, String name, String category) {
+        this.id = id;
+        this.name = name;
+        this.category = category;
+    }
+
+    // For converting a catalog hobby to a match
+    public HobbyMatchDTO(PersonDTO.InnerHobbyDTO hobby) {
+        this(hobby.getId(), hobby.getName(), hobby.getCategory());
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+}
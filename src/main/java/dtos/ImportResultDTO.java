@@ -0,0 +1,37 @@
+package dtos;
+
+/**
+ * A DTO with the outcome of importing one row of a bulk import.
+ * <p>
+ * The {@code row} is the position of the person in the input (starting at 1),
+ * and the {@code id} is the id of the created person – or {@code null} if the row was rejected.
+ */
+public class ImportResultDTO {
+    private final int row;
+    private final int code;
+    private final Integer id;
+    private final String message;
+
+    public ImportResultDTO(int row, int code, Integer id, String message) {
+        this.row = row;
+        this.code = code;
+        this.id = id;
+        this.message = message;
+    }
+
+    public int getRow() {
+        return row;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public Integer getId() {
+        return id;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+}
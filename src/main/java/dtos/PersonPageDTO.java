@@ -0,0 +1,28 @@
+package dtos;
+
+import java.util.Set;
+
+/**
+ * A DTO for one page of {@link PersonDTO persons}.
+ * <p>
+ * The {@code next} cursor is the id to pass as {@code after} to get the following page,
+ * and is {@code null} on the last page.
+ */
+public class PersonPageDTO {
+    private final Set<PersonDTO> persons;
+    private final Integer next;
+
+    public PersonPageDTO(Set<PersonDTO> persons, Integer next) {
+        this.persons = persons;
+        this.next = next;
+    }
+
+    public Set<PersonDTO> getPersons() {
+        return persons;
+    }
+
+    public Integer getNext() {
+        return next;
+    }
+
+}
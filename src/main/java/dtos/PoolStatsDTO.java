@@ -0,0 +1,105 @@
+package dtos;
+
+/**
+ * A DTO with a snapshot of the JDBC connection pool.
+ * <p>
+ * Acquisition latencies are the time a request waited for a connection, in milliseconds.
+ */
+public class PoolStatsDTO {
+    private int active;
+    private int idle;
+    private int waiting;
+    private int total;
+    private int minimumIdle;
+    private int maximumPoolSize;
+    private long connectionTimeoutMillis;
+    private long idleTimeoutMillis;
+    private long acquisitions;
+    private long timeouts;
+    private double acquisitionP50Millis;
+    private double acquisitionP95Millis;
+    private double acquisitionP99Millis;
+    private double acquisitionMaxMillis;
+
+    public PoolStatsDTO(int active, int idle, int waiting, int total) {
+        this.active = active;
+        this.idle = idle;
+        this.waiting = waiting;
+        this.total = total;
+    }
+
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getMinimumIdle() {
+        return minimumIdle;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public void setPoolSize(int minimumIdle, int maximumPoolSize) {
+        this.minimumIdle = minimumIdle;
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    public long getConnectionTimeoutMillis() {
+        return connectionTimeoutMillis;
+    }
+
+    public long getIdleTimeoutMillis() {
+        return idleTimeoutMillis;
+    }
+
+    public void setTimeouts(long connectionTimeoutMillis, long idleTimeoutMillis) {
+        this.connectionTimeoutMillis = connectionTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public double getAcquisitionP50Millis() {
+        return acquisitionP50Millis;
+    }
+
+    public double getAcquisitionP95Millis() {
+        return acquisitionP95Millis;
+    }
+
+    public double getAcquisitionP99Millis() {
+        return acquisitionP99Millis;
+    }
+
+    public double getAcquisitionMaxMillis() {
+        return acquisitionMaxMillis;
+    }
+
+    public void setAcquisitions(long acquisitions, long timeouts, double p50Millis, double p95Millis, double p99Millis, double maxMillis) {
+        this.acquisitions = acquisitions;
+        this.timeouts = timeouts;
+        this.acquisitionP50Millis = p50Millis;
+        this.acquisitionP95Millis = p95Millis;
+        this.acquisitionP99Millis = p99Millis;
+        this.acquisitionMaxMillis = maxMillis;
+    }
+}
@@ -11,7 +11,15 @@ public class ResponseDTO {
 
     public ResponseDTO(int code, String message) {
         this.code = code;
-        this.message = message.replace("\n", "<br>");
+        this.message = message == null ? null : message.replace("\n", "<br>");
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public String getMessage() {
+        return message;
     }
 
 }
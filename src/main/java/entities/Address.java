@@ -9,7 +9,7 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "address")
+@Table(name = "address", uniqueConstraints = @UniqueConstraint(name = "uq_address_street_zipcode", columnNames = {"street", "zipcode"}))
 @NamedQuery(name = "Address.deleteAllRows", query = "DELETE from Address")
 public class Address {
     @Id
@@ -38,6 +38,10 @@ public class Hobby {
     @Column(name = "wiki_link", nullable = false)
     private String wikiLink;
 
+    // Bumped with SQL by the facades for the ETags – EclipseLink never writes it (see facades.Versions)
+    @Column(name = "version", nullable = false, insertable = false, updatable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private long version;
+
     @ManyToMany
     @JoinTable(name = "hobby_person",
             joinColumns = @JoinColumn(name = "hobby_id"),
@@ -61,8 +65,10 @@ public class Hobby {
         this.name = hdto.getName();
         this.type = hdto.getType();
         this.wikiLink = hdto.getWikiLink();
-        for (HobbyDTO.InnerPersonDTO pdto : hdto.getPersons()) {
-            this.persons.add(new Person(pdto));
+        if (hdto.getPersons() != null) {
+            for (HobbyDTO.InnerPersonDTO pdto : hdto.getPersons()) {
+                this.persons.add(new Person(pdto));
+            }
         }
     }
 
@@ -39,6 +39,10 @@ public class Person {
     @JoinColumn(name = "address_id")
     private Address address;
 
+    // Bumped with SQL by the facades for the ETags – EclipseLink never writes it (see facades.Versions)
+    @Column(name = "version", nullable = false, insertable = false, updatable = false, columnDefinition = "BIGINT NOT NULL DEFAULT 0")
+    private long version;
+
     @OneToMany(mappedBy = "person")
     private Set<Phone> phones = new LinkedHashSet<>();
 
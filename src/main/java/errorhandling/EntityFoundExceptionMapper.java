@@ -1,7 +1,5 @@
 package errorhandling;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import dtos.ResponseDTO;
 
 import java.util.logging.Level;
@@ -15,7 +13,6 @@ import javax.ws.rs.ext.Provider;
 
 @Provider
 public class EntityFoundExceptionMapper implements ExceptionMapper<EntityFoundException> {
-    static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     static final int CODE = 405;
 
     @Context
@@ -27,7 +24,7 @@ public class EntityFoundExceptionMapper implements ExceptionMapper<EntityFoundEx
         ResponseDTO err = new ResponseDTO(CODE, e.getMessage());
 
         return Response.status(CODE)
-                .entity(GSON.toJson(err))
+                .entity(err)
                 .type(MediaType.APPLICATION_JSON)
                 .build();
     }
@@ -5,8 +5,6 @@
  */
 package errorhandling;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import dtos.ResponseDTO;
 
 import java.util.logging.Level;
@@ -26,7 +24,6 @@ import javax.ws.rs.ext.Provider;
 
 @Provider
 public class GenericExceptionMapper implements ExceptionMapper<Throwable> {
-    static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
     @Context
     ServletContext context;
@@ -42,7 +39,7 @@ public class GenericExceptionMapper implements ExceptionMapper<Throwable> {
             err = new ResponseDTO(type.getStatusCode(), type.getReasonPhrase());
         }
         return Response.status(type.getStatusCode())
-                .entity(GSON.toJson(err))
+                .entity(err)
                 .type(MediaType.APPLICATION_JSON)
                 .build();
     }
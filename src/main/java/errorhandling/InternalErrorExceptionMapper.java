@@ -1,7 +1,5 @@
 package errorhandling;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import dtos.ResponseDTO;
 
 import javax.servlet.ServletContext;
@@ -15,7 +13,6 @@ import java.util.logging.Logger;
 
 @Provider
 public class InternalErrorExceptionMapper  implements ExceptionMapper<InternalErrorException> {
-    static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
     static final int CODE = 500;
 
     @Context
@@ -27,7 +24,7 @@ public class InternalErrorExceptionMapper  implements ExceptionMapper<InternalEr
         ResponseDTO err = new ResponseDTO(CODE, e.getMessage());
 
         return Response.status(CODE)
-                .entity(GSON.toJson(err))
+                .entity(err)
                 .type(MediaType.APPLICATION_JSON)
                 .build();
     }
@@ -0,0 +1,7 @@
+package errorhandling;
+
+public class VersionConflictException extends Exception {
+    public VersionConflictException(String errorMessage) {
+        super(errorMessage);
+    }
+}
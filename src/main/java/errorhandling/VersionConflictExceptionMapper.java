@@ -0,0 +1,32 @@
+package errorhandling;
+
+import dtos.ResponseDTO;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.ServletContext;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import javax.ws.rs.ext.Provider;
+
+@Provider
+public class VersionConflictExceptionMapper implements ExceptionMapper<VersionConflictException> {
+    static final int CODE = 412;
+
+    @Context
+    ServletContext context;
+
+    @Override
+    public Response toResponse(VersionConflictException e) {
+        // A client with an outdated copy is business as usual, not an error of the server
+        Logger.getLogger(VersionConflictExceptionMapper.class.getName()).log(Level.FINE, e.getMessage());
+        ResponseDTO err = new ResponseDTO(CODE, e.getMessage());
+
+        return Response.status(CODE)
+                .entity(err)
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+}
@@ -0,0 +1,147 @@
+package facades;
+
+import entities.Address;
+import utils.ProfiledConnection;
+import utils.Settings;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Resolves the address of a person being created or updated to the id of its row in the address table.
+ * <p>
+ * A new address is inserted and an existing one found in a single upsert against the unique
+ * (street, zipcode) key, so two requests creating the same address at the same time share one row.
+ * In front of the upsert sits an LRU cache of {@code ADDRESS_CACHE_SIZE} (an environment variable or
+ * system property, {@link #DEFAULT_CACHE_SIZE} by default) address ids, which is only filled
+ * after a commit and is emptied of the addresses the facades delete.
+ * <p>
+ * The upsert is plain JDBC on a {@link ProfiledConnection}, so it is counted like the statements of EclipseLink.
+ * <p>
+ * Addresses are matched ignoring case, like the default MySQL collation does, and stored with the street trimmed.
+ */
+class Addresses {
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+    private static final int CACHE_SIZE = Math.max(0, Settings.getInt("ADDRESS_CACHE_SIZE", DEFAULT_CACHE_SIZE));
+    // MySQL hands back the id of an existing row as the generated key when it is assigned with LAST_INSERT_ID
+    private static final String MYSQL_UPSERT = "INSERT INTO address (street, zipcode) VALUES (?, ?) "
+            + "ON DUPLICATE KEY UPDATE address_id = LAST_INSERT_ID(address_id)";
+    private static final String H2_UPSERT = "MERGE INTO address (street, zipcode) KEY (street, zipcode) VALUES (?, ?)";
+    private static final Map<String, Integer> IDS = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private Addresses() {
+    }
+
+    /**
+     * Returns the managed {@link Address} with a street and zipcode, inserting it if it is new.
+     *
+     * @param em an {@link EntityManager} with an active transaction.
+     * @param street the street.
+     * @param zipcode the zipcode.
+     * @return the {@link Address}, with an id.
+     * @throws PersistenceException if the address could not be saved.
+     */
+    static Address resolve(EntityManager em, String street, int zipcode) {
+        // Stored trimmed, like the importer stores it, so the key and the row agree
+        street = street.trim();
+        String key = keyOf(street, zipcode);
+        Integer id = getCached(key);
+        if (id != null) {
+            // Usually found in the shared cache – and gone if the address was deleted behind our back
+            Address address = em.find(Address.class, id);
+            if (address != null) {
+                return address;
+            }
+            forget(key);
+        }
+        return em.getReference(Address.class, upsert(em, street, zipcode));
+    }
+
+    /**
+     * Caches the id of an address (call it after the transaction that resolved it is committed).
+     *
+     * @param address an {@link Address} with an id.
+     */
+    static void remember(Address address) {
+        if (address != null && address.getId() != null && address.getStreet() != null && address.getZipcode() != null) {
+            synchronized (IDS) {
+                IDS.put(keyOf(address.getStreet(), address.getZipcode()), address.getId());
+            }
+        }
+    }
+
+    /**
+     * Drops an address from the cache (call it when the address is deleted).
+     *
+     * @param address an {@link Address}.
+     */
+    static void forget(Address address) {
+        if (address != null && address.getStreet() != null && address.getZipcode() != null) {
+            forget(keyOf(address.getStreet(), address.getZipcode()));
+        }
+    }
+
+    /**
+     * Empties the cache, e.g. after addresses were deleted without the facades.
+     */
+    static void clear() {
+        synchronized (IDS) {
+            IDS.clear();
+        }
+    }
+
+    private static Integer getCached(String key) {
+        synchronized (IDS) {
+            return IDS.get(key);
+        }
+    }
+
+    private static void forget(String key) {
+        synchronized (IDS) {
+            IDS.remove(key);
+        }
+    }
+
+    private static int upsert(EntityManager em, String street, int zipcode) {
+        Connection connection = ProfiledConnection.wrap(em.unwrap(Connection.class));
+        try (PreparedStatement upsert = connection.prepareStatement(upsertFor(connection), Statement.RETURN_GENERATED_KEYS)) {
+            upsert.setString(1, street);
+            upsert.setInt(2, zipcode);
+            upsert.executeUpdate();
+            try (ResultSet keys = upsert.getGeneratedKeys()) {
+                if (!keys.next()) {
+                    throw new PersistenceException("No id was returned for the address " + street + ", " + zipcode + ".");
+                }
+                return keys.getInt(1);
+            }
+        }
+        catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    /**
+     * Returns the upsert of the database: the MySQL one, or H2's own for the embedded test database.
+     * Its parameters are the street and the zipcode.
+     */
+    static String upsertFor(Connection connection) throws SQLException {
+        return connection.getMetaData().getDatabaseProductName().equals("H2") ? H2_UPSERT : MYSQL_UPSERT;
+    }
+
+    private static String keyOf(String street, int zipcode) {
+        return zipcode + " " + street.trim().toLowerCase(Locale.ROOT);
+    }
+}
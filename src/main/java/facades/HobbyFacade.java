@@ -1,19 +1,23 @@
 package facades;
 
 import dtos.HobbyDTO;
+import dtos.HobbyMatchDTO;
 import dtos.PersonDTO;
 import entities.Hobby;
 import entities.Person;
 import errorhandling.EntityNotFoundException;
 import errorhandling.InternalErrorException;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
 import utils.FacadeUtility;
+import utils.HobbyCatalog;
+import utils.UnitOfWork;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
 import javax.persistence.TypedQuery;
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.*;
 
 /**
  * A facade class that manages {@link javax.persistence.Entity entities} –
@@ -31,6 +35,8 @@ public class HobbyFacade {
     private static HobbyFacade INSTANCE;
     private static PersonFacade PERSON_FACADE;
     private static FacadeUtility UTIL;
+    private static HobbyCatalog CATALOG;
+    public static final int MAX_SEARCH_LIMIT = 100;
 
     /**
      * The default constructor is set private to ensure an instance only can be
@@ -61,6 +67,7 @@ public class HobbyFacade {
         if (INSTANCE == null) {
             EMF = emf;
             UTIL = FacadeUtility.getInstance(EMF);
+            CATALOG = HobbyCatalog.getInstance(EMF);
             INSTANCE = new HobbyFacade();
         }
         return INSTANCE;
@@ -71,87 +78,260 @@ public class HobbyFacade {
     }
 
     /**
-     * Returns a {@link Set} of every {@link Hobby} in the database.
+     * Returns a {@link Set} of every {@link Hobby} in the {@link HobbyCatalog} with its member count
+     * (but not its persons).
      *
      * @return {@link Set}.
-     * @see TypedQuery
+     * @see #getHobbies(boolean)
      */
     public Set<HobbyDTO> getHobbies() throws EntityNotFoundException {
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Hobby> hobbyQuery = em.createQuery("SELECT h FROM Hobby h", Hobby.class);
-        Set<Hobby> hobbies = new LinkedHashSet<>(hobbyQuery.getResultList());
+        return getHobbies(false);
+    }
+
+    /**
+     * Returns a {@link Set} of every {@link Hobby} in the {@link HobbyCatalog} with its member count.
+     * <p>
+     * The member counts are found with a single GROUP BY query.
+     * If the persons are included, they are found with a single query instead
+     * (phones and hobbies are batch fetched).
+     *
+     * @param expandPersons {@code true} to include the persons who have each hobby.
+     * @return {@link Set}.
+     * @see HobbyCatalog
+     * @see TypedQuery
+     */
+    public Set<HobbyDTO> getHobbies(boolean expandPersons) throws EntityNotFoundException {
+        List<PersonDTO.InnerHobbyDTO> hobbies = CATALOG.getHobbies();
         if (hobbies.size() == 0) {
             throw new EntityNotFoundException("There are currently no hobbies in the database.");
         }
-        Set<HobbyDTO> hobbyDTOs = new LinkedHashSet<>();
-        for (Hobby hobby : hobbies) {
-            hobbyDTOs.add(new HobbyDTO(hobby));
+        if (!expandPersons) {
+            Map<Integer, Long> memberCounts = countMembersByHobbyId();
+            Set<HobbyDTO> hobbyDTOs = new LinkedHashSet<>();
+            for (PersonDTO.InnerHobbyDTO hobby : hobbies) {
+                hobbyDTOs.add(new HobbyDTO(hobby, memberCounts.getOrDefault(hobby.getId(), 0L)));
+            }
+            return hobbyDTOs;
+        }
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Person> personQuery = em.createQuery("SELECT DISTINCT p FROM Person p LEFT JOIN FETCH p.address JOIN p.hobbies h", Person.class);
+            personQuery.setHint(QueryHints.BATCH, "p.phones");
+            personQuery.setHint(QueryHints.BATCH, "p.hobbies");
+            personQuery.setHint(QueryHints.BATCH_TYPE, BatchFetchType.EXISTS);
+            // Group the persons by hobby id
+            Map<Integer, Set<Person>> personsByHobbyId = new HashMap<>();
+            for (Person person : personQuery.getResultList()) {
+                for (Hobby hobby : person.getHobbies()) {
+                    personsByHobbyId.computeIfAbsent(hobby.getId(), id -> new LinkedHashSet<>()).add(person);
+                }
+            }
+            Set<HobbyDTO> hobbyDTOs = new LinkedHashSet<>();
+            for (PersonDTO.InnerHobbyDTO hobby : hobbies) {
+                hobbyDTOs.add(new HobbyDTO(hobby, personsByHobbyId.getOrDefault(hobby.getId(), Collections.emptySet())));
+            }
+            return hobbyDTOs;
+        }
+        finally {
+            uow.close();
         }
-        return hobbyDTOs;
     }
 
     /**
-     * Returns a {@link Set<Hobby>} of every {@link Hobby} with a given hobby {@code name}.
+     * Counts the persons who have each hobby (hobbies without persons are left out).
      *
-     * @param name a hobby name.
-     * @return {@link Set<Hobby>}.
+     * @return a {@link Map} from hobby id to member count.
      * @see TypedQuery
      */
-    public PersonDTO.InnerHobbyDTO getHobbyByName(String name) throws EntityNotFoundException {
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Hobby> hobbyQuery = em.createQuery("SELECT h FROM Hobby h WHERE h.name = :name", Hobby.class);
-        hobbyQuery.setParameter("name", name);
+    private Map<Integer, Long> countMembersByHobbyId() {
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Object[]> countQuery = em.createQuery("SELECT h.id, COUNT(p) FROM Hobby h JOIN h.persons p GROUP BY h.id", Object[].class);
+            Map<Integer, Long> memberCounts = new HashMap<>();
+            for (Object[] row : countQuery.getResultList()) {
+                memberCounts.put((Integer) row[0], ((Number) row[1]).longValue());
+            }
+            return memberCounts;
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Returns a tag that changes whenever the list of hobbies changes (a hobby is added or removed,
+     * or gets or loses a member – or a member changes), found with one aggregate over the hobby versions.
+     *
+     * @return the tag.
+     * @see Versions
+     */
+    public String getHobbiesTag() {
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            // The versions only grow, so their sum changes with every bump (and the max id when hobbies are replaced)
+            Object[] row = em.createQuery("SELECT COUNT(h), MAX(h.id), SUM(h.version) FROM Hobby h", Object[].class).getSingleResult();
+            return "hobbies-" + row[0] + "-" + row[1] + "-" + row[2];
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Returns a tag that changes whenever a hobby gets or loses a member, or one of its members changes,
+     * found with a primary key lookup of the hobby's version (no persons are loaded).
+     *
+     * @param name a hobby name.
+     * @return the tag.
+     * @throws EntityNotFoundException if the hobby is not found.
+     * @see Versions
+     */
+    public String getHobbyTag(String name) throws EntityNotFoundException {
+        PersonDTO.InnerHobbyDTO hobby = getHobbyByName(name);
+        UnitOfWork uow = UnitOfWork.begin(EMF);
         try {
-            return new PersonDTO.InnerHobbyDTO(hobbyQuery.getSingleResult());
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Long> versionQuery = em.createQuery("SELECT h.version FROM Hobby h WHERE h.id = :id", Long.class);
+            versionQuery.setParameter("id", hobby.getId());
+            return "hobby-" + hobby.getId() + "-" + versionQuery.getSingleResult();
         }
         catch (NoResultException e) {
             throw new EntityNotFoundException("We currently have no hobbies in our system.");
         }
+        finally {
+            uow.close();
+        }
     }
 
     /**
-     * Finds a {@link Set} of every {@link Person} with a given hobby {@code name} in the database.
+     * Counts every {@link Hobby} in the database without loading any of them.
+     *
+     * @return the number of hobbies.
+     * @see TypedQuery
+     */
+    public long countHobbies() {
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            return em.createQuery("SELECT COUNT(h) FROM Hobby h", Long.class).getSingleResult();
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Counts every {@link Person} with a given hobby {@code name} without loading any of them.
      *
      * @param name a hobby name.
-     * @return {@link Set}.
+     * @return the number of persons – 0 if the hobby does not exist.
+     * @see TypedQuery
+     */
+    public long countPersonsByHobbyName(String name) {
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Long> countQuery = em.createQuery("SELECT COUNT(p) FROM Hobby h JOIN h.persons p WHERE h.name = :name", Long.class);
+            countQuery.setParameter("name", name);
+            return countQuery.getSingleResult();
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Returns the {@link Hobby} with a given hobby {@code name} from the {@link HobbyCatalog}.
+     *
+     * @param name a hobby name.
+     * @return {@link PersonDTO.InnerHobbyDTO}.
+     * @see HobbyCatalog
+     */
+    public PersonDTO.InnerHobbyDTO getHobbyByName(String name) throws EntityNotFoundException {
+        PersonDTO.InnerHobbyDTO hobby = CATALOG.getHobby(name);
+        if (hobby == null) {
+            throw new EntityNotFoundException("We currently have no hobbies in our system.");
+        }
+        return hobby;
+    }
+
+    /**
+     * Returns the {@link Hobby} with a given hobby {@code name} with its member count.
+     * <p>
+     * The catalog fields come from the {@link HobbyCatalog}, and the member count from a single COUNT query.
+     *
+     * @param name a hobby name.
+     * @param expandPersons {@code true} to include the persons who have the hobby.
+     * @return {@link HobbyDTO}.
      * @throws EntityNotFoundException if the hobby is not found.
+     * @see HobbyCatalog
      * @see TypedQuery
-     * @see EntityManager#find
      */
-    public Set<PersonDTO> getPersonsByHobbyName(String name) throws EntityNotFoundException, InternalErrorException {
-        // Find hobby in hobby table
-        Hobby hobby = UTIL.hobbyNameExists(name);
-        // Find persons who have this hobby
-        Set<Person> persons = UTIL.getPersonsByHobbyId(hobby.getId());
-        // Prepare DTO for persons
-        Set<PersonDTO> personDTOs = new LinkedHashSet<>();
-        for (Person person : persons) {
-            // Make sure to include all the person's phones
-            person.setPhones(UTIL.getPhonesByPersonId(person.getId()));
-            // Make sure to include all the person's hobbies (not just the one we looked up)
-            person.setHobbies(UTIL.getHobbiesByPersonId(person.getId()));
-            // Convert entity to DTO
-            personDTOs.add(new PersonDTO(person));
-        }
-        return personDTOs;
+    public HobbyDTO getHobby(String name, boolean expandPersons) throws EntityNotFoundException {
+        PersonDTO.InnerHobbyDTO hobby = getHobbyByName(name);
+        if (expandPersons) {
+            return new HobbyDTO(hobby, UTIL.getPersonsByHobbyId(hobby.getId()));
+        }
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Long> countQuery = em.createQuery("SELECT COUNT(p) FROM Hobby h JOIN h.persons p WHERE h.id = :id", Long.class);
+            countQuery.setParameter("id", hobby.getId());
+            return new HobbyDTO(hobby, countQuery.getSingleResult());
+        }
+        finally {
+            uow.close();
+        }
     }
 
     /**
      * Finds a {@link Set} of every {@link Person} with a given hobby {@code name} in the database.
      *
-     * @param query a hobby name.
+     * @param name a hobby name.
      * @return {@link Set}.
+     * @throws EntityNotFoundException if the hobby is not found.
      * @see TypedQuery
      * @see EntityManager#find
      */
-    public Set<HobbyDTO> searchHobbies(String query) {
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Hobby> hobbyQuery = em.createQuery("SELECT h FROM Hobby h WHERE h.name LIKE :query", Hobby.class);
-        hobbyQuery.setParameter("query", "%" + query + "%");
-        Set<HobbyDTO> hobbyDTOs = new LinkedHashSet<>();
-        for (Hobby hobby : hobbyQuery.getResultList()) {
-            hobbyDTOs.add(new HobbyDTO(hobby));
-        }
-        return hobbyDTOs;
+    public Set<PersonDTO> getPersonsByHobbyName(String name) throws EntityNotFoundException, InternalErrorException {
+        // Join (or start) the unit of work, so the lookups below share one entity manager
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            // Find hobby in the hobby catalog
+            PersonDTO.InnerHobbyDTO hobby = UTIL.hobbyNameInCatalog(name);
+            // Find persons who have this hobby (including their address, phones and all of their hobbies)
+            Set<Person> persons = UTIL.getPersonsByHobbyId(hobby.getId());
+            // Prepare DTO for persons
+            Set<PersonDTO> personDTOs = new LinkedHashSet<>();
+            for (Person person : persons) {
+                // Convert entity to DTO
+                personDTOs.add(new PersonDTO(person));
+            }
+            return personDTOs;
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Finds the hobbies whose names contain a {@code query} (ignoring case), best matches first.
+     * <p>
+     * The search is served by the {@link HobbyCatalog}'s n-gram index (without any SQL).
+     *
+     * @param query a part of a hobby name.
+     * @param limit the maximum number of matches (at most {@link #MAX_SEARCH_LIMIT}).
+     * @return a {@link List} of {@link HobbyMatchDTO matches}.
+     * @see utils.HobbySearchIndex
+     */
+    public List<HobbyMatchDTO> searchHobbies(String query, int limit) {
+        List<HobbyMatchDTO> matches = new ArrayList<>();
+        for (PersonDTO.InnerHobbyDTO hobby : CATALOG.search(query, Math.min(limit, MAX_SEARCH_LIMIT))) {
+            matches.add(new HobbyMatchDTO(hobby));
+        }
+        return matches;
     }
 }
@@ -1,6 +1,8 @@
 package facades;
 
+import dtos.ImportResultDTO;
 import dtos.PersonDTO;
+import dtos.PersonPageDTO;
 import entities.Address;
 import entities.Hobby;
 import entities.Person;
@@ -8,13 +10,34 @@ import entities.Phone;
 import errorhandling.EntityFoundException;
 import errorhandling.EntityNotFoundException;
 import errorhandling.InternalErrorException;
+import errorhandling.VersionConflictException;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.CursoredStream;
 import utils.FacadeUtility;
+import utils.HobbyCatalog;
+import utils.PhoneIndex;
+import utils.ProfiledConnection;
+import utils.ReadReplicas;
+import utils.Settings;
+import utils.UnitOfWork;
 import utils.StatusCode;
 
 import javax.persistence.*;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
-import java.util.Objects;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * A facade class that manages {@link javax.persistence.Entity entities} and
@@ -32,8 +55,12 @@ public class PersonFacade {
     private static PersonFacade INSTANCE;
     private static EntityManagerFactory EMF;
     private static FacadeUtility UTIL;
+    private static PhoneIndex PHONES;
     private static StatusCode RESPONSE_CODE;
-    private static final boolean CHECK_OWNERSHIP = true;
+    public static final int MAX_PAGE_SIZE = 1000;
+    public static final int STREAM_FETCH_SIZE = 500;
+    public static final int DEFAULT_IMPORT_CHUNK_SIZE = 1000;
+    private static final Logger LOGGER = Logger.getLogger(PersonFacade.class.getName());
 
     /**
      * The default constructor is set private to ensure the class only can be accessed
@@ -63,6 +90,7 @@ public class PersonFacade {
         if (INSTANCE == null) {
             EMF = emf;
             UTIL = FacadeUtility.getInstance(EMF);
+            PHONES = PhoneIndex.getInstance(EMF);
             INSTANCE = new PersonFacade();
         }
         return INSTANCE;
@@ -79,36 +107,244 @@ public class PersonFacade {
      * @see TypedQuery
      */
     public Set<PersonDTO> getPersons() throws EntityNotFoundException {
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Person> personQuery = em.createQuery("SELECT p FROM Person p", Person.class);
-        Set<Person> persons = new LinkedHashSet<>(personQuery.getResultList());
-       // if (persons.size() == 0) {
-         //   throw new EntityNotFoundException("There are currently no persons in the database.");
-       // }
-        Set<PersonDTO> personDTOs = new LinkedHashSet<>();
-        for (Person person : persons) {
-            personDTOs.add(new PersonDTO(person));
-        }
-        return personDTOs;
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Person> personQuery = em.createQuery("SELECT p FROM Person p", Person.class);
+            Set<Person> persons = new LinkedHashSet<>(personQuery.getResultList());
+           // if (persons.size() == 0) {
+             //   throw new EntityNotFoundException("There are currently no persons in the database.");
+           // }
+            Set<PersonDTO> personDTOs = new LinkedHashSet<>();
+            for (Person person : persons) {
+                personDTOs.add(new PersonDTO(person));
+            }
+            return personDTOs;
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Counts every {@link Person} in the database without loading any of them.
+     *
+     * @return the number of persons.
+     * @see TypedQuery
+     */
+    public long countPersons() {
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            return em.createQuery("SELECT COUNT(p) FROM Person p", Long.class).getSingleResult();
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Counts every {@link Person} with a given hobby {@code name} without loading any of them.
+     *
+     * @param name a hobby name.
+     * @return the number of persons – 0 if the hobby does not exist.
+     * @see TypedQuery
+     */
+    public long countPersonsByHobbyName(String name) {
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Long> countQuery = em.createQuery("SELECT COUNT(p) FROM Person p JOIN p.hobbies h WHERE h.name = :name", Long.class);
+            countQuery.setParameter("name", name);
+            return countQuery.getSingleResult();
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Returns a tag that changes whenever the {@link PersonDTO} of a person changes,
+     * found with a primary key lookup of the person's version (the person is not loaded).
+     *
+     * @param id a person id.
+     * @return the tag.
+     * @throws EntityNotFoundException if no person is found.
+     * @see Versions
+     */
+    public String getPersonTag(int id) throws EntityNotFoundException {
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Long> versionQuery = em.createQuery("SELECT p.version FROM Person p WHERE p.id = :id", Long.class);
+            versionQuery.setParameter("id", id);
+            return tagPrefixOf(id) + versionQuery.getSingleResult();
+        }
+        catch (NoResultException e) {
+            throw new EntityNotFoundException("Could not find a person with the id " + id + ".");
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Returns the start of a person's tags, which the version completes (see {@link #getPersonTag}).
+     *
+     * @param id a person id.
+     * @return the tag without the version.
+     */
+    public static String tagPrefixOf(int id) {
+        return "person-" + id + "-";
+    }
+
+    /**
+     * Returns a page of at most {@code limit} {@link Person persons} ordered by id,
+     * starting after the person with the id {@code after} (keyset pagination).
+     * <p>
+     * The addresses are join fetched, and the phones and hobbies of the page are batch fetched,
+     * so a page costs the same number of queries no matter how deep into the table it is.
+     *
+     * @param after the id of the last person on the previous page (0 for the first page).
+     * @param limit the maximum number of persons on the page (at most {@link #MAX_PAGE_SIZE}).
+     * @return a {@link PersonPageDTO} with the persons and a cursor to the next page.
+     * @see TypedQuery#setMaxResults
+     */
+    public PersonPageDTO getPersons(int after, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Person> personQuery = em.createQuery("SELECT p FROM Person p LEFT JOIN FETCH p.address WHERE p.id > :after ORDER BY p.id", Person.class);
+            personQuery.setParameter("after", after);
+            // Fetch one extra person to find out if there is a next page
+            personQuery.setMaxResults(pageSize + 1);
+            setBatchHints(personQuery, pageSize + 1);
+            List<Person> persons = personQuery.getResultList();
+            boolean hasNextPage = persons.size() > pageSize;
+            Set<PersonDTO> personDTOs = new LinkedHashSet<>();
+            for (Person person : persons.subList(0, Math.min(persons.size(), pageSize))) {
+                personDTOs.add(new PersonDTO(person));
+            }
+            // The next page starts after the last person on this page
+            Integer next = hasNextPage ? persons.get(pageSize - 1).getId() : null;
+            return new PersonPageDTO(personDTOs, next);
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Passes every {@link Person} in the database to an {@code action}, one at a time, in id order.
+     * <p>
+     * The persons are read from a database cursor in chunks of {@link #STREAM_FETCH_SIZE},
+     * and each chunk is released before the next one is read,
+     * so memory use stays flat no matter how many persons there are.
+     * <p>
+     * The stream clears its persistence context between chunks,
+     * so it uses an {@link EntityManager} of its own rather than joining the {@link UnitOfWork} –
+     * opened on the {@link ReadReplicas read replica} if the unit of work on this thread is reading.
+     *
+     * @param action receives a {@link PersonDTO} for every person.
+     * @see CursoredStream
+     */
+    public void forEachPerson(Consumer<PersonDTO> action) {
+        EntityManager em = (UnitOfWork.isReading() ? ReadReplicas.route(EMF) : EMF).createEntityManager();
+        Query personQuery = em.createQuery("SELECT p FROM Person p LEFT JOIN FETCH p.address ORDER BY p.id");
+        personQuery.setHint(QueryHints.CURSOR, true);
+        personQuery.setHint(QueryHints.CURSOR_PAGE_SIZE, STREAM_FETCH_SIZE);
+        personQuery.setHint(QueryHints.JDBC_FETCH_SIZE, STREAM_FETCH_SIZE);
+        setBatchHints(personQuery, STREAM_FETCH_SIZE);
+        CursoredStream cursor = (CursoredStream) personQuery.getSingleResult();
+        try {
+            while (cursor.hasNext()) {
+                for (Object person : cursor.next(STREAM_FETCH_SIZE)) {
+                    action.accept(new PersonDTO((Person) person));
+                }
+                // Let go of the chunk before reading the next one
+                cursor.releasePrevious();
+                em.clear();
+            }
+        }
+        finally {
+            cursor.close();
+            em.close();
+        }
+    }
+
+    /**
+     * Batch fetches the phones and hobbies of the persons found by a {@code query},
+     * using an IN clause with up to {@code batchSize} person ids.
+     *
+     * @param query a query that selects persons as {@code p}.
+     * @param batchSize the number of persons whose phones and hobbies are fetched at once.
+     */
+    private void setBatchHints(Query query, int batchSize) {
+        query.setHint(QueryHints.BATCH, "p.phones");
+        query.setHint(QueryHints.BATCH, "p.hobbies");
+        query.setHint(QueryHints.BATCH_TYPE, BatchFetchType.IN);
+        query.setHint(QueryHints.BATCH_SIZE, batchSize);
     }
 
     /**
      * Finds a {@link Person} with a given phone {@code number} in the database.
+     * <p>
+     * If the {@link PhoneIndex} is enabled, the owner of the number is looked up in memory
+     * instead of in the phone table.
      *
      * @param number a phone number.
      * @return a {@link PersonDTO} with data about a person – if one exists.
      * @throws EntityNotFoundException if no person is found.
      * @see EntityManager#find
+     * @see PhoneIndex
      */
     public PersonDTO getPersonByNumber(int number) throws EntityNotFoundException {
-        // Get the person associated with the number
-        Person person = UTIL.phoneExists(number).getPerson();
-        // Make sure to include all the person's phones (not just the one we looked up)
-        person.setPhones(UTIL.getPhonesByPersonId(person.getId()));
-        // Make sure to include all the person's hobbies
-        person.setHobbies(UTIL.getHobbiesByPersonId(person.getId()));
-        // Convert entity to DTO
-        return new PersonDTO(person);
+        // Join (or start) the unit of work, so the lookups below share one entity manager
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            // Get the person associated with the number (and all the person's phones, not just the one we looked up)
+            Person person = PhoneIndex.isEnabled() ? getIndexedPersonByNumber(number, uow.getEntityManager()) : null;
+            if (person == null) {
+                person = UTIL.phoneExists(number).getPerson();
+                person.setPhones(UTIL.getPhonesByPersonId(person.getId()));
+            }
+            // Make sure to include all the person's hobbies
+            person.setHobbies(UTIL.getHobbiesByPersonId(person.getId()));
+            // Convert entity to DTO
+            return new PersonDTO(person);
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Finds the owner of a phone {@code number} through the {@link PhoneIndex}, including all the owner's phones.
+     *
+     * @param number a phone number.
+     * @param em the {@link EntityManager} of the current unit of work.
+     * @return the {@link Person} – or {@code null} if the index is out of date, so the phone table must be asked.
+     * @throws EntityNotFoundException if no one has the number.
+     */
+    private Person getIndexedPersonByNumber(int number, EntityManager em) throws EntityNotFoundException {
+        int personId = PHONES.getPersonId(number);
+        if (personId == PhoneIndex.NO_PERSON) {
+            throw new EntityNotFoundException("No one in our system is associated with the phone number " + number + ".");
+        }
+        Person person = em.find(Person.class, personId);
+        if (person == null) {
+            return null;
+        }
+        Set<Phone> phones = UTIL.getPhonesByPersonId(personId);
+        // The number may have changed hands since the index was loaded
+        for (Phone phone : phones) {
+            if (phone.getNumber() == number) {
+                person.setPhones(phones);
+                return person;
+            }
+        }
+        return null;
     }
 
     /**
@@ -121,19 +357,24 @@ public class PersonFacade {
      * @see EntityManager#find
      */
     public Set<PersonDTO> getPersonsByHobbyName(String name) throws EntityNotFoundException, InternalErrorException {
-        // Find hobby in hobby table
-        Hobby hobby = UTIL.hobbyNameExists(name);
-        // Find persons who have this hobby
-        hobby.setPersons(UTIL.getPersonsByHobbyId(hobby.getId()));
-        // Prepare DTO for persons
-        Set<PersonDTO> personDTOs = new LinkedHashSet<>();
-        for (Person person : hobby.getPersons()) {
-            // Make sure to include all the person's phones
-            person.setPhones(UTIL.getPhonesByPersonId(person.getId()));
-            // Convert entity to DTO
-            personDTOs.add(new PersonDTO(person));
+        // Join (or start) the unit of work, so the lookups below share one entity manager
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            // Find hobby in the hobby catalog
+            PersonDTO.InnerHobbyDTO hobby = UTIL.hobbyNameInCatalog(name);
+            // Find persons who have this hobby (including their address, phones and hobbies)
+            Set<Person> persons = UTIL.getPersonsByHobbyId(hobby.getId());
+            // Prepare DTO for persons
+            Set<PersonDTO> personDTOs = new LinkedHashSet<>();
+            for (Person person : persons) {
+                // Convert entity to DTO
+                personDTOs.add(new PersonDTO(person));
+            }
+            return personDTOs;
+        }
+        finally {
+            uow.close();
         }
-        return personDTOs;
     }
 
     /**
@@ -144,12 +385,13 @@ public class PersonFacade {
      * @see EntityManager#find
      */
     public Set<PersonDTO> getPersonsByZipcode(int zipcode) throws EntityNotFoundException, InternalErrorException {
-        // Create entity manager to find entity
-        EntityManager em = EMF.createEntityManager();
-        // Find the person in the person table
-        TypedQuery<Person> personQuery = em.createQuery("SELECT p FROM Person p WHERE p.address.zipcode = :zipcode", Person.class);
-        personQuery.setParameter("zipcode", zipcode);
+        // Join (or start) the unit of work to find entities
+        UnitOfWork uow = UnitOfWork.begin(EMF);
         try {
+            EntityManager em = uow.getEntityManager();
+            // Find the person in the person table
+            TypedQuery<Person> personQuery = em.createQuery("SELECT p FROM Person p WHERE p.address.zipcode = :zipcode", Person.class);
+            personQuery.setParameter("zipcode", zipcode);
             // Prepare a set of person DTOs
             Set<PersonDTO> personDTOs = new LinkedHashSet<>();
             for (Person person : personQuery.getResultList()) {
@@ -164,7 +406,7 @@ public class PersonFacade {
             throw new InternalErrorException(e.getMessage());
         }
         finally {
-            em.close();
+            uow.close();
         }
     }
 
@@ -177,25 +419,112 @@ public class PersonFacade {
     public void createPerson(PersonDTO dto) throws EntityFoundException, EntityNotFoundException, InternalErrorException {
         // Convert DTO to entity
         Person person = new Person(dto);
-        // Create entity manager to persist person
-        EntityManager em = EMF.createEntityManager();
+        // Join (or start) the unit of work to persist person
+        UnitOfWork uow = UnitOfWork.begin(EMF);
         try {
+            EntityManager em = uow.getEntityManager();
             // Begin entity transaction
             em.getTransaction().begin();
             // Set an id for the address (address currently has no id)
             person.setAddress(getAddressWithId(person.getAddress(), em));
             // Overwrite hobbies without ids with hobbies with ids
             person.setHobbies(getHobbiesWithIds(person.getHobbies()));
+            // Make sure none of the phone numbers are taken, in one query – before the person is persisted,
+            // so the query does not flush the person before its phones
+            checkPhonesAreFree(person.getPhones(), em);
             // Persist person (using the foreign address id set above)
             em.persist(person);
             // Persist phones (using the foreign person id generated above)
-            getPersistedPhonesSpecifiedByPerson(person, em);
+            persistPhonesSpecifiedByPerson(person, em);
+            // The hobbies got a new member
+            em.flush();
+            Versions.touchHobbiesOf(em, person.getId());
             // Commit entity transaction to database
             em.getTransaction().commit();
+            Addresses.remember(person.getAddress());
+            // Add the phones to the phone index
+            for (Phone phone : person.getPhones()) {
+                PHONES.put(phone.getNumber(), person.getId());
+            }
         }
         catch (PersistenceException e) {
             throw new InternalErrorException(e.getMessage());
         }
+        finally {
+            uow.close();
+        }
+    }
+
+    /**
+     * Persists many new persons to the database, one chunk at a time.
+     * <p>
+     * Every chunk of {@code IMPORT_CHUNK_SIZE} persons (an environment variable or system property,
+     * {@link #DEFAULT_IMPORT_CHUNK_SIZE} by default) costs a few set-wise lookups and batched inserts
+     * in a transaction of its own, so an import of any size holds one chunk in memory
+     * and a failed chunk does not undo the chunks before it.
+     * <p>
+     * The inserts bypass EclipseLink, so the import uses an {@link EntityManager} of its own
+     * and evicts the addresses and hobbies that got new persons from the shared cache after every chunk.
+     *
+     * @param persons the persons to create (a {@code null} person is a row that could not be read).
+     * @param results receives an {@link ImportResultDTO} for every person, in the same order.
+     * @see PersonImporter
+     */
+    public void importPersons(Iterator<PersonDTO> persons, Consumer<ImportResultDTO> results) {
+        int chunkSize = Math.max(1, Settings.getInt("IMPORT_CHUNK_SIZE", DEFAULT_IMPORT_CHUNK_SIZE));
+        List<PersonDTO> chunk = new ArrayList<>(chunkSize);
+        int firstRow = 1;
+        while (persons.hasNext()) {
+            chunk.add(persons.next());
+            if (chunk.size() == chunkSize || !persons.hasNext()) {
+                for (ImportResultDTO result : importChunk(chunk, firstRow)) {
+                    results.accept(result);
+                }
+                firstRow += chunk.size();
+                chunk.clear();
+            }
+        }
+    }
+
+    /**
+     * Imports one chunk of persons in a transaction of its own.
+     *
+     * @return an {@link ImportResultDTO} for every person – all of them failed if the chunk was rolled back.
+     */
+    private List<ImportResultDTO> importChunk(List<PersonDTO> chunk, int firstRow) {
+        EntityManager em = EMF.createEntityManager();
+        try {
+            // Begin entity transaction (and borrow its connection)
+            em.getTransaction().begin();
+            PersonImporter importer = new PersonImporter(ProfiledConnection.wrap(em.unwrap(Connection.class)), HobbyCatalog.getInstance(EMF));
+            Map<Integer, Integer> numbers = new HashMap<>();
+            Set<Integer> addresses = new HashSet<>();
+            Set<Integer> hobbies = new HashSet<>();
+            List<ImportResultDTO> results = importer.importChunk(chunk, firstRow, numbers, addresses, hobbies);
+            // Commit entity transaction to database
+            em.getTransaction().commit();
+            // The addresses and hobbies in the shared cache do not know their new persons (the others stay cached)
+            for (Integer id : addresses) {
+                EMF.getCache().evict(Address.class, id);
+            }
+            for (Integer id : hobbies) {
+                EMF.getCache().evict(Hobby.class, id);
+            }
+            // Add the phones to the phone index
+            numbers.forEach(PHONES::put);
+            return results;
+        }
+        catch (SQLException | PersistenceException e) {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            List<ImportResultDTO> results = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                results.add(new ImportResultDTO(firstRow + i, StatusCode.INTERNAL_ERROR, null,
+                        "The rows " + firstRow + " to " + (firstRow + chunk.size() - 1) + " were not saved: " + e.getMessage()));
+            }
+            return results;
+        }
         finally {
             em.close();
         }
@@ -208,58 +537,143 @@ public class PersonFacade {
      * @see EntityManager#merge
      */
     public void updatePerson(PersonDTO dto) throws EntityNotFoundException, EntityFoundException, InternalErrorException {
+        try {
+            updatePerson(dto, null);
+        }
+        catch (VersionConflictException e) {
+            // Cannot happen, as any version will do
+            throw new InternalErrorException(e.getMessage());
+        }
+    }
+
+    /**
+     * Merges an altered {@link Person} with an existing {@link Person} in the database –
+     * if the person still has the version the client has seen.
+     *
+     * @param dto a {@link PersonDTO} with new data about the person.
+     * @param expectedVersion the version of the person the changes are based on – or {@code null} if any version will do.
+     * @throws VersionConflictException if someone else has changed the person since.
+     * @see EntityManager#merge
+     * @see #getPersonTag
+     */
+    public void updatePerson(PersonDTO dto, Long expectedVersion) throws EntityNotFoundException, EntityFoundException, VersionConflictException, InternalErrorException {
         // Convert DTO to entity
         Person person = new Person(dto);
-        // Update ONLY if the person exists!
-        UTIL.personExists(person.getId());// <-- Throws an exception otherwise
-        // Create an entity manager to merge updates into a person
-        EntityManager em = EMF.createEntityManager();
+        // Join (or start) the unit of work to merge updates into a person
+        UnitOfWork uow = UnitOfWork.begin(EMF);
         try {
+            EntityManager em = uow.getEntityManager();
             // Begin entity transaction
             em.getTransaction().begin();
+            // Bump the versions of the person and the hobbies it has now – the bump fails (and the update with it)
+            // unless the person exists with the expected version
+            Versions.touchPerson(em, person.getId(), expectedVersion);// <-- Throws an exception otherwise
             // Set an id for the address (address currently has no id)
             person.setAddress(getAddressWithId(person.getAddress(), em));
-            // Persist the new phones and add them to the person
-            person.setPhones(getPersistedPhonesSpecifiedByPerson(person, em, CHECK_OWNERSHIP));
+            // Remove, add and describe the phones in one query and a few batched statements
+            PhoneChanges phones = PhoneChanges.find(em, person.getId(), person.getPhones());
+            phones.apply(em);
+            // The phones are written already, so leave them out of the merge
+            person.setPhones(new LinkedHashSet<>());
             // Overwrite hobbies without ids with hobbies with ids
             person.setHobbies(getHobbiesWithIds(person.getHobbies()));
             // Merge altered person with existing person
             em.merge(person);
+            // Bump the versions of the hobbies it has after the merge
+            em.flush();
+            Versions.touchHobbiesOf(em, person.getId());
             // Commit entity transaction to database
             em.getTransaction().commit();
+            Addresses.remember(person.getAddress());
+            phones.evict(em);
+            // Bring the phone index up to date
+            for (Integer number : phones.getRemoved()) {
+                PHONES.remove(number);
+            }
+            for (Integer number : phones.getNumbers()) {
+                PHONES.put(number, person.getId());
+            }
         }
         catch (PersistenceException e) {
+            // A phone number someone else got between the lookup and the insert breaks the primary key of the phone
+            if (isConstraintViolation(e)) {
+                LOGGER.log(Level.FINE, "The person with the id " + person.getId() + " was not updated", e);
+                throw new EntityFoundException("A phone number is already associated with another person!");
+            }
+            LOGGER.log(Level.WARNING, "The person with the id " + person.getId() + " was not updated", e);
             throw new InternalErrorException("The changes were not saved!");
         }
         finally {
-            em.close();
+            uow.close();
         }
     }
 
+    /**
+     * Checks if an exception was caused by a broken constraint, like a duplicate key (SQLSTATE class 23).
+     */
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                // A batch reports the failed statement as the next exception
+                for (SQLException sql = (SQLException) cause; sql != null; sql = sql.getNextException()) {
+                    if (sql.getSQLState() != null && sql.getSQLState().startsWith("23")) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Deletes a {@link Person} from the database.
      *
      * @param id a person id.
-     * @see EntityManager#remove
+     * @see PersonRemoval
      */
     public void deletePerson(int id) throws EntityNotFoundException, InternalErrorException {
-        // Remove ONLY if the person exists!
-        Person person = UTIL.personExists(id);// <-- Throws an exception otherwise
-        // Create an entity manager to remove the person
-        EntityManager em = EMF.createEntityManager();
         try {
+            deletePerson(id, null);
+        }
+        catch (VersionConflictException e) {
+            // Cannot happen, as any version will do
+            throw new InternalErrorException(e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes a {@link Person} from the database – if the person still has the version the client has seen.
+     * Its phones and hobby memberships are deleted with it.
+     *
+     * @param id a person id.
+     * @param expectedVersion the version of the person the client has seen – or {@code null} if any version will do.
+     * @throws VersionConflictException if someone else has changed the person since.
+     * @see PersonRemoval
+     * @see #getPersonTag
+     */
+    public void deletePerson(int id, Long expectedVersion) throws EntityNotFoundException, VersionConflictException, InternalErrorException {
+        // Join (or start) the unit of work to remove the person
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
             // Begin entity transaction
             em.getTransaction().begin();
-            // Remove person
-            em.remove(person);
+            // Find the phones and hobby memberships that go with the person, without loading it
+            PersonRemoval removal = PersonRemoval.find(em, id);// <-- Throws an exception if the person does not exist
+            // Remove them, and the person if it still has the expected version
+            removal.apply(em, expectedVersion);// <-- Throws an exception otherwise
             // Commit entity transaction to database
             em.getTransaction().commit();
+            removal.evict(em);
+            for (int number : removal.getNumbers()) {
+                PHONES.remove(number);
+            }
         }
         catch (PersistenceException e) {
             throw new InternalErrorException(e.getMessage());
         }
         finally {
-            em.close();
+            uow.close();
         }
     }
 
@@ -269,98 +683,71 @@ public class PersonFacade {
      * @param address an {@link Address} with no id.
      * @param em an {@link EntityManager} with a reference to an {@link EntityTransaction}.
      * @return an {@link Address} with an id.
-     * @see TypedQuery
-     * @see EntityManager#persist
+     * @see Addresses#resolve
      */
     private Address getAddressWithId(Address address, EntityManager em) throws PersistenceException {
-        try {
-            // If it already exists, get the existing address id
-            return UTIL.addressExists(address.getStreet(), address.getZipcode());
-        }
-        catch (EntityNotFoundException e) {
-            // If it doesn't exist, persist the address to the address table
-            em.persist(address);// <-- Generates a new address id
-            return address;
-        }
+        // Find the existing address id, or insert the address, in one round trip (or none if it is cached)
+        return Addresses.resolve(em, address.getStreet(), address.getZipcode());
     }
 
     /**
-     * Persists every {@link Phone} belonging to a {@link Person} to the database.
+     * Makes sure no one has any of the phone numbers, with one query.
      *
-     * @param person the owner of the phones.
-     * @param em an {@link EntityManager} with a reference to an {@link EntityTransaction}.
-     * @throws EntityFoundException
+     * @param phones the phones of a new {@link Person}.
+     * @param em an {@link EntityManager}.
+     * @throws EntityFoundException if a phone number belongs to someone.
      */
-    private void getPersistedPhonesSpecifiedByPerson(Person person, EntityManager em) throws EntityFoundException, InternalErrorException {
-        getPersistedPhonesSpecifiedByPerson(person, em, false);
+    private void checkPhonesAreFree(Collection<Phone> phones, EntityManager em) throws EntityFoundException {
+        Set<Integer> numbers = PhoneChanges.descriptionsOf(phones).keySet();
+        if (numbers.isEmpty()) {
+            return;
+        }
+        List<Integer> taken = em.createQuery("SELECT t.number FROM Phone t WHERE t.number IN :numbers", Integer.class)
+                .setParameter("numbers", numbers)
+                .getResultList();
+        for (Integer number : numbers) {
+            if (taken.contains(number)) {
+                // We don't want to change the ownership of that phone number
+                throw new EntityFoundException("The phone number " + number + " is already associated with another person!");
+            }
+        }
     }
 
     /**
-     * Persists every {@link Phone} belonging to a {@link Person} to the database.
+     * Persists every {@link Phone} belonging to a new {@link Person}.
      *
      * @param person the owner of the phones.
      * @param em an {@link EntityManager} with a reference to an {@link EntityTransaction}.
-     * @param checkOwnership set to {@link #CHECK_OWNERSHIP}
-     *                       if the person already exists in the database.
-     * @throws EntityFoundException
      */
-    public Set<Phone> getPersistedPhonesSpecifiedByPerson(Person person, EntityManager em, boolean checkOwnership) throws EntityFoundException, InternalErrorException {
-        removeExistingPhonesNotSpecifiedByPerson(person, em);
-        Set<Phone> persistedPhones = new LinkedHashSet<>();
+    private void persistPhonesSpecifiedByPerson(Person person, EntityManager em) throws InternalErrorException {
         for (Phone phone : person.getPhones()) {
             try {
-                Phone existingPhone = UTIL.phoneExists(phone.getNumber());
-                // If it already exists and belongs to someone else...
-                if (!Objects.equals(existingPhone.getPerson().getId(), person.getId()) || !checkOwnership) {
-                    // we don't want to change the ownership of that phone number
-                    throw new EntityFoundException("The phone number " + phone.getNumber() + " is already associated with another person!");
-                }
-                // If the phone number exists, but it belongs to the person:
-                try {
-                    // Add the foreign person id to the phone (person id cannot be null!)
-                    phone.setPerson(person);
-                    // Merge phone
-                    em.merge(phone);
-                    // Collect merged phone
-                    persistedPhones.add(phone);
-                }
-                catch (PersistenceException pe) {
-                    throw new InternalErrorException("Could not update a phone.");
-                }
+                // Add the foreign person id to the phone (person id cannot be null!)
+                phone.setPerson(person);
+                em.persist(phone);
             }
-            catch (EntityNotFoundException nfe) {
-                // If the phone number does not exist in the phone table:
-                try {
-                    // Add the foreign person id to the phone (person id cannot be null!)
-                    phone.setPerson(person);
-                    // Persist phone
-                    em.persist(phone);
-                    // Collect persisted phone
-                    persistedPhones.add(phone);
-                }
-                catch (PersistenceException pe) {
-                    throw new InternalErrorException("Could not add a phone.");
-                }
+            catch (PersistenceException pe) {
+                throw new InternalErrorException("Could not add a phone.");
             }
         }
-        // Return persisted phones
-        return persistedPhones;
     }
 
     /**
      * Returns a {@link Set} of {@link Hobby hobbies} with ids
      * given a {@link Set} of {@link Hobby hobbies} with ids.
+     * <p>
+     * The names are resolved all at once, and every unknown name is reported in the same exception.
      *
      * @param hobbiesWithoutIds a {@link Set} with no id.
      * @return {@link Set}.
-     * @see TypedQuery
+     * @see FacadeUtility#hobbyNamesExist
      */
     public Set<Hobby> getHobbiesWithIds(Set<Hobby> hobbiesWithoutIds) throws EntityNotFoundException {
-        Set<Hobby> hobbiesWithIds = new LinkedHashSet<>();
+        List<String> names = new ArrayList<>(hobbiesWithoutIds.size());
         for (Hobby hobby : hobbiesWithoutIds) {
-            hobbiesWithIds.add(UTIL.hobbyNameExists(hobby.getName()));
+            names.add(hobby.getName());
         }
-        return hobbiesWithIds;
+        return UTIL.hobbyNamesExist(names);
     }
 
     /**
@@ -377,15 +764,17 @@ public class PersonFacade {
      * @see Person#removeAddress
      */
     public void removeAddressFromPerson(int id) throws EntityNotFoundException, InternalErrorException {
-        // Find person in the person table
-        Person person = UTIL.personExists(id);
-        // Before removing the address, store it in a variable for later use
-        Address address = person.getAddress();
-        // Create entity manager to remove address
-        EntityManager em = EMF.createEntityManager();
+        // Join (or start) the unit of work to remove address
+        UnitOfWork uow = UnitOfWork.begin(EMF);
         try {
+            EntityManager em = uow.getEntityManager();
+            // Find person in the person table
+            Person person = UTIL.personExists(id);
+            // Before removing the address, store it in a variable for later use
+            Address address = person.getAddress();
             // Begin entity transaction
             em.getTransaction().begin();
+            Versions.touchPerson(em, id);
             // Remove foreign address id from person (set address_id = null)
             person.removeAddress();
             // Merge the altered person with the existing person
@@ -394,6 +783,7 @@ public class PersonFacade {
             if (UTIL.getPersonsByAddressId(address.getId()).size() == 0) {
                 // remove the address from the address table
                 em.remove(address);
+                Addresses.forget(address);
             }
             // Commit entity transaction to database
             em.getTransaction().commit();
@@ -402,7 +792,7 @@ public class PersonFacade {
             throw new InternalErrorException(e.getMessage());
         }
         finally {
-            em.close();
+            uow.close();
         }
     }
 
@@ -428,33 +818,4 @@ public class PersonFacade {
             em.close();
         }
     }
-
-    /**
-     * Removes every {@link Phone} associated with a {@link Person} from the database.
-     *
-     * @param person
-     * @see EntityManager#find
-     * @see EntityManager#remove
-     */
-    public void removeExistingPhonesNotSpecifiedByPerson(Person person, EntityManager em) {
-        // Get the person's existing phones
-        TypedQuery<Phone> phoneQuery = em.createQuery("SELECT t FROM Phone t WHERE t.person.id = :pid", Phone.class);
-        phoneQuery.setParameter("pid", person.getId());
-        // Remove phones not specified by the person
-        for (Phone existingPhone : phoneQuery.getResultList()) {
-            boolean removePhone = true;
-            for (Phone specifiedPhone : person.getPhones()) {
-                // If the person HAS specified an existing phone...
-                if (Objects.equals(specifiedPhone.getNumber(), existingPhone.getNumber())) {
-                    // do NOT remove the phone
-                    removePhone = false;
-                    break;
-                }
-            }
-            if (removePhone) {
-                // Remove existing phone from phone table
-                em.remove(existingPhone);
-            }
-        }
-    }
 }
@@ -0,0 +1,343 @@
+package facades;
+
+import dtos.AddressDTO;
+import dtos.ImportResultDTO;
+import dtos.PersonDTO;
+import dtos.PhoneDTO;
+import utils.HobbyCatalog;
+import utils.StatusCode;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Imports one chunk of persons with plain JDBC, so a bulk import pays
+ * a handful of set-wise queries and batched inserts per chunk instead of several round trips per person.
+ * <p>
+ * Rows are checked before anything is written: a row is rejected if it is incomplete,
+ * names a hobby that is not in the {@link HobbyCatalog}, or has a phone number that is already taken
+ * (in the database or by an earlier row). The remaining rows are inserted in one transaction,
+ * which the caller commits.
+ * <p>
+ * The versions of the hobbies that get new members are bumped as well, so their ETags change.
+ * <p>
+ * Give it a {@link utils.ProfiledConnection}, or its statements are missing from the statistics of the request.
+ */
+class PersonImporter {
+    private static final int MAX_LENGTH = 45;
+
+    private final Connection connection;
+    private final HobbyCatalog catalog;
+
+    PersonImporter(Connection connection, HobbyCatalog catalog) {
+        this.connection = connection;
+        this.catalog = catalog;
+    }
+
+    /**
+     * Imports a chunk of persons.
+     *
+     * @param persons the persons (a {@code null} person is a row that could not be read).
+     * @param firstRow the row number of the first person.
+     * @param numbers collects the phone numbers added, mapped to the ids of their owners.
+     * @param changedAddresses collects the ids of the addresses that got new persons.
+     * @param changedHobbies collects the ids of the hobbies that got new members.
+     * @return an {@link ImportResultDTO} for every person, in the same order.
+     * @throws SQLException if the rows could not be written – the chunk must then be rolled back.
+     */
+    List<ImportResultDTO> importChunk(List<PersonDTO> persons, int firstRow, Map<Integer, Integer> numbers,
+                                      Set<Integer> changedAddresses, Set<Integer> changedHobbies) throws SQLException {
+        ImportResultDTO[] results = new ImportResultDTO[persons.size()];
+        // Reject incomplete rows and unknown hobbies
+        int[][] hobbyIds = new int[persons.size()][];
+        for (int i = 0; i < persons.size(); i++) {
+            String problem = validate(persons.get(i));
+            if (problem == null) {
+                hobbyIds[i] = resolveHobbies(persons.get(i));
+                if (hobbyIds[i] == null) {
+                    results[i] = new ImportResultDTO(firstRow + i, StatusCode.NOT_FOUND, null, unknownHobbyOf(persons.get(i)));
+                }
+            }
+            else {
+                results[i] = new ImportResultDTO(firstRow + i, StatusCode.BAD_REQUEST, null, problem);
+            }
+        }
+        // Reject phone numbers that are taken
+        rejectTakenNumbers(persons, firstRow, results);
+        // Find or create the addresses
+        Map<String, Integer> addressIds = getAddressIds(persons, results);
+        // Insert the persons
+        List<Integer> rows = new ArrayList<>();
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO person (first_name, last_name, email, address_id) VALUES (?, ?, ?, ?)", Statement.RETURN_GENERATED_KEYS)) {
+            for (int i = 0; i < persons.size(); i++) {
+                if (results[i] == null) {
+                    PersonDTO person = persons.get(i);
+                    insert.setString(1, person.getFirstName());
+                    insert.setString(2, person.getLastName());
+                    insert.setString(3, person.getEmail());
+                    int addressId = addressIds.get(keyOf(person.getAddress()));
+                    insert.setInt(4, addressId);
+                    insert.addBatch();
+                    changedAddresses.add(addressId);
+                    rows.add(i);
+                }
+            }
+            if (rows.isEmpty()) {
+                return Arrays.asList(results);
+            }
+            insert.executeBatch();
+            List<Integer> ids = getGeneratedKeys(insert, rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                results[row] = new ImportResultDTO(firstRow + row, StatusCode.OK, ids.get(i), "Created!");
+            }
+        }
+        // Insert their phones and hobbies
+        try (PreparedStatement phones = connection.prepareStatement("INSERT INTO phone (number, description, person_id) VALUES (?, ?, ?)");
+             PreparedStatement hobbies = connection.prepareStatement("INSERT INTO hobby_person (person_id, hobby_id) VALUES (?, ?)")) {
+            for (int row : rows) {
+                int personId = results[row].getId();
+                for (PhoneDTO phone : phonesOf(persons.get(row))) {
+                    phones.setInt(1, phone.getNumber());
+                    phones.setString(2, phone.getDescription());
+                    phones.setInt(3, personId);
+                    phones.addBatch();
+                    numbers.put(phone.getNumber(), personId);
+                }
+                for (int hobbyId : hobbyIds[row]) {
+                    hobbies.setInt(1, personId);
+                    hobbies.setInt(2, hobbyId);
+                    hobbies.addBatch();
+                }
+            }
+            phones.executeBatch();
+            hobbies.executeBatch();
+        }
+        // The hobbies got new members (see Versions)
+        touchHobbies(rows, hobbyIds, changedHobbies);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Returns why a person cannot be imported – or {@code null} if it can.
+     */
+    private static String validate(PersonDTO person) {
+        if (person == null) {
+            return "Could not read the person.";
+        }
+        if (isInvalid(person.getFirstName()) || isInvalid(person.getLastName()) || isInvalid(person.getEmail())) {
+            return "A person must have a first name, a last name and an email of at most " + MAX_LENGTH + " characters.";
+        }
+        AddressDTO address = person.getAddress();
+        if (address == null || isInvalid(address.getStreet())) {
+            return "A person must have an address with a street of at most " + MAX_LENGTH + " characters.";
+        }
+        for (PhoneDTO phone : person.getPhones() == null ? Collections.<PhoneDTO>emptySet() : person.getPhones()) {
+            if (phone == null || (phone.getDescription() != null && phone.getDescription().length() > MAX_LENGTH)) {
+                return "A phone must have a description of at most " + MAX_LENGTH + " characters.";
+            }
+        }
+        return null;
+    }
+
+    private static boolean isInvalid(String value) {
+        return value == null || value.trim().isEmpty() || value.length() > MAX_LENGTH;
+    }
+
+    /**
+     * Returns the ids of a person's hobbies – or {@code null} if one of them does not exist.
+     */
+    private int[] resolveHobbies(PersonDTO person) {
+        Set<Integer> ids = new LinkedHashSet<>();
+        for (PersonDTO.InnerHobbyDTO hobby : hobbiesOf(person)) {
+            PersonDTO.InnerHobbyDTO known = hobby == null ? null : catalog.getHobby(hobby.getName());
+            if (known == null) {
+                return null;
+            }
+            ids.add(known.getId());
+        }
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private String unknownHobbyOf(PersonDTO person) {
+        for (PersonDTO.InnerHobbyDTO hobby : hobbiesOf(person)) {
+            if (hobby == null || catalog.getHobby(hobby.getName()) == null) {
+                return "The hobby " + (hobby == null ? null : hobby.getName()) + " does not exist.";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rejects the rows with a phone number that is already in the database or used by an earlier row.
+     */
+    private void rejectTakenNumbers(List<PersonDTO> persons, int firstRow, ImportResultDTO[] results) throws SQLException {
+        Set<Integer> requested = new HashSet<>();
+        for (int i = 0; i < persons.size(); i++) {
+            if (results[i] == null) {
+                for (PhoneDTO phone : phonesOf(persons.get(i))) {
+                    requested.add(phone.getNumber());
+                }
+            }
+        }
+        Set<Integer> taken = new HashSet<>();
+        if (!requested.isEmpty()) {
+            String sql = "SELECT number FROM phone WHERE number IN (" + placeholders(requested.size(), "?") + ")";
+            try (PreparedStatement query = connection.prepareStatement(sql)) {
+                int index = 1;
+                for (int number : requested) {
+                    query.setInt(index++, number);
+                }
+                try (ResultSet rs = query.executeQuery()) {
+                    while (rs.next()) {
+                        taken.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < persons.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            Collection<PhoneDTO> phones = phonesOf(persons.get(i));
+            Integer conflict = null;
+            for (PhoneDTO phone : phones) {
+                if (taken.contains(phone.getNumber())) {
+                    conflict = phone.getNumber();
+                    break;
+                }
+            }
+            if (conflict == null) {
+                // The first row with a number gets it
+                for (PhoneDTO phone : phones) {
+                    taken.add(phone.getNumber());
+                }
+            }
+            else {
+                results[i] = new ImportResultDTO(firstRow + i, StatusCode.FOUND, null,
+                        "The phone number " + conflict + " is already associated with another person!");
+            }
+        }
+    }
+
+    /**
+     * Returns the ids of the addresses of the rows that were not rejected, inserting the addresses that are new.
+     * <p>
+     * Every address goes through the upsert of {@link Addresses} – so an address another transaction inserts
+     * at the same time is shared instead of failing the chunk on the unique key – and the ids are read back
+     * in one query afterwards.
+     */
+    private Map<String, Integer> getAddressIds(List<PersonDTO> persons, ImportResultDTO[] results) throws SQLException {
+        Map<String, AddressDTO> addresses = new LinkedHashMap<>();
+        for (int i = 0; i < persons.size(); i++) {
+            if (results[i] == null) {
+                AddressDTO address = persons.get(i).getAddress();
+                addresses.putIfAbsent(keyOf(address), address);
+            }
+        }
+        Map<String, Integer> ids = new HashMap<>();
+        if (addresses.isEmpty()) {
+            return ids;
+        }
+        // Insert the new addresses (the existing ones are left as they are)
+        try (PreparedStatement upsert = connection.prepareStatement(Addresses.upsertFor(connection))) {
+            for (AddressDTO address : addresses.values()) {
+                upsert.setString(1, address.getStreet().trim());
+                upsert.setInt(2, address.getZipcode());
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+        }
+        // Find their ids
+        String sql = "SELECT address_id, street, zipcode FROM address WHERE (street, zipcode) IN ("
+                + placeholders(addresses.size(), "(?, ?)") + ")";
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (AddressDTO address : addresses.values()) {
+                query.setString(index++, address.getStreet().trim());
+                query.setInt(index++, address.getZipcode());
+            }
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    ids.putIfAbsent(keyOf(rs.getString(2), rs.getInt(3)), rs.getInt(1));
+                }
+            }
+        }
+        if (ids.size() != addresses.size()) {
+            throw new SQLException("Expected " + addresses.size() + " addresses, but found " + ids.size() + ".");
+        }
+        return ids;
+    }
+
+    /**
+     * Bumps the versions of the hobbies the inserted persons have, in one statement, and collects their ids.
+     */
+    private void touchHobbies(List<Integer> rows, int[][] hobbyIds, Set<Integer> touched) throws SQLException {
+        for (int row : rows) {
+            for (int hobbyId : hobbyIds[row]) {
+                touched.add(hobbyId);
+            }
+        }
+        if (touched.isEmpty()) {
+            return;
+        }
+        String sql = "UPDATE hobby SET version = version + 1 WHERE hobby_id IN (" + placeholders(touched.size(), "?") + ")";
+        try (PreparedStatement update = connection.prepareStatement(sql)) {
+            int index = 1;
+            for (int hobbyId : touched) {
+                update.setInt(index++, hobbyId);
+            }
+            update.executeUpdate();
+        }
+    }
+
+    private static List<Integer> getGeneratedKeys(PreparedStatement statement, int expected) throws SQLException {
+        List<Integer> keys = new ArrayList<>(expected);
+        try (ResultSet rs = statement.getGeneratedKeys()) {
+            while (rs.next()) {
+                keys.add(rs.getInt(1));
+            }
+        }
+        if (keys.size() != expected) {
+            throw new SQLException("Expected " + expected + " generated ids, but got " + keys.size() + ".");
+        }
+        return keys;
+    }
+
+    private static String placeholders(int count, String placeholder) {
+        return String.join(", ", Collections.nCopies(count, placeholder));
+    }
+
+    /**
+     * Addresses are matched ignoring case, like the default MySQL collation does.
+     */
+    private static String keyOf(AddressDTO address) {
+        return keyOf(address.getStreet(), address.getZipcode());
+    }
+
+    private static String keyOf(String street, int zipcode) {
+        return zipcode + " " + street.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the phones of a person, without the numbers it lists twice.
+     */
+    private static Collection<PhoneDTO> phonesOf(PersonDTO person) {
+        Map<Integer, PhoneDTO> phones = new LinkedHashMap<>();
+        if (person.getPhones() != null) {
+            for (PhoneDTO phone : person.getPhones()) {
+                phones.putIfAbsent(phone.getNumber(), phone);
+            }
+        }
+        return phones.values();
+    }
+
+    private static Set<PersonDTO.InnerHobbyDTO> hobbiesOf(PersonDTO person) {
+        return person.getHobbies() == null ? Collections.emptySet() : person.getHobbies();
+    }
+}
@@ -0,0 +1,143 @@
+package facades;
+
+import entities.Address;
+import entities.Hobby;
+import entities.Person;
+import entities.Phone;
+import errorhandling.EntityNotFoundException;
+import errorhandling.VersionConflictException;
+import utils.ProfiledConnection;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Removes a person, its phones and its hobby memberships with plain JDBC – without loading the person.
+ * <p>
+ * One query finds the rows that point at the person (and its address), then the hobbies that lose a member
+ * get a new version, the phones and memberships are deleted, and the person is deleted last
+ * with {@code DELETE ... WHERE person_id = ? AND version = ?}. Its row count is the version check.
+ * <p>
+ * The caller must evict the removed rows from the shared cache after the commit, see {@link #evict}.
+ */
+class PersonRemoval {
+    private static final String ROWS = "SELECT 1, address_id FROM person WHERE person_id = ? "
+            + "UNION ALL SELECT 2, number FROM phone WHERE person_id = ? "
+            + "UNION ALL SELECT 3, hobby_id FROM hobby_person WHERE person_id = ?";
+    private static final int ADDRESS = 1;
+    private static final int PHONE = 2;
+    private static final int HOBBY = 3;
+
+    private final int personId;
+    private final Set<Integer> numbers = new LinkedHashSet<>();
+    private final Set<Integer> hobbyIds = new LinkedHashSet<>();
+    private Integer addressId;
+
+    private PersonRemoval(int personId) {
+        this.personId = personId;
+    }
+
+    /**
+     * Finds the rows to remove with a person.
+     *
+     * @param em an {@link EntityManager} (with the transaction that will {@link #apply} the removal).
+     * @param personId the id of the person.
+     * @return {@link PersonRemoval}.
+     * @throws EntityNotFoundException if no person is found.
+     */
+    static PersonRemoval find(EntityManager em, int personId) throws EntityNotFoundException {
+        PersonRemoval removal = new PersonRemoval(personId);
+        try (PreparedStatement query = ProfiledConnection.wrap(em.unwrap(Connection.class)).prepareStatement(ROWS)) {
+            query.setInt(1, personId);
+            query.setInt(2, personId);
+            query.setInt(3, personId);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    switch (rs.getInt(1)) {
+                        case ADDRESS:
+                            removal.addressId = rs.getInt(2);
+                            break;
+                        case PHONE:
+                            removal.numbers.add(rs.getInt(2));
+                            break;
+                        case HOBBY:
+                            removal.hobbyIds.add(rs.getInt(2));
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+        }
+        catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+        if (removal.addressId == null) {
+            throw new EntityNotFoundException("Could not find a person with the id " + personId + ".");
+        }
+        return removal;
+    }
+
+    /**
+     * Removes the person in the transaction of an {@link EntityManager}.
+     *
+     * @param em an {@link EntityManager} with an active transaction.
+     * @param expectedVersion the version the client has seen – or {@code null} if any version will do.
+     * @throws EntityNotFoundException if the person was removed in the meantime.
+     * @throws VersionConflictException if the person has another version.
+     * @throws PersistenceException if the rows could not be deleted.
+     */
+    void apply(EntityManager em, Long expectedVersion) throws EntityNotFoundException, VersionConflictException {
+        if (!hobbyIds.isEmpty()) {
+            // The hobbies lose a member (see Versions)
+            Versions.touchHobbiesOf(em, personId);
+            Versions.execute(em, "DELETE FROM hobby_person WHERE person_id = ?", personId);
+        }
+        if (!numbers.isEmpty()) {
+            Versions.execute(em, "DELETE FROM phone WHERE person_id = ?", personId);
+        }
+        int rows = expectedVersion == null
+                ? Versions.execute(em, "DELETE FROM person WHERE person_id = ?", personId)
+                : Versions.execute(em, "DELETE FROM person WHERE person_id = ? AND version = ?", personId, expectedVersion);
+        if (rows == 0) {
+            // Only a failed removal pays for finding out why it failed (the transaction is rolled back)
+            if (expectedVersion == null || !Versions.personExists(em, personId)) {
+                throw new EntityNotFoundException("Could not find a person with the id " + personId + ".");
+            }
+            throw new VersionConflictException("The person with the id " + personId + " has been changed by someone else. Get it again, and retry.");
+        }
+    }
+
+    /**
+     * Evicts the person, its phones, its hobbies and its address from the shared cache (call it after the commit).
+     *
+     * @param em the {@link EntityManager} that applied the removal.
+     */
+    void evict(EntityManager em) {
+        Cache cache = em.getEntityManagerFactory().getCache();
+        cache.evict(Person.class, personId);
+        cache.evict(Address.class, addressId);
+        for (int number : numbers) {
+            cache.evict(Phone.class, number);
+        }
+        for (int hobbyId : hobbyIds) {
+            cache.evict(Hobby.class, hobbyId);
+        }
+    }
+
+    /**
+     * Returns the numbers of the phones removed with the person.
+     *
+     * @return {@link Set}.
+     */
+    Set<Integer> getNumbers() {
+        return numbers;
+    }
+}
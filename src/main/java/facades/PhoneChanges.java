@@ -0,0 +1,216 @@
+package facades;
+
+import entities.Person;
+import entities.Phone;
+import errorhandling.EntityFoundException;
+import utils.ProfiledConnection;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * The changes that bring the phones of a person in line with the phones it should have:
+ * the numbers to remove, to add, and to give a new description (the rest are kept as they are).
+ * <p>
+ * The changes are found with one query – the person's numbers and the owners of the numbers it should have –
+ * and hash lookups, and written with one bulk delete, one batch of inserts and one batch of updates,
+ * so a switchboard with hundreds of numbers costs as many round trips as a person with one.
+ * <p>
+ * The phones are written with plain JDBC in the writer's transaction, so the caller must evict
+ * the changed phones (and the person) from the shared cache after the commit, see {@link #evict}.
+ * They go through a {@link ProfiledConnection}, so the query statistics and the slow query log see them.
+ */
+public class PhoneChanges {
+    private final int personId;
+    private final Set<Integer> removed = new LinkedHashSet<>();
+    private final Map<Integer, String> added = new LinkedHashMap<>();
+    private final Map<Integer, String> updated = new LinkedHashMap<>();
+    private final Set<Integer> numbers;
+
+    private PhoneChanges(int personId, Set<Integer> numbers) {
+        this.personId = personId;
+        this.numbers = numbers;
+    }
+
+    /**
+     * Finds the changes of a person's phones in the database.
+     *
+     * @param em an {@link EntityManager} (with the transaction that will {@link #apply} the changes).
+     * @param personId the id of the person.
+     * @param specified the phones the person should have (a number listed twice counts once).
+     * @return {@link PhoneChanges}.
+     * @throws EntityFoundException if one of the numbers belongs to someone else.
+     */
+    static PhoneChanges find(EntityManager em, int personId, Collection<Phone> specified) throws EntityFoundException {
+        Map<Integer, String> descriptions = descriptionsOf(specified);
+        // The person's phones and the phones it should have, as plain values, in one query
+        List<Object[]> rows = descriptions.isEmpty()
+                ? em.createQuery("SELECT t.number, t.person.id, t.description FROM Phone t WHERE t.person.id = :pid", Object[].class)
+                        .setParameter("pid", personId)
+                        .getResultList()
+                : em.createQuery("SELECT t.number, t.person.id, t.description FROM Phone t WHERE t.person.id = :pid OR t.number IN :numbers", Object[].class)
+                        .setParameter("pid", personId)
+                        .setParameter("numbers", descriptions.keySet())
+                        .getResultList();
+        return of(personId, descriptions, rows);
+    }
+
+    /**
+     * Computes the changes from the existing phones ({@link #find} queries them).
+     *
+     * @param personId the id of the person.
+     * @param descriptions the numbers the person should have, mapped to their descriptions.
+     * @param rows the existing phones as {@code {number, owner id, description}}: the person's, and the ones it should have.
+     * @return {@link PhoneChanges}.
+     * @throws EntityFoundException if one of the numbers belongs to someone else.
+     */
+    public static PhoneChanges of(int personId, Map<Integer, String> descriptions, List<Object[]> rows) throws EntityFoundException {
+        Map<Integer, Object[]> existing = new HashMap<>(rows.size() * 2);
+        for (Object[] row : rows) {
+            existing.put((Integer) row[0], row);
+        }
+        PhoneChanges changes = new PhoneChanges(personId, descriptions.keySet());
+        for (Map.Entry<Integer, String> phone : descriptions.entrySet()) {
+            Object[] row = existing.get(phone.getKey());
+            if (row == null) {
+                changes.added.put(phone.getKey(), phone.getValue());
+            }
+            else if (!Objects.equals(row[1], personId)) {
+                // We don't want to change the ownership of that phone number
+                throw new EntityFoundException("The phone number " + phone.getKey() + " is already associated with another person!");
+            }
+            else if (!Objects.equals(row[2], phone.getValue())) {
+                changes.updated.put(phone.getKey(), phone.getValue());
+            }
+        }
+        for (Object[] row : rows) {
+            if (Objects.equals(row[1], personId) && !descriptions.containsKey(row[0])) {
+                changes.removed.add((Integer) row[0]);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Writes the changes in the transaction of an {@link EntityManager}.
+     *
+     * @param em an {@link EntityManager} with an active transaction.
+     * @throws PersistenceException if the phones could not be written.
+     */
+    void apply(EntityManager em) {
+        Connection connection = ProfiledConnection.wrap(em.unwrap(Connection.class));
+        try {
+            if (!removed.isEmpty()) {
+                String sql = "DELETE FROM phone WHERE number IN (" + String.join(", ", Collections.nCopies(removed.size(), "?")) + ")";
+                try (PreparedStatement delete = connection.prepareStatement(sql)) {
+                    int index = 1;
+                    for (int number : removed) {
+                        delete.setInt(index++, number);
+                    }
+                    delete.executeUpdate();
+                }
+            }
+            if (!added.isEmpty()) {
+                try (PreparedStatement insert = connection.prepareStatement("INSERT INTO phone (number, person_id, description) VALUES (?, ?, ?)")) {
+                    for (Map.Entry<Integer, String> phone : added.entrySet()) {
+                        insert.setInt(1, phone.getKey());
+                        insert.setInt(2, personId);
+                        insert.setString(3, phone.getValue());
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+            }
+            if (!updated.isEmpty()) {
+                try (PreparedStatement update = connection.prepareStatement("UPDATE phone SET description = ? WHERE number = ?")) {
+                    for (Map.Entry<Integer, String> phone : updated.entrySet()) {
+                        update.setString(1, phone.getValue());
+                        update.setInt(2, phone.getKey());
+                        update.addBatch();
+                    }
+                    update.executeBatch();
+                }
+            }
+        }
+        catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    /**
+     * Evicts the person and its removed and updated phones from the shared cache (call it after the commit).
+     *
+     * @param em the {@link EntityManager} that applied the changes.
+     */
+    void evict(EntityManager em) {
+        em.getEntityManagerFactory().getCache().evict(Person.class, personId);
+        for (int number : removed) {
+            em.getEntityManagerFactory().getCache().evict(Phone.class, number);
+        }
+        for (int number : updated.keySet()) {
+            em.getEntityManagerFactory().getCache().evict(Phone.class, number);
+        }
+    }
+
+    /**
+     * Returns the numbers to remove.
+     *
+     * @return {@link Set}.
+     */
+    public Set<Integer> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * Returns the numbers to add, mapped to their descriptions.
+     *
+     * @return {@link Map}.
+     */
+    public Map<Integer, String> getAdded() {
+        return added;
+    }
+
+    /**
+     * Returns the numbers to give a new description, mapped to the new descriptions.
+     *
+     * @return {@link Map}.
+     */
+    public Map<Integer, String> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * Returns every number the person has after the changes.
+     *
+     * @return {@link Set}.
+     */
+    public Set<Integer> getNumbers() {
+        return numbers;
+    }
+
+    /**
+     * Returns the numbers of some phones mapped to their descriptions, keeping the first phone of a number listed twice.
+     *
+     * @param phones the phones.
+     * @return {@link Map}.
+     */
+    static Map<Integer, String> descriptionsOf(Collection<Phone> phones) {
+        Map<Integer, String> descriptions = new LinkedHashMap<>();
+        for (Phone phone : phones) {
+            descriptions.putIfAbsent(phone.getNumber(), phone.getDescription());
+        }
+        return descriptions;
+    }
+}
@@ -5,7 +5,9 @@ import entities.Phone;
 import errorhandling.EntityNotFoundException;
 import errorhandling.InternalErrorException;
 import utils.FacadeUtility;
+import utils.PhoneIndex;
 import utils.StatusCode;
+import utils.UnitOfWork;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
@@ -30,6 +32,7 @@ public class PhoneFacade {
     private static PhoneFacade INSTANCE;
     private static EntityManagerFactory EMF;
     private static FacadeUtility UTIL;
+    private static PhoneIndex PHONES;
     private static StatusCode RESPONSE_CODE;
     private static final boolean CHECK_OWNERSHIP = true;
 
@@ -61,6 +64,7 @@ public class PhoneFacade {
         if (INSTANCE == null) {
             EMF = emf;
             UTIL = FacadeUtility.getInstance(EMF);
+            PHONES = PhoneIndex.getInstance(EMF);
             INSTANCE = new PhoneFacade();
         }
         return INSTANCE;
@@ -77,17 +81,23 @@ public class PhoneFacade {
      * @see TypedQuery
      */
     public Set<PhoneDTO> getPhones() {
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Phone> phoneQuery = em.createQuery("SELECT t FROM Phone t", Phone.class);
-        Set<Phone> phones = new LinkedHashSet<>(phoneQuery.getResultList());
-        // if (phone.size() == 0) {
-        //   throw new EntityNotFoundException("There are currently no phones in the database.");
-        // }
-        Set<PhoneDTO> phoneDTOs = new LinkedHashSet<>();
-        for (Phone phone : phones) {
-            phoneDTOs.add(new PhoneDTO(phone));
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Phone> phoneQuery = em.createQuery("SELECT t FROM Phone t", Phone.class);
+            Set<Phone> phones = new LinkedHashSet<>(phoneQuery.getResultList());
+            // if (phone.size() == 0) {
+            //   throw new EntityNotFoundException("There are currently no phones in the database.");
+            // }
+            Set<PhoneDTO> phoneDTOs = new LinkedHashSet<>();
+            for (Phone phone : phones) {
+                phoneDTOs.add(new PhoneDTO(phone));
+            }
+            return phoneDTOs;
+        }
+        finally {
+            uow.close();
         }
-        return phoneDTOs;
     }
 
     /**
@@ -99,23 +109,28 @@ public class PhoneFacade {
      * @see EntityManager#remove
      */
     public void removePhone(int number) throws EntityNotFoundException, InternalErrorException {
-        // Find phone in person table
-        Phone phone = UTIL.phoneExists(number);
-        // Create entity manager to remove address
-        EntityManager em = EMF.createEntityManager();
+        // Join (or start) the unit of work to remove the phone
+        UnitOfWork uow = UnitOfWork.begin(EMF);
         try {
+            EntityManager em = uow.getEntityManager();
+            // Find phone in person table
+            Phone phone = UTIL.phoneExists(number);
             // Begin entity transaction
             em.getTransaction().begin();
+            // The owner changes
+            Versions.touchPerson(em, phone.getPerson().getId());
             // Remove phone from phone table
             em.remove(phone);
             // Commit entity transaction to database
             em.getTransaction().commit();
+            // Remove the phone from the phone index
+            PHONES.remove(number);
         }
         catch (PersistenceException e){
             throw new InternalErrorException(e.getMessage());
         }
         finally {
-            em.close();
+            uow.close();
         }
     }
 }
@@ -15,6 +15,8 @@ import entities.Hobby;
 import entities.Person;
 import entities.Phone;
 import utils.EMF_Creator;
+import utils.HobbyCatalog;
+import utils.PhoneIndex;
 
 /**
  *
@@ -35,6 +37,9 @@ public class Populator {
             p3.addHobby(h2);
             p4.addHobby(h2);
             em.getTransaction().commit();
+            // The hobbies and phones were replaced, so the catalog and the phone index must be reloaded
+            HobbyCatalog.invalidate();
+            PhoneIndex.invalidate();
             System.out.println("Successfully populated the database!");
         }
         catch (PersistenceException e) {
@@ -61,6 +66,9 @@ public class Populator {
             p3.addHobby(h1);
             p4.addHobby(h1);
             em.getTransaction().commit();
+            // The hobbies and phones were replaced, so the catalog and the phone index must be reloaded
+            HobbyCatalog.invalidate();
+            PhoneIndex.invalidate();
             System.out.println("Successfully populated the database!");
         }
         catch (PersistenceException e) {
@@ -0,0 +1,108 @@
+package facades;
+
+import errorhandling.EntityNotFoundException;
+import errorhandling.VersionConflictException;
+import utils.ProfiledConnection;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Bumps the {@code version} columns behind the ETags of the person and hobby reads.
+ * <p>
+ * A person's version changes whenever anything in its {@link dtos.PersonDTO} changes (phones and address included),
+ * and a hobby's version whenever a member joins, leaves or changes. So a client's ETag can be checked
+ * with one indexed lookup instead of by loading the graph.
+ * <p>
+ * The columns are bumped with plain JDBC in the writer's transaction: EclipseLink never writes them
+ * (a merged person cannot overwrite its version) and its shared cache is left alone. The connection is
+ * a {@link ProfiledConnection}, so the bumps still count in the statistics of the request.
+ * <p>
+ * The same columns make the writes optimistic: a write that names the version a client has seen
+ * only bumps it if nobody got there first (see {@link #touchPerson(EntityManager, int, Long)}).
+ */
+class Versions {
+
+    private Versions() {
+    }
+
+    /**
+     * Bumps the version of a person and of every hobby it has.
+     *
+     * @param em an {@link EntityManager} with an active transaction.
+     * @param personId a person id.
+     */
+    static void touchPerson(EntityManager em, int personId) {
+        execute(em, "UPDATE person SET version = version + 1 WHERE person_id = ?", personId);
+        touchHobbiesOf(em, personId);
+    }
+
+    /**
+     * Bumps the version of a person and of every hobby it has – if the person exists and has the expected version.
+     * <p>
+     * The bump is the check: its row count tells whether the person is there, and the row stays locked
+     * until the transaction ends, so nobody can change or remove the person in between.
+     *
+     * @param em an {@link EntityManager} with an active transaction.
+     * @param personId a person id.
+     * @param expectedVersion the version the client has seen – or {@code null} if any version will do.
+     * @throws EntityNotFoundException if no person is found.
+     * @throws VersionConflictException if the person has another version.
+     */
+    static void touchPerson(EntityManager em, int personId, Long expectedVersion) throws EntityNotFoundException, VersionConflictException {
+        int rows = expectedVersion == null
+                ? execute(em, "UPDATE person SET version = version + 1 WHERE person_id = ?", personId)
+                : execute(em, "UPDATE person SET version = version + 1 WHERE person_id = ? AND version = ?", personId, expectedVersion);
+        if (rows == 0) {
+            // Only a failed write pays for finding out why it failed
+            if (expectedVersion == null || !personExists(em, personId)) {
+                throw new EntityNotFoundException("Could not find a person with the id " + personId + ".");
+            }
+            throw new VersionConflictException("The person with the id " + personId + " has been changed by someone else. Get it again, and retry.");
+        }
+        touchHobbiesOf(em, personId);
+    }
+
+    /**
+     * Bumps the version of every hobby a person has (call it before and after the hobbies change).
+     *
+     * @param em an {@link EntityManager} with an active transaction.
+     * @param personId a person id.
+     */
+    static void touchHobbiesOf(EntityManager em, int personId) {
+        execute(em, "UPDATE hobby SET version = version + 1 WHERE hobby_id IN (SELECT hobby_id FROM hobby_person WHERE person_id = ?)", personId);
+    }
+
+    /**
+     * Runs an update or delete in the transaction of an {@link EntityManager}.
+     *
+     * @return the number of rows changed.
+     */
+    static int execute(EntityManager em, String sql, Object... parameters) {
+        try (PreparedStatement statement = ProfiledConnection.wrap(em.unwrap(Connection.class)).prepareStatement(sql)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            return statement.executeUpdate();
+        }
+        catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+    }
+
+    static boolean personExists(EntityManager em, int personId) {
+        try (PreparedStatement statement = ProfiledConnection.wrap(em.unwrap(Connection.class)).prepareStatement("SELECT 1 FROM person WHERE person_id = ?")) {
+            statement.setInt(1, personId);
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next();
+            }
+        }
+        catch (SQLException e) {
+            throw new PersistenceException(e);
+        }
+    }
+}
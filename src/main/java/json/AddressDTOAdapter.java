@@ -0,0 +1,51 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.AddressDTO;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads an {@link AddressDTO} without reflection.
+ */
+public class AddressDTOAdapter extends TypeAdapter<AddressDTO> {
+
+    @Override
+    public void write(JsonWriter out, AddressDTO address) throws IOException {
+        if (address == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("street").value(address.getStreet());
+        out.name("zipcode").value(address.getZipcode());
+        out.endObject();
+    }
+
+    @Override
+    public AddressDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        AddressDTO address = new AddressDTO();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "street":
+                    address.setStreet(JsonValues.nextString(in));
+                    break;
+                case "zipcode":
+                    address.setZipcode(JsonValues.nextInt(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return address;
+    }
+}
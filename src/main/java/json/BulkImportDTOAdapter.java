@@ -0,0 +1,66 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.BulkImportDTO;
+import dtos.ImportResultDTO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes and reads a {@link BulkImportDTO} (with a result per row) without reflection.
+ */
+public class BulkImportDTOAdapter extends TypeAdapter<BulkImportDTO> {
+    private final ImportResultDTOAdapter resultAdapter;
+
+    public BulkImportDTOAdapter(ImportResultDTOAdapter resultAdapter) {
+        this.resultAdapter = resultAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, BulkImportDTO bulkImport) throws IOException {
+        if (bulkImport == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("created").value(bulkImport.getCreated());
+        out.name("failed").value(bulkImport.getFailed());
+        out.name("results");
+        JsonValues.writeArray(out, resultAdapter, bulkImport.getResults());
+        out.endObject();
+    }
+
+    @Override
+    public BulkImportDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int created = 0;
+        int failed = 0;
+        List<ImportResultDTO> results = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "created":
+                    created = JsonValues.nextInt(in);
+                    break;
+                case "failed":
+                    failed = JsonValues.nextInt(in);
+                    break;
+                case "results":
+                    results = JsonValues.readArray(in, resultAdapter, new ArrayList<>());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new BulkImportDTO(created, failed, results);
+    }
+}
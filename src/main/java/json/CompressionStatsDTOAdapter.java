@@ -0,0 +1,91 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.CompressionStatsDTO;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads a {@link CompressionStatsDTO} without reflection.
+ */
+public class CompressionStatsDTOAdapter extends TypeAdapter<CompressionStatsDTO> {
+
+    @Override
+    public void write(JsonWriter out, CompressionStatsDTO stats) throws IOException {
+        if (stats == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("threshold").value(stats.getThreshold());
+        out.name("compressedResponses").value(stats.getCompressedResponses());
+        out.name("uncompressedResponses").value(stats.getUncompressedResponses());
+        out.name("bytesIn").value(stats.getBytesIn());
+        out.name("bytesOut").value(stats.getBytesOut());
+        out.name("compressionRatio").value(stats.getCompressionRatio());
+        out.name("cpuTotalMillis").value(stats.getCpuTotalMillis());
+        out.name("cpuP50Millis").value(stats.getCpuP50Millis());
+        out.name("cpuP99Millis").value(stats.getCpuP99Millis());
+        out.name("cpuMaxMillis").value(stats.getCpuMaxMillis());
+        out.endObject();
+    }
+
+    @Override
+    public CompressionStatsDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int threshold = 0;
+        long compressedResponses = 0;
+        long uncompressedResponses = 0;
+        long bytesIn = 0;
+        long bytesOut = 0;
+        double totalMillis = 0;
+        double p50Millis = 0;
+        double p99Millis = 0;
+        double maxMillis = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "threshold":
+                    threshold = JsonValues.nextInt(in);
+                    break;
+                case "compressedResponses":
+                    compressedResponses = JsonValues.nextLong(in);
+                    break;
+                case "uncompressedResponses":
+                    uncompressedResponses = JsonValues.nextLong(in);
+                    break;
+                case "bytesIn":
+                    bytesIn = JsonValues.nextLong(in);
+                    break;
+                case "bytesOut":
+                    bytesOut = JsonValues.nextLong(in);
+                    break;
+                case "cpuTotalMillis":
+                    totalMillis = JsonValues.nextDouble(in);
+                    break;
+                case "cpuP50Millis":
+                    p50Millis = JsonValues.nextDouble(in);
+                    break;
+                case "cpuP99Millis":
+                    p99Millis = JsonValues.nextDouble(in);
+                    break;
+                case "cpuMaxMillis":
+                    maxMillis = JsonValues.nextDouble(in);
+                    break;
+                default:
+                    // The ratio follows from the byte counts
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        CompressionStatsDTO stats = new CompressionStatsDTO(threshold, compressedResponses, uncompressedResponses, bytesIn, bytesOut);
+        stats.setCpuTime(totalMillis, p50Millis, p99Millis, maxMillis);
+        return stats;
+    }
+}
@@ -0,0 +1,49 @@
+package json;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import dtos.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hands Gson a hand-written adapter for every DTO, so they are written and read field by field
+ * instead of through reflection.
+ * <p>
+ * The adapters write the same JSON as reflection would (same names and order, {@code null} fields left out).
+ * A new DTO must get an adapter here as well – {@code DtoTypeAdapterFactoryTest} checks that none is missing.
+ */
+public class DtoTypeAdapterFactory implements TypeAdapterFactory {
+    private final Map<Class<?>, TypeAdapter<?>> adapters = new HashMap<>();
+
+    public DtoTypeAdapterFactory() {
+        AddressDTOAdapter addressAdapter = new AddressDTOAdapter();
+        PhoneDTOAdapter phoneAdapter = new PhoneDTOAdapter();
+        InnerHobbyDTOAdapter innerHobbyAdapter = new InnerHobbyDTOAdapter();
+        InnerPersonDTOAdapter innerPersonAdapter = new InnerPersonDTOAdapter(addressAdapter, phoneAdapter);
+        PersonDTOAdapter personAdapter = new PersonDTOAdapter(addressAdapter, phoneAdapter, innerHobbyAdapter);
+        ImportResultDTOAdapter importResultAdapter = new ImportResultDTOAdapter();
+        adapters.put(AddressDTO.class, addressAdapter);
+        adapters.put(PhoneDTO.class, phoneAdapter);
+        adapters.put(PersonDTO.InnerHobbyDTO.class, innerHobbyAdapter);
+        adapters.put(HobbyDTO.InnerPersonDTO.class, innerPersonAdapter);
+        adapters.put(PersonDTO.class, personAdapter);
+        adapters.put(HobbyDTO.class, new HobbyDTOAdapter(innerPersonAdapter));
+        adapters.put(HobbyMatchDTO.class, new HobbyMatchDTOAdapter());
+        adapters.put(PersonPageDTO.class, new PersonPageDTOAdapter(personAdapter));
+        adapters.put(ResponseDTO.class, new ResponseDTOAdapter());
+        adapters.put(PoolStatsDTO.class, new PoolStatsDTOAdapter());
+        adapters.put(CompressionStatsDTO.class, new CompressionStatsDTOAdapter());
+        adapters.put(ImportResultDTO.class, importResultAdapter);
+        adapters.put(BulkImportDTO.class, new BulkImportDTOAdapter(importResultAdapter));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> type) {
+        return (TypeAdapter<T>) adapters.get(type.getRawType());
+    }
+}
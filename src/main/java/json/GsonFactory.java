@@ -0,0 +1,28 @@
+package json;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Creates the one {@link Gson} every resource shares.
+ * <p>
+ * The JSON is compact: pretty printing is left to the writer (see {@link rest.GsonMessageBodyWriter}),
+ * so it only costs anything when a client asks for it.
+ */
+public class GsonFactory {
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapterFactory(new DtoTypeAdapterFactory())
+            .create();
+
+    private GsonFactory() {
+    }
+
+    /**
+     * Returns the shared {@link Gson} (it is thread-safe).
+     *
+     * @return {@link Gson}.
+     */
+    public static Gson getGson() {
+        return GSON;
+    }
+}
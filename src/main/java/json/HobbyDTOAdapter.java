@@ -0,0 +1,86 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.HobbyDTO;
+import dtos.PersonDTO;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Writes and reads a {@link HobbyDTO} (with its persons, if included) without reflection.
+ */
+public class HobbyDTOAdapter extends TypeAdapter<HobbyDTO> {
+    private final InnerPersonDTOAdapter personAdapter;
+
+    public HobbyDTOAdapter(InnerPersonDTOAdapter personAdapter) {
+        this.personAdapter = personAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, HobbyDTO hobby) throws IOException {
+        if (hobby == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(hobby.getId());
+        out.name("category").value(hobby.getCategory());
+        out.name("name").value(hobby.getName());
+        out.name("type").value(hobby.getType());
+        out.name("wikiLink").value(hobby.getWikiLink());
+        out.name("memberCount").value(hobby.getMemberCount());
+        out.name("persons");
+        JsonValues.writeArray(out, personAdapter, hobby.getPersons());
+        out.endObject();
+    }
+
+    @Override
+    public HobbyDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Integer id = null;
+        String category = null;
+        String name = null;
+        String type = null;
+        String wikiLink = null;
+        long memberCount = 0;
+        Set<HobbyDTO.InnerPersonDTO> persons = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = JsonValues.nextInteger(in);
+                    break;
+                case "category":
+                    category = JsonValues.nextString(in);
+                    break;
+                case "name":
+                    name = JsonValues.nextString(in);
+                    break;
+                case "type":
+                    type = JsonValues.nextString(in);
+                    break;
+                case "wikiLink":
+                    wikiLink = JsonValues.nextString(in);
+                    break;
+                case "memberCount":
+                    memberCount = JsonValues.nextLong(in);
+                    break;
+                case "persons":
+                    persons = JsonValues.readArray(in, personAdapter, new LinkedHashSet<>());
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new HobbyDTO(new PersonDTO.InnerHobbyDTO(id, category, name, type, wikiLink), memberCount, persons);
+    }
+}
@@ -0,0 +1,57 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.HobbyMatchDTO;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads a {@link HobbyMatchDTO} without reflection.
+ */
+public class HobbyMatchDTOAdapter extends TypeAdapter<HobbyMatchDTO> {
+
+    @Override
+    public void write(JsonWriter out, HobbyMatchDTO match) throws IOException {
+        if (match == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(match.getId());
+        out.name("name").value(match.getName());
+        out.name("category").value(match.getCategory());
+        out.endObject();
+    }
+
+    @Override
+    public HobbyMatchDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Integer id = null;
+        String name = null;
+        String category = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = JsonValues.nextInteger(in);
+                    break;
+                case "name":
+                    name = JsonValues.nextString(in);
+                    break;
+                case "category":
+                    category = JsonValues.nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new HobbyMatchDTO(id, name, category);
+    }
+}
@@ -0,0 +1,62 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.ImportResultDTO;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads an {@link ImportResultDTO} without reflection.
+ */
+public class ImportResultDTOAdapter extends TypeAdapter<ImportResultDTO> {
+
+    @Override
+    public void write(JsonWriter out, ImportResultDTO result) throws IOException {
+        if (result == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("row").value(result.getRow());
+        out.name("code").value(result.getCode());
+        out.name("id").value(result.getId());
+        out.name("message").value(result.getMessage());
+        out.endObject();
+    }
+
+    @Override
+    public ImportResultDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int row = 0;
+        int code = 0;
+        Integer id = null;
+        String message = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "row":
+                    row = JsonValues.nextInt(in);
+                    break;
+                case "code":
+                    code = JsonValues.nextInt(in);
+                    break;
+                case "id":
+                    id = JsonValues.nextInteger(in);
+                    break;
+                case "message":
+                    message = JsonValues.nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new ImportResultDTO(row, code, id, message);
+    }
+}
@@ -0,0 +1,67 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.PersonDTO;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads a {@link PersonDTO.InnerHobbyDTO} without reflection.
+ */
+public class InnerHobbyDTOAdapter extends TypeAdapter<PersonDTO.InnerHobbyDTO> {
+
+    @Override
+    public void write(JsonWriter out, PersonDTO.InnerHobbyDTO hobby) throws IOException {
+        if (hobby == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(hobby.getId());
+        out.name("category").value(hobby.getCategory());
+        out.name("name").value(hobby.getName());
+        out.name("type").value(hobby.getType());
+        out.name("wikiLink").value(hobby.getWikiLink());
+        out.endObject();
+    }
+
+    @Override
+    public PersonDTO.InnerHobbyDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Integer id = null;
+        String category = null;
+        String name = null;
+        String type = null;
+        String wikiLink = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = JsonValues.nextInteger(in);
+                    break;
+                case "category":
+                    category = JsonValues.nextString(in);
+                    break;
+                case "name":
+                    name = JsonValues.nextString(in);
+                    break;
+                case "type":
+                    type = JsonValues.nextString(in);
+                    break;
+                case "wikiLink":
+                    wikiLink = JsonValues.nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new PersonDTO.InnerHobbyDTO(id, category, name, type, wikiLink);
+    }
+}
@@ -0,0 +1,92 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.AddressDTO;
+import dtos.HobbyDTO;
+import dtos.PhoneDTO;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes and reads a {@link HobbyDTO.InnerPersonDTO} (with its phones and address) without reflection.
+ */
+public class InnerPersonDTOAdapter extends TypeAdapter<HobbyDTO.InnerPersonDTO> {
+    private final AddressDTOAdapter addressAdapter;
+    private final PhoneDTOAdapter phoneAdapter;
+
+    public InnerPersonDTOAdapter(AddressDTOAdapter addressAdapter, PhoneDTOAdapter phoneAdapter) {
+        this.addressAdapter = addressAdapter;
+        this.phoneAdapter = phoneAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, HobbyDTO.InnerPersonDTO person) throws IOException {
+        if (person == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(person.getId());
+        out.name("firstName").value(person.getFirstName());
+        out.name("lastName").value(person.getLastName());
+        out.name("email").value(person.getEmail());
+        out.name("phones").beginArray();
+        for (PhoneDTO phone : person.getPhones()) {
+            phoneAdapter.write(out, phone);
+        }
+        out.endArray();
+        out.name("address");
+        addressAdapter.write(out, person.getAddress());
+        out.endObject();
+    }
+
+    @Override
+    public HobbyDTO.InnerPersonDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Integer id = null;
+        String firstName = null;
+        String lastName = null;
+        String email = null;
+        AddressDTO address = null;
+        List<PhoneDTO> phones = new ArrayList<>();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    id = JsonValues.nextInteger(in);
+                    break;
+                case "firstName":
+                    firstName = JsonValues.nextString(in);
+                    break;
+                case "lastName":
+                    lastName = JsonValues.nextString(in);
+                    break;
+                case "email":
+                    email = JsonValues.nextString(in);
+                    break;
+                case "phones":
+                    JsonValues.readArray(in, phoneAdapter, phones);
+                    break;
+                case "address":
+                    address = addressAdapter.read(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        HobbyDTO.InnerPersonDTO person = new HobbyDTO.InnerPersonDTO(id, firstName, lastName, email, address);
+        for (PhoneDTO phone : phones) {
+            person.addPhone(phone);
+        }
+        return person;
+    }
+}
@@ -0,0 +1,112 @@
+package json;
+
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Reads values the way Gson's reflection does, so the hand-written adapters accept the same input:
+ * {@code null} leaves a field at its default, and numbers may be quoted.
+ * <p>
+ * A value of the wrong kind (e.g. a quoted non-number) is reported as a {@link JsonSyntaxException}, like reflection does.
+ */
+class JsonValues {
+
+    private JsonValues() {
+    }
+
+    static String nextString(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            return in.nextString();
+        }
+        catch (IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    static Integer nextInteger(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        try {
+            return in.nextInt();
+        }
+        catch (NumberFormatException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    static int nextInt(JsonReader in) throws IOException {
+        Integer value = nextInteger(in);
+        return value == null ? 0 : value;
+    }
+
+    static long nextLong(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        try {
+            return in.nextLong();
+        }
+        catch (NumberFormatException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    static double nextDouble(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return 0;
+        }
+        try {
+            return in.nextDouble();
+        }
+        catch (NumberFormatException | IllegalStateException e) {
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Reads an array into a collection.
+     *
+     * @return the collection – or {@code null} if the array is {@code null}.
+     */
+    static <T, C extends Collection<T>> C readArray(JsonReader in, TypeAdapter<T> adapter, C elements) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            elements.add(adapter.read(in));
+        }
+        in.endArray();
+        return elements;
+    }
+
+    /**
+     * Writes a collection as an array ({@code null} as {@code null}).
+     */
+    static <T> void writeArray(JsonWriter out, TypeAdapter<T> adapter, Collection<T> elements) throws IOException {
+        if (elements == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (T element : elements) {
+            adapter.write(out, element);
+        }
+        out.endArray();
+    }
+}
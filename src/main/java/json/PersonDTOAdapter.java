@@ -0,0 +1,84 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.PersonDTO;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+
+/**
+ * Writes and reads a {@link PersonDTO} (with its address, phones and hobbies) without reflection.
+ */
+public class PersonDTOAdapter extends TypeAdapter<PersonDTO> {
+    private final AddressDTOAdapter addressAdapter;
+    private final PhoneDTOAdapter phoneAdapter;
+    private final InnerHobbyDTOAdapter hobbyAdapter;
+
+    public PersonDTOAdapter(AddressDTOAdapter addressAdapter, PhoneDTOAdapter phoneAdapter, InnerHobbyDTOAdapter hobbyAdapter) {
+        this.addressAdapter = addressAdapter;
+        this.phoneAdapter = phoneAdapter;
+        this.hobbyAdapter = hobbyAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, PersonDTO person) throws IOException {
+        if (person == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("id").value(person.getId());
+        out.name("firstName").value(person.getFirstName());
+        out.name("lastName").value(person.getLastName());
+        out.name("email").value(person.getEmail());
+        out.name("address");
+        addressAdapter.write(out, person.getAddress());
+        out.name("phones");
+        JsonValues.writeArray(out, phoneAdapter, person.getPhones());
+        out.name("hobbies");
+        JsonValues.writeArray(out, hobbyAdapter, person.getHobbies());
+        out.endObject();
+    }
+
+    @Override
+    public PersonDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        PersonDTO person = new PersonDTO();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "id":
+                    person.setId(JsonValues.nextInteger(in));
+                    break;
+                case "firstName":
+                    person.setFirstName(JsonValues.nextString(in));
+                    break;
+                case "lastName":
+                    person.setLastName(JsonValues.nextString(in));
+                    break;
+                case "email":
+                    person.setEmail(JsonValues.nextString(in));
+                    break;
+                case "address":
+                    person.setAddress(addressAdapter.read(in));
+                    break;
+                case "phones":
+                    person.setPhones(JsonValues.readArray(in, phoneAdapter, new LinkedHashSet<>()));
+                    break;
+                case "hobbies":
+                    person.setHobbies(JsonValues.readArray(in, hobbyAdapter, new LinkedHashSet<>()));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return person;
+    }
+}
@@ -0,0 +1,61 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.PersonDTO;
+import dtos.PersonPageDTO;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Writes and reads a {@link PersonPageDTO} without reflection.
+ */
+public class PersonPageDTOAdapter extends TypeAdapter<PersonPageDTO> {
+    private final PersonDTOAdapter personAdapter;
+
+    public PersonPageDTOAdapter(PersonDTOAdapter personAdapter) {
+        this.personAdapter = personAdapter;
+    }
+
+    @Override
+    public void write(JsonWriter out, PersonPageDTO page) throws IOException {
+        if (page == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("persons");
+        JsonValues.writeArray(out, personAdapter, page.getPersons());
+        out.name("next").value(page.getNext());
+        out.endObject();
+    }
+
+    @Override
+    public PersonPageDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        Set<PersonDTO> persons = null;
+        Integer next = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "persons":
+                    persons = JsonValues.readArray(in, personAdapter, new LinkedHashSet<>());
+                    break;
+                case "next":
+                    next = JsonValues.nextInteger(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new PersonPageDTO(persons, next);
+    }
+}
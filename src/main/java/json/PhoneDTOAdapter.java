@@ -0,0 +1,51 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.PhoneDTO;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads a {@link PhoneDTO} without reflection.
+ */
+public class PhoneDTOAdapter extends TypeAdapter<PhoneDTO> {
+
+    @Override
+    public void write(JsonWriter out, PhoneDTO phone) throws IOException {
+        if (phone == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("number").value(phone.getNumber());
+        out.name("description").value(phone.getDescription());
+        out.endObject();
+    }
+
+    @Override
+    public PhoneDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        PhoneDTO phone = new PhoneDTO();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "number":
+                    phone.setNumber(JsonValues.nextInt(in));
+                    break;
+                case "description":
+                    phone.setDescription(JsonValues.nextString(in));
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return phone;
+    }
+}
@@ -0,0 +1,116 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.PoolStatsDTO;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads a {@link PoolStatsDTO} without reflection.
+ */
+public class PoolStatsDTOAdapter extends TypeAdapter<PoolStatsDTO> {
+
+    @Override
+    public void write(JsonWriter out, PoolStatsDTO stats) throws IOException {
+        if (stats == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("active").value(stats.getActive());
+        out.name("idle").value(stats.getIdle());
+        out.name("waiting").value(stats.getWaiting());
+        out.name("total").value(stats.getTotal());
+        out.name("minimumIdle").value(stats.getMinimumIdle());
+        out.name("maximumPoolSize").value(stats.getMaximumPoolSize());
+        out.name("connectionTimeoutMillis").value(stats.getConnectionTimeoutMillis());
+        out.name("idleTimeoutMillis").value(stats.getIdleTimeoutMillis());
+        out.name("acquisitions").value(stats.getAcquisitions());
+        out.name("timeouts").value(stats.getTimeouts());
+        out.name("acquisitionP50Millis").value(stats.getAcquisitionP50Millis());
+        out.name("acquisitionP95Millis").value(stats.getAcquisitionP95Millis());
+        out.name("acquisitionP99Millis").value(stats.getAcquisitionP99Millis());
+        out.name("acquisitionMaxMillis").value(stats.getAcquisitionMaxMillis());
+        out.endObject();
+    }
+
+    @Override
+    public PoolStatsDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int active = 0;
+        int idle = 0;
+        int waiting = 0;
+        int total = 0;
+        int minimumIdle = 0;
+        int maximumPoolSize = 0;
+        long connectionTimeoutMillis = 0;
+        long idleTimeoutMillis = 0;
+        long acquisitions = 0;
+        long timeouts = 0;
+        double p50Millis = 0;
+        double p95Millis = 0;
+        double p99Millis = 0;
+        double maxMillis = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "active":
+                    active = JsonValues.nextInt(in);
+                    break;
+                case "idle":
+                    idle = JsonValues.nextInt(in);
+                    break;
+                case "waiting":
+                    waiting = JsonValues.nextInt(in);
+                    break;
+                case "total":
+                    total = JsonValues.nextInt(in);
+                    break;
+                case "minimumIdle":
+                    minimumIdle = JsonValues.nextInt(in);
+                    break;
+                case "maximumPoolSize":
+                    maximumPoolSize = JsonValues.nextInt(in);
+                    break;
+                case "connectionTimeoutMillis":
+                    connectionTimeoutMillis = JsonValues.nextLong(in);
+                    break;
+                case "idleTimeoutMillis":
+                    idleTimeoutMillis = JsonValues.nextLong(in);
+                    break;
+                case "acquisitions":
+                    acquisitions = JsonValues.nextLong(in);
+                    break;
+                case "timeouts":
+                    timeouts = JsonValues.nextLong(in);
+                    break;
+                case "acquisitionP50Millis":
+                    p50Millis = JsonValues.nextDouble(in);
+                    break;
+                case "acquisitionP95Millis":
+                    p95Millis = JsonValues.nextDouble(in);
+                    break;
+                case "acquisitionP99Millis":
+                    p99Millis = JsonValues.nextDouble(in);
+                    break;
+                case "acquisitionMaxMillis":
+                    maxMillis = JsonValues.nextDouble(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        PoolStatsDTO stats = new PoolStatsDTO(active, idle, waiting, total);
+        stats.setPoolSize(minimumIdle, maximumPoolSize);
+        stats.setTimeouts(connectionTimeoutMillis, idleTimeoutMillis);
+        stats.setAcquisitions(acquisitions, timeouts, p50Millis, p95Millis, p99Millis, maxMillis);
+        return stats;
+    }
+}
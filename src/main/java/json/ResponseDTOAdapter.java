@@ -0,0 +1,52 @@
+package json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.ResponseDTO;
+
+import java.io.IOException;
+
+/**
+ * Writes and reads a {@link ResponseDTO} without reflection.
+ */
+public class ResponseDTOAdapter extends TypeAdapter<ResponseDTO> {
+
+    @Override
+    public void write(JsonWriter out, ResponseDTO response) throws IOException {
+        if (response == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("code").value(response.getCode());
+        out.name("message").value(response.getMessage());
+        out.endObject();
+    }
+
+    @Override
+    public ResponseDTO read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int code = 0;
+        String message = null;
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "code":
+                    code = JsonValues.nextInt(in);
+                    break;
+                case "message":
+                    message = JsonValues.nextString(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return new ResponseDTO(code, message);
+    }
+}
@@ -0,0 +1,53 @@
+package rest;
+
+import dtos.CompressionStatsDTO;
+import dtos.PoolStatsDTO;
+import dtos.ResponseDTO;
+import utils.CompressionMetrics;
+import utils.ConnectionPool;
+import utils.HobbyCatalog;
+import utils.StatusCode;
+
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+@Path("admin")
+public class AdminResource {
+
+    @GET
+    @Path("/pool")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response getPoolStats() {
+        ConnectionPool pool = ConnectionPool.getInstance();
+        if (pool == null) {
+            ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, "No connection pool is used (only when deployed).");
+            return Response.status(StatusCode.NOT_FOUND).entity(response).build();
+        }
+        PoolStatsDTO stats = pool.getStats();
+        return Response.ok().entity(stats).build();
+    }
+
+    /**
+     * Shows how well the responses compress, and the CPU time it costs.
+     */
+    @GET
+    @Path("/compression")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response getCompressionStats() {
+        CompressionStatsDTO stats = CompressionMetrics.getInstance().getStats(CompressionInterceptor.THRESHOLD);
+        return Response.ok().entity(stats).build();
+    }
+
+    /**
+     * Reloads the hobby catalog, e.g. after running the hobby script against a running server.
+     */
+    @POST
+    @Path("/hobby-catalog/refresh")
+    @Produces({MediaType.APPLICATION_JSON})
+    public Response refreshHobbyCatalog() {
+        HobbyCatalog.invalidate();
+        ResponseDTO response = new ResponseDTO(StatusCode.OK, "The hobby catalog will be reloaded.");
+        return Response.ok().entity(response).build();
+    }
+}
@@ -23,11 +23,19 @@ public class ApplicationConfig extends Application {
         resources.add(errorhandling.EntityNotFoundExceptionMapper.class);
         resources.add(errorhandling.EntityFoundExceptionMapper.class);
         resources.add(errorhandling.InternalErrorExceptionMapper.class);
+        resources.add(errorhandling.VersionConflictExceptionMapper.class);
         resources.add(org.glassfish.jersey.server.wadl.internal.WadlResource.class);
+        resources.add(AdminResource.class);
         resources.add(HobbyResource.class);
+        resources.add(MetricsResource.class);
         resources.add(PersonResource.class);
         resources.add(PhoneResource.class);
         resources.add(cors.corsFilter.class);
+        resources.add(MetricsFilter.class);
+        resources.add(QueryStatsFilter.class);
+        resources.add(UnitOfWorkFilter.class);
+        resources.add(GsonMessageBodyWriter.class);
+        resources.add(CompressionInterceptor.class);
     }
 
 }
@@ -0,0 +1,247 @@
+package rest;
+
+import utils.CompressionMetrics;
+import utils.Settings;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.Provider;
+import javax.ws.rs.ext.WriterInterceptor;
+import javax.ws.rs.ext.WriterInterceptorContext;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses response bodies with gzip or deflate, whichever the client prefers in {@code Accept-Encoding}.
+ * <p>
+ * The filter picks the encoding, and the interceptor compresses the body while it is written.
+ * Only the first {@code COMPRESSION_THRESHOLD} bytes (an environment variable or system property,
+ * {@link #DEFAULT_THRESHOLD} by default) are held back: a body that ends before that is sent as it is,
+ * because compressing it would cost more than it saves.
+ * <p>
+ * A compressed response gets a weak ETag, as it is not the same bytes as the uncompressed one.
+ * {@code If-None-Match} compares tags weakly, so a client polling with it still gets 304 Not Modified.
+ *
+ * @see CompressionMetrics
+ */
+@Provider
+@Priority(Priorities.ENTITY_CODER)
+public class CompressionInterceptor implements ContainerResponseFilter, WriterInterceptor {
+    public static final int DEFAULT_THRESHOLD = 1024;
+    static final int THRESHOLD = Math.max(0, Settings.getInt("COMPRESSION_THRESHOLD", DEFAULT_THRESHOLD));
+    private static final String ENCODING = CompressionInterceptor.class.getName() + ".encoding";
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
+    private static final int BUFFER_SIZE = 8192;
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+        if (!response.hasEntity() || response.getHeaders().containsKey(HttpHeaders.CONTENT_ENCODING)) {
+            return;
+        }
+        // Caches must keep the compressed and uncompressed responses apart
+        response.getHeaders().add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        String encoding = negotiate(request.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+        if (encoding != null) {
+            request.setProperty(ENCODING, encoding);
+        }
+    }
+
+    @Override
+    public void aroundWriteTo(WriterInterceptorContext context) throws IOException {
+        String encoding = (String) context.getProperty(ENCODING);
+        if (encoding == null) {
+            context.proceed();
+            return;
+        }
+        CompressingOutputStream output = new CompressingOutputStream(context.getOutputStream(), context.getHeaders(), encoding);
+        context.setOutputStream(output);
+        context.proceed();
+        // Send what is held back (or the end of the compressed body), but leave the response stream for JAX-RS to close
+        output.finish();
+    }
+
+    /**
+     * Picks the encoding from an {@code Accept-Encoding} header, e.g. {@code gzip, deflate;q=0.5}.
+     *
+     * @param acceptEncoding the header (may be {@code null}).
+     * @return {@code gzip}, {@code deflate} – or {@code null} if the client accepts neither.
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split("\\s*;\\s*");
+            String name = parts[0].toLowerCase(Locale.ROOT);
+            double quality = qualityOf(parts);
+            if (name.equals(GZIP) || name.equals("x-gzip")) {
+                gzip = quality;
+            }
+            else if (name.equals(DEFLATE)) {
+                deflate = quality;
+            }
+            else if (name.equals("*")) {
+                any = quality;
+            }
+        }
+        // A wildcard stands in for the encodings that are not named
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip <= 0 && deflate <= 0) {
+            return null;
+        }
+        return gzip >= deflate ? GZIP : DEFLATE;
+    }
+
+    private static double qualityOf(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            if (parts[i].startsWith("q=")) {
+                try {
+                    return Double.parseDouble(parts[i].substring(2));
+                }
+                catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Holds back the first {@link #THRESHOLD} bytes, and then compresses the body as it is written.
+     */
+    private static class CompressingOutputStream extends OutputStream {
+        private final OutputStream target;
+        private final MultivaluedMap<String, Object> headers;
+        private final String encoding;
+        private final byte[] held = new byte[THRESHOLD];
+        private int heldCount;
+        private CountingOutputStream counter;
+        private DeflaterOutputStream compressor;
+        private long bytesIn;
+        private long cpuNanos;
+
+        CompressingOutputStream(OutputStream target, MultivaluedMap<String, Object> headers, String encoding) {
+            this.target = target;
+            this.headers = headers;
+            this.encoding = encoding;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (compressor == null) {
+                if (heldCount + len <= held.length) {
+                    System.arraycopy(b, off, held, heldCount, len);
+                    heldCount += len;
+                    return;
+                }
+                startCompressing();
+            }
+            compress(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // Nothing is sent while the body might still end below the threshold
+            if (compressor != null) {
+                compressor.flush();
+            }
+        }
+
+        /**
+         * Ends the body: sends it as it is if it stayed below the threshold, or finishes the compression.
+         */
+        void finish() throws IOException {
+            if (compressor == null) {
+                target.write(held, 0, heldCount);
+                target.flush();
+                CompressionMetrics.getInstance().recordUncompressed();
+                return;
+            }
+            long start = CompressionMetrics.currentThreadTime();
+            compressor.finish();
+            cpuNanos += CompressionMetrics.currentThreadTime() - start;
+            compressor.flush();
+            CompressionMetrics.getInstance().recordCompressed(bytesIn, counter.count, cpuNanos);
+        }
+
+        /**
+         * Switches the response to the compressed encoding (nothing has been sent yet) and compresses what was held back.
+         */
+        private void startCompressing() throws IOException {
+            headers.putSingle(HttpHeaders.CONTENT_ENCODING, encoding);
+            headers.remove(HttpHeaders.CONTENT_LENGTH);
+            Object etag = headers.getFirst(HttpHeaders.ETAG);
+            if (etag instanceof EntityTag && !((EntityTag) etag).isWeak()) {
+                headers.putSingle(HttpHeaders.ETAG, new EntityTag(((EntityTag) etag).getValue(), true));
+            }
+            else if (etag instanceof String && ((String) etag).startsWith("\"")) {
+                headers.putSingle(HttpHeaders.ETAG, "W/" + etag);
+            }
+            counter = new CountingOutputStream(target);
+            compressor = encoding.equals(GZIP)
+                    ? new GZIPOutputStream(counter, BUFFER_SIZE)
+                    : new DeflaterOutputStream(counter, new Deflater(), BUFFER_SIZE);
+            compress(held, 0, heldCount);
+        }
+
+        private void compress(byte[] b, int off, int len) throws IOException {
+            long start = CompressionMetrics.currentThreadTime();
+            compressor.write(b, off, len);
+            cpuNanos += CompressionMetrics.currentThreadTime() - start;
+            bytesIn += len;
+        }
+    }
+
+    /**
+     * Counts the compressed bytes on their way to the response.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private final OutputStream target;
+        private long count;
+
+        CountingOutputStream(OutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            target.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            target.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            target.flush();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package rest;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.UriInfo;
+
+/**
+ * Builds the ETags of the conditional GETs, so a client polling with {@code If-None-Match}
+ * gets 304 Not Modified while nothing has changed – and reads the version back from the
+ * {@code If-Match} of a conditional write.
+ * <p>
+ * The tags come from the version lookups of the facades (e.g. {@link facades.PersonFacade#getPersonTag}).
+ * A strong ETag names one exact representation, so a pretty printed response gets a tag of its own.
+ */
+class EntityTags {
+    private static final String PRETTY = "-pretty";
+    /**
+     * A version no entity has, for an {@code If-Match} that cannot match.
+     */
+    static final long NO_VERSION = -1;
+
+    private EntityTags() {
+    }
+
+    /**
+     * Returns the ETag of a response.
+     *
+     * @param tag a tag from a facade, with the variant of the response appended if any (e.g. {@code -persons}).
+     * @param uriInfo the request URI.
+     * @return a strong {@link EntityTag}.
+     */
+    static EntityTag of(String tag, UriInfo uriInfo) {
+        return new EntityTag(GsonMessageBodyWriter.isPretty(uriInfo) ? tag + PRETTY : tag);
+    }
+
+    /**
+     * Returns the version an {@code If-Match} header expects an entity to have.
+     * <p>
+     * Only the version counts, so the tag of a pretty printed response will do as well. {@code If-Match}
+     * compares tags strongly (RFC 7232), so a weak tag – like the one of a compressed response – never matches.
+     * If the header lists several tags, the first strong tag of the entity is used.
+     *
+     * @param ifMatch an {@code If-Match} header (may be {@code null}).
+     * @param prefix the tags of the entity without the version (e.g. {@link facades.PersonFacade#tagPrefixOf}).
+     * @return the version – {@code null} if any version will do (no header or {@code *}),
+     *         and {@link #NO_VERSION} if the header does not name the entity.
+     */
+    static Long versionOf(String ifMatch, String prefix) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                continue;
+            }
+            if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                tag = tag.substring(1, tag.length() - 1);
+            }
+            if (tag.endsWith(PRETTY)) {
+                tag = tag.substring(0, tag.length() - PRETTY.length());
+            }
+            if (tag.startsWith(prefix)) {
+                try {
+                    return Long.parseLong(tag.substring(prefix.length()));
+                }
+                catch (NumberFormatException e) {
+                    // Not one of our tags, try the next one
+                }
+            }
+        }
+        return NO_VERSION;
+    }
+}
@@ -0,0 +1,178 @@
+package rest;
+
+import dtos.ResponseDTO;
+import utils.QueryStats;
+import utils.Settings;
+import utils.StatusCode;
+import utils.UnitOfWork;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the facade calls of a suspended request ({@code @Suspended AsyncResponse}) on a pool of its own,
+ * so slow queries never hold the container's request threads.
+ * <p>
+ * Reads and writes get separate pools, sized by the environment variables (or system properties)
+ * {@code READ_THREADS}, {@code READ_QUEUE} and {@code READ_TIMEOUT}, and the {@code WRITE_*} ones
+ * (timeouts in milliseconds). A request that finds the queue full, or is not answered before the timeout,
+ * gets 503 Service Unavailable with a {@code Retry-After} header. A request that times out while still
+ * queued is never run, but one that has started is left to finish (a write may still be committed).
+ * <p>
+ * Cheap lookups (by id, by phone number, the counts and the hobby search) stay on the request thread.
+ */
+public class FacadeExecutor {
+    public static final int DEFAULT_READ_THREADS = 8;
+    public static final int DEFAULT_READ_QUEUE = 64;
+    public static final int DEFAULT_READ_TIMEOUT = 10000;
+    public static final int DEFAULT_WRITE_THREADS = 4;
+    public static final int DEFAULT_WRITE_QUEUE = 32;
+    public static final int DEFAULT_WRITE_TIMEOUT = 30000;
+    private static final int RETRY_AFTER_SECONDS = 1;
+
+    public static final FacadeExecutor READS = new FacadeExecutor("reads",
+            Settings.getInt("READ_THREADS", DEFAULT_READ_THREADS),
+            Settings.getInt("READ_QUEUE", DEFAULT_READ_QUEUE),
+            Settings.getInt("READ_TIMEOUT", DEFAULT_READ_TIMEOUT));
+    public static final FacadeExecutor WRITES = new FacadeExecutor("writes",
+            Settings.getInt("WRITE_THREADS", DEFAULT_WRITE_THREADS),
+            Settings.getInt("WRITE_QUEUE", DEFAULT_WRITE_QUEUE),
+            Settings.getInt("WRITE_TIMEOUT", DEFAULT_WRITE_TIMEOUT));
+
+    private final ThreadPoolExecutor executor;
+    private final long timeoutMillis;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    /**
+     * Creates a pool of daemon threads.
+     *
+     * @param name the name of the pool (the threads are called {@code facade-<name>-<n>}).
+     * @param threads the number of threads.
+     * @param queueSize the number of requests that may wait for a thread.
+     * @param timeoutMillis how long a request may take, waiting included.
+     */
+    FacadeExecutor(String name, int threads, int queueSize, long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = task -> {
+            Thread thread = new Thread(task, "facade-" + name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Answers a suspended request with the response of a facade call made on this pool.
+     * <p>
+     * The call runs in a unit of work of its own (reading from the replica if the request's does),
+     * which is closed before the response is written,
+     * and its SQL statements are counted in the {@link QueryStats} of the request.
+     * An exception thrown by the call is handed to the exception mappers.
+     *
+     * @param asyncResponse the suspended request.
+     * @param call the facade call, which builds the response.
+     */
+    public void submit(AsyncResponse asyncResponse, Callable<Response> call) {
+        submit(asyncResponse, timeoutMillis, call);
+    }
+
+    /**
+     * Answers a suspended request like {@link #submit(AsyncResponse, Callable)}, with a timeout of its own.
+     *
+     * @param asyncResponse the suspended request.
+     * @param timeoutMillis how long the request may take, waiting included (0 to wait as long as it takes).
+     * @param call the facade call, which builds the response.
+     */
+    public void submit(AsyncResponse asyncResponse, long timeoutMillis, Callable<Response> call) {
+        // Count the statements of the call in the statistics of the request (when it is done)
+        QueryStats stats = QueryStats.current();
+        // Read from the same database as the request would
+        boolean reading = UnitOfWork.isReading();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            Response response;
+            QueryStats callStats = QueryStats.start();
+            UnitOfWork uow = UnitOfWork.start(reading);
+            try {
+                response = call.call();
+            }
+            catch (Exception e) {
+                asyncResponse.resume(e);
+                return;
+            }
+            finally {
+                uow.close();
+                callStats.stop();
+                if (stats != null) {
+                    stats.add(callStats);
+                }
+            }
+            asyncResponse.resume(response);
+        }, null);
+        // Set the timeout before the call can answer the request
+        asyncResponse.setTimeoutHandler(timedOutResponse -> {
+            // Drop the call if it has not started yet (freeing its place in the queue), but never interrupt a running transaction
+            task.cancel(false);
+            executor.remove(task);
+            timedOut.increment();
+            timedOutResponse.resume(unavailable("The request timed out, please try again later."));
+        });
+        if (timeoutMillis > 0) {
+            asyncResponse.setTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        try {
+            executor.execute(task);
+        }
+        catch (RejectedExecutionException e) {
+            rejected.increment();
+            asyncResponse.resume(unavailable("Too many requests are waiting, please try again later."));
+        }
+    }
+
+    /**
+     * Returns the number of requests that found the queue full.
+     *
+     * @return the number of rejected requests.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the number of requests that were not answered before the timeout.
+     *
+     * @return the number of timed out requests.
+     */
+    public long getTimedOut() {
+        return timedOut.sum();
+    }
+
+    /**
+     * Returns the number of requests waiting for a thread.
+     *
+     * @return the queue depth.
+     */
+    public int getQueued() {
+        return executor.getQueue().size();
+    }
+
+    private static Response unavailable(String message) {
+        ResponseDTO response = new ResponseDTO(StatusCode.SERVICE_UNAVAILABLE, message);
+        return Response.status(StatusCode.SERVICE_UNAVAILABLE)
+                .entity(response)
+                .header(HttpHeaders.RETRY_AFTER, RETRY_AFTER_SECONDS)
+                .build();
+    }
+}
@@ -0,0 +1,82 @@
+package rest;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+import json.GsonFactory;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Writes the DTOs returned by the resources as JSON, straight to the response
+ * (no intermediate {@link String}).
+ * <p>
+ * The JSON is compact, unless the request has a {@code pretty} query parameter
+ * (any value but {@code false}).
+ * <p>
+ * Jersey also discovers a JSON-B writer of its own, which the priority makes this writer win over.
+ *
+ * @see GsonFactory
+ */
+@Provider
+@Priority(Priorities.ENTITY_CODER)
+@Produces(MediaType.APPLICATION_JSON)
+public class GsonMessageBodyWriter implements MessageBodyWriter<Object> {
+    private static final Gson GSON = GsonFactory.getGson();
+    static final String INDENT = "  ";
+
+    @Context
+    private UriInfo uriInfo;
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return isDto(type) || Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type);
+    }
+
+    private static boolean isDto(Class<?> type) {
+        return type.getPackage() != null && type.getPackage().getName().equals("dtos");
+    }
+
+    @Override
+    public void writeTo(Object entity, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        JsonWriter writer = GSON.newJsonWriter(new BufferedWriter(new OutputStreamWriter(entityStream, StandardCharsets.UTF_8)));
+        if (isPretty(uriInfo)) {
+            writer.setIndent(INDENT);
+        }
+        GSON.toJson(entity, genericType, writer);
+        // Flush, but leave the response stream open for JAX-RS to close
+        writer.flush();
+    }
+
+    /**
+     * Returns whether a request asks for indented JSON with {@code ?pretty}.
+     *
+     * @param uriInfo the request URI (may be {@code null} outside a request).
+     * @return {@code true} if the JSON should be pretty printed.
+     */
+    static boolean isPretty(UriInfo uriInfo) {
+        if (uriInfo == null) {
+            return false;
+        }
+        String pretty = uriInfo.getQueryParameters().getFirst("pretty");
+        return pretty != null && !pretty.equalsIgnoreCase("false");
+    }
+}
@@ -1,8 +1,7 @@
 package rest;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import dtos.HobbyDTO;
+import dtos.HobbyMatchDTO;
 import dtos.PersonDTO;
 import errorhandling.EntityNotFoundException;
 import dtos.ResponseDTO;
@@ -13,96 +12,120 @@ import utils.StatusCode;
 
 import javax.persistence.EntityManagerFactory;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
 
 @Path("hobby")
 public class HobbyResource {
     private static final EntityManagerFactory EMF = EMF_Creator.createEntityManagerFactory();
     private static final HobbyFacade FACADE = HobbyFacade.getInstance(EMF);
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
     @GET
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getHobbies() {
-        try {
-            Set<HobbyDTO> hobbyDTOs = FACADE.getHobbies();
-            return Response.ok().entity(GSON.toJson(hobbyDTOs)).build();
-        }
-        catch (EntityNotFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
-        }
+    public void getHobbies(@QueryParam("expand") String expand, @Context Request request, @Context UriInfo uriInfo, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.READS.submit(asyncResponse, () -> {
+            try {
+                boolean expandPersons = expandsPersons(expand);
+                // Compare the client's tag with the hobby versions before counting the members
+                EntityTag etag = EntityTags.of(FACADE.getHobbiesTag() + (expandPersons ? "-persons" : ""), uriInfo);
+                Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+                if (notModified != null) {
+                    return notModified.build();
+                }
+                Set<HobbyDTO> hobbyDTOs = FACADE.getHobbies(expandPersons);
+                return Response.ok().entity(hobbyDTOs).tag(etag).build();
+            }
+            catch (EntityNotFoundException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
+                return Response.status(StatusCode.NOT_FOUND).entity(response).build();
+            }
+        });
     }
 
     @GET
     @Path("/search/{query}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getMatches(@PathParam("query") String query) {
-        Set<HobbyDTO> hobbyDTOs = FACADE.searchHobbies(query);
-        return Response.ok().entity(hobbyDTOs).build();
+    public Response getMatches(@PathParam("query") String query, @QueryParam("limit") @DefaultValue("10") int limit) {
+        List<HobbyMatchDTO> matches = FACADE.searchHobbies(query, limit);
+        return Response.ok().entity(matches).build();
     }
 
     @GET
     @Path("/count")
     @Produces({MediaType.APPLICATION_JSON})
     public Response getNumberOfHobbies() {
-        try {
-            int hobbyCount = FACADE.getHobbies().size();
-            return Response.ok().entity(hobbyCount).build();
-        }
-        catch (EntityNotFoundException e) {
-            return Response.ok().entity(0).build();
-        }
+        long hobbyCount = FACADE.countHobbies();
+        return Response.ok().entity(hobbyCount).build();
     }
 
     @GET
     @Path("{name}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getHobbyByName(@PathParam("name") String name) {
-        try {
-            PersonDTO.InnerHobbyDTO hobbyDTOs = FACADE.getHobbyByName(name);
-            return Response.ok().entity(GSON.toJson(hobbyDTOs)).build();
-        }
-        catch (EntityNotFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
-        }
+    public void getHobbyByName(@PathParam("name") String name, @QueryParam("expand") String expand, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.READS.submit(asyncResponse, () -> {
+            try {
+                HobbyDTO hobbyDTO = FACADE.getHobby(name, expandsPersons(expand));
+                return Response.ok().entity(hobbyDTO).build();
+            }
+            catch (EntityNotFoundException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
+                return Response.status(StatusCode.NOT_FOUND).entity(response).build();
+            }
+        });
     }
 
     @GET
     @Path("{name}/persons")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getPersonsByHobbyName(@PathParam("name") String name) {
-        try {
-            Set<PersonDTO> personDTOs = FACADE.getPersonsByHobbyName(name);
-            return Response.ok().entity(GSON.toJson(personDTOs)).build();
-        }
-        catch (EntityNotFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
-        }
-        catch (InternalErrorException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
-            return Response.status(StatusCode.INTERNAL_ERROR).entity(GSON.toJson(response)).build();
-        }
+    public void getPersonsByHobbyName(@PathParam("name") String name, @Context Request request, @Context UriInfo uriInfo, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.READS.submit(asyncResponse, () -> {
+            try {
+                // Compare the client's tag with the hobby's version before loading its persons
+                EntityTag etag = EntityTags.of(FACADE.getHobbyTag(name), uriInfo);
+                Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+                if (notModified != null) {
+                    return notModified.build();
+                }
+                Set<PersonDTO> personDTOs = FACADE.getPersonsByHobbyName(name);
+                return Response.ok().entity(personDTOs).tag(etag).build();
+            }
+            catch (EntityNotFoundException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
+                return Response.status(StatusCode.NOT_FOUND).entity(response).build();
+            }
+            catch (InternalErrorException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
+                return Response.status(StatusCode.INTERNAL_ERROR).entity(response).build();
+            }
+        });
     }
 
     @GET
     @Path("{name}/persons/count")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getNumberOfPersonsByHobbyName(@PathParam("name") String name) {
-        try {
-            int personCount = FACADE.getPersonsByHobbyName(name).size();
+    public void getNumberOfPersonsByHobbyName(@PathParam("name") String name, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.READS.submit(asyncResponse, () -> {
+            long personCount = FACADE.countPersonsByHobbyName(name);
             return Response.ok().entity(personCount).build();
-        }
-        catch (EntityNotFoundException e) {
-            return Response.ok().entity(0).build();
-        }
-        catch (InternalErrorException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
-            return Response.status(StatusCode.INTERNAL_ERROR).entity(GSON.toJson(response)).build();
-        }
+        });
+    }
+
+    /**
+     * Checks if the {@code expand} parameter asks for persons, e.g. {@code ?expand=persons}.
+     *
+     * @param expand a comma-separated list of relations to include.
+     * @return {@code true} if the persons should be included.
+     */
+    private static boolean expandsPersons(String expand) {
+        return expand != null && Arrays.asList(expand.toLowerCase().split("\\s*,\\s*")).contains("persons");
     }
 }
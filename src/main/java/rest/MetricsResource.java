@@ -0,0 +1,136 @@
+package rest;
+
+import dtos.CompressionStatsDTO;
+import dtos.PoolStatsDTO;
+import utils.CompressionMetrics;
+import utils.ConnectionPool;
+import utils.LatencyHistogram;
+import utils.RequestMetrics;
+import utils.SlowQueryLog;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exposes the metrics in the Prometheus text format: the latency, statuses and requests in flight
+ * of every resource method, the response compression, the facade executors, the slow SQL statements
+ * and (when deployed) the connection pool.
+ */
+@Path("metrics")
+public class MetricsResource {
+    public static final String PROMETHEUS = "text/plain; version=0.0.4; charset=utf-8";
+    // The upper bounds of the latency buckets in seconds
+    private static final double[] BUCKETS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @GET
+    @Produces(PROMETHEUS)
+    public Response getMetrics() {
+        StringBuilder out = new StringBuilder(8192);
+        writeRequests(out, RequestMetrics.getInstance().getEndpoints());
+        writeCompression(out, CompressionMetrics.getInstance().getStats(CompressionInterceptor.THRESHOLD));
+        writeExecutors(out);
+        writeSlowQueries(out, SlowQueryLog.getInstance());
+        ConnectionPool pool = ConnectionPool.getInstance();
+        if (pool != null) {
+            writePool(out, pool.getStats());
+        }
+        return Response.ok(out.toString()).build();
+    }
+
+    static void writeRequests(StringBuilder out, List<RequestMetrics.Endpoint> endpoints) {
+        header(out, "http_server_requests_seconds", "histogram", "The latency of the requests by resource method.");
+        for (RequestMetrics.Endpoint endpoint : endpoints) {
+            String labels = "method=\"" + endpoint.getHttpMethod() + "\",endpoint=\"" + endpoint.getName() + "\"";
+            LatencyHistogram latency = endpoint.getLatency();
+            for (double bucket : BUCKETS) {
+                sample(out, "http_server_requests_seconds_bucket", labels + ",le=\"" + format(bucket) + "\"",
+                        latency.getCountAtOrBelow((long) (bucket * NANOS_PER_SECOND)));
+            }
+            sample(out, "http_server_requests_seconds_bucket", labels + ",le=\"+Inf\"", latency.getCount());
+            sample(out, "http_server_requests_seconds_sum", labels, latency.getSum() / NANOS_PER_SECOND);
+            sample(out, "http_server_requests_seconds_count", labels, latency.getCount());
+        }
+        header(out, "http_server_responses_total", "counter", "The responses by resource method and status.");
+        for (RequestMetrics.Endpoint endpoint : endpoints) {
+            for (int status : endpoint.getStatuses()) {
+                sample(out, "http_server_responses_total",
+                        "method=\"" + endpoint.getHttpMethod() + "\",endpoint=\"" + endpoint.getName() + "\",code=\"" + status + "\"",
+                        endpoint.getStatusCount(status));
+            }
+        }
+        header(out, "http_server_requests_in_flight", "gauge", "The requests being handled by resource method.");
+        for (RequestMetrics.Endpoint endpoint : endpoints) {
+            sample(out, "http_server_requests_in_flight",
+                    "method=\"" + endpoint.getHttpMethod() + "\",endpoint=\"" + endpoint.getName() + "\"", endpoint.getInFlight());
+        }
+    }
+
+    private static void writeCompression(StringBuilder out, CompressionStatsDTO stats) {
+        header(out, "http_compression_responses_total", "counter", "The responses by whether they were compressed.");
+        sample(out, "http_compression_responses_total", "compressed=\"true\"", stats.getCompressedResponses());
+        sample(out, "http_compression_responses_total", "compressed=\"false\"", stats.getUncompressedResponses());
+        header(out, "http_compression_bytes_in_total", "counter", "The bytes of the compressed responses before compression.");
+        sample(out, "http_compression_bytes_in_total", null, stats.getBytesIn());
+        header(out, "http_compression_bytes_out_total", "counter", "The bytes of the compressed responses after compression.");
+        sample(out, "http_compression_bytes_out_total", null, stats.getBytesOut());
+        header(out, "http_compression_cpu_seconds_total", "counter", "The CPU time spent compressing.");
+        sample(out, "http_compression_cpu_seconds_total", null, stats.getCpuTotalMillis() / 1000);
+    }
+
+    private static void writeExecutors(StringBuilder out) {
+        // Prometheus wants the samples of a metric together, under a single header
+        header(out, "facade_executor_queued", "gauge", "The requests waiting for a facade thread.");
+        sample(out, "facade_executor_queued", "pool=\"reads\"", FacadeExecutor.READS.getQueued());
+        sample(out, "facade_executor_queued", "pool=\"writes\"", FacadeExecutor.WRITES.getQueued());
+        header(out, "facade_executor_rejected_total", "counter", "The requests that found the queue full.");
+        sample(out, "facade_executor_rejected_total", "pool=\"reads\"", FacadeExecutor.READS.getRejected());
+        sample(out, "facade_executor_rejected_total", "pool=\"writes\"", FacadeExecutor.WRITES.getRejected());
+        header(out, "facade_executor_timed_out_total", "counter", "The requests that were not answered in time.");
+        sample(out, "facade_executor_timed_out_total", "pool=\"reads\"", FacadeExecutor.READS.getTimedOut());
+        sample(out, "facade_executor_timed_out_total", "pool=\"writes\"", FacadeExecutor.WRITES.getTimedOut());
+    }
+
+    private static void writeSlowQueries(StringBuilder out, SlowQueryLog log) {
+        header(out, "db_slow_statements_total", "counter", "The SQL statements slower than the slow query threshold.");
+        sample(out, "db_slow_statements_total", null, log.getRecorded());
+        header(out, "db_slow_statements_dropped_total", "counter", "The slow statements the slow query log could not keep up with.");
+        sample(out, "db_slow_statements_dropped_total", null, log.getDropped());
+    }
+
+    private static void writePool(StringBuilder out, PoolStatsDTO stats) {
+        header(out, "db_pool_connections", "gauge", "The connections of the pool by state.");
+        sample(out, "db_pool_connections", "state=\"active\"", stats.getActive());
+        sample(out, "db_pool_connections", "state=\"idle\"", stats.getIdle());
+        header(out, "db_pool_waiting_threads", "gauge", "The threads waiting for a connection.");
+        sample(out, "db_pool_waiting_threads", null, stats.getWaiting());
+        header(out, "db_pool_acquisitions_total", "counter", "The connections handed out.");
+        sample(out, "db_pool_acquisitions_total", null, stats.getAcquisitions());
+        header(out, "db_pool_timeouts_total", "counter", "The requests for a connection that timed out.");
+        sample(out, "db_pool_timeouts_total", null, stats.getTimeouts());
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (labels != null) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+}
@@ -1,135 +1,251 @@
 package rest;
 
 import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import dtos.BulkImportDTO;
+import dtos.ImportResultDTO;
 import dtos.PersonDTO;
+import dtos.PersonPageDTO;
 import errorhandling.EntityFoundException;
 import errorhandling.EntityNotFoundException;
 import dtos.ResponseDTO;
 import errorhandling.InternalErrorException;
+import errorhandling.VersionConflictException;
 import facades.PersonFacade;
+import json.GsonFactory;
 import utils.EMF_Creator;
 import utils.FacadeUtility;
 import utils.StatusCode;
+import utils.UnitOfWork;
 
 import javax.persistence.EntityManagerFactory;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.function.Consumer;
 
 @Path("person")
 public class PersonResource {
     private static final EntityManagerFactory EMF = EMF_Creator.createEntityManagerFactory();
     private static final PersonFacade FACADE = PersonFacade.getInstance(EMF);
     private static final FacadeUtility UTIL = FacadeUtility.getInstance(EMF);
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final Gson GSON = GsonFactory.getGson();
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final String NDJSON = "application/x-ndjson";
 
     @GET
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getPersons() {
-        try {
-            Set<PersonDTO> pdtos = FACADE.getPersons();
-            return Response.ok().entity(GSON.toJson(pdtos)).build();
-        }
-        catch (EntityNotFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
-        }
+    public void getPersons(@QueryParam("after") Integer after, @QueryParam("limit") Integer limit, @Context UriInfo uriInfo, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.READS.submit(asyncResponse, () -> {
+            // Without a cursor or a limit every person is streamed straight from the database
+            if (after == null && limit == null) {
+                // The stream is written after the call's unit of work has ended, so it reads from the same database in one of its own
+                boolean reading = UnitOfWork.isReading();
+                StreamingOutput stream = output -> {
+                    JsonWriter writer = GSON.newJsonWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                    if (GsonMessageBodyWriter.isPretty(uriInfo)) {
+                        writer.setIndent(GsonMessageBodyWriter.INDENT);
+                    }
+                    writer.beginArray();
+                    UnitOfWork uow = UnitOfWork.start(reading);
+                    try {
+                        FACADE.forEachPerson(pdto -> GSON.toJson(pdto, PersonDTO.class, writer));
+                    }
+                    finally {
+                        uow.close();
+                    }
+                    writer.endArray();
+                    writer.flush();
+                };
+                return Response.ok().entity(stream).build();
+            }
+            PersonPageDTO page = FACADE.getPersons(after == null ? 0 : after, limit == null ? DEFAULT_PAGE_SIZE : limit);
+            return Response.ok().entity(page).build();
+        });
     }
 
     @GET
     @Path("/count")
     @Produces({MediaType.APPLICATION_JSON})
     public Response getNumberOfPersons() {
-        try {
-            int personCount = FACADE.getPersons().size();
-            return Response.ok().entity(personCount).build();
-        }
-        catch (EntityNotFoundException e) {
-            return Response.ok().entity(0).build();
-        }
+        long personCount = FACADE.countPersons();
+        return Response.ok().entity(personCount).build();
     }
 
     @POST
     @Consumes({MediaType.APPLICATION_JSON})
     @Produces({MediaType.APPLICATION_JSON})
-    public Response createPerson(String jsonInput) {
-        PersonDTO pdto = GSON.fromJson(jsonInput, PersonDTO.class);
-        try {
-            FACADE.createPerson(pdto);
-            ResponseDTO response = new ResponseDTO(StatusCode.OK, "Success!");
-            return Response.ok().entity(GSON.toJson(response)).build();
-        }
-        catch (EntityNotFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
-        }
-        catch (EntityFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.FOUND, e.getMessage());
-            return Response.status(StatusCode.FOUND).entity(GSON.toJson(response)).build();
-        }
-        catch (InternalErrorException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
-            return Response.status(StatusCode.INTERNAL_ERROR).entity(GSON.toJson(response)).build();
-        }
+    public void createPerson(String jsonInput, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.WRITES.submit(asyncResponse, () -> {
+            PersonDTO pdto = GSON.fromJson(jsonInput, PersonDTO.class);
+            try {
+                FACADE.createPerson(pdto);
+                ResponseDTO response = new ResponseDTO(StatusCode.OK, "Success!");
+                return Response.ok().entity(response).build();
+            }
+            catch (EntityNotFoundException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
+                return Response.status(StatusCode.NOT_FOUND).entity(response).build();
+            }
+            catch (EntityFoundException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.FOUND, e.getMessage());
+                return Response.status(StatusCode.FOUND).entity(response).build();
+            }
+            catch (InternalErrorException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
+                return Response.status(StatusCode.INTERNAL_ERROR).entity(response).build();
+            }
+        });
+    }
+
+    @POST
+    @Path("/bulk")
+    @Consumes({MediaType.APPLICATION_JSON, NDJSON})
+    @Produces({MediaType.APPLICATION_JSON, NDJSON})
+    public void createPersons(InputStream input, @HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType,
+                              @HeaderParam(HttpHeaders.ACCEPT) String accept, @Suspended AsyncResponse asyncResponse) {
+        // An import takes as long as the body does, so it has no timeout
+        FacadeExecutor.WRITES.submit(asyncResponse, 0, () -> {
+            // The body is read one person at a time, so it is never held in memory as a whole
+            BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            ReadablePersons persons;
+            try {
+                persons = new ReadablePersons(contentType != null && contentType.startsWith(NDJSON) ? new NdjsonPersons(reader) : new JsonArrayPersons(reader));
+            }
+            catch (IOException | IllegalStateException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.BAD_REQUEST, "The body must be a JSON array or one JSON object per line.");
+                return Response.status(StatusCode.BAD_REQUEST).entity(response).build();
+            }
+            // With an NDJSON response the results are streamed as the chunks are imported, so they are not held in memory either
+            if (accept != null && accept.contains(NDJSON)) {
+                StreamingOutput stream = output -> {
+                    Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+                    Consumer<ImportResultDTO> results = result -> {
+                        try {
+                            GSON.toJson(result, ImportResultDTO.class, writer);
+                            writer.write('\n');
+                        }
+                        catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    };
+                    FACADE.importPersons(persons, results);
+                    persons.reportUnreadable(results);
+                    writer.flush();
+                };
+                return Response.ok(stream, NDJSON).build();
+            }
+            List<ImportResultDTO> results = new ArrayList<>();
+            FACADE.importPersons(persons, results::add);
+            persons.reportUnreadable(results::add);
+            int created = (int) results.stream().filter(result -> result.getCode() == StatusCode.OK).count();
+            BulkImportDTO summary = new BulkImportDTO(created, results.size() - created, results);
+            return Response.ok().entity(summary).build();
+        });
     }
 
     @PUT
     //@Path("{id}")
     @Consumes({MediaType.APPLICATION_JSON})
     @Produces({MediaType.APPLICATION_JSON})
-    public Response updatePerson(/*@PathParam("id") int id,*/ String jsonInput) {
-        PersonDTO personDTO = GSON.fromJson(jsonInput, PersonDTO.class);//personDTO.setId(id);
-        try {
-            FACADE.updatePerson(personDTO);
-            ResponseDTO response = new ResponseDTO(StatusCode.OK, "Changes saved!");
-            return Response.ok().entity(GSON.toJson(response)).build();
-        }
-        catch (EntityNotFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.ok().entity(GSON.toJson(response)).build();
-        }
-        catch (EntityFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.FOUND, e.getMessage());
-            return Response.ok().entity(GSON.toJson(response)).build();
-        }
-        catch (InternalErrorException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
-            return Response.ok().entity(GSON.toJson(response)).build();
-        }
+    public void updatePerson(/*@PathParam("id") int id,*/ String jsonInput, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.WRITES.submit(asyncResponse, () -> {
+            PersonDTO personDTO = GSON.fromJson(jsonInput, PersonDTO.class);//personDTO.setId(id);
+            try {
+                // With an If-Match, the changes are only saved if nobody else has changed the person since
+                Long expectedVersion = personDTO.getId() == null ? null : EntityTags.versionOf(ifMatch, PersonFacade.tagPrefixOf(personDTO.getId()));
+                FACADE.updatePerson(personDTO, expectedVersion);
+                ResponseDTO response = new ResponseDTO(StatusCode.OK, "Changes saved!");
+                return Response.ok().entity(response).build();
+            }
+            catch (EntityNotFoundException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
+                return Response.ok().entity(response).build();
+            }
+            catch (EntityFoundException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.FOUND, e.getMessage());
+                return Response.ok().entity(response).build();
+            }
+            catch (VersionConflictException e) {
+                // A client sending If-Match expects the real status
+                ResponseDTO response = new ResponseDTO(StatusCode.PRECONDITION_FAILED, e.getMessage());
+                return Response.status(StatusCode.PRECONDITION_FAILED).entity(response).build();
+            }
+            catch (InternalErrorException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
+                return Response.ok().entity(response).build();
+            }
+        });
     }
 
     @DELETE
     @Path("{id}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response deletePerson(@PathParam("id") int id) {
-        try {
-            FACADE.deletePerson(id);
-            ResponseDTO response = new ResponseDTO(StatusCode.OK, "Deleted!");
-            return Response.ok().entity(GSON.toJson(response)).build();
-        }
-        catch (EntityNotFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
-        }
-        catch (InternalErrorException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
-            return Response.status(StatusCode.INTERNAL_ERROR).entity(GSON.toJson(response)).build();
-        }
+    public void deletePerson(@PathParam("id") int id, @HeaderParam(HttpHeaders.IF_MATCH) String ifMatch, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.WRITES.submit(asyncResponse, () -> {
+            try {
+                FACADE.deletePerson(id, EntityTags.versionOf(ifMatch, PersonFacade.tagPrefixOf(id)));
+                ResponseDTO response = new ResponseDTO(StatusCode.OK, "Deleted!");
+                return Response.ok().entity(response).build();
+            }
+            catch (EntityNotFoundException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
+                return Response.status(StatusCode.NOT_FOUND).entity(response).build();
+            }
+            catch (VersionConflictException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.PRECONDITION_FAILED, e.getMessage());
+                return Response.status(StatusCode.PRECONDITION_FAILED).entity(response).build();
+            }
+            catch (InternalErrorException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
+                return Response.status(StatusCode.INTERNAL_ERROR).entity(response).build();
+            }
+        });
     }
 
     @GET
     @Path("id/{id}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getPersonById(@PathParam("id") int id) {
+    public Response getPersonById(@PathParam("id") int id, @Context Request request, @Context UriInfo uriInfo) {
         try {
+            // Compare the client's tag with the person's version before loading the person
+            EntityTag etag = EntityTags.of(FACADE.getPersonTag(id), uriInfo);
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+            if (notModified != null) {
+                return notModified.build();
+            }
             PersonDTO personDTO = new PersonDTO(UTIL.personExists(id));
-            return Response.ok().entity(GSON.toJson(personDTO)).build();
+            return Response.ok().entity(personDTO).tag(etag).build();
         }
         catch (EntityNotFoundException e) {
             ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
+            return Response.status(StatusCode.NOT_FOUND).entity(response).build();
         }
     }
 
@@ -139,65 +255,196 @@ public class PersonResource {
     public Response getPersonByNumber(@PathParam("number") int number) {
         try {
             PersonDTO personDTO = FACADE.getPersonByNumber(number);
-            return Response.ok().entity(GSON.toJson(personDTO)).build();
+            return Response.ok().entity(personDTO).build();
         }
         catch (EntityNotFoundException e) {
             ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
+            return Response.status(StatusCode.NOT_FOUND).entity(response).build();
         }
     }
 
     @DELETE
     @Path("{id}/address")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response removeAddressFromPerson(@PathParam("id") int id) {
-        try {
-            FACADE.removeAddressFromPerson(id);
-            ResponseDTO response = new ResponseDTO(StatusCode.OK, "Address removed!");
-            return Response.ok().entity(GSON.toJson(response)).build();
-        }
-        catch (EntityNotFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
-        }
-        catch (InternalErrorException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
-            return Response.status(StatusCode.INTERNAL_ERROR).entity(GSON.toJson(response)).build();
-        }
+    public void removeAddressFromPerson(@PathParam("id") int id, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.WRITES.submit(asyncResponse, () -> {
+            try {
+                FACADE.removeAddressFromPerson(id);
+                ResponseDTO response = new ResponseDTO(StatusCode.OK, "Address removed!");
+                return Response.ok().entity(response).build();
+            }
+            catch (EntityNotFoundException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
+                return Response.status(StatusCode.NOT_FOUND).entity(response).build();
+            }
+            catch (InternalErrorException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
+                return Response.status(StatusCode.INTERNAL_ERROR).entity(response).build();
+            }
+        });
     }
 
     @GET
     @Path("has-hobby/{name}")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getPersonByHobbyName(@PathParam("name") String name) {
-        try {
-            Set<PersonDTO> personDTOs = FACADE.getPersonsByHobbyName(name);
-            return Response.ok().entity(GSON.toJson(personDTOs)).build();
-        }
-        catch (EntityNotFoundException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
-        }
-        catch (InternalErrorException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
-            return Response.status(StatusCode.INTERNAL_ERROR).entity(GSON.toJson(response)).build();
-        }
+    public void getPersonByHobbyName(@PathParam("name") String name, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.READS.submit(asyncResponse, () -> {
+            try {
+                Set<PersonDTO> personDTOs = FACADE.getPersonsByHobbyName(name);
+                return Response.ok().entity(personDTOs).build();
+            }
+            catch (EntityNotFoundException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
+                return Response.status(StatusCode.NOT_FOUND).entity(response).build();
+            }
+            catch (InternalErrorException e) {
+                ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
+                return Response.status(StatusCode.INTERNAL_ERROR).entity(response).build();
+            }
+        });
     }
 
     @GET
     @Path("has-hobby/{name}/count")
     @Produces({MediaType.APPLICATION_JSON})
-    public Response getNumberOfPersonsByHobbyName(@PathParam("name") String name) {
-        try {
-            int personCount = FACADE.getPersonsByHobbyName(name).size();
+    public void getNumberOfPersonsByHobbyName(@PathParam("name") String name, @Suspended AsyncResponse asyncResponse) {
+        FacadeExecutor.READS.submit(asyncResponse, () -> {
+            long personCount = FACADE.countPersonsByHobbyName(name);
             return Response.ok().entity(personCount).build();
+        });
+    }
+
+    /**
+     * Reads the persons of a JSON array.
+     * A person that cannot be read is returned as {@code null}; if it is not even valid JSON, it ends the array.
+     */
+    private static class JsonArrayPersons implements Iterator<PersonDTO> {
+        private final JsonReader reader;
+        private boolean broken;
+
+        JsonArrayPersons(BufferedReader input) throws IOException {
+            reader = GSON.newJsonReader(input);
+            reader.beginArray();
         }
-        catch (EntityNotFoundException e) {
-            return Response.ok().entity(0).build();
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return !broken && reader.peek() != JsonToken.END_ARRAY;
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public PersonDTO next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            JsonElement element;
+            try {
+                element = GSON.fromJson(reader, JsonElement.class);
+            }
+            catch (JsonParseException e) {
+                // The array itself is malformed, so nothing after it can be read
+                broken = true;
+                return null;
+            }
+            try {
+                return GSON.fromJson(element, PersonDTO.class);
+            }
+            catch (JsonParseException e) {
+                // Only this person has values of the wrong kind
+                return null;
+            }
         }
-        catch (InternalErrorException e) {
-            ResponseDTO response = new ResponseDTO(StatusCode.INTERNAL_ERROR, e.getMessage());
-            return Response.status(StatusCode.INTERNAL_ERROR).entity(GSON.toJson(response)).build();
+    }
+
+    /**
+     * Reads one person per line, skipping blank lines.
+     * A line that cannot be read is returned as {@code null}.
+     */
+    private static class NdjsonPersons implements Iterator<PersonDTO> {
+        private final BufferedReader reader;
+        private String line;
+
+        NdjsonPersons(BufferedReader reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (line == null || line.trim().isEmpty()) {
+                    line = reader.readLine();
+                    if (line == null) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public PersonDTO next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String json = line;
+            line = null;
+            try {
+                return GSON.fromJson(json, PersonDTO.class);
+            }
+            catch (JsonParseException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Ends the persons at the first row that cannot be read, so the rows before it are still imported,
+     * and counts the rows, so the unreadable one can be reported with its number.
+     */
+    private static class ReadablePersons implements Iterator<PersonDTO> {
+        private final Iterator<PersonDTO> persons;
+        private int rows;
+        private boolean unreadable;
+
+        ReadablePersons(Iterator<PersonDTO> persons) {
+            this.persons = persons;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                return !unreadable && persons.hasNext();
+            }
+            catch (UncheckedIOException e) {
+                unreadable = true;
+                return false;
+            }
+        }
+
+        @Override
+        public PersonDTO next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            rows++;
+            return persons.next();
+        }
+
+        /**
+         * Reports the row that could not be read, if there is one (call it after the import).
+         */
+        void reportUnreadable(Consumer<ImportResultDTO> results) {
+            if (unreadable) {
+                results.accept(new ImportResultDTO(rows + 1, StatusCode.BAD_REQUEST, null, "Could not read the rest of the body."));
+            }
         }
     }
 }
@@ -1,7 +1,5 @@
 package rest;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
 import dtos.PhoneDTO;
 import errorhandling.EntityNotFoundException;
 import dtos.ResponseDTO;
@@ -20,13 +18,12 @@ import java.util.Set;
 public class PhoneResource {
     private static final EntityManagerFactory EMF = EMF_Creator.createEntityManagerFactory();
     private static final PhoneFacade FACADE = PhoneFacade.getInstance(EMF);
-    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
 
     @GET
     @Produces({MediaType.APPLICATION_JSON})
     public Response getPhones() {
         Set<PhoneDTO> phoneDTOs = FACADE.getPhones();
-        return Response.ok().entity(GSON.toJson(phoneDTOs)).build();
+        return Response.ok().entity(phoneDTOs).build();
     }
 
     @DELETE
@@ -36,13 +33,13 @@ public class PhoneResource {
         try {
             FACADE.removePhone(number);
             ResponseDTO response = new ResponseDTO(StatusCode.OK, "Phone removed!");
-            return Response.ok().entity(GSON.toJson(response)).build();
+            return Response.ok().entity(response).build();
         } catch (EntityNotFoundException e) {
             ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.NOT_FOUND).entity(GSON.toJson(response)).build();
+            return Response.status(StatusCode.NOT_FOUND).entity(response).build();
         } catch (InternalErrorException e) {
             ResponseDTO response = new ResponseDTO(StatusCode.NOT_FOUND, e.getMessage());
-            return Response.status(StatusCode.INTERNAL_ERROR).entity(GSON.toJson(response)).build();
+            return Response.status(StatusCode.INTERNAL_ERROR).entity(response).build();
         }
     }
 }
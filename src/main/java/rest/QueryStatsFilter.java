@@ -0,0 +1,78 @@
+package rest;
+
+import utils.QueryStats;
+import utils.Settings;
+
+import javax.annotation.Priority;
+import javax.ws.rs.Priorities;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts the SQL statements, rows and database time of every request (see {@link QueryStats}).
+ * <p>
+ * Outside production (when {@code DEPLOYED} is not set) the numbers are sent back in the
+ * {@code X-SQL-Statements}, {@code X-SQL-Rows}, {@code X-SQL-Time} (milliseconds) and {@code X-SQL-Repeated}
+ * headers, which {@code QUERY_STATS_HEADERS} can turn on or off.
+ * <p>
+ * A request is logged when it executes more statements than {@code STATEMENT_BUDGET} (20),
+ * or the same statement shape at least {@code REPEATED_STATEMENT_LIMIT} (5) times – most likely an N+1 pattern.
+ */
+@Provider
+@Priority(Priorities.USER)
+public class QueryStatsFilter implements ContainerRequestFilter, ContainerResponseFilter {
+    public static final String STATEMENTS = "X-SQL-Statements";
+    public static final String ROWS = "X-SQL-Rows";
+    public static final String TIME = "X-SQL-Time";
+    public static final String REPEATED = "X-SQL-Repeated";
+    public static final int DEFAULT_STATEMENT_BUDGET = 20;
+    public static final int DEFAULT_REPEATED_STATEMENT_LIMIT = 5;
+    private static final String STATS = QueryStats.class.getName();
+    private static final Logger LOGGER = Logger.getLogger(QueryStatsFilter.class.getName());
+    private static final boolean HEADERS = Settings.getBoolean("QUERY_STATS_HEADERS", System.getenv("DEPLOYED") == null);
+    private static final int STATEMENT_BUDGET = Settings.getInt("STATEMENT_BUDGET", DEFAULT_STATEMENT_BUDGET);
+    private static final int REPEATED_STATEMENT_LIMIT = Settings.getInt("REPEATED_STATEMENT_LIMIT", DEFAULT_REPEATED_STATEMENT_LIMIT);
+
+    @Override
+    public void filter(ContainerRequestContext request) throws IOException {
+        request.setProperty(STATS, QueryStats.start());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+        QueryStats stats = (QueryStats) request.getProperty(STATS);
+        if (stats == null) {
+            return;
+        }
+        // Only report a request once, even if the response is filtered again (e.g. after an exception)
+        request.removeProperty(STATS);
+        stats.stop();
+        if (HEADERS) {
+            response.getHeaders().putSingle(STATEMENTS, stats.getStatements());
+            response.getHeaders().putSingle(ROWS, stats.getRows());
+            response.getHeaders().putSingle(TIME, String.format(Locale.ROOT, "%.3f", toMillis(stats.getDatabaseNanos())));
+            response.getHeaders().putSingle(REPEATED, stats.getMostRepeatedCount());
+        }
+        String target = request.getMethod() + " " + request.getUriInfo().getPath();
+        if (stats.getStatements() > STATEMENT_BUDGET) {
+            LOGGER.log(Level.WARNING, "{0} executed {1} SQL statements (the budget is {2}), reading or writing {3} rows in {4} ms",
+                    new Object[]{target, stats.getStatements(), STATEMENT_BUDGET, stats.getRows(), toMillis(stats.getDatabaseNanos())});
+        }
+        if (stats.getMostRepeatedCount() >= REPEATED_STATEMENT_LIMIT) {
+            LOGGER.log(Level.WARNING, "{0} executed the same SQL statement {1} times (N+1?): {2}",
+                    new Object[]{target, stats.getMostRepeatedCount(), stats.getMostRepeated()});
+        }
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,103 @@
+package rest;
+
+import org.glassfish.jersey.server.model.ResourceMethod;
+import org.glassfish.jersey.server.monitoring.ApplicationEvent;
+import org.glassfish.jersey.server.monitoring.ApplicationEventListener;
+import org.glassfish.jersey.server.monitoring.RequestEvent;
+import org.glassfish.jersey.server.monitoring.RequestEventListener;
+import utils.ReadReplicas;
+import utils.UnitOfWork;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.Cookie;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.NewCookie;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+
+/**
+ * Wraps every request in a {@link UnitOfWork}, so the facades share one
+ * {@link javax.persistence.EntityManager} while the request is handled,
+ * and the entity manager is closed when the response is sent – also if the request failed.
+ * <p>
+ * The unit of work is closed on the thread that started it. A suspended request is answered on another thread
+ * (see {@link FacadeExecutor}), so its unit of work is closed as soon as the resource method returns instead.
+ * <p>
+ * A GET reads from the {@link ReadReplicas read replica} if there is one – unless the client changed something
+ * within the read-your-writes window, which every other request marks with a cookie holding the end of the window.
+ */
+@Provider
+public class UnitOfWorkFilter implements ContainerRequestFilter, ContainerResponseFilter, ApplicationEventListener {
+    private static final String UNIT_OF_WORK = UnitOfWork.class.getName();
+    static final String READ_PRIMARY_UNTIL = "read-primary-until";
+    private static final RequestEventListener SUSPENDED_REQUESTS = event -> {
+        if (event.getType() == RequestEvent.Type.RESOURCE_METHOD_FINISHED) {
+            ResourceMethod method = event.getUriInfo().getMatchedResourceMethod();
+            if (method != null && method.isSuspendDeclared()) {
+                close(event.getContainerRequest());
+            }
+        }
+    };
+
+    @Override
+    public void filter(ContainerRequestContext request) throws IOException {
+        // Start the outermost unit of work (the entity manager is opened by the first facade call)
+        boolean reading = isRead(request) && ReadReplicas.isEnabled() && !hasWrittenRecently(request);
+        request.setProperty(UNIT_OF_WORK, UnitOfWork.start(reading));
+    }
+
+    @Override
+    public void filter(ContainerRequestContext request, ContainerResponseContext response) throws IOException {
+        // Close the entity manager before the response entity is written
+        close(request);
+        if (!isRead(request) && ReadReplicas.isEnabled()) {
+            // The client reads its own changes from the primary, until the replica has caught up
+            int window = ReadReplicas.getReadYourWritesMillis();
+            long until = System.currentTimeMillis() + window;
+            NewCookie cookie = new NewCookie(READ_PRIMARY_UNTIL, Long.toString(until), "/", null, null, (window + 999) / 1000, false);
+            response.getHeaders().add(HttpHeaders.SET_COOKIE, cookie);
+        }
+    }
+
+    @Override
+    public void onEvent(ApplicationEvent event) {
+    }
+
+    @Override
+    public RequestEventListener onRequest(RequestEvent event) {
+        return SUSPENDED_REQUESTS;
+    }
+
+    /**
+     * Closes the unit of work of a request – if this is the thread that started it.
+     */
+    private static void close(ContainerRequestContext request) {
+        UnitOfWork uow = (UnitOfWork) request.getProperty(UNIT_OF_WORK);
+        if (uow != null && uow.isCurrent()) {
+            request.removeProperty(UNIT_OF_WORK);
+            uow.close();
+        }
+    }
+
+    private static boolean isRead(ContainerRequestContext request) {
+        String method = request.getMethod();
+        return method.equals(HttpMethod.GET) || method.equals(HttpMethod.HEAD) || method.equals(HttpMethod.OPTIONS);
+    }
+
+    private static boolean hasWrittenRecently(ContainerRequestContext request) {
+        Cookie cookie = request.getCookies().get(READ_PRIMARY_UNTIL);
+        if (cookie == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(cookie.getValue()) > System.currentTimeMillis();
+        }
+        catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package utils;
+
+import dtos.CompressionStatsDTO;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records how well the responses compress and what it costs (see {@link rest.CompressionInterceptor}).
+ * <p>
+ * The CPU time is the time the writing thread spent in the compressor
+ * (wall-clock time if the JVM cannot measure thread CPU time).
+ */
+public class CompressionMetrics {
+    private static final CompressionMetrics INSTANCE = new CompressionMetrics();
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private final LatencyHistogram cpuTime = new LatencyHistogram();
+    private final LongAdder uncompressed = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    private CompressionMetrics() {
+    }
+
+    /**
+     * Returns the metrics shared by every request.
+     *
+     * @return {@link CompressionMetrics}.
+     */
+    public static CompressionMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the CPU time of the current thread, to measure the time spent compressing.
+     *
+     * @return a time in nanoseconds (only the difference between two calls means anything).
+     */
+    public static long currentThreadTime() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Records a compressed response.
+     *
+     * @param in the size of the body before compression in bytes.
+     * @param out the size of the compressed body in bytes.
+     * @param cpuNanos the time spent compressing in nanoseconds.
+     */
+    public void recordCompressed(long in, long out, long cpuNanos) {
+        bytesIn.add(in);
+        bytesOut.add(out);
+        cpuTime.record(cpuNanos);
+    }
+
+    /**
+     * Records a response that was sent uncompressed, because it was below the threshold.
+     */
+    public void recordUncompressed() {
+        uncompressed.increment();
+    }
+
+    /**
+     * Returns a snapshot of the metrics.
+     *
+     * @param threshold the current threshold in bytes.
+     * @return {@link CompressionStatsDTO}.
+     */
+    public CompressionStatsDTO getStats(int threshold) {
+        CompressionStatsDTO stats = new CompressionStatsDTO(threshold, cpuTime.getCount(), uncompressed.sum(), bytesIn.sum(), bytesOut.sum());
+        stats.setCpuTime(
+                toMillis(cpuTime.getSum()),
+                toMillis(cpuTime.getPercentile(50)),
+                toMillis(cpuTime.getPercentile(99)),
+                toMillis(cpuTime.getMax()));
+        return stats;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,165 @@
+package utils;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import dtos.PoolStatsDTO;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A pool of JDBC connections shared by every {@link javax.persistence.EntityManagerFactory}
+ * created by {@link EMF_Creator} when deployed.
+ * <p>
+ * The pool is sized by the environment variables (or system properties)
+ * {@code DB_POOL_MIN}, {@code DB_POOL_MAX}, {@code DB_POOL_TIMEOUT} and {@code DB_POOL_IDLE_TIMEOUT}
+ * (both timeouts in milliseconds), and records how long every request waits for a connection.
+ */
+public class ConnectionPool {
+    public static final int DEFAULT_MIN = 2;
+    public static final int DEFAULT_MAX = 10;
+    public static final int DEFAULT_TIMEOUT = 5000;
+    public static final int DEFAULT_IDLE_TIMEOUT = 600000;
+    private static ConnectionPool INSTANCE;
+
+    private final HikariDataSource dataSource;
+    private final LatencyHistogram acquisitionLatency = new LatencyHistogram();
+    private final LongAdder timeouts = new LongAdder();
+
+    /**
+     * Creates a pool sized by the {@code DB_POOL_*} settings.
+     * Use {@link #getInstance(String, String, String, String)} to share one pool.
+     */
+    ConnectionPool(String driver, String url, String user, String password) {
+        this("information", false, driver, url, user, password);
+    }
+
+    /**
+     * Creates a named pool sized by the {@code DB_POOL_*} settings, e.g. a read-only one for a read replica.
+     *
+     * @param name the name of the pool (in the logs and in JMX).
+     * @param readOnly {@code true} if the connections must refuse writes.
+     */
+    ConnectionPool(String name, boolean readOnly, String driver, String url, String user, String password) {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(name);
+        config.setReadOnly(readOnly);
+        config.setDriverClassName(driver);
+        config.setJdbcUrl(url);
+        config.setUsername(user);
+        config.setPassword(password);
+        config.setMinimumIdle(Settings.getInt("DB_POOL_MIN", DEFAULT_MIN));
+        config.setMaximumPoolSize(Settings.getInt("DB_POOL_MAX", DEFAULT_MAX));
+        config.setConnectionTimeout(Settings.getInt("DB_POOL_TIMEOUT", DEFAULT_TIMEOUT));
+        config.setIdleTimeout(Settings.getInt("DB_POOL_IDLE_TIMEOUT", DEFAULT_IDLE_TIMEOUT));
+        // EclipseLink switches auto-commit off itself while a transaction is active
+        config.setAutoCommit(true);
+        config.setMetricsTrackerFactory((poolName, poolStats) -> new AcquisitionTracker());
+        dataSource = new PooledDataSource(config);
+    }
+
+    /**
+     * Returns the pool – and creates it the first time it is asked for.
+     *
+     * @param driver the class name of the JDBC driver.
+     * @param url the JDBC connection string.
+     * @param user the database user.
+     * @param password the database password.
+     * @return the only instance of {@link ConnectionPool}.
+     */
+    public static synchronized ConnectionPool getInstance(String driver, String url, String user, String password) {
+        if (INSTANCE == null) {
+            INSTANCE = new ConnectionPool(driver, url, user, password);
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the pool if it has been created.
+     *
+     * @return the {@link ConnectionPool} – or {@code null} if no pool is used (e.g. in dev and test).
+     */
+    public static synchronized ConnectionPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the {@link DataSource} to hand to EclipseLink.
+     *
+     * @return {@link DataSource}.
+     * @see org.eclipse.persistence.config.PersistenceUnitProperties#NON_JTA_DATASOURCE
+     */
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Returns a snapshot of the pool: connection counts, sizing and acquisition latencies.
+     *
+     * @return {@link PoolStatsDTO}.
+     */
+    public PoolStatsDTO getStats() {
+        HikariPoolMXBean pool = dataSource.getHikariPoolMXBean();
+        PoolStatsDTO stats = pool == null
+                ? new PoolStatsDTO(0, 0, 0, 0)
+                : new PoolStatsDTO(pool.getActiveConnections(), pool.getIdleConnections(), pool.getThreadsAwaitingConnection(), pool.getTotalConnections());
+        stats.setPoolSize(dataSource.getMinimumIdle(), dataSource.getMaximumPoolSize());
+        stats.setTimeouts(dataSource.getConnectionTimeout(), dataSource.getIdleTimeout());
+        stats.setAcquisitions(
+                acquisitionLatency.getCount(),
+                timeouts.sum(),
+                toMillis(acquisitionLatency.getPercentile(50)),
+                toMillis(acquisitionLatency.getPercentile(95)),
+                toMillis(acquisitionLatency.getPercentile(99)),
+                toMillis(acquisitionLatency.getMax()));
+        return stats;
+    }
+
+    /**
+     * Closes every connection in the pool.
+     */
+    public void close() {
+        dataSource.close();
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * EclipseLink asks for connections with the user and password from persistence.xml,
+     * but the pool already holds connections opened with the right credentials.
+     */
+    private static class PooledDataSource extends HikariDataSource {
+
+        PooledDataSource(HikariConfig config) {
+            super(config);
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            return getConnection();
+        }
+    }
+
+    /**
+     * Receives the pool's metrics (called by the pool on every connection it hands out).
+     */
+    private class AcquisitionTracker implements IMetricsTracker {
+
+        @Override
+        public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+            acquisitionLatency.record(elapsedAcquiredNanos);
+        }
+
+        @Override
+        public void recordConnectionTimeout() {
+            timeouts.increment();
+        }
+    }
+}
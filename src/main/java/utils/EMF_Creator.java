@@ -2,11 +2,15 @@ package utils;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.Persistence;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
 
 public class EMF_Creator {
+    private static ConnectionPool READ_POOL;
 
     /**
      * Call this method before all integration tests that uses the Grizzly
@@ -43,20 +47,21 @@ public class EMF_Creator {
             System.out.println("USER           -->" + System.getenv("USER"));
             System.out.println("PW             -->" + System.getenv("PW"));
             System.out.println("CONNECTION_STR -->" + System.getenv("CONNECTION_STR"));
+            System.out.println("DB_POOL_MIN    -->" + Settings.getInt("DB_POOL_MIN", ConnectionPool.DEFAULT_MIN));
+            System.out.println("DB_POOL_MAX    -->" + Settings.getInt("DB_POOL_MAX", ConnectionPool.DEFAULT_MAX));
             String user = System.getenv("USER");
             String pw = System.getenv("PW");
             String dbName = getDbName(); //Gets the database name from pom.xml
-            String connection_str = System.getenv("CONNECTION_STR") + dbName; //Creates the full JDBC connection string
+            String connection_str = System.getenv("CONNECTION_STR") + dbName + "?useCursorFetch=true&rewriteBatchedStatements=true"; //Creates the full JDBC connection string (cursors let large results be streamed, and batched inserts are sent as one statement)
+            //Every EntityManagerFactory borrows its connections from the same pool
+            ConnectionPool pool = ConnectionPool.getInstance("com.mysql.cj.jdbc.Driver", connection_str, user, pw);
             Properties props = new Properties();
-            props.setProperty("javax.persistence.jdbc.user", user);
-            props.setProperty("javax.persistence.jdbc.password", pw);
-            props.setProperty("javax.persistence.jdbc.url", connection_str);
-            props.setProperty("javax.persistence.jdbc.driver", "com.mysql.cj.jdbc.Driver");
+            props.put(PersistenceUnitProperties.NON_JTA_DATASOURCE, pool.getDataSource());
             
             //Sets the production log-level to show only potential problems
             props.setProperty("eclipselink.logging.level","WARNING");
             props.setProperty("eclipselink.logging.level.sql","WARNING");
-            return Persistence.createEntityManagerFactory("pu", props);
+            return withReadReplica(Persistence.createEntityManagerFactory("pu", props), isTest);
         }
 
         /* Strategy for dev and test
@@ -70,7 +75,7 @@ public class EMF_Creator {
         }
         EntityManagerFactory emf = null;
         try {
-         emf =  Persistence.createEntityManagerFactory(puName, null);
+         emf =  Persistence.createEntityManagerFactory(puName, getOverrides());
        
         } catch (javax.persistence.PersistenceException ex){
             System.out.println("##########################################################");
@@ -80,7 +85,79 @@ public class EMF_Creator {
             System.out.println("##########################################################");
             throw ex; 
         }
-         return emf;
+         return withReadReplica(emf, isTest);
+    }
+
+    /**
+     * Creates a read-only factory for the replica in {@code READ_CONNECTION_STR} – if it is set.
+     * <p>
+     * Deployed, {@code READ_CONNECTION_STR} is the start of the replica's connection string (like {@code CONNECTION_STR}),
+     * and the replica gets a connection pool of its own. In dev and test it is the whole JDBC URL,
+     * e.g. of a second embedded database.
+     * <p>
+     * The factory has no shared cache, as the writes to the primary would never evict it,
+     * and it never generates the schema.
+     *
+     * @return the factory – or {@code null} if no replica is configured.
+     */
+    public static EntityManagerFactory createReadEntityManagerFactory() {
+        return createReadEntityManagerFactory(false);
+    }
+
+    private static EntityManagerFactory withReadReplica(EntityManagerFactory emf, boolean isTest) {
+        EntityManagerFactory replica = createReadEntityManagerFactory(isTest);
+        if (replica != null) {
+            // The GET requests read from the replica (see ReadReplicas)
+            ReadReplicas.register(emf, replica);
+        }
+        return emf;
+    }
+
+    private static EntityManagerFactory createReadEntityManagerFactory(boolean isTest) {
+        String readConnectionStr = Settings.getString("READ_CONNECTION_STR", null);
+        if (readConnectionStr == null) {
+            return null;
+        }
+        System.out.println("READ_CONNECTION_STR -->" + readConnectionStr);
+        Map<String, Object> props = new HashMap<>(getOverrides());
+        if (System.getenv("DEPLOYED") != null) {
+            String connection_str = readConnectionStr + getDbName() + "?useCursorFetch=true";
+            props.put(PersistenceUnitProperties.NON_JTA_DATASOURCE, getReadPool(connection_str).getDataSource());
+            props.put("eclipselink.logging.level", "WARNING");
+            props.put("eclipselink.logging.level.sql", "WARNING");
+        }
+        else {
+            props.put(PersistenceUnitProperties.JDBC_URL, readConnectionStr);
+        }
+        props.put(PersistenceUnitProperties.CACHE_SHARED_DEFAULT, "false");
+        props.put(PersistenceUnitProperties.SCHEMA_GENERATION_DATABASE_ACTION, PersistenceUnitProperties.SCHEMA_GENERATION_NONE_ACTION);
+        String puName = isTest || System.getProperty("IS_INTEGRATION_TEST_WITH_DB") != null ? "puTest" : "pu";
+        return Persistence.createEntityManagerFactory(puName, props);
+    }
+
+    /**
+     * Returns the pool of connections to the replica, which every read-only factory shares.
+     * Its connections are read-only, so a write that is routed to the replica by mistake fails instead of diverging.
+     */
+    private static synchronized ConnectionPool getReadPool(String connectionStr) {
+        if (READ_POOL == null) {
+            READ_POOL = new ConnectionPool("information-read", true, "com.mysql.cj.jdbc.Driver", connectionStr, System.getenv("USER"), System.getenv("PW"));
+        }
+        return READ_POOL;
+    }
+
+    /**
+     * Returns the {@code javax.persistence.*} and {@code eclipselink.*} system properties,
+     * which override the ones in persistence.xml – e.g. to run the resources against an embedded database.
+     */
+    private static Map<String, String> getOverrides() {
+        Map<String, String> overrides = new HashMap<>();
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("javax.persistence.") || name.startsWith("eclipselink.")) {
+                overrides.put(name, System.getProperty(name));
+            }
+        }
+        return overrides;
     }
 
     private static String getDbName() {
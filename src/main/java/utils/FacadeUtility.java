@@ -1,21 +1,36 @@
 package utils;
 
+import dtos.PersonDTO;
 import entities.Address;
 import entities.Hobby;
 import entities.Person;
 import entities.Phone;
 import errorhandling.EntityNotFoundException;
+import org.eclipse.persistence.annotations.BatchFetchType;
+import org.eclipse.persistence.config.QueryHints;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
 import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+/**
+ * Lookups shared by the facades.
+ * <p>
+ * Every lookup joins the {@link UnitOfWork} on the calling thread,
+ * so the entities it returns are managed by the same {@link EntityManager} as the facade's own.
+ */
 public class FacadeUtility {
     private static FacadeUtility INSTANCE;
     private static EntityManagerFactory EMF;
+    private static HobbyCatalog CATALOG;
 
     /**
      * The default constructor is set private to ensure an instance only can be
@@ -27,6 +42,7 @@ public class FacadeUtility {
     public static FacadeUtility getInstance(EntityManagerFactory emf) {
         if (INSTANCE == null) {
             EMF = emf;
+            CATALOG = HobbyCatalog.getInstance(EMF);
             INSTANCE = new FacadeUtility();
         }
         return INSTANCE;
@@ -42,16 +58,20 @@ public class FacadeUtility {
      * @see TypedQuery
      */
     public Address addressExists(String street, int zipcode) throws EntityNotFoundException {
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Address> query = em.createQuery("SELECT a FROM Address a WHERE a.street = :street AND a.zipcode = :zipcode", Address.class);
-        query.setParameter("street", street);
-        query.setParameter("zipcode", zipcode);
+        UnitOfWork uow = UnitOfWork.begin(EMF);
         try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Address> query = em.createQuery("SELECT a FROM Address a WHERE a.street = :street AND a.zipcode = :zipcode", Address.class);
+            query.setParameter("street", street);
+            query.setParameter("zipcode", zipcode);
             return query.getSingleResult();
         }
         catch (NoResultException e) {
             throw new EntityNotFoundException("No one in our system is associated with the address " + street + ", " + zipcode + ".");
         }
+        finally {
+            uow.close();
+        }
     }
 
     /**
@@ -63,12 +83,17 @@ public class FacadeUtility {
      * @see EntityManager#find
      */
     public Phone phoneExists(int number) throws EntityNotFoundException {
-        EntityManager em = EMF.createEntityManager();
-        Phone phone = em.find(Phone.class, number);
-        if (phone == null) {
-            throw new EntityNotFoundException("No one in our system is associated with the phone number " + number + ".");
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            Phone phone = uow.getEntityManager().find(Phone.class, number);
+            if (phone == null) {
+                throw new EntityNotFoundException("No one in our system is associated with the phone number " + number + ".");
+            }
+            return phone;
+        }
+        finally {
+            uow.close();
         }
-        return phone;
     }
 
     /**
@@ -80,12 +105,17 @@ public class FacadeUtility {
      * @see EntityManager#find
      */
     public Person personExists(int id) throws EntityNotFoundException {
-        EntityManager em = EMF.createEntityManager();
-        Person person = em.find(Person.class, id);
-        if (person == null) {
-            throw new EntityNotFoundException("Could not find a person with the id " + id + ".");
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            Person person = uow.getEntityManager().find(Person.class, id);
+            if (person == null) {
+                throw new EntityNotFoundException("Could not find a person with the id " + id + ".");
+            }
+            return person;
+        }
+        finally {
+            uow.close();
         }
-        return person;
     }
 
     /**
@@ -94,15 +124,14 @@ public class FacadeUtility {
      * @param id a hobby id.
      * @return a {@link Hobby} – if one exits.
      * @throws EntityNotFoundException if no hobby is found.
-     * @see TypedQuery
+     * @see HobbyCatalog
      */
     public Hobby hobbyExists(int id) throws EntityNotFoundException {
-        EntityManager em = EMF.createEntityManager();
-        Hobby hobby = em.find(Hobby.class, id);
-        if (hobby == null) {
+        PersonDTO.InnerHobbyDTO hdto = CATALOG.getHobby(id);
+        if (hdto == null) {
             throw new EntityNotFoundException("Could not find the " + id + " hobby.");
         }
-        return hobby;
+        return getHobbyReference(hdto);
     }
 
     /**
@@ -111,20 +140,111 @@ public class FacadeUtility {
      * @param name a hobby name.
      * @return a {@link Hobby} – if one exits.
      * @throws EntityNotFoundException if no hobby is found.
-     * @see TypedQuery
+     * @see HobbyCatalog
      */
     public Hobby hobbyNameExists(String name) throws EntityNotFoundException {
+        return getHobbyReference(hobbyNameInCatalog(name));
+    }
+
+    /**
+     * Checks if hobbies with some {@code names} exist, all at once.
+     * <p>
+     * The names are resolved in the {@link HobbyCatalog} (without any SQL), and every unknown name
+     * is reported in the same exception. The hobbies are then served by the shared cache,
+     * and those it has dropped are loaded with one query.
+     *
+     * @param names hobby names.
+     * @return the {@link Hobby hobbies} in the order of the names.
+     * @throws EntityNotFoundException if a name is missing, or if one or more hobbies are not found.
+     * @see HobbyCatalog#getHobbiesByName
+     */
+    public Set<Hobby> hobbyNamesExist(Collection<String> names) throws EntityNotFoundException {
+        if (names.contains(null)) {
+            throw new EntityNotFoundException("Tried to find a hobby, but no name was specified.");
+        }
+        Map<String, PersonDTO.InnerHobbyDTO> found = CATALOG.getHobbiesByName(names);
+        List<String> missing = new ArrayList<>();
+        for (String name : names) {
+            if (!found.containsKey(name) && !missing.contains(name)) {
+                missing.add(name);
+            }
+        }
+        if (!missing.isEmpty()) {
+            throw new EntityNotFoundException(missing.size() == 1
+                    ? "Could not find the " + missing.get(0) + " hobby."
+                    : "Could not find the " + String.join(", ", missing.subList(0, missing.size() - 1))
+                            + " and " + missing.get(missing.size() - 1) + " hobbies.");
+        }
+        return getHobbyReferences(found.values());
+    }
+
+    /**
+     * Checks if a hobby with a given {@code name} exists in the {@link HobbyCatalog} (without any SQL).
+     *
+     * @param name a hobby name.
+     * @return the hobby – if one exists.
+     * @throws EntityNotFoundException if no hobby is found.
+     * @see HobbyCatalog
+     */
+    public PersonDTO.InnerHobbyDTO hobbyNameInCatalog(String name) throws EntityNotFoundException {
         if (name == null) {
             throw new EntityNotFoundException("Tried to find a hobby, but no name was specified.");
         }
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Hobby> hobbyQuery = em.createQuery("SELECT h FROM Hobby h WHERE h.name = :name", Hobby.class);
-        hobbyQuery.setParameter("name", name);
+        PersonDTO.InnerHobbyDTO hdto = CATALOG.getHobby(name);
+        if (hdto == null) {
+            throw new EntityNotFoundException("Could not find the " + name + " hobby.");
+        }
+        return hdto;
+    }
+
+    /**
+     * Returns a {@link Hobby} from the {@link HobbyCatalog} managed by the {@link UnitOfWork},
+     * so it can be added to a person that is persisted or merged.
+     *
+     * @param hdto a hobby from the catalog.
+     * @return a managed {@link Hobby}.
+     * @see #getHobbyReferences
+     */
+    private Hobby getHobbyReference(PersonDTO.InnerHobbyDTO hdto) {
+        return getHobbyReferences(Collections.singletonList(hdto)).iterator().next();
+    }
+
+    /**
+     * Returns hobbies from the {@link HobbyCatalog} managed by the {@link UnitOfWork},
+     * so they can be added to a person that is persisted or merged.
+     * <p>
+     * The hobbies are served by the shared cache, which the catalog fills when it is loaded. The cache only
+     * holds on to some of them, so the hobbies it does not have are loaded with one {@code IN} query
+     * instead of one query each.
+     *
+     * @param hdtos hobbies from the catalog.
+     * @return the managed {@link Hobby hobbies}, in the same order.
+     * @see EntityManager#getReference
+     */
+    private Set<Hobby> getHobbyReferences(Collection<PersonDTO.InnerHobbyDTO> hdtos) {
+        UnitOfWork uow = UnitOfWork.begin(EMF);
         try {
-            return hobbyQuery.getSingleResult();
+            EntityManager em = uow.getEntityManager();
+            // Load the hobbies the shared cache has dropped into the persistence context
+            List<Integer> uncached = new ArrayList<>();
+            for (PersonDTO.InnerHobbyDTO hdto : hdtos) {
+                if (!EMF.getCache().contains(Hobby.class, hdto.getId())) {
+                    uncached.add(hdto.getId());
+                }
+            }
+            if (!uncached.isEmpty()) {
+                em.createQuery("SELECT h FROM Hobby h WHERE h.id IN :ids", Hobby.class)
+                        .setParameter("ids", uncached)
+                        .getResultList();
+            }
+            Set<Hobby> hobbies = new LinkedHashSet<>();
+            for (PersonDTO.InnerHobbyDTO hdto : hdtos) {
+                hobbies.add(em.getReference(Hobby.class, hdto.getId()));
+            }
+            return hobbies;
         }
-        catch (NoResultException e) {
-            throw new EntityNotFoundException("Could not find the " + name + " hobby.");
+        finally {
+            uow.close();
         }
     }
 
@@ -136,10 +256,16 @@ public class FacadeUtility {
      * @see TypedQuery
      */
     public Set<Phone> getPhonesByPersonId(int id) {
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Phone> phoneQuery = em.createQuery("SELECT t FROM Person p JOIN p.phones t WHERE p.id = :pid", Phone.class);
-        phoneQuery.setParameter("pid", id);
-        return new LinkedHashSet<>(phoneQuery.getResultList());
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Phone> phoneQuery = em.createQuery("SELECT t FROM Person p JOIN p.phones t WHERE p.id = :pid", Phone.class);
+            phoneQuery.setParameter("pid", id);
+            return new LinkedHashSet<>(phoneQuery.getResultList());
+        }
+        finally {
+            uow.close();
+        }
     }
 
     /**
@@ -150,10 +276,16 @@ public class FacadeUtility {
      * @see TypedQuery
      */
     public Set<Hobby> getHobbiesByPersonId(int id) {
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Hobby> hobbyQuery = em.createQuery("SELECT h FROM Person p JOIN p.hobbies h WHERE p.id = :pid", Hobby.class);
-        hobbyQuery.setParameter("pid", id);
-        return new LinkedHashSet<>(hobbyQuery.getResultList());
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Hobby> hobbyQuery = em.createQuery("SELECT h FROM Person p JOIN p.hobbies h WHERE p.id = :pid", Hobby.class);
+            hobbyQuery.setParameter("pid", id);
+            return new LinkedHashSet<>(hobbyQuery.getResultList());
+        }
+        finally {
+            uow.close();
+        }
     }
 
     /**
@@ -164,23 +296,48 @@ public class FacadeUtility {
      * @see TypedQuery
      */
     public Set<Person> getPersonsByAddressId(int id) {
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Person> personQuery = em.createQuery("SELECT p FROM Person p WHERE p.address.id = :aid", Person.class);
-        personQuery.setParameter("aid", id);
-        return new LinkedHashSet<>(personQuery.getResultList());
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Person> personQuery = em.createQuery("SELECT p FROM Person p WHERE p.address.id = :aid", Person.class);
+            personQuery.setParameter("aid", id);
+            return new LinkedHashSet<>(personQuery.getResultList());
+        }
+        finally {
+            uow.close();
+        }
     }
 
     /**
      * Finds a {@link Set} of every {@link Person} with a given hobby {@code id} in the database.
+     * <p>
+     * The address of each person is join fetched, and the phones and hobbies of every person are
+     * batch fetched – one extra query per relationship no matter how many persons are found.
      *
      * @param id a hobby id.
      * @return {@link Set}.
      * @see TypedQuery
+     * @see QueryHints#BATCH
      */
     public Set<Person> getPersonsByHobbyId(int id) {
-        EntityManager em = EMF.createEntityManager();
-        TypedQuery<Person> personQuery = em.createQuery("SELECT p FROM Hobby h JOIN h.persons p WHERE h.id = :hid", Person.class);
-        personQuery.setParameter("hid", id);
-        return new LinkedHashSet<>(personQuery.getResultList());
+        UnitOfWork uow = UnitOfWork.begin(EMF);
+        try {
+            EntityManager em = uow.getEntityManager();
+            TypedQuery<Person> personQuery = em.createQuery("SELECT p FROM Person p LEFT JOIN FETCH p.address JOIN p.hobbies h WHERE h.id = :hid", Person.class);
+            personQuery.setParameter("hid", id);
+            personQuery.setHint(QueryHints.BATCH, "p.phones");
+            personQuery.setHint(QueryHints.BATCH, "p.hobbies");
+            personQuery.setHint(QueryHints.BATCH_TYPE, BatchFetchType.EXISTS);
+            Set<Person> persons = new LinkedHashSet<>(personQuery.getResultList());
+            for (Person person : persons) {
+                // The first access triggers the batch query for every person in the result
+                person.getPhones().size();
+                person.getHobbies().size();
+            }
+            return persons;
+        }
+        finally {
+            uow.close();
+        }
     }
 }
@@ -0,0 +1,189 @@
+package utils;
+
+import dtos.PersonDTO;
+import entities.Hobby;
+
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.TypedQuery;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A read-through, in-memory copy of the hobby table.
+ * <p>
+ * The hobbies are a read-mostly catalog, so they are loaded with one query the first time they are needed
+ * and kept in an immutable snapshot indexed by id, by name and by {@link HobbySearchIndex n-grams}.
+ * Readers never lock: a change replaces the whole snapshot (copy-on-write),
+ * so call {@link #invalidate} whenever hobbies are inserted, updated or deleted.
+ * <p>
+ * Names are looked up ignoring case, like the default MySQL collation does.
+ */
+public class HobbyCatalog {
+    private static HobbyCatalog INSTANCE;
+    private static EntityManagerFactory EMF;
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+    private static volatile Snapshot SNAPSHOT;
+
+    /**
+     * The default constructor is set private to ensure the class only can be accessed
+     * via {@link #getInstance}.
+     */
+    private HobbyCatalog() {
+    }
+
+    /**
+     * Returns the only instance of {@link HobbyCatalog}.
+     *
+     * @param emf the {@link EntityManagerFactory} used to load the hobbies.
+     * @return {@link HobbyCatalog}.
+     */
+    public static HobbyCatalog getInstance(EntityManagerFactory emf) {
+        if (INSTANCE == null) {
+            EMF = emf;
+            INSTANCE = new HobbyCatalog();
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Drops the snapshot, so the hobbies are loaded again the next time they are needed.
+     */
+    public static void invalidate() {
+        synchronized (HobbyCatalog.class) {
+            GENERATION.incrementAndGet();
+            SNAPSHOT = null;
+        }
+    }
+
+    /**
+     * Loads every hobby from the database and replaces the snapshot.
+     */
+    public void refresh() {
+        load();
+    }
+
+    /**
+     * Loads a new snapshot and publishes it – unless the catalog was invalidated while loading.
+     * <p>
+     * Unknown names are refused without asking the database, so the catalog is always loaded from the primary
+     * (never from a lagging read replica), with an {@link EntityManager} of its own rather than the caller's {@link UnitOfWork}.
+     */
+    private Snapshot load() {
+        int generation = GENERATION.get();
+        EntityManager em = EMF.createEntityManager();
+        try {
+            TypedQuery<Hobby> hobbyQuery = em.createQuery("SELECT h FROM Hobby h ORDER BY h.id", Hobby.class);
+            // Read the rows, not the shared cache (the hobby script may have changed the table)
+            hobbyQuery.setHint(QueryHints.REFRESH, HintValues.TRUE);
+            Snapshot snapshot = new Snapshot(hobbyQuery.getResultList());
+            synchronized (HobbyCatalog.class) {
+                if (generation == GENERATION.get()) {
+                    SNAPSHOT = snapshot;
+                }
+            }
+            return snapshot;
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Returns every hobby ordered by id.
+     *
+     * @return an unmodifiable {@link List}.
+     */
+    public List<PersonDTO.InnerHobbyDTO> getHobbies() {
+        return getSnapshot().hobbies;
+    }
+
+    /**
+     * Finds a hobby by id.
+     *
+     * @param id a hobby id.
+     * @return the hobby – or {@code null} if it does not exist.
+     */
+    public PersonDTO.InnerHobbyDTO getHobby(int id) {
+        return getSnapshot().byId.get(id);
+    }
+
+    /**
+     * Finds a hobby by name (ignoring case).
+     *
+     * @param name a hobby name.
+     * @return the hobby – or {@code null} if it does not exist.
+     */
+    public PersonDTO.InnerHobbyDTO getHobby(String name) {
+        return name == null ? null : getSnapshot().byName.get(toKey(name));
+    }
+
+    /**
+     * Finds hobbies by name (ignoring case), all in the same snapshot.
+     *
+     * @param names hobby names.
+     * @return the names that exist mapped to their hobbies, in the order of the names.
+     */
+    public Map<String, PersonDTO.InnerHobbyDTO> getHobbiesByName(Collection<String> names) {
+        Snapshot snapshot = getSnapshot();
+        Map<String, PersonDTO.InnerHobbyDTO> hobbies = new LinkedHashMap<>();
+        for (String name : names) {
+            PersonDTO.InnerHobbyDTO hobby = name == null ? null : snapshot.byName.get(toKey(name));
+            if (hobby != null) {
+                hobbies.put(name, hobby);
+            }
+        }
+        return hobbies;
+    }
+
+    /**
+     * Finds the hobbies whose names contain {@code query} (ignoring case), best matches first.
+     *
+     * @param query a part of a hobby name.
+     * @param limit the maximum number of hobbies to return.
+     * @return the matching hobbies.
+     * @see HobbySearchIndex
+     */
+    public List<PersonDTO.InnerHobbyDTO> search(String query, int limit) {
+        return getSnapshot().index.search(query, limit);
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = SNAPSHOT;
+        return snapshot == null ? load() : snapshot;
+    }
+
+    private static String toKey(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * An immutable copy of the hobby table.
+     */
+    private static class Snapshot {
+        private final List<PersonDTO.InnerHobbyDTO> hobbies;
+        private final Map<Integer, PersonDTO.InnerHobbyDTO> byId;
+        private final Map<String, PersonDTO.InnerHobbyDTO> byName;
+        private final HobbySearchIndex index;
+
+        private Snapshot(List<Hobby> entities) {
+            List<PersonDTO.InnerHobbyDTO> hobbies = new ArrayList<>(entities.size());
+            Map<Integer, PersonDTO.InnerHobbyDTO> byId = new HashMap<>();
+            Map<String, PersonDTO.InnerHobbyDTO> byName = new HashMap<>();
+            for (Hobby hobby : entities) {
+                PersonDTO.InnerHobbyDTO hdto = new PersonDTO.InnerHobbyDTO(hobby);
+                hobbies.add(hdto);
+                byId.put(hdto.getId(), hdto);
+                // If two hobbies only differ by case, the one with the lowest id wins
+                byName.putIfAbsent(toKey(hdto.getName()), hdto);
+            }
+            this.hobbies = Collections.unmodifiableList(hobbies);
+            this.byId = Collections.unmodifiableMap(byId);
+            this.byName = Collections.unmodifiableMap(byName);
+            this.index = new HobbySearchIndex(hobbies);
+        }
+    }
+}
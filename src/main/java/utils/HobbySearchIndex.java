@@ -0,0 +1,168 @@
+package utils;
+
+import dtos.PersonDTO;
+
+import java.util.*;
+
+/**
+ * An n-gram index over hobby names for type-ahead search.
+ * <p>
+ * Every name is split into all its substrings of 1 to {@link #GRAM_LENGTH} characters (ignoring case),
+ * and each of these n-grams points to the hobbies whose names contain it.
+ * A query intersects the hobbies of its n-grams and only compares the names that are left,
+ * so a lookup never scans the whole catalog.
+ * <p>
+ * Matches are ranked: exact names first, then names starting with the query,
+ * then names with a word starting with the query, and finally names containing the query.
+ * Ties are broken by the shortest name, then alphabetically.
+ * <p>
+ * The index is immutable and is rebuilt with every {@link HobbyCatalog} snapshot.
+ */
+public class HobbySearchIndex {
+    private static final int GRAM_LENGTH = 3;
+    private static final int[] NO_HOBBIES = new int[0];
+    private static final int EXACT = 0;
+    private static final int PREFIX = 1;
+    private static final int WORD_PREFIX = 2;
+    private static final int SUBSTRING = 3;
+
+    private final PersonDTO.InnerHobbyDTO[] hobbies;
+    private final String[] names;
+    private final Map<String, int[]> postings;
+
+    /**
+     * Builds an index over the names of some hobbies.
+     *
+     * @param hobbies the hobbies to search.
+     */
+    public HobbySearchIndex(List<PersonDTO.InnerHobbyDTO> hobbies) {
+        this.hobbies = hobbies.toArray(new PersonDTO.InnerHobbyDTO[0]);
+        this.names = new String[this.hobbies.length];
+        Map<String, BitSet> grams = new HashMap<>();
+        for (int i = 0; i < this.hobbies.length; i++) {
+            names[i] = normalize(this.hobbies[i].getName());
+            for (String gram : gramsOf(names[i], GRAM_LENGTH)) {
+                grams.computeIfAbsent(gram, g -> new BitSet()).set(i);
+            }
+        }
+        // Freeze the postings as sorted arrays of hobby positions
+        Map<String, int[]> postings = new HashMap<>(grams.size() * 2);
+        for (Map.Entry<String, BitSet> entry : grams.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().stream().toArray());
+        }
+        this.postings = postings;
+    }
+
+    /**
+     * Finds the hobbies whose names contain {@code query} (ignoring case), best matches first.
+     *
+     * @param query a part of a hobby name.
+     * @param limit the maximum number of hobbies to return.
+     * @return the matching hobbies – an empty list if the query is blank or nothing matches.
+     */
+    public List<PersonDTO.InnerHobbyDTO> search(String query, int limit) {
+        String normalized = normalize(query);
+        if (normalized.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int[] candidates = candidatesOf(normalized);
+        List<Match> matches = new ArrayList<>();
+        for (int candidate : candidates) {
+            String name = names[candidate];
+            int position = name.indexOf(normalized);
+            // The n-grams may all occur in a name without the whole query occurring
+            if (position >= 0) {
+                matches.add(new Match(candidate, rankOf(name, normalized, position)));
+            }
+        }
+        matches.sort(Comparator
+                .comparingInt((Match match) -> match.rank)
+                .thenComparingInt(match -> names[match.hobby].length())
+                .thenComparing(match -> names[match.hobby]));
+        List<PersonDTO.InnerHobbyDTO> result = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            result.add(hobbies[matches.get(i).hobby]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the hobbies that contain every n-gram of the query, by intersecting their postings
+     * (starting with the shortest).
+     */
+    private int[] candidatesOf(String query) {
+        if (query.length() <= GRAM_LENGTH) {
+            return postings.getOrDefault(query, NO_HOBBIES);
+        }
+        List<int[]> lists = new ArrayList<>();
+        for (int i = 0; i + GRAM_LENGTH <= query.length(); i++) {
+            int[] posting = postings.get(query.substring(i, i + GRAM_LENGTH));
+            if (posting == null) {
+                return NO_HOBBIES;
+            }
+            lists.add(posting);
+        }
+        lists.sort(Comparator.comparingInt(posting -> posting.length));
+        int[] candidates = lists.get(0);
+        for (int i = 1; i < lists.size() && candidates.length > 0; i++) {
+            candidates = intersect(candidates, lists.get(i));
+        }
+        return candidates;
+    }
+
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+            if (a[i] < b[j]) {
+                i++;
+            }
+            else if (a[i] > b[j]) {
+                j++;
+            }
+            else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    private static int rankOf(String name, String query, int position) {
+        if (position == 0) {
+            return name.length() == query.length() ? EXACT : PREFIX;
+        }
+        // Look for the query at the start of a later word
+        for (int i = position; i >= 0; i = name.indexOf(query, i + 1)) {
+            if (!Character.isLetterOrDigit(name.charAt(i - 1))) {
+                return WORD_PREFIX;
+            }
+        }
+        return SUBSTRING;
+    }
+
+    private static Set<String> gramsOf(String name, int maxLength) {
+        Set<String> grams = new HashSet<>();
+        for (int length = 1; length <= maxLength; length++) {
+            for (int i = 0; i + length <= name.length(); i++) {
+                grams.add(name.substring(i, i + length));
+            }
+        }
+        return grams;
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static class Match {
+        private final int hobby;
+        private final int rank;
+
+        private Match(int hobby, int rank) {
+            this.hobby = hobby;
+            this.rank = rank;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * A hash map from {@code int} to {@code int} that never boxes.
+ * <p>
+ * Keys and values are stored side by side in one {@code int[]} (open addressing with linear probing),
+ * so a lookup touches one cache line in the common case and an entry costs 8 bytes plus the free slots –
+ * a {@link java.util.HashMap HashMap&lt;Integer, Integer&gt;} spends around 50 bytes on the same entry.
+ * <p>
+ * The map is not thread-safe, but {@link #get} only reads the table once,
+ * so it never fails while another thread writes – it may just return a wrong value,
+ * which a caller using optimistic locking (like {@link PhoneIndex}) detects and retries.
+ */
+public class IntIntMap {
+    private static final int FREE_KEY = 0;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final int MIN_CAPACITY = 16;
+
+    private final int missingValue;
+    private int[] table;
+    private int size;
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    /**
+     * Creates an empty map.
+     *
+     * @param expectedSize the number of entries the map should hold without growing.
+     * @param missingValue the value {@link #get} returns for a missing key.
+     */
+    public IntIntMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        this.table = new int[2 * capacityFor(expectedSize)];
+    }
+
+    /**
+     * Returns the value of a key.
+     *
+     * @param key a key.
+     * @return the value – or the missing value if the map does not contain the key.
+     */
+    public int get(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : missingValue;
+        }
+        int[] table = this.table;
+        int mask = table.length - 2;
+        int slot = slotOf(key, mask);
+        // Stop after one full round, in case the table is changed under our feet
+        for (int probes = 0; probes < table.length; probes += 2) {
+            int current = table[slot];
+            if (current == key) {
+                return table[slot + 1];
+            }
+            if (current == FREE_KEY) {
+                return missingValue;
+            }
+            slot = (slot + 2) & mask;
+        }
+        return missingValue;
+    }
+
+    /**
+     * Adds or replaces the value of a key.
+     *
+     * @param key a key.
+     * @param value the new value.
+     * @return the previous value – or the missing value if the key is new.
+     */
+    public int put(int key, int value) {
+        if (key == FREE_KEY) {
+            int previous = hasFreeKey ? freeKeyValue : missingValue;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return previous;
+        }
+        int mask = table.length - 2;
+        int slot = slotOf(key, mask);
+        while (table[slot] != FREE_KEY) {
+            if (table[slot] == key) {
+                int previous = table[slot + 1];
+                table[slot + 1] = value;
+                return previous;
+            }
+            slot = (slot + 2) & mask;
+        }
+        table[slot] = key;
+        table[slot + 1] = value;
+        if (++size > threshold()) {
+            resize(table.length * 2);
+        }
+        return missingValue;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @param key a key.
+     * @return the removed value – or the missing value if the map did not contain the key.
+     */
+    public int remove(int key) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                return missingValue;
+            }
+            hasFreeKey = false;
+            size--;
+            return freeKeyValue;
+        }
+        int mask = table.length - 2;
+        int slot = slotOf(key, mask);
+        while (table[slot] != key) {
+            if (table[slot] == FREE_KEY) {
+                return missingValue;
+            }
+            slot = (slot + 2) & mask;
+        }
+        int previous = table[slot + 1];
+        shiftKeysBack(slot, mask);
+        size--;
+        return previous;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the size of the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes held by the table (the entries plus the free slots).
+     *
+     * @return the size of the table in bytes.
+     */
+    public long getTableBytes() {
+        return 4L * table.length;
+    }
+
+    /**
+     * Removes every entry.
+     */
+    public void clear() {
+        Arrays.fill(table, FREE_KEY);
+        hasFreeKey = false;
+        size = 0;
+    }
+
+    /**
+     * Fills the gap left by a removed entry with the entries probed past it,
+     * so lookups still find them without tombstones.
+     */
+    private void shiftKeysBack(int gap, int mask) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 2) & mask;
+            int key = table[slot];
+            if (key == FREE_KEY) {
+                table[gap] = FREE_KEY;
+                table[gap + 1] = 0;
+                return;
+            }
+            int home = slotOf(key, mask);
+            // Move the entry if its home slot is not between the gap and where it lives now (cyclically)
+            if (gap <= slot ? (home <= gap || home > slot) : (home <= gap && home > slot)) {
+                table[gap] = key;
+                table[gap + 1] = table[slot + 1];
+                gap = slot;
+            }
+        }
+    }
+
+    private void resize(int newLength) {
+        int[] old = table;
+        int[] resized = new int[newLength];
+        int mask = newLength - 2;
+        for (int i = 0; i < old.length; i += 2) {
+            int key = old[i];
+            if (key != FREE_KEY) {
+                int slot = slotOf(key, mask);
+                while (resized[slot] != FREE_KEY) {
+                    slot = (slot + 2) & mask;
+                }
+                resized[slot] = key;
+                resized[slot + 1] = old[i + 1];
+            }
+        }
+        table = resized;
+    }
+
+    private int threshold() {
+        return (int) (table.length / 2 * LOAD_FACTOR);
+    }
+
+    /**
+     * Scrambles the key (phone numbers are far from random in their low bits) and returns an even index.
+     */
+    private static int slotOf(int key, int mask) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) << 1 & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / (double) LOAD_FACTOR) + 1;
+        if (needed > 1 << 29) {
+            throw new IllegalArgumentException("Too many entries: " + expectedSize);
+        }
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit((int) needed - 1) << 1);
+    }
+}
@@ -0,0 +1,218 @@
+package utils;
+
+import org.eclipse.persistence.config.QueryHints;
+import org.eclipse.persistence.queries.CursoredStream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Query;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An in-memory index from phone number to person id, so a caller-ID lookup
+ * ({@code /person/number/{number}}) can skip the phone table.
+ * <p>
+ * The index is optional: it is used when the environment variable (or system property)
+ * {@code PHONE_INDEX} is {@code true}, or after {@link #setEnabled}. It is loaded with one query
+ * the first time it is needed and kept in an {@link IntIntMap}, so ten million numbers fit in about 128 MB.
+ * <p>
+ * The facades keep it in sync by calling {@link #put} and {@link #remove} after every committed change
+ * of the phone table. Anything else that changes the table must call {@link #invalidate}.
+ * Readers never block: they read optimistically and only take the lock if a writer got in the way.
+ */
+public class PhoneIndex {
+    public static final int NO_PERSON = -1;
+    public static final int LOAD_FETCH_SIZE = 10000;
+    private static PhoneIndex INSTANCE;
+    private static EntityManagerFactory EMF;
+    private static volatile boolean ENABLED = Settings.getBoolean("PHONE_INDEX", false);
+    private static final AtomicInteger GENERATION = new AtomicInteger();
+    private static final StampedLock LOCK = new StampedLock();
+    private static volatile IntIntMap NUMBERS;
+
+    /**
+     * The default constructor is set private to ensure the class only can be accessed
+     * via {@link #getInstance}.
+     */
+    private PhoneIndex() {
+    }
+
+    /**
+     * Returns the only instance of {@link PhoneIndex}.
+     *
+     * @param emf the {@link EntityManagerFactory} used to load the phone numbers.
+     * @return {@link PhoneIndex}.
+     */
+    public static PhoneIndex getInstance(EntityManagerFactory emf) {
+        if (INSTANCE == null) {
+            EMF = emf;
+            INSTANCE = new PhoneIndex();
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Turns the index on or off (and drops it when turned off).
+     *
+     * @param enabled {@code true} to look up phone numbers in the index.
+     */
+    public static void setEnabled(boolean enabled) {
+        ENABLED = enabled;
+        if (!enabled) {
+            invalidate();
+        }
+    }
+
+    /**
+     * Returns whether lookups should use the index.
+     *
+     * @return {@code true} if the index is enabled.
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Drops the index, so the phone numbers are loaded again the next time they are needed.
+     */
+    public static void invalidate() {
+        long stamp = LOCK.writeLock();
+        try {
+            GENERATION.incrementAndGet();
+            NUMBERS = null;
+        }
+        finally {
+            LOCK.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Finds the owner of a phone number.
+     *
+     * @param number a phone number.
+     * @return the id of the person with the number – or {@link #NO_PERSON} if nobody has it.
+     */
+    public int getPersonId(int number) {
+        IntIntMap numbers = getNumbers();
+        long stamp = LOCK.tryOptimisticRead();
+        int personId = numbers.get(number);
+        if (!LOCK.validate(stamp)) {
+            // A writer changed the map while we read it, so read it again under the lock
+            stamp = LOCK.readLock();
+            try {
+                personId = numbers.get(number);
+            }
+            finally {
+                LOCK.unlockRead(stamp);
+            }
+        }
+        return personId;
+    }
+
+    /**
+     * Records that a person owns a phone number (call it after the change is committed).
+     *
+     * @param number a phone number.
+     * @param personId the id of the owner.
+     */
+    public void put(int number, int personId) {
+        long stamp = LOCK.writeLock();
+        try {
+            GENERATION.incrementAndGet();
+            IntIntMap numbers = NUMBERS;
+            if (numbers != null) {
+                numbers.put(number, personId);
+            }
+        }
+        finally {
+            LOCK.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Records that a phone number no longer exists (call it after the change is committed).
+     *
+     * @param number a phone number.
+     */
+    public void remove(int number) {
+        long stamp = LOCK.writeLock();
+        try {
+            GENERATION.incrementAndGet();
+            IntIntMap numbers = NUMBERS;
+            if (numbers != null) {
+                numbers.remove(number);
+            }
+        }
+        finally {
+            LOCK.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of phone numbers in the index.
+     *
+     * @return the size of the index (loading it if needed).
+     */
+    public int size() {
+        return getNumbers().size();
+    }
+
+    private IntIntMap getNumbers() {
+        IntIntMap numbers = NUMBERS;
+        return numbers == null ? load() : numbers;
+    }
+
+    /**
+     * Loads every phone number and publishes the index – unless the phone table was changed while loading.
+     * <p>
+     * A number that is not in the index is answered with a 404 straight away, so the index must not come from
+     * a read replica that lags behind: it opens an {@link EntityManager} on the primary instead of joining
+     * the caller's (possibly replica-bound) {@link UnitOfWork}.
+     * The rows are streamed from a cursor in chunks of {@link #LOAD_FETCH_SIZE}, so only one chunk is ever boxed.
+     */
+    private synchronized IntIntMap load() {
+        IntIntMap numbers = NUMBERS;
+        if (numbers != null) {
+            return numbers;
+        }
+        int generation = GENERATION.get();
+        EntityManager em = EMF.createEntityManager();
+        try {
+            long count = em.createQuery("SELECT COUNT(t) FROM Phone t", Long.class).getSingleResult();
+            numbers = new IntIntMap((int) count, NO_PERSON);
+            // Read the pairs as plain values, so no phone or person entities are built
+            Query phoneQuery = em.createQuery("SELECT t.number, t.person.id FROM Phone t");
+            phoneQuery.setHint(QueryHints.CURSOR, true);
+            phoneQuery.setHint(QueryHints.CURSOR_PAGE_SIZE, LOAD_FETCH_SIZE);
+            phoneQuery.setHint(QueryHints.JDBC_FETCH_SIZE, LOAD_FETCH_SIZE);
+            CursoredStream cursor = (CursoredStream) phoneQuery.getSingleResult();
+            try {
+                while (cursor.hasNext()) {
+                    for (Object row : cursor.next(LOAD_FETCH_SIZE)) {
+                        Object[] pair = (Object[]) row;
+                        numbers.put((Integer) pair[0], (Integer) pair[1]);
+                    }
+                    // Let go of the chunk before reading the next one
+                    cursor.releasePrevious();
+                }
+            }
+            finally {
+                cursor.close();
+            }
+        }
+        finally {
+            em.close();
+        }
+        long stamp = LOCK.writeLock();
+        try {
+            if (generation == GENERATION.get()) {
+                NUMBERS = numbers;
+            }
+        }
+        finally {
+            LOCK.unlockWrite(stamp);
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,225 @@
+package utils;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Wraps a JDBC {@link Connection} so the statements run on it are recorded like the ones EclipseLink runs.
+ * <p>
+ * The facades write in bulk and bump versions with plain JDBC on the connection of their transaction
+ * ({@code em.unwrap(Connection.class)}), which the {@link StatementProfiler} never sees. On a wrapped connection,
+ * every execution of a prepared statement counts in the {@link QueryStats} of the current request and,
+ * if it was slow, goes to the {@link SlowQueryLog} – with its bind parameters, or without them for a batch.
+ * <p>
+ * A batch counts as one statement (it is one round trip), and a select is timed until its rows are read
+ * and its result set is closed.
+ */
+public final class ProfiledConnection {
+
+    private ProfiledConnection() {
+    }
+
+    /**
+     * Wraps a connection.
+     *
+     * @param connection a {@link Connection}.
+     * @return a {@link Connection} that records the prepared statements it runs.
+     */
+    public static Connection wrap(Connection connection) {
+        return proxy(Connection.class, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof PreparedStatement && method.getName().equals("prepareStatement")) {
+                return new Execution((String) args[0]).wrap((PreparedStatement) result);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * The executions of one prepared statement: the parameters bound for the next one, and the select being read.
+     */
+    private static final class Execution {
+        private final String sql;
+        private final List<Object> parameters = new ArrayList<>();
+        private boolean batch;
+        private boolean reading;
+        private long nanos = -1;
+        private long rows;
+
+        Execution(String sql) {
+            this.sql = sql;
+        }
+
+        PreparedStatement wrap(PreparedStatement statement) {
+            return proxy(PreparedStatement.class, (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                }
+                else if (name.equals("addBatch") && args == null) {
+                    batch = true;
+                }
+                else if (name.equals("clearBatch")) {
+                    batch = false;
+                }
+                else if (name.equals("close")) {
+                    finish();
+                }
+                else if (name.startsWith("execute") && args == null) {
+                    return execute(statement, method);
+                }
+                return invoke(statement, method, args);
+            });
+        }
+
+        private void bind(int index, Object value) {
+            while (parameters.size() < index) {
+                parameters.add(null);
+            }
+            parameters.set(index - 1, value);
+        }
+
+        private Object execute(PreparedStatement statement, Method method) throws Throwable {
+            finish();
+            long start = System.nanoTime();
+            Object result = null;
+            try {
+                result = invoke(statement, method, null);
+                return result instanceof ResultSet ? read((ResultSet) result) : result;
+            }
+            finally {
+                nanos = System.nanoTime() - start;
+                statementExecuted();
+                if (!reading) {
+                    rows = rowsOf(result);
+                    finish();
+                }
+            }
+        }
+
+        /**
+         * Wraps the result set of a select, so the time spent reading it and its rows are recorded when it is closed.
+         */
+        private ResultSet read(ResultSet resultSet) {
+            reading = true;
+            rows = 0;
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+                if (!reading) {
+                    return invoke(resultSet, method, args);
+                }
+                String name = method.getName();
+                if (name.equals("close")) {
+                    finish();
+                    return invoke(resultSet, method, args);
+                }
+                if (!name.equals("next")) {
+                    return invoke(resultSet, method, args);
+                }
+                long start = System.nanoTime();
+                try {
+                    Object next = invoke(resultSet, method, args);
+                    if (Boolean.TRUE.equals(next)) {
+                        rows++;
+                    }
+                    return next;
+                }
+                finally {
+                    long read = System.nanoTime() - start;
+                    nanos += read;
+                    QueryStats stats = QueryStats.current();
+                    if (stats != null) {
+                        stats.databaseTimed(read);
+                    }
+                }
+            });
+        }
+
+        private void statementExecuted() {
+            QueryStats stats = QueryStats.current();
+            if (stats != null) {
+                stats.statementPrepared(sql);
+                stats.databaseTimed(nanos);
+            }
+        }
+
+        /**
+         * Records the rows of the last execution, and hands it to the slow query log if it was slow.
+         */
+        private void finish() {
+            if (nanos < 0) {
+                return;
+            }
+            reading = false;
+            QueryStats stats = QueryStats.current();
+            if (stats != null && rows > 0) {
+                stats.rowsProcessed(rows);
+            }
+            SlowQueryLog log = SlowQueryLog.getInstance();
+            if (log.isSlow(nanos)) {
+                List<Object> bound = batch ? Collections.emptyList() : new ArrayList<>(parameters);
+                log.record(new SlowQueryLog.SlowQuery(nanos, rows, sql, bound, originOf(new Throwable().getStackTrace()), null, null));
+            }
+            nanos = -1;
+            batch = false;
+        }
+    }
+
+    /**
+     * Returns the rows written by an update or a batch (-1 if unknown).
+     */
+    private static long rowsOf(Object result) {
+        if (result instanceof Number) {
+            return ((Number) result).longValue();
+        }
+        if (result instanceof int[]) {
+            long rows = 0;
+            for (int count : (int[]) result) {
+                if (count < 0) {
+                    // Statement.SUCCESS_NO_INFO
+                    return -1;
+                }
+                rows += count;
+            }
+            return rows;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the application method that ran a statement, like {@code PhoneChanges.apply:123}.
+     */
+    static String originOf(StackTraceElement[] stack) {
+        boolean inProxy = false;
+        for (StackTraceElement frame : stack) {
+            String className = frame.getClassName();
+            if (className.contains("$Proxy")) {
+                inProxy = true;
+            }
+            else if (inProxy && !StatementProfiler.isLibrary(className)) {
+                return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+            }
+        }
+        return null;
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The SQL statements executed on behalf of one REST request: how many, the rows they read or wrote,
+ * the time spent in the database – and how often the most repeated statement shape was executed.
+ * <p>
+ * A statement's shape is its SQL with the literals replaced by {@code ?}, so the same select run once
+ * per person (the classic N+1 pattern) counts as one shape executed N times.
+ * <p>
+ * {@link #start} binds the statistics to the current thread, where {@link StatementProfiler} records
+ * every statement. A request that moves part of its work to another thread (see {@code rest.FacadeExecutor})
+ * collects that thread's statements in statistics of their own and {@link #add adds} them when the work is done.
+ * The statistics are synchronized, so a thread that adds late (after the request timed out) does not
+ * race the thread reading them.
+ */
+public class QueryStats {
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+    private static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+    private final Map<String, Integer> shapes = new HashMap<>();
+    private int statements;
+    private long rows;
+    private long databaseNanos;
+    private String mostRepeated;
+    private int mostRepeatedCount;
+
+    /**
+     * Starts collecting statistics on this thread, e.g. at the beginning of a request.
+     * Statistics left behind on the thread (by a request that ended on another thread) are replaced.
+     *
+     * @return the new {@link QueryStats}.
+     */
+    public static QueryStats start() {
+        QueryStats stats = new QueryStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /**
+     * Returns the statistics collected on this thread.
+     *
+     * @return {@link QueryStats} – or {@code null} if nothing is collecting statistics.
+     */
+    public static QueryStats current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Makes this thread record its statements in the statistics of a request started on another thread.
+     *
+     * @param stats the statistics of the request – or {@code null} to stop recording.
+     */
+    public static void setCurrent(QueryStats stats) {
+        if (stats == null) {
+            CURRENT.remove();
+        }
+        else {
+            CURRENT.set(stats);
+        }
+    }
+
+    /**
+     * Stops recording in these statistics, if this thread is recording in them.
+     */
+    public void stop() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Records a statement about to be executed.
+     *
+     * @param sql the SQL of the statement (may be {@code null} if unknown).
+     */
+    synchronized void statementPrepared(String sql) {
+        statements++;
+        shapeExecuted(sql == null ? "" : shapeOf(sql), 1);
+    }
+
+    /**
+     * Records time spent in the database by the current statement.
+     */
+    synchronized void databaseTimed(long nanos) {
+        databaseNanos += nanos;
+    }
+
+    synchronized void rowsProcessed(long count) {
+        rows += count;
+    }
+
+    /**
+     * Adds the statistics collected on another thread, e.g. by a call made on behalf of the request.
+     *
+     * @param other the statistics to add (which must no longer be recording).
+     */
+    public void add(QueryStats other) {
+        Map<String, Integer> otherShapes;
+        int otherStatements;
+        long otherRows;
+        long otherNanos;
+        synchronized (other) {
+            otherShapes = new HashMap<>(other.shapes);
+            otherStatements = other.statements;
+            otherRows = other.rows;
+            otherNanos = other.databaseNanos;
+        }
+        synchronized (this) {
+            statements += otherStatements;
+            rows += otherRows;
+            databaseNanos += otherNanos;
+            otherShapes.forEach(this::shapeExecuted);
+        }
+    }
+
+    private void shapeExecuted(String shape, int times) {
+        int count = shapes.merge(shape, times, Integer::sum);
+        if (count > mostRepeatedCount) {
+            mostRepeated = shape;
+            mostRepeatedCount = count;
+        }
+    }
+
+    /**
+     * Returns the number of SQL statements executed.
+     *
+     * @return the number of statements.
+     */
+    public synchronized int getStatements() {
+        return statements;
+    }
+
+    /**
+     * Returns the number of rows read or written by the queries that went to the database.
+     *
+     * @return the number of rows.
+     */
+    public synchronized long getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the time spent preparing, executing and fetching statements.
+     *
+     * @return the database time in nanoseconds.
+     */
+    public synchronized long getDatabaseNanos() {
+        return databaseNanos;
+    }
+
+    /**
+     * Returns the statement shape executed most often.
+     *
+     * @return the SQL with its literals replaced by {@code ?} – or {@code null} if no statement was executed.
+     */
+    public synchronized String getMostRepeated() {
+        return mostRepeated;
+    }
+
+    /**
+     * Returns how often the {@link #getMostRepeated most repeated} statement shape was executed.
+     *
+     * @return the number of executions.
+     */
+    public synchronized int getMostRepeatedCount() {
+        return mostRepeatedCount;
+    }
+
+    /**
+     * Returns the shape of a statement: its SQL with every literal replaced by {@code ?},
+     * and every list of parameters by {@code (?)}.
+     *
+     * @param sql the SQL of a statement.
+     * @return the shape.
+     */
+    public static String shapeOf(String sql) {
+        String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+        shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+        return PARAMETER_LIST.matcher(shape).replaceAll("(?)");
+    }
+}
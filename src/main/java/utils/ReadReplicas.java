@@ -0,0 +1,71 @@
+package utils;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Knows the read-only replica of every {@link EntityManagerFactory} that has one,
+ * so the units of work of GET requests can read from the replica (see {@link UnitOfWork#start(boolean)}).
+ * <p>
+ * {@link EMF_Creator} registers a replica when {@code READ_CONNECTION_STR} is set. A client that has just
+ * changed something reads from the primary for {@code READ_YOUR_WRITES_MILLIS} (default 5 seconds),
+ * so it sees its own changes even if the replica lags behind.
+ */
+public class ReadReplicas {
+    public static final int DEFAULT_READ_YOUR_WRITES_MILLIS = 5000;
+    private static final Map<EntityManagerFactory, EntityManagerFactory> REPLICAS = new ConcurrentHashMap<>();
+    private static final int READ_YOUR_WRITES_MILLIS = Settings.getInt("READ_YOUR_WRITES_MILLIS", DEFAULT_READ_YOUR_WRITES_MILLIS);
+
+    private ReadReplicas() {
+    }
+
+    /**
+     * Routes the reads of a factory to a replica.
+     *
+     * @param primary the factory the facades are given.
+     * @param replica a factory reading from a replica of the same database.
+     */
+    public static void register(EntityManagerFactory primary, EntityManagerFactory replica) {
+        REPLICAS.put(primary, replica);
+    }
+
+    /**
+     * Stops routing the reads of a factory to its replica.
+     *
+     * @param primary the factory the facades are given.
+     * @return the replica – or {@code null} if the factory had none.
+     */
+    public static EntityManagerFactory unregister(EntityManagerFactory primary) {
+        return REPLICAS.remove(primary);
+    }
+
+    /**
+     * Returns whether any factory has a replica.
+     *
+     * @return {@code true} if reads can be routed.
+     */
+    public static boolean isEnabled() {
+        return !REPLICAS.isEmpty();
+    }
+
+    /**
+     * Returns the factory to read from.
+     *
+     * @param primary the factory the facades are given.
+     * @return its replica – or the factory itself if it has none.
+     */
+    public static EntityManagerFactory route(EntityManagerFactory primary) {
+        EntityManagerFactory replica = REPLICAS.get(primary);
+        return replica == null ? primary : replica;
+    }
+
+    /**
+     * Returns for how long a client reads from the primary after a change.
+     *
+     * @return the read-your-writes window in milliseconds.
+     */
+    public static int getReadYourWritesMillis() {
+        return READ_YOUR_WRITES_MILLIS;
+    }
+}
@@ -0,0 +1,153 @@
+package utils;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records the latency, status codes and requests in flight of every resource method (see {@code rest.MetricsFilter}).
+ * <p>
+ * An {@link Endpoint} is created the first time its resource method is called. After that, finding it
+ * and recording a request allocates nothing: a map lookup by {@link Method}, a few atomic increments
+ * and a {@link LatencyHistogram} bucket.
+ */
+public class RequestMetrics {
+    private static final RequestMetrics INSTANCE = new RequestMetrics();
+    private static final int MAX_STATUS = 599;
+
+    private final ConcurrentMap<Method, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    RequestMetrics() {
+    }
+
+    /**
+     * Returns the metrics shared by every request.
+     *
+     * @return {@link RequestMetrics}.
+     */
+    public static RequestMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the metrics of a resource method – and creates them the first time.
+     *
+     * @param method the resource method.
+     * @param httpMethod the HTTP method it answers, e.g. {@code GET}.
+     * @return {@link Endpoint}.
+     */
+    public Endpoint getEndpoint(Method method, String httpMethod) {
+        Endpoint endpoint = endpoints.get(method);
+        if (endpoint == null) {
+            Endpoint created = new Endpoint(method.getDeclaringClass().getSimpleName() + "." + method.getName(), httpMethod);
+            endpoint = endpoints.putIfAbsent(method, created);
+            if (endpoint == null) {
+                endpoint = created;
+            }
+        }
+        return endpoint;
+    }
+
+    /**
+     * Returns the metrics of every resource method called so far, sorted by name.
+     *
+     * @return {@link List}.
+     */
+    public List<Endpoint> getEndpoints() {
+        List<Endpoint> sorted = new ArrayList<>(endpoints.values());
+        sorted.sort(Comparator.comparing(Endpoint::getName).thenComparing(Endpoint::getHttpMethod));
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * The metrics of one resource method.
+     */
+    public static class Endpoint {
+        private final String name;
+        private final String httpMethod;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder inFlight = new LongAdder();
+        private final AtomicLongArray statuses = new AtomicLongArray(MAX_STATUS + 1);
+
+        Endpoint(String name, String httpMethod) {
+            this.name = name;
+            this.httpMethod = httpMethod;
+        }
+
+        /**
+         * Records that a request has started.
+         */
+        public void start() {
+            inFlight.increment();
+        }
+
+        /**
+         * Records that a request has ended.
+         *
+         * @param nanos the latency in nanoseconds.
+         * @param status the status of the response.
+         */
+        public void end(long nanos, int status) {
+            inFlight.decrement();
+            latency.record(nanos);
+            statuses.incrementAndGet(status < 0 || status > MAX_STATUS ? 0 : status);
+        }
+
+        /**
+         * Returns the name, e.g. {@code PersonResource.getPersonById}.
+         *
+         * @return the resource class and method.
+         */
+        public String getName() {
+            return name;
+        }
+
+        public String getHttpMethod() {
+            return httpMethod;
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * Returns the number of requests that have started but not ended.
+         *
+         * @return the requests in flight.
+         */
+        public long getInFlight() {
+            return inFlight.sum();
+        }
+
+        /**
+         * Returns the number of responses with a status.
+         *
+         * @param status an HTTP status (0 counts the statuses out of range).
+         * @return the number of responses.
+         */
+        public long getStatusCount(int status) {
+            return status < 0 || status > MAX_STATUS ? 0 : statuses.get(status);
+        }
+
+        /**
+         * Returns the statuses that have been answered at least once.
+         *
+         * @return the statuses in ascending order.
+         */
+        public List<Integer> getStatuses() {
+            List<Integer> answered = new ArrayList<>();
+            for (int status = 0; status <= MAX_STATUS; status++) {
+                if (statuses.get(status) > 0) {
+                    answered.add(status);
+                }
+            }
+            return answered;
+        }
+    }
+}
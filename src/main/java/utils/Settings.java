@@ -0,0 +1,59 @@
+package utils;
+
+/**
+ * Reads settings from environment variables (like {@code CONNECTION_STR}),
+ * falling back on system properties of the same name, so tests can set them too.
+ */
+public class Settings {
+
+    private Settings() {
+    }
+
+    /**
+     * Returns a setting.
+     *
+     * @param name the name of an environment variable or system property.
+     * @param defaultValue returned if the setting is missing.
+     * @return the value of the setting.
+     */
+    public static String getString(String name, String defaultValue) {
+        String value = System.getenv(name);
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getProperty(name);
+        }
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    /**
+     * Returns a setting as an {@code int}.
+     *
+     * @param name the name of an environment variable or system property.
+     * @param defaultValue returned if the setting is missing.
+     * @return the value of the setting.
+     * @throws IllegalArgumentException if the setting is not a number.
+     */
+    public static int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The setting " + name + " must be a number, but was " + value + ".");
+        }
+    }
+
+    /**
+     * Returns a setting as a {@code boolean}.
+     *
+     * @param name the name of an environment variable or system property.
+     * @param defaultValue returned if the setting is missing.
+     * @return {@code true} if the setting is "true" (ignoring case).
+     */
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
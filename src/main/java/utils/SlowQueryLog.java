@@ -0,0 +1,302 @@
+package utils;
+
+import org.eclipse.persistence.sessions.Record;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.queries.SQLCall;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.FileHandler;
+import java.util.logging.Formatter;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Writes the SQL statements slower than a threshold to a rolling file: the SQL, its bind parameters,
+ * the duration, the rows and the application method that ran it – and, for the slowest ones,
+ * the execution plan ({@code EXPLAIN}) of a select.
+ * <p>
+ * The statements are recorded by {@link StatementProfiler} and written by a background thread,
+ * so a slow request is not slowed down further. If the thread falls behind, statements are dropped (and counted).
+ * <p>
+ * Configured by the environment variables (or system properties) {@code SLOW_QUERY_MILLIS} (200, -1 turns the log off),
+ * {@code SLOW_QUERY_EXPLAIN_MILLIS} (-1, off), {@code SLOW_QUERY_LOG} (a {@link FileHandler} pattern,
+ * by default {@code %t/information-slow-queries.%g.log}), {@code SLOW_QUERY_LOG_SIZE} (bytes per file)
+ * and {@code SLOW_QUERY_LOG_FILES}.
+ */
+public class SlowQueryLog {
+    public static final int DEFAULT_THRESHOLD = 200;
+    public static final int DEFAULT_EXPLAIN_THRESHOLD = -1;
+    public static final String DEFAULT_PATTERN = "%t/information-slow-queries.%g.log";
+    public static final int DEFAULT_FILE_SIZE = 10 * 1024 * 1024;
+    public static final int DEFAULT_FILES = 5;
+    private static final int QUEUE_SIZE = 1000;
+    private static final int MAX_VALUE_LENGTH = 200;
+    private static final Logger LOGGER = Logger.getLogger(SlowQueryLog.class.getName());
+    private static volatile SlowQueryLog INSTANCE;
+
+    private final long thresholdNanos;
+    private final long explainThresholdNanos;
+    private final String pattern;
+    private final int fileSize;
+    private final int files;
+    private final BlockingQueue<SlowQuery> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private Thread writer;
+
+    /**
+     * Creates a log; use {@link #getInstance} to share the one configured by the settings.
+     *
+     * @param thresholdMillis the duration a statement must reach to be logged (-1 to log nothing).
+     * @param explainThresholdMillis the duration a select must reach to have its plan logged (-1 to log no plans).
+     * @param pattern where to write the files (see {@link FileHandler}).
+     * @param fileSize the size a file may reach before the next one is started.
+     * @param files the number of files to rotate between.
+     */
+    SlowQueryLog(long thresholdMillis, long explainThresholdMillis, String pattern, int fileSize, int files) {
+        this.thresholdNanos = thresholdMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.explainThresholdNanos = explainThresholdMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(explainThresholdMillis);
+        this.pattern = pattern;
+        this.fileSize = fileSize;
+        this.files = files;
+    }
+
+    /**
+     * Returns the log configured by the settings.
+     *
+     * @return the only instance of {@link SlowQueryLog}.
+     */
+    public static SlowQueryLog getInstance() {
+        SlowQueryLog log = INSTANCE;
+        if (log == null) {
+            synchronized (SlowQueryLog.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SlowQueryLog(
+                            Settings.getInt("SLOW_QUERY_MILLIS", DEFAULT_THRESHOLD),
+                            Settings.getInt("SLOW_QUERY_EXPLAIN_MILLIS", DEFAULT_EXPLAIN_THRESHOLD),
+                            Settings.getString("SLOW_QUERY_LOG", DEFAULT_PATTERN),
+                            Settings.getInt("SLOW_QUERY_LOG_SIZE", DEFAULT_FILE_SIZE),
+                            Settings.getInt("SLOW_QUERY_LOG_FILES", DEFAULT_FILES));
+                }
+                log = INSTANCE;
+            }
+        }
+        return log;
+    }
+
+    /**
+     * Replaces the shared log (for tests).
+     *
+     * @return the previous log.
+     */
+    static synchronized SlowQueryLog setInstance(SlowQueryLog log) {
+        SlowQueryLog previous = getInstance();
+        INSTANCE = log;
+        return previous;
+    }
+
+    /**
+     * Returns whether a statement took long enough to be logged.
+     *
+     * @param nanos the duration of the statement.
+     * @return {@code true} if the statement should be {@link #record recorded}.
+     */
+    public boolean isSlow(long nanos) {
+        return nanos >= thresholdNanos;
+    }
+
+    /**
+     * Returns whether a select took long enough to have its plan logged.
+     *
+     * @param nanos the duration of the statement.
+     * @return {@code true} if the plan should be logged.
+     */
+    public boolean shouldExplain(long nanos) {
+        return nanos >= explainThresholdNanos;
+    }
+
+    /**
+     * Queues a slow statement for the file (the caller is not blocked).
+     *
+     * @param query the statement.
+     */
+    void record(SlowQuery query) {
+        recorded.increment();
+        startWriter();
+        if (!queue.offer(query)) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Returns the number of slow statements recorded.
+     *
+     * @return the number of statements.
+     */
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    /**
+     * Returns the number of slow statements dropped because the writer fell behind.
+     *
+     * @return the number of statements.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Returns the number of slow statements written to the file.
+     *
+     * @return the number of statements.
+     */
+    public long getWritten() {
+        return written.sum();
+    }
+
+    /**
+     * Stops the writer thread and closes the file (the statements still queued are dropped).
+     */
+    synchronized void close() throws InterruptedException {
+        if (writer != null) {
+            writer.interrupt();
+            // Wait for the file to be closed
+            writer.join();
+            writer = null;
+        }
+    }
+
+    private synchronized void startWriter() {
+        if (writer == null) {
+            writer = new Thread(this::write, "slow-query-log");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    private void write() {
+        // The plans are queried on this thread, and must not be logged themselves
+        StatementProfiler.ignoreCurrentThread();
+        FileHandler handler = null;
+        try {
+            handler = new FileHandler(pattern, fileSize, files, true);
+            handler.setFormatter(new Formatter() {
+                @Override
+                public String format(LogRecord record) {
+                    return record.getMessage();
+                }
+            });
+            while (true) {
+                SlowQuery query = queue.take();
+                handler.publish(new LogRecord(Level.INFO, format(query)));
+                handler.flush();
+                written.increment();
+            }
+        }
+        catch (IOException e) {
+            LOGGER.log(Level.WARNING, "The slow query log " + pattern + " could not be opened.", e);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finally {
+            if (handler != null) {
+                handler.close();
+            }
+        }
+    }
+
+    private static String format(SlowQuery query) {
+        StringBuilder out = new StringBuilder(256);
+        out.append(Instant.ofEpochMilli(query.time))
+                .append(String.format(Locale.ROOT, " %.1f ms", query.nanos / (double) TimeUnit.MILLISECONDS.toNanos(1)))
+                .append(query.rows < 0 ? "" : ", " + query.rows + " rows")
+                .append(query.origin == null ? "" : ", " + query.origin)
+                .append(System.lineSeparator());
+        out.append("  SQL:  ").append(query.sql).append(System.lineSeparator());
+        if (query.parameters != null && !query.parameters.isEmpty()) {
+            out.append("  bind: [");
+            for (int i = 0; i < query.parameters.size(); i++) {
+                out.append(i == 0 ? "" : ", ").append(abbreviate(String.valueOf(query.parameters.get(i))));
+            }
+            out.append(']').append(System.lineSeparator());
+        }
+        if (query.explainSql != null) {
+            for (String line : explain(query.session, query.explainSql)) {
+                // Indent a plan spread over several lines (like H2's) under the first one
+                out.append("  plan: ").append(line.replace("\n", System.lineSeparator() + "        ")).append(System.lineSeparator());
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Runs {@code EXPLAIN} for a select (with its parameters filled in) and returns the plan, a line per row.
+     */
+    private static String[] explain(Session session, String sql) {
+        try {
+            @SuppressWarnings("unchecked")
+            List<Record> rows = session.executeSelectingCall(new SQLCall("EXPLAIN " + sql));
+            String[] lines = new String[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                StringBuilder line = new StringBuilder();
+                for (Object value : rows.get(i).values()) {
+                    line.append(line.length() == 0 ? "" : " | ").append(value);
+                }
+                lines[i] = line.toString();
+            }
+            return lines;
+        }
+        catch (RuntimeException e) {
+            return new String[]{"(no plan: " + e.getMessage() + ")"};
+        }
+    }
+
+    private static String abbreviate(String value) {
+        return value.length() <= MAX_VALUE_LENGTH ? value : value.substring(0, MAX_VALUE_LENGTH) + "...";
+    }
+
+    /**
+     * A slow statement waiting to be written.
+     */
+    static class SlowQuery {
+        final long time;
+        final long nanos;
+        final long rows;
+        final String sql;
+        final List<?> parameters;
+        final String origin;
+        final Session session;
+        final String explainSql;
+
+        /**
+         * @param nanos the duration of the statement.
+         * @param rows the rows read or written (-1 if unknown).
+         * @param sql the SQL of the statement.
+         * @param parameters the values bound to the statement (may be {@code null}).
+         * @param origin the application method that ran the statement (may be {@code null}).
+         * @param session the session to run {@code EXPLAIN} in.
+         * @param explainSql the select to explain, with its parameters filled in – or {@code null} to log no plan.
+         */
+        SlowQuery(long nanos, long rows, String sql, List<?> parameters, String origin, Session session, String explainSql) {
+            this.time = System.currentTimeMillis();
+            this.nanos = nanos;
+            this.rows = rows;
+            this.sql = sql;
+            this.parameters = parameters;
+            this.origin = origin;
+            this.session = session;
+            this.explainSql = explainSql;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package utils;
+
+import org.eclipse.persistence.internal.sessions.AbstractRecord;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.queries.ModifyQuery;
+import org.eclipse.persistence.sessions.Record;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.sessions.SessionProfilerAdapter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Times every SQL statement, records it in the {@link QueryStats} of the current request
+ * and hands the slow ones to the {@link SlowQueryLog}.
+ * <p>
+ * It is installed by persistence.xml ({@code eclipselink.profiler}). A statement is timed from the moment
+ * it is prepared, over its execution, to the last fetched row. Its rows are known when it is the last
+ * statement of a query – otherwise the slow query log shows no row count.
+ */
+public class StatementProfiler extends SessionProfilerAdapter {
+    private static final ThreadLocal<Statement> CURRENT = ThreadLocal.withInitial(Statement::new);
+
+    private volatile Session session;
+
+    /**
+     * The statement being run on a thread (reused for every statement on the thread).
+     */
+    private static final class Statement {
+        boolean ignored;
+        boolean pending;
+        DatabaseQuery query;
+        String sql;
+        long nanos;
+        long prepared;
+        int queryDepth;
+        int databaseDepth;
+        long databaseStart;
+    }
+
+    /**
+     * Stops timing the statements run on this thread (the slow query log's own {@code EXPLAIN}s).
+     */
+    static void ignoreCurrentThread() {
+        CURRENT.get().ignored = true;
+    }
+
+    @Override
+    public void setSession(Session session) {
+        this.session = session;
+    }
+
+    @Override
+    public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        if (!isDatabaseOperation(operationName)) {
+            return;
+        }
+        Statement statement = CURRENT.get();
+        if (statement.ignored) {
+            return;
+        }
+        // Every statement is prepared once, but a select is timed as executing twice (before and after fetching)
+        if (SessionProfiler.SqlPrepare.equals(operationName)) {
+            finish(statement, -1);
+            statement.pending = true;
+            statement.query = query;
+            statement.sql = query == null ? null : query.getSQLString();
+            statement.nanos = 0;
+            statement.prepared++;
+            QueryStats stats = QueryStats.current();
+            if (stats != null) {
+                stats.statementPrepared(statement.sql);
+            }
+        }
+        if (statement.databaseDepth++ == 0) {
+            statement.databaseStart = System.nanoTime();
+        }
+    }
+
+    @Override
+    public void endOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        if (!isDatabaseOperation(operationName)) {
+            return;
+        }
+        Statement statement = CURRENT.get();
+        if (statement.ignored || statement.databaseDepth == 0 || --statement.databaseDepth > 0) {
+            return;
+        }
+        long nanos = System.nanoTime() - statement.databaseStart;
+        statement.nanos += nanos;
+        QueryStats stats = QueryStats.current();
+        if (stats != null) {
+            stats.databaseTimed(nanos);
+        }
+    }
+
+    @Override
+    public Object profileExecutionOfQuery(DatabaseQuery query, Record row, AbstractSession session) {
+        Statement statement = CURRENT.get();
+        if (statement.ignored) {
+            return session.internalExecuteQuery(query, (AbstractRecord) row);
+        }
+        long prepared = statement.prepared;
+        // A query is passed on from the unit of work to the session, so only count the outermost result
+        boolean outermost = statement.queryDepth++ == 0;
+        long rows = -1;
+        try {
+            Object result = session.internalExecuteQuery(query, (AbstractRecord) row);
+            if (outermost && statement.prepared > prepared) {
+                rows = countRows(query, result);
+                QueryStats stats = QueryStats.current();
+                if (stats != null) {
+                    stats.rowsProcessed(rows);
+                }
+            }
+            return result;
+        }
+        finally {
+            statement.queryDepth--;
+            if (outermost) {
+                finish(statement, rows);
+            }
+        }
+    }
+
+    @Override
+    public int getProfileWeight() {
+        return SessionProfiler.ALL;
+    }
+
+    /**
+     * Hands the pending statement of a thread to the slow query log if it was slow.
+     */
+    private void finish(Statement statement, long rows) {
+        if (!statement.pending) {
+            return;
+        }
+        statement.pending = false;
+        DatabaseQuery query = statement.query;
+        statement.query = null;
+        SlowQueryLog log = SlowQueryLog.getInstance();
+        if (!log.isSlow(statement.nanos) || statement.sql == null) {
+            return;
+        }
+        Session session = this.session;
+        String explainSql = null;
+        if (session != null && query.isReadQuery() && log.shouldExplain(statement.nanos)) {
+            explainSql = translate(query, session);
+        }
+        log.record(new SlowQueryLog.SlowQuery(statement.nanos, rows, statement.sql, parametersOf(query),
+                originOf(new Throwable().getStackTrace()), session, explainSql));
+    }
+
+    private static boolean isDatabaseOperation(String operationName) {
+        return SessionProfiler.SqlPrepare.equals(operationName)
+                || SessionProfiler.StatementExecute.equals(operationName)
+                || SessionProfiler.RowFetch.equals(operationName);
+    }
+
+    /**
+     * Returns the rows behind a query result: the size of a list, the count of an update or delete,
+     * and one for a single object (or value, like a count).
+     */
+    private static long countRows(DatabaseQuery query, Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (query.isModifyQuery() && result instanceof Number) {
+            return ((Number) result).longValue();
+        }
+        return 1;
+    }
+
+    /**
+     * Returns the values bound to a statement: the arguments of the query, and the values written by an insert or update.
+     */
+    private static List<Object> parametersOf(DatabaseQuery query) {
+        List<Object> parameters = new ArrayList<>();
+        AbstractRecord arguments = query.getTranslationRow();
+        if (arguments != null) {
+            parameters.addAll((List<?>) arguments.getValues());
+        }
+        if (query instanceof ModifyQuery && ((ModifyQuery) query).getModifyRow() != null) {
+            parameters.addAll((List<?>) ((ModifyQuery) query).getModifyRow().getValues());
+        }
+        return parameters;
+    }
+
+    /**
+     * Returns the SQL of a select with its parameters filled in – or {@code null} if it cannot be built.
+     */
+    private static String translate(DatabaseQuery query, Session session) {
+        try {
+            return query.getTranslatedSQLString(session, query.getTranslationRow());
+        }
+        catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the application method that called EclipseLink (a facade, as a rule), like {@code PersonFacade.getPerson:123}.
+     */
+    static String originOf(StackTraceElement[] stack) {
+        boolean inEclipseLink = false;
+        for (StackTraceElement frame : stack) {
+            String className = frame.getClassName();
+            if (className.startsWith("org.eclipse.")) {
+                inEclipseLink = true;
+            }
+            else if (inEclipseLink && !isLibrary(className)) {
+                return className.substring(className.lastIndexOf('.') + 1) + "." + frame.getMethodName() + ":" + frame.getLineNumber();
+            }
+        }
+        return null;
+    }
+
+    static boolean isLibrary(String className) {
+        return className.startsWith("java.") || className.startsWith("javax.") || className.startsWith("sun.")
+                || className.startsWith("jdk.") || className.startsWith("com.sun.");
+    }
+}
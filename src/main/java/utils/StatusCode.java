@@ -2,7 +2,10 @@ package utils;
 
 public class StatusCode {
     public static final int OK = 200;
+    public static final int BAD_REQUEST = 400;
     public static final int NOT_FOUND = 404;
     public static final int FOUND = 405;
+    public static final int PRECONDITION_FAILED = 412;
     public static final int INTERNAL_ERROR = 500;
+    public static final int SERVICE_UNAVAILABLE = 503;
 }
@@ -0,0 +1,163 @@
+package utils;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A unit of work that shares one {@link EntityManager} between every facade method
+ * (and {@link FacadeUtility} lookup) called on the same thread.
+ * <p>
+ * The first call to {@link #begin(EntityManagerFactory)} on a thread opens the entity manager,
+ * nested calls join it, and it is closed when the outermost unit of work is {@link #close closed}.
+ * A REST request opens the outermost unit of work with {@link #start} (see {@code rest.UnitOfWorkFilter}),
+ * so every lookup made while handling the request shares one persistence context that is closed
+ * deterministically when the request ends.
+ * <p>
+ * A unit of work started for reading opens its entity manager on the {@link ReadReplicas read replica}
+ * of the factory, if it has one.
+ * <pre>
+ * UnitOfWork uow = UnitOfWork.begin(EMF);
+ * try {
+ *     EntityManager em = uow.getEntityManager();
+ *     ...
+ * }
+ * finally {
+ *     uow.close();
+ * }
+ * </pre>
+ */
+public class UnitOfWork implements AutoCloseable {
+    private static final ThreadLocal<UnitOfWork> CURRENT = new ThreadLocal<>();
+    private static final AtomicInteger OPEN_ENTITY_MANAGERS = new AtomicInteger();
+
+    private EntityManager em;
+    private int depth;
+    private boolean reading;
+
+    /**
+     * The default constructor is set private to ensure a unit of work only can be
+     * started via {@link #start} or {@link #begin}.
+     */
+    private UnitOfWork() {
+    }
+
+    /**
+     * Starts the outermost unit of work on this thread, e.g. at the beginning of a request.
+     * <p>
+     * No {@link EntityManager} is opened until a facade asks for one.
+     * A unit of work left behind on the thread (if it was never closed) is closed first.
+     *
+     * @return the new {@link UnitOfWork}.
+     */
+    public static UnitOfWork start() {
+        return start(false);
+    }
+
+    /**
+     * Starts the outermost unit of work on this thread like {@link #start()}, for reading or writing.
+     *
+     * @param reading {@code true} if nothing is written, so the data may come from a {@link ReadReplicas read replica}.
+     * @return the new {@link UnitOfWork}.
+     */
+    public static UnitOfWork start(boolean reading) {
+        UnitOfWork stale = CURRENT.get();
+        if (stale != null) {
+            stale.depth = 1;
+            stale.close();
+        }
+        UnitOfWork uow = begin(null);
+        uow.reading = reading;
+        return uow;
+    }
+
+    /**
+     * Returns whether the unit of work on this thread was started for reading.
+     *
+     * @return {@code true} if the current unit of work reads from a replica (if there is one).
+     */
+    public static boolean isReading() {
+        UnitOfWork uow = CURRENT.get();
+        return uow != null && uow.reading;
+    }
+
+    /**
+     * Joins the unit of work on this thread – or starts one if there is none.
+     *
+     * @param emf the {@link EntityManagerFactory} used if an {@link EntityManager} has to be opened.
+     * @return the current {@link UnitOfWork}, which must be {@link #close closed} by the caller.
+     */
+    public static UnitOfWork begin(EntityManagerFactory emf) {
+        UnitOfWork uow = CURRENT.get();
+        if (uow == null) {
+            uow = new UnitOfWork();
+            CURRENT.set(uow);
+        }
+        if (uow.em == null && emf != null) {
+            uow.em = (uow.reading ? ReadReplicas.route(emf) : emf).createEntityManager();
+            OPEN_ENTITY_MANAGERS.incrementAndGet();
+        }
+        uow.depth++;
+        return uow;
+    }
+
+    /**
+     * Returns whether this is the unit of work of the current thread, i.e. it is closed on the thread that started it.
+     *
+     * @return {@code true} if this thread runs in this unit of work.
+     */
+    public boolean isCurrent() {
+        return CURRENT.get() == this;
+    }
+
+    /**
+     * Returns the {@link EntityManager} shared by this unit of work.
+     *
+     * @return {@link EntityManager}.
+     * @throws IllegalStateException if the unit of work was started without an {@link EntityManagerFactory}
+     *                               and no facade has opened an entity manager yet.
+     */
+    public EntityManager getEntityManager() {
+        if (em == null) {
+            throw new IllegalStateException("No entity manager has been opened in this unit of work.");
+        }
+        return em;
+    }
+
+    /**
+     * Leaves the unit of work. The outermost call rolls back any transaction left active,
+     * closes the {@link EntityManager} and removes the unit of work from the thread.
+     */
+    @Override
+    public void close() {
+        if (--depth > 0) {
+            return;
+        }
+        // An asynchronous request may end on another thread than the one it started on
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+        if (em != null) {
+            try {
+                if (em.getTransaction().isActive()) {
+                    em.getTransaction().rollback();
+                }
+                em.close();
+            }
+            finally {
+                em = null;
+                OPEN_ENTITY_MANAGERS.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of {@link EntityManager entity managers} opened by units of work
+     * that are not yet closed.
+     *
+     * @return the number of open entity managers.
+     */
+    public static int getNumberOfOpenEntityManagers() {
+        return OPEN_ENTITY_MANAGERS.get();
+    }
+}
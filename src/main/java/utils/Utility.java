@@ -9,6 +9,7 @@ import java.util.Properties;
 import java.util.Set;
 import com.google.gson.*;
 import dtos.PersonDTO;
+import json.GsonFactory;
 
 import java.io.UnsupportedEncodingException;
 
@@ -17,7 +18,7 @@ import java.io.UnsupportedEncodingException;
  * @author tha
  */
 public class Utility {
-    private static Gson gson = new GsonBuilder().create();
+    private static Gson gson = GsonFactory.getGson();
     
     public static void printAllProperties() {
         Properties prop = System.getProperties();
@@ -0,0 +1,169 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import dtos.HobbyDTO;
+import dtos.PersonDTO;
+import entities.Address;
+import entities.Hobby;
+import entities.Person;
+import entities.Phone;
+import errorhandling.EntityFoundException;
+import facades.PhoneChanges;
+import json.GsonFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the conversions every request goes through, on synthetic entity graphs (no database):
+ * entity to DTO, DTO to entity, a Gson round trip, and the phone diff of an update.
+ * <p>
+ * A person has three phones and four hobbies, like the persons the populator creates; a hobby has
+ * a small or a large member list, and the phone diff compares the rows of a person's phones with a changed list.
+ * <p>
+ * Run every DTO benchmark with {@code mvn -P benchmarks test}, which writes the results as JSON
+ * to {@code target/jmh} (see the {@code benchmarks} profile in the pom).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoConversionBenchmark {
+    private static final Gson GSON = GsonFactory.getGson();
+
+    @State(Scope.Benchmark)
+    public static class PersonState {
+        private Person person;
+        private PersonDTO personDTO;
+        private String json;
+
+        @Setup
+        public void setUp() {
+            person = person(1, 3, 4);
+            personDTO = new PersonDTO(person);
+            json = GSON.toJson(personDTO);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class HobbyState {
+        @Param({"20", "1000"})
+        private int members;
+
+        private Hobby hobby;
+        private String json;
+
+        @Setup
+        public void setUp() {
+            hobby = hobby(1);
+            for (int i = 0; i < members; i++) {
+                Person member = person(i, 3, 0);
+                member.addHobby(hobby);
+                hobby.addPerson(member);
+            }
+            json = GSON.toJson(new HobbyDTO(hobby));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class PhoneState {
+        @Param({"3", "100", "500"})
+        private int phones;
+
+        private Map<Integer, String> descriptions;
+        private List<Object[]> rows;
+
+        @Setup
+        public void setUp() {
+            descriptions = new LinkedHashMap<>();
+            rows = new ArrayList<>();
+            for (int i = 0; i < phones; i++) {
+                rows.add(new Object[]{20000000 + i, 1, "Mobile"});
+                // Keep every other phone, describe a few of them anew, and add as many new ones
+                descriptions.put(20000000 + 2 * i, i % 10 == 0 ? "Work" : "Mobile");
+            }
+            for (int i = 0; i < phones; i += 2) {
+                // The query also returns the phones the person should have (and already has)
+                rows.add(rows.get(i));
+            }
+        }
+    }
+
+    @Benchmark
+    public PersonDTO personToDto(PersonState state) {
+        return new PersonDTO(state.person);
+    }
+
+    @Benchmark
+    public Person dtoToPerson(PersonState state) {
+        return new Person(state.personDTO);
+    }
+
+    @Benchmark
+    public PersonDTO personRoundTrip(PersonState state) {
+        return GSON.fromJson(GSON.toJson(state.personDTO), PersonDTO.class);
+    }
+
+    @Benchmark
+    public PersonDTO personFromJson(PersonState state) {
+        return GSON.fromJson(state.json, PersonDTO.class);
+    }
+
+    @Benchmark
+    public HobbyDTO hobbyToDto(HobbyState state) {
+        return new HobbyDTO(state.hobby);
+    }
+
+    @Benchmark
+    public HobbyDTO hobbyRoundTrip(HobbyState state) {
+        return GSON.fromJson(GSON.toJson(new HobbyDTO(state.hobby)), HobbyDTO.class);
+    }
+
+    @Benchmark
+    public HobbyDTO hobbyFromJson(HobbyState state) {
+        return GSON.fromJson(state.json, HobbyDTO.class);
+    }
+
+    @Benchmark
+    public PhoneChanges phoneDiff(PhoneState state) throws EntityFoundException {
+        return PhoneChanges.of(1, state.descriptions, state.rows);
+    }
+
+    private static Person person(int id, int phones, int hobbies) {
+        Address address = new Address("Street " + id, 2800 + id % 50);
+        address.setId(id);
+        Person person = new Person("First " + id, "Last " + id, "person" + id + "@mail.dk", address);
+        person.setId(id);
+        for (int i = 0; i < phones; i++) {
+            person.addPhone(new Phone(20000000 + 10 * id + i, i == 0 ? "Mobile" : "Work", person));
+        }
+        for (int i = 0; i < hobbies; i++) {
+            person.addHobby(hobby(i));
+        }
+        return person;
+    }
+
+    private static Hobby hobby(int id) {
+        Hobby hobby = new Hobby("Generel", "Hobby " + id, "Indendørs", "https://da.wikipedia.org/wiki/Hobby_" + id);
+        hobby.setId(id);
+        return hobby;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DtoConversionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,104 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import dtos.AddressDTO;
+import dtos.HobbyDTO;
+import dtos.PersonDTO;
+import dtos.PersonPageDTO;
+import dtos.PhoneDTO;
+import json.GsonFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the hand-written adapters of {@link json.DtoTypeAdapterFactory} with Gson's reflection,
+ * writing and reading the same DTOs.
+ * <p>
+ * The allocation rate is reported by the GC profiler as {@code gc.alloc.rate} (and per operation as
+ * {@code gc.alloc.rate.norm}).
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * "-Dexec.args=-classpath %classpath benchmarks.DtoJsonBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DtoJsonBenchmark {
+
+    @Param({"reflection", "adapters"})
+    private String gson;
+
+    @Param({"person", "personPage", "hobby"})
+    private String dto;
+
+    private Gson selected;
+    private Object value;
+    private Class<?> type;
+    private String json;
+
+    @Setup
+    public void setUp() {
+        selected = gson.equals("reflection") ? new Gson() : GsonFactory.getGson();
+        switch (dto) {
+            case "person":
+                value = person(1);
+                break;
+            case "personPage":
+                Set<PersonDTO> persons = new LinkedHashSet<>();
+                for (int i = 0; i < 50; i++) {
+                    persons.add(person(i));
+                }
+                value = new PersonPageDTO(persons, 50);
+                break;
+            default:
+                HobbyDTO hobby = new HobbyDTO(new PersonDTO.InnerHobbyDTO(1, "Generel", "Squash", "Indendørs", "https://da.wikipedia.org/wiki/Squash"), new ArrayList<>());
+                for (int i = 0; i < 20; i++) {
+                    HobbyDTO.InnerPersonDTO member = new HobbyDTO.InnerPersonDTO(i, "First " + i, "Last " + i, "member" + i + "@mail.dk", new AddressDTO("Street " + i, 2800));
+                    member.addPhone(new PhoneDTO(20000000 + i, "Mobile"));
+                    hobby.getPersons().add(member);
+                }
+                value = hobby;
+        }
+        type = value.getClass();
+        json = selected.toJson(value);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return selected.toJson(value, type);
+    }
+
+    @Benchmark
+    public Object parse() {
+        return selected.fromJson(json, type);
+    }
+
+    private static PersonDTO person(int id) {
+        PersonDTO person = new PersonDTO("First " + id, "Last " + id, "person" + id + "@mail.dk", new AddressDTO("Street " + id, 2800 + id % 50));
+        person.setId(id);
+        person.addPhone(new PhoneDTO(20000000 + id, "Mobile"));
+        person.addPhone(new PhoneDTO(30000000 + id, "Work"));
+        person.addHobby(new PersonDTO.InnerHobbyDTO(id % 10, "Generel", "Hobby " + id % 10, "Indendørs", "https://da.wikipedia.org/wiki/Hobby"));
+        return person;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(DtoJsonBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
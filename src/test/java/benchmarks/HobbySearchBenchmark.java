@@ -0,0 +1,112 @@
+package benchmarks;
+
+import entities.Hobby;
+import facades.HobbyFacade;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import utils.EmbeddedDatabase;
+import utils.HobbyCatalog;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the n-gram search behind {@code /hobby/search/{query}} with the {@code LIKE '%query%'} query it replaced.
+ * <p>
+ * The hobbies from {@code hobbiesScriptt.sql} are loaded into an in-memory H2 database,
+ * so the LIKE query pays no network round trip – against MySQL the difference is larger.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * "-Dexec.args=-classpath %classpath benchmarks.HobbySearchBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HobbySearchBenchmark {
+    private static final Pattern HOBBY_ROW = Pattern.compile("\\((\\d+),'([^']*)','([^']*)','([^']*)','([^']*)'\\)");
+
+    @Param({"fo", "ball", "spil", "xyz"})
+    private String query;
+
+    private EntityManagerFactory emf;
+    private HobbyFacade facade;
+
+    @Setup
+    public void setUp() throws IOException {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        facade = HobbyFacade.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            if (em.createQuery("SELECT COUNT(h) FROM Hobby h", Long.class).getSingleResult() == 0) {
+                em.getTransaction().begin();
+                for (Hobby hobby : readHobbies()) {
+                    em.persist(hobby);
+                }
+                em.getTransaction().commit();
+            }
+        }
+        finally {
+            em.close();
+        }
+        HobbyCatalog.invalidate();
+    }
+
+    @Benchmark
+    public Object nGramIndex() {
+        return facade.searchHobbies(query, 10);
+    }
+
+    @Benchmark
+    public Object likeQuery() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery("SELECT h FROM Hobby h WHERE h.name LIKE :query", Hobby.class)
+                    .setParameter("query", "%" + query + "%")
+                    .getResultList();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Reads the hobbies from the hobby script – or makes some up if the script is not found.
+     */
+    private static List<Hobby> readHobbies() throws IOException {
+        List<Hobby> hobbies = new ArrayList<>();
+        Path script = Paths.get("hobbiesScriptt.sql");
+        if (Files.exists(script)) {
+            Matcher row = HOBBY_ROW.matcher(new String(Files.readAllBytes(script), StandardCharsets.UTF_8));
+            while (row.find()) {
+                hobbies.add(new Hobby(row.group(4), row.group(2), row.group(5), row.group(3)));
+            }
+        }
+        for (int i = hobbies.size(); i < 450; i++) {
+            hobbies.add(new Hobby("Generel", "Hobby " + i + (i % 3 == 0 ? " fodbold" : " spil"), "Indendørs", ""));
+        }
+        return hobbies;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(HobbySearchBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
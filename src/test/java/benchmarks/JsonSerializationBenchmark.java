@@ -0,0 +1,141 @@
+package benchmarks;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import dtos.AddressDTO;
+import dtos.HobbyDTO;
+import dtos.PersonDTO;
+import dtos.PhoneDTO;
+import json.GsonFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares writing a response the old way – a pretty-printing, reflective {@link Gson} building a {@link String}
+ * that is then encoded – with the {@link rest.GsonMessageBodyWriter} streaming compact JSON
+ * through the hand-written adapters.
+ * <p>
+ * The bytes allocated per response are reported by the GC profiler as {@code gc.alloc.rate.norm},
+ * and the size of the responses is printed when the DTOs are built.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * "-Dexec.args=-classpath %classpath benchmarks.JsonSerializationBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonSerializationBenchmark {
+    private static final Gson PRETTY = new GsonBuilder().setPrettyPrinting().create();
+    private static final Gson GSON = GsonFactory.getGson();
+
+    @Param({"persons", "hobbies"})
+    private String response;
+
+    private Object dtos;
+    private Type type;
+
+    @Setup
+    public void setUp() throws IOException {
+        if (response.equals("persons")) {
+            Set<PersonDTO> persons = new LinkedHashSet<>();
+            for (int i = 0; i < 100; i++) {
+                persons.add(person(i));
+            }
+            dtos = persons;
+        }
+        else {
+            Set<HobbyDTO> hobbies = new LinkedHashSet<>();
+            for (int i = 0; i < 20; i++) {
+                HobbyDTO hobby = new HobbyDTO(new PersonDTO.InnerHobbyDTO(i, "Generel", "Hobby " + i, "Indendørs", "https://da.wikipedia.org/wiki/Hobby_" + i), new ArrayList<>());
+                for (int j = 0; j < 5; j++) {
+                    HobbyDTO.InnerPersonDTO member = new HobbyDTO.InnerPersonDTO(j, "First " + j, "Last " + j, "member" + j + "@mail.dk", new AddressDTO("Street " + j, 2800));
+                    member.addPhone(new PhoneDTO(20000000 + j, "Mobile"));
+                    hobby.getPersons().add(member);
+                }
+                hobbies.add(hobby);
+            }
+            dtos = hobbies;
+        }
+        type = dtos.getClass();
+        CountingOutputStream pretty = new CountingOutputStream();
+        prettyString(pretty);
+        CountingOutputStream compact = new CountingOutputStream();
+        streamed(compact);
+        System.out.printf("%n%s: %,d bytes pretty printed, %,d bytes compact%n", response, pretty.count, compact.count);
+    }
+
+    @Benchmark
+    public long prettyString() throws IOException {
+        return prettyString(new CountingOutputStream());
+    }
+
+    @Benchmark
+    public long streamed() throws IOException {
+        return streamed(new CountingOutputStream());
+    }
+
+    private long prettyString(CountingOutputStream output) throws IOException {
+        output.write(PRETTY.toJson(dtos).getBytes(StandardCharsets.UTF_8));
+        return output.count;
+    }
+
+    private long streamed(CountingOutputStream output) throws IOException {
+        JsonWriter writer = GSON.newJsonWriter(new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8)));
+        GSON.toJson(dtos, type, writer);
+        writer.flush();
+        return output.count;
+    }
+
+    private static PersonDTO person(int id) {
+        PersonDTO person = new PersonDTO("First " + id, "Last " + id, "person" + id + "@mail.dk", new AddressDTO("Street " + id, 2800 + id % 50));
+        person.setId(id);
+        person.addPhone(new PhoneDTO(20000000 + id, "Mobile"));
+        person.addPhone(new PhoneDTO(30000000 + id, "Work"));
+        person.addHobby(new PersonDTO.InnerHobbyDTO(id % 10, "Generel", "Hobby " + id % 10, "Indendørs", "https://da.wikipedia.org/wiki/Hobby"));
+        return person;
+    }
+
+    /**
+     * Stands in for the response stream: counts the bytes and throws them away.
+     */
+    private static class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JsonSerializationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import entities.Address;
+import entities.Person;
+import facades.PersonFacade;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import utils.EmbeddedDatabase;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares counting the persons with {@code SELECT COUNT} (behind {@code /person/count})
+ * with loading every person and taking the size of the set, as the endpoint used to.
+ * <p>
+ * The persons are inserted into an in-memory H2 database, and the shared cache is emptied
+ * before every load, so the load reads the rows like a cold server would.
+ * <p>
+ * Run with {@code mvn -P benchmarks test -Djmh.include=PersonCountBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersonCountBenchmark {
+    private static final int FLUSH_EVERY = 1000;
+
+    @Param({"100000"})
+    private int persons;
+
+    private EntityManagerFactory emf;
+    private PersonFacade facade;
+
+    @Setup
+    public void setUp() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        facade = PersonFacade.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Address address = new Address("Benchmark Street", 2800);
+            em.persist(address);
+            for (int i = 0; i < persons; i++) {
+                em.persist(new Person("Bench", "Person " + i, "bench" + i + "@mail.dk", address));
+                if (i % FLUSH_EVERY == 0) {
+                    em.flush();
+                    em.clear();
+                    address = em.find(Address.class, address.getId());
+                }
+            }
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    @Benchmark
+    public long countQuery() {
+        return facade.countPersons();
+    }
+
+    @Benchmark
+    public int loadAndSize() throws Exception {
+        emf.getCache().evictAll();
+        return facade.getPersons().size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PersonCountBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
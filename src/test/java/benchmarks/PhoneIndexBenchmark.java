@@ -0,0 +1,112 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import utils.IntIntMap;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link IntIntMap} behind the {@link utils.PhoneIndex} with a {@code HashMap<Integer, Integer>}
+ * holding the same ten million phone numbers: lookup throughput and the heap each map needs.
+ * <p>
+ * Half of the lookups are for numbers nobody has, like most of the calls a caller-ID integration sees.
+ * The heap footprint is printed when the maps are built.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * "-Dexec.args=-classpath %classpath benchmarks.PhoneIndexBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class PhoneIndexBenchmark {
+    private static final int LOOKUPS = 1 << 20;
+    private static final int BATCH = 1024;
+
+    @Param({"10000000"})
+    private int numbers;
+
+    @Param({"intIntMap", "hashMap"})
+    private String map;
+
+    private IntIntMap intIntMap;
+    private Map<Integer, Integer> hashMap;
+    private int[] lookups;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long before = usedHeap();
+        if (map.equals("intIntMap")) {
+            intIntMap = new IntIntMap(numbers, -1);
+            for (int i = 0; i < numbers; i++) {
+                intIntMap.put(numberOf(i), i);
+            }
+        }
+        else {
+            hashMap = new HashMap<>();
+            for (int i = 0; i < numbers; i++) {
+                hashMap.put(numberOf(i), i);
+            }
+        }
+        System.out.printf("%n%s with %,d numbers: %,d MB of heap%n", map, numbers, (usedHeap() - before) >> 20);
+        lookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int number = numberOf(random.nextInt(numbers));
+            // Every other lookup misses
+            lookups[i] = i % 2 == 0 ? number : number + 1;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void lookUp(Blackhole blackhole) {
+        int start = next;
+        next = (next + BATCH) & (LOOKUPS - 1);
+        if (intIntMap != null) {
+            for (int i = start; i < start + BATCH; i++) {
+                blackhole.consume(intIntMap.get(lookups[i]));
+            }
+        }
+        else {
+            for (int i = start; i < start + BATCH; i++) {
+                blackhole.consume(hashMap.get(lookups[i]));
+            }
+        }
+    }
+
+    /**
+     * Spreads the numbers over eight-digit Danish phone numbers, two apart so {@code number + 1} is never taken.
+     */
+    private static int numberOf(int i) {
+        return 20000000 + 2 * i;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PhoneIndexBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,98 @@
+package benchmarks;
+
+import dtos.AddressDTO;
+import dtos.PersonDTO;
+import dtos.PhoneDTO;
+import facades.PersonFacade;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import utils.EmbeddedDatabase;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PersonFacade#updatePerson} for a switchboard with hundreds of phone numbers,
+ * on an in-memory H2 database.
+ * <p>
+ * Every update alternates between two phone lists: all of the numbers, and every other number
+ * (a tenth of them described anew) plus as many new ones – so each update removes, adds and updates
+ * half of the phones.
+ * <p>
+ * Run with {@code mvn test-compile exec:exec -Dexec.executable=java -Dexec.classpathScope=test
+ * "-Dexec.args=-classpath %classpath benchmarks.PhoneUpdateBenchmark"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhoneUpdateBenchmark {
+    private static final int FIRST_NUMBER = 30000000;
+
+    @Param({"10", "100", "500"})
+    private int phones;
+
+    private PersonFacade facade;
+    private PersonDTO all;
+    private PersonDTO changed;
+    private boolean allNext;
+
+    @Setup
+    public void setUp() throws Exception {
+        EntityManagerFactory emf = EmbeddedDatabase.getEntityManagerFactory();
+        facade = PersonFacade.getInstance(emf);
+        String email = "switchboard" + phones + "@benchmark.dk";
+        // Each parameter gets its own person and numbers, as the database outlives the trial
+        int first = FIRST_NUMBER + 10000 * phones;
+        all = switchboard(email);
+        changed = switchboard(email);
+        for (int i = 0; i < phones; i++) {
+            all.addPhone(new PhoneDTO(first + i, "Switchboard"));
+            if (i % 2 == 0) {
+                changed.addPhone(new PhoneDTO(first + i, i % 20 == 0 ? "Reception" : "Switchboard"));
+            }
+            else {
+                changed.addPhone(new PhoneDTO(first + phones + i, "Switchboard"));
+            }
+        }
+        facade.createPerson(all);
+        int id = idOf(emf, email);
+        all.setId(id);
+        changed.setId(id);
+    }
+
+    @Benchmark
+    public void updatePhones() throws Exception {
+        facade.updatePerson(allNext ? all : changed);
+        allNext = !allNext;
+    }
+
+    private static PersonDTO switchboard(String email) {
+        return new PersonDTO("Switch", "Board", email, new AddressDTO("Benchmark Street 1", 2800));
+    }
+
+    private static int idOf(EntityManagerFactory emf, String email) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery("SELECT p.id FROM Person p WHERE p.email = :email", Integer.class)
+                    .setParameter("email", email)
+                    .getSingleResult();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PhoneUpdateBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
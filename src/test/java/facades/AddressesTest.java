@@ -0,0 +1,130 @@
+package facades;
+
+import dtos.AddressDTO;
+import dtos.PersonDTO;
+import errorhandling.EntityFoundException;
+import errorhandling.EntityNotFoundException;
+import errorhandling.InternalErrorException;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.EmbeddedDatabase;
+import utils.StatementCounter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure the persons created at one address share one address row – also when they are created at the same time –
+ * and that a cached address costs no statements.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class AddressesTest {
+    private static final StatementCounter COUNTER = new StatementCounter();
+    private static final int ZIPCODE = 7200;
+    private static EntityManagerFactory emf;
+    private static PersonFacade facade;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        JpaHelper.getServerSession(emf).setProfiler(COUNTER);
+        facade = PersonFacade.getInstance(emf);
+    }
+
+    @Test
+    public void testPersonsShareAnAddress() throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        facade.createPerson(person("first@address.dk", "Shared Street 1"));
+        int before = COUNTER.getStatements();
+        facade.createPerson(person("second@address.dk", "Shared Street 1"));
+        int statements = COUNTER.getStatements() - before;
+        facade.createPerson(person("third@address.dk", "Shared Street 2"));
+        assertEquals(1, countAddresses("Shared Street 1"));
+        assertEquals(addressIdOf("first@address.dk"), addressIdOf("second@address.dk"));
+        assertNotEquals(addressIdOf("first@address.dk"), addressIdOf("third@address.dk"));
+        // The cached address is neither looked up nor upserted: an insert of the person and the version bump
+        assertEquals(2, statements);
+    }
+
+    @Test
+    public void testConcurrentCreatesShareAnAddress() throws Exception {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Void>> creates = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                PersonDTO person = person("concurrent" + i + "@address.dk", "Concurrent Street 1");
+                creates.add(executor.submit((Callable<Void>) () -> {
+                    start.await();
+                    facade.createPerson(person);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<Void> create : creates) {
+                create.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, countAddresses("Concurrent Street 1"));
+    }
+
+    @Test
+    public void testDeletedAddressIsCreatedAgain() throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        facade.createPerson(person("moving@address.dk", "Moving Street 1"));
+        int id = addressIdOf("moving@address.dk");
+        facade.removeAddressFromPerson(personIdOf("moving@address.dk"));
+        assertEquals(0, countAddresses("Moving Street 1"));
+        facade.createPerson(person("returning@address.dk", "Moving Street 1"));
+        assertEquals(1, countAddresses("Moving Street 1"));
+        assertNotEquals(id, addressIdOf("returning@address.dk"));
+    }
+
+    private static PersonDTO person(String email, String street) {
+        return new PersonDTO("Address", "Person", email, new AddressDTO(street, ZIPCODE));
+    }
+
+    private static long countAddresses(String street) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery("SELECT COUNT(a) FROM Address a WHERE a.street = :street AND a.zipcode = :zipcode", Long.class)
+                    .setParameter("street", street)
+                    .setParameter("zipcode", ZIPCODE)
+                    .getSingleResult();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    private static int addressIdOf(String email) {
+        return idOf("SELECT p.address.id FROM Person p WHERE p.email = :email", email);
+    }
+
+    private static int personIdOf(String email) {
+        return idOf("SELECT p.id FROM Person p WHERE p.email = :email", email);
+    }
+
+    private static int idOf(String jpql, String email) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery(jpql, Integer.class).setParameter("email", email).getSingleResult();
+        }
+        finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package facades;
+
+import dtos.PersonDTO;
+import entities.Address;
+import entities.Hobby;
+import entities.Person;
+import entities.Phone;
+import errorhandling.EntityNotFoundException;
+import errorhandling.InternalErrorException;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.jupiter.api.*;
+import utils.EmbeddedDatabase;
+import utils.HobbyCatalog;
+import utils.StatementCounter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Makes sure that finding the persons with a given hobby costs the same number of SQL statements
+ * no matter how many persons have the hobby.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class FetchPlanTest {
+    private static final StatementCounter COUNTER = new StatementCounter();
+    private static EntityManagerFactory emf;
+    private static PersonFacade personFacade;
+    private static HobbyFacade hobbyFacade;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        JpaHelper.getServerSession(emf).setProfiler(COUNTER);
+        personFacade = PersonFacade.getInstance(emf);
+        hobbyFacade = HobbyFacade.getInstance(emf);
+        // Few persons share the first hobby, many persons share the second
+        populate("Squash", 3);
+        populate("Fuglekiggeri", 60);
+        HobbyCatalog.invalidate();
+        emf.getCache().evictAll();
+    }
+
+    @Test
+    public void testStatementCountIsConstant() throws EntityNotFoundException, InternalErrorException {
+        int fewStatements = countStatements(() -> personFacade.getPersonsByHobbyName("Squash"));
+        int manyStatements = countStatements(() -> personFacade.getPersonsByHobbyName("Fuglekiggeri"));
+        assertTrue(fewStatements > 0);
+        assertEquals(fewStatements, manyStatements);
+
+        fewStatements = countStatements(() -> hobbyFacade.getPersonsByHobbyName("Squash"));
+        manyStatements = countStatements(() -> hobbyFacade.getPersonsByHobbyName("Fuglekiggeri"));
+        assertEquals(fewStatements, manyStatements);
+    }
+
+    @Test
+    public void testPersonsAreFullyLoaded() throws EntityNotFoundException, InternalErrorException {
+        Set<PersonDTO> personDTOs = hobbyFacade.getPersonsByHobbyName("Fuglekiggeri");
+        assertEquals(60, personDTOs.size());
+        for (PersonDTO pdto : personDTOs) {
+            assertEquals(2, pdto.getPhones().size());
+            assertEquals(2, pdto.getHobbies().size());
+            assertEquals("Fuglekiggeri Street", pdto.getAddress().getStreet());
+        }
+    }
+
+    private static int countStatements(FacadeCall call) throws EntityNotFoundException, InternalErrorException {
+        // Make sure the lookups are not served from the shared cache
+        emf.getCache().evictAll();
+        int before = COUNTER.getStatements();
+        call.execute();
+        return COUNTER.getStatements() - before;
+    }
+
+    private static void populate(String hobbyName, int numberOfPersons) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Hobby hobby = new Hobby("Generel", hobbyName, "Indendørs", "");
+            Hobby otherHobby = new Hobby("Generel", hobbyName + " (other)", "Indendørs", "");
+            Address address = new Address(hobbyName + " Street", 2800);
+            em.persist(hobby);
+            em.persist(otherHobby);
+            em.persist(address);
+            int number = hobbyName.hashCode() & 0xFFFF0000;
+            for (int i = 0; i < numberOfPersons; i++) {
+                Person person = new Person("First " + i, "Last " + i, i + "@mail.dk", address);
+                person.addHobby(hobby);
+                person.addHobby(otherHobby);
+                em.persist(person);
+                person.addPhone(new Phone(++number, "Mobile", person));
+                person.addPhone(new Phone(++number, "Office", person));
+                for (Phone phone : person.getPhones()) {
+                    em.persist(phone);
+                }
+            }
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    private interface FacadeCall {
+        Object execute() throws EntityNotFoundException, InternalErrorException;
+    }
+}
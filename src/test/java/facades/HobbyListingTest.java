@@ -0,0 +1,98 @@
+package facades;
+
+import dtos.HobbyDTO;
+import entities.Address;
+import entities.Hobby;
+import entities.Person;
+import errorhandling.EntityNotFoundException;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.jupiter.api.*;
+import utils.EmbeddedDatabase;
+import utils.HobbyCatalog;
+import utils.StatementCounter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure the hobby listing only loads persons when asked to.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class HobbyListingTest {
+    private static final StatementCounter COUNTER = new StatementCounter();
+    private static EntityManagerFactory emf;
+    private static HobbyFacade facade;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        JpaHelper.getServerSession(emf).setProfiler(COUNTER);
+        facade = HobbyFacade.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Hobby hobby = new Hobby("Generel", "Listing", "Indendørs", "");
+            em.persist(hobby);
+            em.persist(new Hobby("Generel", "Listing (empty)", "Indendørs", ""));
+            Address address = new Address("Listing Street", 5000);
+            em.persist(address);
+            for (int i = 0; i < 3; i++) {
+                Person person = new Person("Listing", "Person " + i, "listing" + i + "@mail.dk", address);
+                person.addHobby(hobby);
+                em.persist(person);
+            }
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+        HobbyCatalog.invalidate();
+    }
+
+    @Test
+    public void testListingCountsMembersWithOneQuery() throws EntityNotFoundException {
+        // Load the catalog
+        facade.getHobbyByName("Listing");
+        int before = COUNTER.getStatements();
+        HobbyDTO listing = null;
+        HobbyDTO empty = null;
+        for (HobbyDTO hobby : facade.getHobbies()) {
+            assertNull(hobby.getPersons());
+            if (hobby.getName().equals("Listing")) {
+                listing = hobby;
+            }
+            else if (hobby.getName().equals("Listing (empty)")) {
+                empty = hobby;
+            }
+        }
+        assertEquals(1, COUNTER.getStatements() - before);
+        assertNotNull(listing);
+        assertNotNull(empty);
+        assertEquals(3, listing.getMemberCount());
+        assertEquals(0, empty.getMemberCount());
+    }
+
+    @Test
+    public void testExpandIncludesPersons() throws EntityNotFoundException {
+        HobbyDTO listing = facade.getHobbies(true).stream()
+                .filter(hobby -> hobby.getName().equals("Listing"))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        assertEquals(3, listing.getPersons().size());
+        assertEquals(3, listing.getMemberCount());
+    }
+
+    @Test
+    public void testHobbyByName() throws EntityNotFoundException {
+        HobbyDTO hobby = facade.getHobby("listing", false);
+        assertEquals("Listing", hobby.getName());
+        assertEquals(3, hobby.getMemberCount());
+        assertNull(hobby.getPersons());
+        hobby = facade.getHobby("Listing", true);
+        assertEquals(3, hobby.getPersons().size());
+        assertThrows(EntityNotFoundException.class, () -> facade.getHobby("No such hobby", false));
+    }
+}
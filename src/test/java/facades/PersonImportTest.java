@@ -0,0 +1,227 @@
+package facades;
+
+import dtos.AddressDTO;
+import dtos.ImportResultDTO;
+import dtos.PersonDTO;
+import dtos.PhoneDTO;
+import entities.Address;
+import entities.Hobby;
+import entities.Person;
+import entities.Phone;
+import errorhandling.EntityFoundException;
+import errorhandling.EntityNotFoundException;
+import errorhandling.InternalErrorException;
+import org.junit.jupiter.api.*;
+import utils.EmbeddedDatabase;
+import utils.HobbyCatalog;
+import utils.StatusCode;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure a bulk import writes whole chunks with a fixed number of statements
+ * and reports the rows it rejects.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class PersonImportTest {
+    private static final int ZIPCODE = 7100;
+    private static final int TAKEN_NUMBER = 92000000;
+    private static EntityManagerFactory emf;
+    private static PersonFacade facade;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        facade = PersonFacade.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new Hobby("Generel", "Importing", "Indendørs", ""));
+            Address address = new Address("Import Street 1", ZIPCODE);
+            em.persist(address);
+            Person person = new Person("Already", "Imported", "already@import.dk", address);
+            em.persist(person);
+            em.persist(new Phone(TAKEN_NUMBER, "Home", person));
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+        HobbyCatalog.invalidate();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        System.clearProperty("IMPORT_CHUNK_SIZE");
+    }
+
+    @Test
+    public void testImportReportsEveryRow() throws EntityNotFoundException, InternalErrorException {
+        List<PersonDTO> persons = Arrays.asList(
+                person("first@import.dk", "Import Street 1", TAKEN_NUMBER + 1, "Importing"),
+                person("second@import.dk", "Import Street 2", TAKEN_NUMBER + 2),
+                // Taken by the database
+                person("taken@import.dk", "Import Street 2", TAKEN_NUMBER),
+                // Taken by the first row
+                person("twice@import.dk", "Import Street 2", TAKEN_NUMBER + 1),
+                person("unknown@import.dk", "Import Street 2", TAKEN_NUMBER + 3, "No such hobby"),
+                new PersonDTO("Missing", "Address", "missing@import.dk", null),
+                null);
+        List<ImportResultDTO> results = new ArrayList<>();
+        facade.importPersons(persons.iterator(), results::add);
+
+        assertEquals(persons.size(), results.size());
+        int[] expected = {StatusCode.OK, StatusCode.OK, StatusCode.FOUND, StatusCode.FOUND, StatusCode.NOT_FOUND, StatusCode.BAD_REQUEST, StatusCode.BAD_REQUEST};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(i + 1, results.get(i).getRow());
+            assertEquals(expected[i], results.get(i).getCode(), results.get(i).getMessage());
+        }
+        // The first person got the existing address, a phone and a hobby
+        PersonDTO first = facade.getPersonByNumber(TAKEN_NUMBER + 1);
+        assertEquals(results.get(0).getId(), first.getId());
+        assertEquals("Import Street 1", first.getAddress().getStreet());
+        assertEquals(1, first.getHobbies().size());
+        assertEquals(2, facade.getPersonsByZipcode(ZIPCODE).stream().filter(pdto -> pdto.getAddress().getStreet().equals("Import Street 1")).count());
+        assertEquals(results.get(1).getId(), facade.getPersonByNumber(TAKEN_NUMBER + 2).getId());
+        assertThrows(EntityNotFoundException.class, () -> facade.getPersonByNumber(TAKEN_NUMBER + 3));
+    }
+
+    @Test
+    public void testStatementsPerChunkDoNotGrowWithTheChunk() throws SQLException {
+        int small = countStatementsToImport(5, 93000000);
+        int large = countStatementsToImport(500, 93100000);
+        assertEquals(small, large);
+        // Look up the phones, upsert the addresses and look up their ids, insert the persons, phones and hobbies, and bump the hobby versions
+        assertEquals(7, large);
+    }
+
+    @Test
+    public void testEveryChunkIsImported() {
+        System.setProperty("IMPORT_CHUNK_SIZE", "3");
+        List<ImportResultDTO> results = new ArrayList<>();
+        facade.importPersons(persons(10, 94000000).iterator(), results::add);
+        assertEquals(10, results.size());
+        assertTrue(results.stream().allMatch(result -> result.getCode() == StatusCode.OK));
+        assertEquals(10, results.stream().map(ImportResultDTO::getId).distinct().count());
+    }
+
+    @Test
+    public void testImportAndFacadeShareTrimmedAddresses() throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        List<ImportResultDTO> results = new ArrayList<>();
+        facade.importPersons(Arrays.asList(person("padded@import.dk", "  Import Street 9 ", 94200000)).iterator(), results::add);
+        assertEquals(StatusCode.OK, results.get(0).getCode(), results.get(0).getMessage());
+        facade.createPerson(person("unpadded@import.dk", "Import Street 9", 94200001));
+        facade.createPerson(person("padded-too@import.dk", " Import Street 9", 94200002));
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<String> streets = em.createQuery("SELECT a.street FROM Address a WHERE a.street LIKE '%Import Street 9%'", String.class).getResultList();
+            assertEquals(Arrays.asList("Import Street 9"), streets);
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    @Test
+    public void testOnlyTheChangedHobbiesAreEvicted() {
+        EntityManager em = emf.createEntityManager();
+        int untouched;
+        int touched;
+        try {
+            em.getTransaction().begin();
+            em.persist(new Hobby("Generel", "Not importing", "Indendørs", ""));
+            em.getTransaction().commit();
+            untouched = em.createQuery("SELECT h.id FROM Hobby h WHERE h.name = 'Not importing'", Integer.class).getSingleResult();
+            touched = em.createQuery("SELECT h.id FROM Hobby h WHERE h.name = 'Importing'", Integer.class).getSingleResult();
+            em.find(Hobby.class, touched);
+        }
+        finally {
+            em.close();
+        }
+        assertTrue(emf.getCache().contains(Hobby.class, untouched));
+        assertTrue(emf.getCache().contains(Hobby.class, touched));
+        facade.importPersons(persons(2, 94100000).iterator(), result -> assertEquals(StatusCode.OK, result.getCode()));
+        // The imported persons joined one hobby, so the other stays cached
+        assertTrue(emf.getCache().contains(Hobby.class, untouched));
+        assertFalse(emf.getCache().contains(Hobby.class, touched));
+    }
+
+    /**
+     * Imports a chunk through a connection that counts the statements sent to the database
+     * (the importer bypasses EclipseLink, so its profiler does not see them).
+     */
+    private int countStatementsToImport(int count, int firstNumber) throws SQLException {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            AtomicInteger statements = new AtomicInteger();
+            Connection connection = countingConnection(em.unwrap(Connection.class), statements);
+            List<ImportResultDTO> results = new PersonImporter(connection, HobbyCatalog.getInstance(emf))
+                    .importChunk(persons(count, firstNumber), 1, new HashMap<>(), new HashSet<>(), new HashSet<>());
+            em.getTransaction().commit();
+            assertTrue(results.stream().allMatch(result -> result.getCode() == StatusCode.OK));
+            return statements.get();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    private static Connection countingConnection(Connection connection, AtomicInteger statements) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, (proxy, method, args) -> {
+            Object result = invoke(connection, method, args);
+            if (result instanceof PreparedStatement) {
+                PreparedStatement statement = (PreparedStatement) result;
+                return Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(), new Class<?>[]{PreparedStatement.class}, (p, m, a) -> {
+                    if (m.getName().startsWith("execute")) {
+                        statements.incrementAndGet();
+                    }
+                    return invoke(statement, m, a);
+                });
+            }
+            return result;
+        });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        }
+        catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static List<PersonDTO> persons(int count, int firstNumber) {
+        List<PersonDTO> persons = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            persons.add(person("bulk" + (firstNumber + i) + "@import.dk", "Bulk Street " + (firstNumber + i) % 7, firstNumber + i, "Importing"));
+        }
+        return persons;
+    }
+
+    private static PersonDTO person(String email, String street, int number, String... hobbies) {
+        PersonDTO person = new PersonDTO("Imported", "Person", email, new AddressDTO(street, ZIPCODE));
+        person.addPhone(new PhoneDTO(number, "Mobile"));
+        for (String hobby : hobbies) {
+            person.addHobby(new PersonDTO.InnerHobbyDTO(hobby));
+        }
+        return person;
+    }
+}
@@ -0,0 +1,91 @@
+package facades;
+
+import dtos.PersonDTO;
+import dtos.PersonPageDTO;
+import entities.Address;
+import entities.Person;
+import entities.Phone;
+import org.junit.jupiter.api.*;
+import utils.EmbeddedDatabase;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class PersonPagingTest {
+    private static EntityManagerFactory emf;
+    private static PersonFacade facade;
+    private static List<Integer> personIds;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        facade = PersonFacade.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Address address = new Address("Paging Street", 2100);
+            em.persist(address);
+            for (int i = 0; i < 25; i++) {
+                Person person = new Person("Page", "Person " + i, "page" + i + "@mail.dk", address);
+                em.persist(person);
+                Phone phone = new Phone(50000000 + i, "Mobile", person);
+                person.addPhone(phone);
+                em.persist(phone);
+            }
+            em.getTransaction().commit();
+            personIds = em.createQuery("SELECT p.id FROM Person p ORDER BY p.id", Integer.class).getResultList();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    @Test
+    public void testPagesCoverEveryPersonOnce() {
+        List<Integer> pagedIds = new ArrayList<>();
+        Integer after = 0;
+        while (after != null) {
+            PersonPageDTO page = facade.getPersons(after, 10);
+            assertTrue(page.getPersons().size() <= 10);
+            for (PersonDTO pdto : page.getPersons()) {
+                pagedIds.add(pdto.getId());
+            }
+            after = page.getNext();
+        }
+        assertEquals(personIds, pagedIds);
+    }
+
+    @Test
+    public void testLastPageHasNoCursor() {
+        int last = personIds.get(personIds.size() - 1);
+        PersonPageDTO page = facade.getPersons(personIds.get(personIds.size() - 2), 10);
+        assertEquals(1, page.getPersons().size());
+        assertEquals(last, (int) page.getPersons().iterator().next().getId());
+        assertNull(page.getNext());
+    }
+
+    @Test
+    public void testCountMatchesEveryPerson() {
+        assertEquals(personIds.size(), facade.countPersons());
+        assertEquals(0, facade.countPersonsByHobbyName("No such hobby"));
+    }
+
+    @Test
+    public void testStreamIncludesEveryPerson() {
+        List<Integer> streamedIds = new ArrayList<>();
+        facade.forEachPerson(pdto -> {
+            streamedIds.add(pdto.getId());
+            if (pdto.getEmail().startsWith("page")) {
+                assertEquals(1, pdto.getPhones().size());
+            }
+        });
+        assertEquals(personIds, streamedIds);
+    }
+}
@@ -0,0 +1,109 @@
+package facades;
+
+import dtos.AddressDTO;
+import dtos.PersonDTO;
+import dtos.PhoneDTO;
+import entities.Hobby;
+import errorhandling.EntityFoundException;
+import errorhandling.EntityNotFoundException;
+import errorhandling.InternalErrorException;
+import errorhandling.VersionConflictException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.EmbeddedDatabase;
+import utils.HobbyCatalog;
+import utils.QueryStats;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure a person is deleted with its phones and hobby memberships in the same statements,
+ * however many phones it has – and that the version check and the lookup are the row count of the delete.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class PersonRemovalTest {
+    private static final String HOBBY = "Removing";
+    private static EntityManagerFactory emf;
+    private static PersonFacade facade;
+    private static HobbyFacade hobbyFacade;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        facade = PersonFacade.getInstance(emf);
+        hobbyFacade = HobbyFacade.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new Hobby("Generel", HOBBY, "Indendørs", ""));
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+        HobbyCatalog.invalidate();
+    }
+
+    @Test
+    public void testPhonesAndMembershipsAreRemoved() throws Exception {
+        int id = create("removed@removal.dk", 45000000, 3);
+        String hobbyTag = hobbyFacade.getHobbyTag(HOBBY);
+        long members = facade.countPersonsByHobbyName(HOBBY);
+        facade.deletePerson(id);
+        assertThrows(EntityNotFoundException.class, () -> facade.getPersonByNumber(45000000));
+        assertThrows(EntityNotFoundException.class, () -> facade.getPersonTag(id));
+        assertEquals(members - 1, facade.countPersonsByHobbyName(HOBBY));
+        assertNotEquals(hobbyTag, hobbyFacade.getHobbyTag(HOBBY));
+        // The number is free again
+        create("successor@removal.dk", 45000000, 1);
+    }
+
+    @Test
+    public void testStatementsDoNotGrowWithThePhones() throws Exception {
+        assertEquals(statementsToDelete("few@removal.dk", 45100000, 1), statementsToDelete("many@removal.dk", 45200000, 100));
+    }
+
+    @Test
+    public void testOutdatedVersionIsRefused() throws Exception {
+        int id = create("outdated@removal.dk", 45300000, 2);
+        String tag = facade.getPersonTag(id);
+        long version = Long.parseLong(tag.substring(PersonFacade.tagPrefixOf(id).length()));
+        assertThrows(VersionConflictException.class, () -> facade.deletePerson(id, version + 1));
+        // Nothing was removed
+        assertEquals(2, facade.getPersonByNumber(45300001).getPhones().size());
+        assertEquals(tag, facade.getPersonTag(id));
+        facade.deletePerson(id, version);
+        assertThrows(EntityNotFoundException.class, () -> facade.deletePerson(id, version));
+        assertThrows(EntityNotFoundException.class, () -> facade.deletePerson(id));
+    }
+
+    /**
+     * Creates a person with some phones, then deletes it, and returns the statements of the delete.
+     */
+    private static int statementsToDelete(String email, int firstNumber, int phones) throws Exception {
+        int id = create(email, firstNumber, phones);
+        QueryStats stats = QueryStats.start();
+        try {
+            facade.deletePerson(id);
+        }
+        finally {
+            stats.stop();
+        }
+        assertThrows(EntityNotFoundException.class, () -> facade.getPersonByNumber(firstNumber + phones - 1));
+        return stats.getStatements();
+    }
+
+    private static int create(String email, int firstNumber, int phones) throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        PersonDTO person = new PersonDTO("Removal", "Person", email, new AddressDTO("Removal Street 1", 7100));
+        for (int i = 0; i < phones; i++) {
+            person.addPhone(new PhoneDTO(firstNumber + i, "Phone " + i));
+        }
+        person.addHobby(new PersonDTO.InnerHobbyDTO(HOBBY));
+        facade.createPerson(person);
+        return facade.getPersonByNumber(firstNumber).getId();
+    }
+}
@@ -0,0 +1,160 @@
+package facades;
+
+import dtos.AddressDTO;
+import dtos.PersonDTO;
+import dtos.PhoneDTO;
+import errorhandling.EntityFoundException;
+import errorhandling.EntityNotFoundException;
+import errorhandling.InternalErrorException;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.EmbeddedDatabase;
+import utils.StatementCounter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure an update removes, adds and describes a person's phones anew with the same statements,
+ * however many phones the person has – and still refuses numbers that belong to someone else.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class PhoneChangesTest {
+    private static final StatementCounter COUNTER = new StatementCounter();
+    private static EntityManagerFactory emf;
+    private static PersonFacade facade;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        JpaHelper.getServerSession(emf).setProfiler(COUNTER);
+        facade = PersonFacade.getInstance(emf);
+    }
+
+    @Test
+    public void testPhonesAreReconciled() throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        PersonDTO person = person("reconciled@phones.dk", 40000000, 4);
+        facade.createPerson(person);
+        person.setId(personIdOf("reconciled@phones.dk"));
+        person.setPhones(new PersonDTO().getPhones());
+        // Keep 40000000, describe 40000001 anew, remove the rest and add 40000010
+        person.addPhone(new PhoneDTO(40000000, "Phone 0"));
+        person.addPhone(new PhoneDTO(40000001, "Work"));
+        person.addPhone(new PhoneDTO(40000010, "Home"));
+        facade.updatePerson(person);
+        Map<Integer, String> phones = phonesOf(facade.getPersonByNumber(40000010));
+        assertEquals(3, phones.size());
+        assertEquals("Phone 0", phones.get(40000000));
+        assertEquals("Work", phones.get(40000001));
+        assertEquals("Home", phones.get(40000010));
+        assertThrows(EntityNotFoundException.class, () -> facade.getPersonByNumber(40000002));
+    }
+
+    @Test
+    public void testNumberOfSomeoneElseIsRefused() throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        facade.createPerson(person("owner@phones.dk", 41000000, 1));
+        PersonDTO person = person("claimer@phones.dk", 41000010, 1);
+        facade.createPerson(person);
+        person.setId(personIdOf("claimer@phones.dk"));
+        person.addPhone(new PhoneDTO(41000000, "Taken"));
+        assertThrows(EntityFoundException.class, () -> facade.updatePerson(person));
+        assertEquals("owner@phones.dk", facade.getPersonByNumber(41000000).getEmail());
+        assertEquals(1, facade.getPersonByNumber(41000010).getPhones().size());
+        // A new person cannot have it either
+        assertThrows(EntityFoundException.class, () -> facade.createPerson(person("second-claimer@phones.dk", 41000000, 1)));
+    }
+
+    @Test
+    public void testNumberTakenConcurrentlyIsRefused() throws Exception {
+        facade.createPerson(person("concurrent-owner@phones.dk", 44000000, 1));
+        PersonDTO person = person("concurrent-claimer@phones.dk", 44000010, 1);
+        facade.createPerson(person);
+        person.setId(personIdOf("concurrent-claimer@phones.dk"));
+        person.addPhone(new PhoneDTO(44000001, "Taken meanwhile"));
+        // Another transaction inserts the number, but only commits once the update has looked for it
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.createNativeQuery("INSERT INTO phone (number, person_id, description) VALUES (44000001, ?, 'Meanwhile')")
+                    .setParameter(1, personIdOf("concurrent-owner@phones.dk"))
+                    .executeUpdate();
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            Future<?> update = executor.submit(() -> {
+                facade.updatePerson(person);
+                return null;
+            });
+            Thread.sleep(300);
+            em.getTransaction().commit();
+            ExecutionException e = assertThrows(ExecutionException.class, update::get);
+            assertTrue(e.getCause() instanceof EntityFoundException, e.getCause().toString());
+            executor.shutdown();
+        }
+        finally {
+            em.close();
+        }
+        assertEquals("concurrent-owner@phones.dk", facade.getPersonByNumber(44000001).getEmail());
+        assertEquals(1, facade.getPersonByNumber(44000010).getPhones().size());
+    }
+
+    @Test
+    public void testStatementsDoNotGrowWithThePhones() throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        assertEquals(statementsToReplaceHalfOf("few@phones.dk", 42000000, 4),
+                statementsToReplaceHalfOf("many@phones.dk", 43000000, 400));
+    }
+
+    /**
+     * Creates a person with some phones, then replaces every other phone, and returns the statements of the update.
+     */
+    private static int statementsToReplaceHalfOf(String email, int firstNumber, int count)
+            throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        facade.createPerson(person(email, firstNumber, count));
+        PersonDTO person = person(email, firstNumber, 0);
+        person.setId(personIdOf(email));
+        for (int i = 0; i < count; i++) {
+            person.addPhone(new PhoneDTO(i % 2 == 0 ? firstNumber + i : firstNumber + count + i, "Phone " + i));
+        }
+        int before = COUNTER.getStatements();
+        facade.updatePerson(person);
+        int statements = COUNTER.getStatements() - before;
+        assertEquals(count, facade.getPersonByNumber(firstNumber).getPhones().size());
+        return statements;
+    }
+
+    private static PersonDTO person(String email, int firstNumber, int phones) {
+        PersonDTO person = new PersonDTO("Phone", "Person", email, new AddressDTO("Phone Street 1", 7100));
+        for (int i = 0; i < phones; i++) {
+            person.addPhone(new PhoneDTO(firstNumber + i, "Phone " + i));
+        }
+        return person;
+    }
+
+    private static Map<Integer, String> phonesOf(PersonDTO person) {
+        Map<Integer, String> phones = new HashMap<>();
+        for (PhoneDTO phone : person.getPhones()) {
+            phones.put(phone.getNumber(), phone.getDescription());
+        }
+        return phones;
+    }
+
+    private static int personIdOf(String email) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery("SELECT p.id FROM Person p WHERE p.email = :email", Integer.class)
+                    .setParameter("email", email)
+                    .getSingleResult();
+        }
+        finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import dtos.*;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure the hand-written adapters write the same JSON as Gson's reflection, and read it back.
+ */
+class DtoTypeAdapterFactoryTest {
+    private static final Gson REFLECTIVE = new Gson();
+    private static final Gson GSON = GsonFactory.getGson();
+
+    @Test
+    public void testPersonIsWrittenLikeReflectionDoes() {
+        PersonDTO person = person(1);
+        assertEquals(REFLECTIVE.toJson(person), GSON.toJson(person));
+        // Missing fields are left out
+        PersonDTO empty = new PersonDTO();
+        empty.setPhones(null);
+        assertEquals(REFLECTIVE.toJson(empty), GSON.toJson(empty));
+    }
+
+    @Test
+    public void testHobbyIsWrittenLikeReflectionDoes() {
+        PersonDTO.InnerHobbyDTO catalogHobby = new PersonDTO.InnerHobbyDTO(7, "Generel", "Squash", "Indendørs", "https://da.wikipedia.org/wiki/Squash");
+        HobbyDTO withoutPersons = new HobbyDTO(catalogHobby, 42);
+        assertEquals(REFLECTIVE.toJson(withoutPersons), GSON.toJson(withoutPersons));
+        HobbyDTO withPersons = new HobbyDTO(catalogHobby, Collections.emptyList());
+        HobbyDTO.InnerPersonDTO member = new HobbyDTO.InnerPersonDTO(1, "Ann", "<Smith>", "ann@mail.dk", new AddressDTO("Main Street 1", 2800));
+        member.addPhone(new PhoneDTO(12345678, "Mobile"));
+        withPersons.getPersons().add(member);
+        assertEquals(REFLECTIVE.toJson(withPersons), GSON.toJson(withPersons));
+    }
+
+    @Test
+    public void testCollectionsUseTheAdapters() {
+        List<PersonDTO> persons = Arrays.asList(person(1), person(2));
+        assertEquals(REFLECTIVE.toJson(persons), GSON.toJson(persons));
+        assertEquals(REFLECTIVE.toJson(new LinkedHashSet<>(persons)), GSON.toJson(new LinkedHashSet<>(persons)));
+    }
+
+    @Test
+    public void testPersonIsReadBack() {
+        PersonDTO person = person(3);
+        PersonDTO read = GSON.fromJson(GSON.toJson(person), PersonDTO.class);
+        assertEquals(REFLECTIVE.toJson(person), REFLECTIVE.toJson(read));
+        // Unknown fields are skipped and numbers may be quoted, like with reflection
+        PersonDTO lenient = GSON.fromJson("{\"id\":\"5\",\"unknown\":{\"a\":[1]},\"address\":{\"street\":\"A\",\"zipcode\":\"2800\"},\"phones\":null}", PersonDTO.class);
+        assertEquals(5, lenient.getId());
+        assertEquals(2800, lenient.getAddress().getZipcode());
+        assertNull(lenient.getPhones());
+    }
+
+    @Test
+    public void testWrongValuesAreRejectedLikeReflectionDoes() {
+        String[] wrong = {
+                "{\"address\":{\"street\":\"A\",\"zipcode\":\"abc\"}}",
+                "{\"address\":{\"street\":\"A\",\"zipcode\":{}}}",
+                "{\"firstName\":[\"A\"]}"
+        };
+        for (String json : wrong) {
+            assertThrows(JsonSyntaxException.class, () -> REFLECTIVE.fromJson(json, PersonDTO.class), json);
+            assertThrows(JsonSyntaxException.class, () -> GSON.fromJson(json, PersonDTO.class), json);
+        }
+    }
+
+    @Test
+    public void testOtherDtosAreWrittenLikeReflectionDoes() {
+        List<Object> dtos = new ArrayList<>();
+        dtos.add(new ResponseDTO(404, "Not\nfound"));
+        dtos.add(new HobbyMatchDTO(7, "Squash", null));
+        dtos.add(new PersonPageDTO(new LinkedHashSet<>(Arrays.asList(person(1), person(2))), 3));
+        dtos.add(new PersonPageDTO(Collections.emptySet(), null));
+        dtos.add(new BulkImportDTO(1, 1, Arrays.asList(
+                new ImportResultDTO(1, 200, 9, "Created!"), new ImportResultDTO(2, 400, null, "Could not read the person."))));
+        PoolStatsDTO stats = new PoolStatsDTO(1, 2, 3, 4);
+        stats.setPoolSize(2, 10);
+        stats.setTimeouts(30000, 600000);
+        stats.setAcquisitions(100, 1, 0.25, 1.5, 12, 30.125);
+        dtos.add(stats);
+        CompressionStatsDTO compression = new CompressionStatsDTO(1024, 10, 5, 80000, 10000);
+        compression.setCpuTime(4.5, 0.25, 1.125, 2);
+        dtos.add(compression);
+        for (Object dto : dtos) {
+            String json = GSON.toJson(dto);
+            assertEquals(REFLECTIVE.toJson(dto), json);
+            // And it reads back to the same JSON
+            assertEquals(json, REFLECTIVE.toJson(GSON.fromJson(json, dto.getClass())));
+        }
+    }
+
+    @Test
+    public void testHobbyIsReadBack() {
+        HobbyDTO hobby = new HobbyDTO(new PersonDTO.InnerHobbyDTO(7, "Generel", "Squash", "Indendørs", null), Collections.emptyList());
+        HobbyDTO.InnerPersonDTO member = new HobbyDTO.InnerPersonDTO(1, "Ann", "Smith", "ann@mail.dk", new AddressDTO("Main Street 1", 2800));
+        member.addPhone(new PhoneDTO(12345678, "Mobile"));
+        hobby.getPersons().add(member);
+        String json = GSON.toJson(hobby);
+        assertEquals(json, REFLECTIVE.toJson(GSON.fromJson(json, HobbyDTO.class)));
+    }
+
+    @Test
+    public void testEveryDtoHasAnAdapter() throws URISyntaxException {
+        File directory = new File(new File(PersonDTO.class.getProtectionDomain().getCodeSource().getLocation().toURI()), "dtos");
+        String[] files = directory.list((dir, name) -> name.endsWith(".class"));
+        assertNotNull(files);
+        DtoTypeAdapterFactory factory = new DtoTypeAdapterFactory();
+        for (String file : files) {
+            String name = "dtos." + file.substring(0, file.length() - ".class".length());
+            TypeAdapter<?> adapter = factory.create(GSON, TypeToken.get(classOf(name)));
+            assertNotNull(adapter, "No adapter for " + name);
+        }
+    }
+
+    private static Class<?> classOf(String name) {
+        try {
+            return Class.forName(name);
+        }
+        catch (ClassNotFoundException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static PersonDTO person(int id) {
+        PersonDTO person = new PersonDTO("First " + id, "Last \"quoted\"", "person" + id + "@mail.dk", new AddressDTO("Street " + id, 2800 + id));
+        person.setId(id);
+        person.addPhone(new PhoneDTO(20000000 + id, "Mobile"));
+        person.addPhone(new PhoneDTO(30000000 + id, null));
+        person.addHobby(new PersonDTO.InnerHobbyDTO(id, "Generel", "Hobby " + id, "Indendørs", "https://da.wikipedia.org/wiki/Hobby"));
+        return person;
+    }
+}
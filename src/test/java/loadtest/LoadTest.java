@@ -0,0 +1,215 @@
+package loadtest;
+
+import facades.HobbyFacade;
+import facades.PersonFacade;
+import facades.PhoneFacade;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import rest.ApplicationConfig;
+import utils.EmbeddedDatabase;
+import utils.HobbyCatalog;
+import utils.LatencyHistogram;
+import utils.Settings;
+
+import javax.persistence.EntityManagerFactory;
+import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs a mixed workload against the whole REST API ({@link ApplicationConfig}) on an embedded Grizzly server,
+ * backed by the in-memory database of the tests, and checks the latency and error budgets of the scenario.
+ * <p>
+ * Run it with {@code mvn -P loadtest test}. The run is tuned by these environment variables (or system properties):
+ * <ul>
+ *     <li>{@code LOADTEST_SCENARIO} – the scenario file (see {@link Scenario})</li>
+ *     <li>{@code LOADTEST_PERSONS}, {@code LOADTEST_HOBBIES}, {@code LOADTEST_PHONES} – the seeded data
+ *     (phones per person)</li>
+ *     <li>{@code LOADTEST_THREADS} – the number of concurrent clients</li>
+ *     <li>{@code LOADTEST_WARMUP}, {@code LOADTEST_DURATION} – seconds to warm up (not measured) and to measure</li>
+ * </ul>
+ * The throughput and p50/p99/p999 latency of every request are printed, and the run fails
+ * if a budget is exceeded.
+ */
+public class LoadTest {
+    private static final int PORT = 7790;
+    private static final int NO_RESPONSE = -1;
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Scenario scenario;
+    private final TestData data;
+    private final Map<String, LatencyHistogram> latencies = new LinkedHashMap<>();
+    private final Map<String, Map<Integer, LongAdder>> errors = new LinkedHashMap<>();
+
+    LoadTest(Scenario scenario, TestData data) {
+        this.scenario = scenario;
+        this.data = data;
+        for (Scenario.Request request : scenario.getRequests()) {
+            latencies.put(request.getName(), new LatencyHistogram());
+            errors.put(request.getName(), new ConcurrentHashMap<>());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Scenario scenario = Scenario.read(Paths.get(Settings.getString("LOADTEST_SCENARIO", "src/test/resources/loadtest/scenario.http")));
+        int persons = Settings.getInt("LOADTEST_PERSONS", 2000);
+        int hobbies = Settings.getInt("LOADTEST_HOBBIES", 100);
+        int phones = Settings.getInt("LOADTEST_PHONES", 2);
+        int threads = Settings.getInt("LOADTEST_THREADS", 8);
+        int warmup = Settings.getInt("LOADTEST_WARMUP", 5);
+        int duration = Settings.getInt("LOADTEST_DURATION", 30);
+
+        // The facades keep the first factory they are given, so hand them the embedded database before the resources do
+        EntityManagerFactory emf = EmbeddedDatabase.getEntityManagerFactory();
+        PersonFacade.getInstance(emf);
+        HobbyFacade.getInstance(emf);
+        PhoneFacade.getInstance(emf);
+        TestData data = new TestData("http://localhost:" + PORT);
+        System.out.printf("Seeding %,d persons with %d phones each and %,d hobbies...%n", persons, phones, hobbies);
+        data.seed(emf, persons, hobbies, phones);
+        HobbyCatalog.invalidate();
+        // The resources create a factory of their own, so point it at the embedded database too (the schema exists)
+        EmbeddedDatabase.getProperties().forEach(System::setProperty);
+        System.setProperty("javax.persistence.schema-generation.database.action", "none");
+        URI baseUri = UriBuilder.fromUri("http://localhost/information/api").port(PORT).build();
+        HttpServer server = GrizzlyHttpServerFactory.createHttpServer(baseUri, ResourceConfig.forApplication(new ApplicationConfig()));
+        List<String> exceeded;
+        try {
+            LoadTest loadTest = new LoadTest(scenario, data);
+            System.out.printf("Running %d clients for %d s (after %d s of warm-up)...%n", threads, duration, warmup);
+            loadTest.run(threads, TimeUnit.SECONDS.toNanos(warmup), TimeUnit.SECONDS.toNanos(duration));
+            exceeded = loadTest.report(duration);
+        }
+        finally {
+            server.shutdownNow();
+        }
+        if (!exceeded.isEmpty()) {
+            throw new AssertionError("The load test exceeded " + exceeded.size() + " budget(s):\n  " + String.join("\n  ", exceeded));
+        }
+    }
+
+    /**
+     * Sends requests picked from the scenario from every client until the time is up.
+     * Only the requests started after the warm-up are recorded.
+     */
+    void run(int threads, long warmupNanos, long durationNanos) throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long end = measureFrom + durationNanos;
+        ExecutorService clients = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < end) {
+                    Scenario.Request request = scenario.pick(ThreadLocalRandom.current().nextDouble());
+                    long sent = System.nanoTime();
+                    int status = send(request);
+                    if (sent >= measureFrom) {
+                        latencies.get(request.getName()).record(System.nanoTime() - sent);
+                        if (!request.isExpected(status)) {
+                            errors.get(request.getName()).computeIfAbsent(status, key -> new LongAdder()).increment();
+                        }
+                    }
+                }
+            });
+        }
+        clients.shutdown();
+        // The clients stop by themselves, but a request may hang
+        if (!clients.awaitTermination(durationNanos + warmupNanos + TimeUnit.MINUTES.toNanos(1), TimeUnit.NANOSECONDS)) {
+            clients.shutdownNow();
+        }
+    }
+
+    /**
+     * Sends one request and reads the whole response.
+     *
+     * @return the status of the response – or {@link #NO_RESPONSE} if the request failed.
+     */
+    private int send(Scenario.Request request) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(Scenario.fill(request.getUrl(), data::get)).openConnection();
+            connection.setRequestMethod(request.getMethod());
+            request.getHeaders().forEach((name, value) -> connection.setRequestProperty(name, Scenario.fill(value, data::get)));
+            if (request.getBody() != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(Scenario.fill(request.getBody(), data::get).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            // Read the response to the end, so the connection is kept alive
+            InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                try (InputStream body = in) {
+                    byte[] buffer = new byte[8192];
+                    while (body.read(buffer) != -1) {
+                        // Skip the body
+                    }
+                }
+            }
+            return status;
+        }
+        catch (IOException e) {
+            return NO_RESPONSE;
+        }
+    }
+
+    /**
+     * Prints the throughput and latencies of every request, and checks them against the budgets.
+     *
+     * @return the budgets that were exceeded.
+     */
+    List<String> report(int durationSeconds) {
+        List<String> exceeded = new ArrayList<>();
+        System.out.printf("%n%-32s %9s %9s %9s %9s %9s %8s%n", "Request", "Count", "Req/s", "p50 ms", "p99 ms", "p999 ms", "Errors");
+        long total = 0;
+        for (Scenario.Request request : scenario.getRequests()) {
+            String name = request.getName();
+            LatencyHistogram histogram = latencies.get(name);
+            long count = histogram.getCount();
+            long errorCount = errors.get(name).values().stream().mapToLong(LongAdder::sum).sum();
+            total += count;
+            double p50 = histogram.getPercentile(50) / NANOS_PER_MILLI;
+            double p99 = histogram.getPercentile(99) / NANOS_PER_MILLI;
+            double p999 = histogram.getPercentile(99.9) / NANOS_PER_MILLI;
+            double errorPercent = count == 0 ? 0 : 100.0 * errorCount / count;
+            System.out.printf("%-32s %9d %9.1f %9.2f %9.2f %9.2f %7.2f%%%n",
+                    abbreviate(name), count, count / (double) durationSeconds, p50, p99, p999, errorPercent);
+            check(exceeded, request, "p50", p50, "ms");
+            check(exceeded, request, "p99", p99, "ms");
+            check(exceeded, request, "p999", p999, "ms");
+            check(exceeded, request, "errors", errorPercent, "%");
+        }
+        System.out.printf("%-32s %9d %9.1f%n%n", "Total", total, total / (double) durationSeconds);
+        errors.forEach((name, statuses) -> statuses.forEach((status, count) -> System.out.printf("%s: %d x %s%n",
+                name, count.sum(), status == NO_RESPONSE ? "no response" : "status " + status)));
+        return exceeded;
+    }
+
+    private static void check(List<String> exceeded, Scenario.Request request, String key, double actual, String unit) {
+        Double budget = request.getBudget(key);
+        if (budget != null && actual > budget) {
+            exceeded.add(String.format("%s: %s was %.2f %s, but the budget is %.2f %s", request.getName(), key, actual, unit, budget, unit));
+        }
+    }
+
+    private static String abbreviate(String name) {
+        return name.length() <= 32 ? name : name.substring(0, 29) + "...";
+    }
+}
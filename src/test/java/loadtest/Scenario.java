@@ -0,0 +1,251 @@
+package loadtest;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A load-test workload, read from a file in the format of {@code demo.http}: requests separated by
+ * {@code ###} lines, each with a request line, headers, a blank line and an optional body.
+ * <p>
+ * A request is named by its {@code ###} line, and tuned by comment lines before the request line:
+ * <pre>
+ * ### Person by phone number
+ * # @weight 30
+ * # @expect 200 404
+ * # @budget p50=5ms p99=50ms p999=200ms errors=0.1%
+ * GET {{host}}/information/api/person/number/{{number}}
+ * </pre>
+ * The weight is how often the request is picked (1 by default), the expected statuses are 2xx and 304
+ * by default, and a budget left out is not checked. The {@code {{variables}}} are filled in for every request
+ * (see {@link TestData#get}).
+ */
+public class Scenario {
+    private static final Pattern VARIABLE = Pattern.compile("\\{\\{\\s*(\\w+)\\s*}}");
+    private static final Pattern BUDGET = Pattern.compile("(p50|p99|p999|errors)=([0-9.]+)(ms|%)?");
+
+    private final List<Request> requests;
+    private final int totalWeight;
+
+    private Scenario(List<Request> requests) {
+        this.requests = Collections.unmodifiableList(requests);
+        this.totalWeight = requests.stream().mapToInt(Request::getWeight).sum();
+    }
+
+    /**
+     * Reads a scenario file.
+     *
+     * @param file the scenario file.
+     * @return {@link Scenario}.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file has no requests, or a request cannot be read.
+     */
+    public static Scenario read(Path file) throws IOException {
+        List<Request> requests = new ArrayList<>();
+        List<String> block = new ArrayList<>();
+        String name = null;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.startsWith("###")) {
+                if (!isBlank(block)) {
+                    requests.add(Request.parse(name, block, requests.size() + 1));
+                }
+                block.clear();
+                name = line.substring(3).trim();
+            }
+            else {
+                block.add(line);
+            }
+        }
+        if (!isBlank(block)) {
+            requests.add(Request.parse(name, block, requests.size() + 1));
+        }
+        if (requests.isEmpty()) {
+            throw new IllegalArgumentException("The scenario " + file + " has no requests.");
+        }
+        return new Scenario(requests);
+    }
+
+    private static boolean isBlank(List<String> lines) {
+        return lines.stream().allMatch(line -> line.trim().isEmpty() || (line.startsWith("#") && !line.startsWith("# @")));
+    }
+
+    public List<Request> getRequests() {
+        return requests;
+    }
+
+    /**
+     * Picks a request by weight.
+     *
+     * @param random a number between 0 (inclusive) and 1 (exclusive).
+     * @return {@link Request}.
+     */
+    public Request pick(double random) {
+        int target = (int) (random * totalWeight);
+        for (Request request : requests) {
+            target -= request.getWeight();
+            if (target < 0) {
+                return request;
+            }
+        }
+        return requests.get(requests.size() - 1);
+    }
+
+    /**
+     * Replaces the {@code {{variables}}} in a text.
+     *
+     * @param text a URL, header or body.
+     * @param variables returns the value of a variable.
+     * @return the text with the values filled in.
+     */
+    static String fill(String text, Function<String, String> variables) {
+        Matcher matcher = VARIABLE.matcher(text);
+        StringBuffer filled = new StringBuffer();
+        while (matcher.find()) {
+            matcher.appendReplacement(filled, Matcher.quoteReplacement(variables.apply(matcher.group(1))));
+        }
+        matcher.appendTail(filled);
+        return filled.toString();
+    }
+
+    /**
+     * One request of the workload, with its budgets.
+     */
+    public static class Request {
+        private final String name;
+        private final String method;
+        private final String url;
+        private final Map<String, String> headers;
+        private final String body;
+        private final int weight;
+        private final Set<Integer> expected;
+        private final Map<String, Double> budgets;
+
+        private Request(String name, String method, String url, Map<String, String> headers, String body,
+                        int weight, Set<Integer> expected, Map<String, Double> budgets) {
+            this.name = name;
+            this.method = method;
+            this.url = url;
+            this.headers = headers;
+            this.body = body;
+            this.weight = weight;
+            this.expected = expected;
+            this.budgets = budgets;
+        }
+
+        private static Request parse(String name, List<String> lines, int number) {
+            int weight = 1;
+            Set<Integer> expected = new HashSet<>();
+            Map<String, Double> budgets = new LinkedHashMap<>();
+            int i = 0;
+            // The comments before the request line
+            for (; i < lines.size() && (lines.get(i).trim().isEmpty() || lines.get(i).startsWith("#")); i++) {
+                String line = lines.get(i).trim();
+                if (line.startsWith("# @weight")) {
+                    weight = Integer.parseInt(line.substring("# @weight".length()).trim());
+                }
+                else if (line.startsWith("# @expect")) {
+                    for (String status : line.substring("# @expect".length()).trim().split("\\s+")) {
+                        expected.add(Integer.parseInt(status));
+                    }
+                }
+                else if (line.startsWith("# @budget")) {
+                    Matcher matcher = BUDGET.matcher(line);
+                    while (matcher.find()) {
+                        budgets.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+                    }
+                }
+            }
+            if (i == lines.size()) {
+                throw new IllegalArgumentException("Request " + number + " has no request line.");
+            }
+            String[] requestLine = lines.get(i++).trim().split("\\s+");
+            if (requestLine.length < 2) {
+                throw new IllegalArgumentException("Request " + number + " must start with a method and a URL: " + Arrays.toString(requestLine));
+            }
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (; i < lines.size() && !lines.get(i).trim().isEmpty(); i++) {
+                String line = lines.get(i);
+                int colon = line.indexOf(':');
+                // Headers commented out (like in demo.http) are skipped
+                if (!line.startsWith("#") && colon > 0) {
+                    headers.put(line.substring(0, colon).trim(), line.substring(colon + 1).trim());
+                }
+            }
+            StringBuilder body = new StringBuilder();
+            for (; i < lines.size(); i++) {
+                body.append(lines.get(i)).append('\n');
+            }
+            String method = requestLine[0].toUpperCase();
+            String url = requestLine[1];
+            if (name == null || name.isEmpty()) {
+                name = method + " " + url;
+            }
+            String trimmedBody = body.toString().trim();
+            return new Request(name, method, url, headers, trimmedBody.isEmpty() ? null : trimmedBody, weight, expected, budgets);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getMethod() {
+            return method;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+
+        /**
+         * Returns the body.
+         *
+         * @return the body – or {@code null} if the request has none.
+         */
+        public String getBody() {
+            return body;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Returns whether a response status is expected (and is not an error).
+         *
+         * @param status an HTTP status.
+         * @return {@code true} if the status is listed in {@code @expect} – or is 2xx or 304 if nothing is listed.
+         */
+        public boolean isExpected(int status) {
+            if (expected.isEmpty()) {
+                return status / 100 == 2 || status == 304;
+            }
+            return expected.contains(status);
+        }
+
+        /**
+         * Returns a budget.
+         *
+         * @param key {@code p50}, {@code p99}, {@code p999} (milliseconds) or {@code errors} (percent).
+         * @return the budget – or {@code null} if it is not checked.
+         */
+        public Double getBudget(String key) {
+            return budgets.get(key);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package loadtest;
+
+import entities.Address;
+import entities.Hobby;
+import entities.Person;
+import entities.Phone;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Seeds the database with synthetic persons, hobbies and phones, and fills in the scenario variables
+ * with values that exist:
+ * <ul>
+ *     <li>{@code {{host}}} – the server, e.g. {@code http://localhost:7790}</li>
+ *     <li>{@code {{personId}}} – the id of a seeded person</li>
+ *     <li>{@code {{number}}} – a seeded phone number</li>
+ *     <li>{@code {{hobby}}} – the name of a seeded hobby</li>
+ *     <li>{@code {{unique}}} – a number never used before, for new phone numbers and emails</li>
+ * </ul>
+ */
+public class TestData {
+    private static final int FIRST_NUMBER = 20000000;
+    private static final int FIRST_UNIQUE = 60000000;
+    private static final int BATCH_SIZE = 500;
+
+    private final String host;
+    private final List<Integer> personIds = new ArrayList<>();
+    private final List<Integer> numbers = new ArrayList<>();
+    private final List<String> hobbies = new ArrayList<>();
+    private final AtomicInteger unique = new AtomicInteger(FIRST_UNIQUE);
+
+    TestData(String host) {
+        this.host = host;
+    }
+
+    /**
+     * Persists the hobbies, and then the persons with their addresses and phones
+     * (every person gets one to three hobbies).
+     *
+     * @param emf the {@link EntityManagerFactory} of the database.
+     * @param personCount the number of persons.
+     * @param hobbyCount the number of hobbies.
+     * @param phonesPerPerson the number of phones of every person.
+     */
+    void seed(EntityManagerFactory emf, int personCount, int hobbyCount, int phonesPerPerson) {
+        // The same data every time, so runs can be compared
+        Random random = new Random(42);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            List<Hobby> seededHobbies = new ArrayList<>();
+            for (int i = 1; i <= hobbyCount; i++) {
+                Hobby hobby = new Hobby("Generel", "Hobby" + i, i % 2 == 0 ? "Indendørs" : "Udendørs", "https://da.wikipedia.org/wiki/Hobby" + i);
+                em.persist(hobby);
+                seededHobbies.add(hobby);
+                hobbies.add(hobby.getName());
+            }
+            em.getTransaction().commit();
+            int number = FIRST_NUMBER;
+            for (int i = 1; i <= personCount; i++) {
+                if (!em.getTransaction().isActive()) {
+                    em.getTransaction().begin();
+                }
+                Address address = new Address("Load Street " + i, 1000 + random.nextInt(9000));
+                em.persist(address);
+                Person person = new Person("First" + i, "Last" + i, "person" + i + "@load.dk", address);
+                int personHobbies = 1 + random.nextInt(Math.min(3, hobbyCount));
+                for (int h = 0; h < personHobbies; h++) {
+                    Hobby hobby = em.merge(seededHobbies.get(random.nextInt(hobbyCount)));
+                    if (!person.getHobbies().contains(hobby)) {
+                        person.addHobby(hobby);
+                    }
+                }
+                em.persist(person);
+                for (int p = 0; p < phonesPerPerson; p++) {
+                    em.persist(new Phone(number, p == 0 ? "Mobile" : "Work", person));
+                    numbers.add(number++);
+                }
+                if (i % BATCH_SIZE == 0 || i == personCount) {
+                    em.getTransaction().commit();
+                    em.clear();
+                }
+            }
+            personIds.addAll(em.createQuery("SELECT p.id FROM Person p", Integer.class).getResultList());
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Returns the value of a scenario variable – a new one every time it is asked for.
+     *
+     * @param variable the name of the variable.
+     * @return the value.
+     * @throws IllegalArgumentException if the variable is unknown.
+     */
+    String get(String variable) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        switch (variable) {
+            case "host":
+                return host;
+            case "personId":
+                return String.valueOf(personIds.get(random.nextInt(personIds.size())));
+            case "number":
+                return String.valueOf(numbers.get(random.nextInt(numbers.size())));
+            case "hobby":
+                return hobbies.get(random.nextInt(hobbies.size()));
+            case "unique":
+                return String.valueOf(unique.getAndIncrement());
+            default:
+                throw new IllegalArgumentException("Unknown scenario variable: {{" + variable + "}}");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package rest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import facades.PersonFacade;
+import json.GsonFactory;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.EmbeddedDatabase;
+import utils.StatusCode;
+
+import javax.ws.rs.core.UriBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure a bulk import keeps the rows it read before the body broke off, reports the row it could not read
+ * with its number, and can stream its results as NDJSON.
+ * <p>
+ * Runs a Grizzly server against an in-memory H2 database, so no MySQL server is needed.
+ */
+class BulkImportTest {
+    private static final URI BASE_URI = UriBuilder.fromUri("http://localhost/api").port(7786).build();
+    private static HttpServer httpServer;
+
+    @BeforeAll
+    public static void setUpClass() {
+        // The facades keep the first factory they are given, so hand them the embedded database before the resources do
+        PersonFacade.getInstance(EmbeddedDatabase.getEntityManagerFactory());
+        // The resources create a factory of their own (which the facades ignore), so point it at the embedded database too
+        EmbeddedDatabase.getProperties().forEach(System::setProperty);
+        ResourceConfig rc = new ResourceConfig(PersonResource.class, GsonMessageBodyWriter.class);
+        httpServer = GrizzlyHttpServerFactory.createHttpServer(BASE_URI, rc);
+    }
+
+    @AfterAll
+    public static void closeTestServer() {
+        httpServer.shutdownNow();
+        EmbeddedDatabase.getProperties().keySet().forEach(System::clearProperty);
+    }
+
+    @Test
+    public void testRowsBeforeABrokenBodyAreImported() throws IOException {
+        // The array breaks off after the second person, in the middle of the first chunk
+        String body = "[" + person("first@bulk.dk", 97000000) + "," + person("second@bulk.dk", 97000001) + " broken";
+        JsonObject summary = GsonFactory.getGson().fromJson(post(body, "application/json", "application/json"), JsonObject.class);
+        assertEquals(2, summary.get("created").getAsInt());
+        assertEquals(1, summary.get("failed").getAsInt());
+        JsonArray results = summary.getAsJsonArray("results");
+        assertEquals(3, results.size());
+        for (int i = 0; i < 2; i++) {
+            assertEquals(i + 1, results.get(i).getAsJsonObject().get("row").getAsInt());
+            assertEquals(StatusCode.OK, results.get(i).getAsJsonObject().get("code").getAsInt());
+        }
+        assertEquals(3, results.get(2).getAsJsonObject().get("row").getAsInt());
+        assertEquals(StatusCode.BAD_REQUEST, results.get(2).getAsJsonObject().get("code").getAsInt());
+    }
+
+    @Test
+    public void testResultsAreStreamedAsNdjson() throws IOException {
+        String body = person("third@bulk.dk", 97000002) + "\n" + person("fourth@bulk.dk", 97000002) + "\n";
+        String[] lines = post(body, "application/x-ndjson", "application/x-ndjson").split("\n");
+        assertEquals(2, lines.length);
+        JsonObject first = GsonFactory.getGson().fromJson(lines[0], JsonObject.class);
+        JsonObject second = GsonFactory.getGson().fromJson(lines[1], JsonObject.class);
+        assertEquals(1, first.get("row").getAsInt());
+        assertEquals(StatusCode.OK, first.get("code").getAsInt());
+        // The second person wants the same number
+        assertEquals(2, second.get("row").getAsInt());
+        assertEquals(StatusCode.FOUND, second.get("code").getAsInt());
+    }
+
+    @Test
+    public void testOnlyTheRowWithAWrongValueIsRejected() throws IOException {
+        String wrong = person("wrong@bulk.dk", 97000004).replace("\"zipcode\":7100", "\"zipcode\":\"abc\"");
+        String array = "[" + person("fifth@bulk.dk", 97000003) + "," + wrong + "," + person("sixth@bulk.dk", 97000005) + "]";
+        JsonArray results = GsonFactory.getGson().fromJson(post(array, "application/json", "application/json"), JsonObject.class).getAsJsonArray("results");
+        assertEquals(3, results.size());
+        assertEquals(StatusCode.OK, results.get(0).getAsJsonObject().get("code").getAsInt());
+        assertEquals(StatusCode.BAD_REQUEST, results.get(1).getAsJsonObject().get("code").getAsInt());
+        assertEquals(StatusCode.OK, results.get(2).getAsJsonObject().get("code").getAsInt());
+        String lines = person("seventh@bulk.dk", 97000006) + "\n" + wrong + "\n" + person("eighth@bulk.dk", 97000007) + "\n";
+        results = GsonFactory.getGson().fromJson(post(lines, "application/x-ndjson", "application/json"), JsonObject.class).getAsJsonArray("results");
+        assertEquals(3, results.size());
+        assertEquals(StatusCode.OK, results.get(0).getAsJsonObject().get("code").getAsInt());
+        assertEquals(StatusCode.BAD_REQUEST, results.get(1).getAsJsonObject().get("code").getAsInt());
+        assertEquals(StatusCode.OK, results.get(2).getAsJsonObject().get("code").getAsInt());
+    }
+
+    private static String person(String email, int number) {
+        return "{\"firstName\":\"Bulk\",\"lastName\":\"Person\",\"email\":\"" + email + "\","
+                + "\"address\":{\"street\":\"Bulk Street 1\",\"zipcode\":7100},"
+                + "\"phones\":[{\"number\":" + number + ",\"description\":\"Mobile\"}]}";
+    }
+
+    private static String post(String body, String contentType, String accept) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + "/person/bulk").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", contentType);
+        connection.setRequestProperty("Accept", accept);
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith(accept));
+        try (InputStream input = connection.getInputStream()) {
+            ByteArrayOutputStream response = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = input.read(buffer)) != -1; ) {
+                response.write(buffer, 0, read);
+            }
+            return new String(response.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
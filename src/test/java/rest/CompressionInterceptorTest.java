@@ -0,0 +1,168 @@
+package rest;
+
+import dtos.CompressionStatsDTO;
+import dtos.ResponseDTO;
+import json.GsonFactory;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.CompressionMetrics;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure large responses are compressed the way the client asks, and small ones are left alone.
+ */
+class CompressionInterceptorTest {
+    private static final URI BASE_URI = UriBuilder.fromUri("http://localhost/api").port(7780).build();
+    private static final EntityTag TAG = new EntityTag("message-1");
+    private static HttpServer httpServer;
+
+    @Path("message")
+    public static class MessageResource {
+
+        @GET
+        @Path("/{length}")
+        @Produces({MediaType.APPLICATION_JSON})
+        public Response getMessage(@PathParam("length") int length, @Context Request request) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(TAG);
+            if (notModified != null) {
+                return notModified.build();
+            }
+            return Response.ok().entity(messageOf(length)).tag(TAG).build();
+        }
+    }
+
+    private static ResponseDTO messageOf(int length) {
+        StringBuilder message = new StringBuilder();
+        while (message.length() < length) {
+            message.append("All work and no play. ");
+        }
+        return new ResponseDTO(200, message.substring(0, length));
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+        ResourceConfig rc = new ResourceConfig(MessageResource.class, GsonMessageBodyWriter.class, CompressionInterceptor.class);
+        httpServer = GrizzlyHttpServerFactory.createHttpServer(BASE_URI, rc);
+    }
+
+    @AfterAll
+    public static void closeTestServer() {
+        httpServer.shutdownNow();
+    }
+
+    @Test
+    public void testNegotiate() {
+        assertNull(CompressionInterceptor.negotiate(null));
+        assertNull(CompressionInterceptor.negotiate("identity"));
+        assertNull(CompressionInterceptor.negotiate("gzip;q=0, deflate;q=0"));
+        assertNull(CompressionInterceptor.negotiate("*;q=0"));
+        assertEquals("gzip", CompressionInterceptor.negotiate("gzip, deflate, br"));
+        assertEquals("gzip", CompressionInterceptor.negotiate("deflate, gzip"));
+        assertEquals("gzip", CompressionInterceptor.negotiate("*"));
+        assertEquals("deflate", CompressionInterceptor.negotiate("gzip;q=0.5, deflate"));
+        assertEquals("deflate", CompressionInterceptor.negotiate("gzip;q=0, *"));
+        assertEquals("deflate", CompressionInterceptor.negotiate("DEFLATE"));
+    }
+
+    @Test
+    public void testLargeBodyIsGzipped() throws IOException {
+        String expected = uncompressedBody(20000);
+        CompressionStatsDTO before = CompressionMetrics.getInstance().getStats(CompressionInterceptor.THRESHOLD);
+        HttpURLConnection connection = get("/message/20000", "gzip, deflate");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("gzip", connection.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("Accept-Encoding", connection.getHeaderField(HttpHeaders.VARY));
+        assertEquals("W/\"message-1\"", connection.getHeaderField(HttpHeaders.ETAG));
+        byte[] compressed = readAll(connection.getInputStream());
+        assertTrue(compressed.length < expected.length() / 10);
+        assertEquals(expected, new String(readAll(new GZIPInputStream(new ByteArrayInputStream(compressed))), StandardCharsets.UTF_8));
+        CompressionStatsDTO after = CompressionMetrics.getInstance().getStats(CompressionInterceptor.THRESHOLD);
+        assertEquals(1, after.getCompressedResponses() - before.getCompressedResponses());
+        assertEquals(expected.length(), after.getBytesIn() - before.getBytesIn());
+        assertEquals(compressed.length, after.getBytesOut() - before.getBytesOut());
+    }
+
+    @Test
+    public void testLargeBodyIsDeflated() throws IOException {
+        HttpURLConnection connection = get("/message/20000", "deflate");
+        assertEquals("deflate", connection.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(uncompressedBody(20000), new String(readAll(new InflaterInputStream(connection.getInputStream())), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSmallBodyIsNotCompressed() throws IOException {
+        CompressionStatsDTO before = CompressionMetrics.getInstance().getStats(CompressionInterceptor.THRESHOLD);
+        HttpURLConnection connection = get("/message/100", "gzip");
+        assertNull(connection.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+        assertEquals("\"message-1\"", connection.getHeaderField(HttpHeaders.ETAG));
+        assertEquals(uncompressedBody(100), new String(readAll(connection.getInputStream()), StandardCharsets.UTF_8));
+        CompressionStatsDTO after = CompressionMetrics.getInstance().getStats(CompressionInterceptor.THRESHOLD);
+        assertEquals(1, after.getUncompressedResponses() - before.getUncompressedResponses());
+    }
+
+    @Test
+    public void testUnwantedCompressionIsNotUsed() throws IOException {
+        String expected = uncompressedBody(20000);
+        HttpURLConnection connection = get("/message/20000", null);
+        assertNull(connection.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(expected, new String(readAll(connection.getInputStream()), StandardCharsets.UTF_8));
+        connection = get("/message/20000", "gzip;q=0, identity");
+        assertNull(connection.getHeaderField(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(expected, new String(readAll(connection.getInputStream()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testWeakTagStillMatches() throws IOException {
+        HttpURLConnection connection = get("/message/20000", "gzip");
+        String etag = connection.getHeaderField(HttpHeaders.ETAG);
+        readAll(connection.getInputStream());
+        connection = get("/message/20000", "gzip");
+        connection.setRequestProperty(HttpHeaders.IF_NONE_MATCH, etag);
+        assertEquals(304, connection.getResponseCode());
+    }
+
+    private static String uncompressedBody(int length) {
+        return GsonFactory.getGson().toJson(messageOf(length));
+    }
+
+    private static HttpURLConnection get(String path, String acceptEncoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + path).openConnection();
+        if (acceptEncoding != null) {
+            connection.setRequestProperty(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+        }
+        return connection;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package rest;
+
+import com.google.gson.Gson;
+import dtos.AddressDTO;
+import dtos.PersonDTO;
+import dtos.PhoneDTO;
+import entities.Address;
+import entities.Hobby;
+import entities.Person;
+import entities.Phone;
+import errorhandling.EntityFoundException;
+import errorhandling.EntityNotFoundException;
+import errorhandling.InternalErrorException;
+import facades.HobbyFacade;
+import facades.PersonFacade;
+import facades.PhoneFacade;
+import json.GsonFactory;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.EmbeddedDatabase;
+import utils.HobbyCatalog;
+import utils.StatementCounter;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure the person and hobby reads answer a poll with an unchanged ETag with 304 Not Modified
+ * after a single lookup, that the write paths change the ETags, and that a write with an outdated
+ * {@code If-Match} is refused with 412 Precondition Failed.
+ * <p>
+ * Runs a Grizzly server against an in-memory H2 database, so no MySQL server is needed.
+ */
+class ConditionalGetTest {
+    private static final URI BASE_URI = UriBuilder.fromUri("http://localhost/api").port(7779).build();
+    private static final StatementCounter COUNTER = new StatementCounter();
+    private static final Gson GSON = GsonFactory.getGson();
+    private static final String HOBBY = "Polling";
+    private static final int NUMBER = 95000000;
+    private static HttpServer httpServer;
+    private static PersonFacade personFacade;
+    private static int personId;
+
+    @BeforeAll
+    public static void setUpClass() {
+        // The facades keep the first factory they are given, so hand them the embedded database before the resources do
+        EntityManagerFactory emf = EmbeddedDatabase.getEntityManagerFactory();
+        personFacade = PersonFacade.getInstance(emf);
+        HobbyFacade.getInstance(emf);
+        PhoneFacade.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Hobby hobby = new Hobby("Generel", HOBBY, "Indendørs", "");
+            em.persist(hobby);
+            Address address = new Address("Poll Street 1", 8000);
+            em.persist(address);
+            Person person = new Person("Poll", "Person", "poll@mail.dk", address);
+            person.addHobby(hobby);
+            em.persist(person);
+            em.persist(new Phone(NUMBER, "Home", person));
+            em.persist(new Phone(NUMBER + 1, "Work", person));
+            em.getTransaction().commit();
+            personId = person.getId();
+        }
+        finally {
+            em.close();
+        }
+        HobbyCatalog.invalidate();
+        JpaHelper.getServerSession(emf).setProfiler(COUNTER);
+        // The resources create a factory of their own (which the facades ignore), so point it at the embedded database too
+        EmbeddedDatabase.getProperties().forEach(System::setProperty);
+        ResourceConfig rc = new ResourceConfig(PersonResource.class, HobbyResource.class, GsonMessageBodyWriter.class);
+        httpServer = GrizzlyHttpServerFactory.createHttpServer(BASE_URI, rc);
+    }
+
+    @AfterAll
+    public static void closeTestServer() {
+        httpServer.shutdownNow();
+        EmbeddedDatabase.getProperties().keySet().forEach(System::clearProperty);
+    }
+
+    @Test
+    public void testUnchangedPersonCostsOneLookup() throws IOException {
+        String path = "/person/id/" + personId;
+        String etag = getETag(path);
+        int before = COUNTER.getStatements();
+        assertEquals(304, get(path, etag).getResponseCode());
+        assertEquals(1, COUNTER.getStatements() - before);
+        // A pretty printed person is another representation
+        assertNotEquals(etag, getETag(path + "?pretty"));
+        assertEquals(200, get(path + "?pretty", etag).getResponseCode());
+        assertEquals(404, get("/person/id/0", etag).getResponseCode());
+    }
+
+    @Test
+    public void testChangedPersonGetsNewTags() throws IOException, EntityNotFoundException, EntityFoundException, InternalErrorException {
+        String personTag = getETag("/person/id/" + personId);
+        String hobbyTag = getETag("/hobby/" + HOBBY + "/persons");
+        String hobbiesTag = getETag("/hobby");
+        PersonDTO person = personFacade.getPersonByNumber(NUMBER);
+        person.setEmail("polled@mail.dk");
+        personFacade.updatePerson(person);
+        assertEquals(200, get("/person/id/" + personId, personTag).getResponseCode());
+        assertEquals(200, get("/hobby/" + HOBBY + "/persons", hobbyTag).getResponseCode());
+        assertEquals(200, get("/hobby", hobbiesTag).getResponseCode());
+        // Removing a phone changes the person as well
+        personTag = getETag("/person/id/" + personId);
+        PhoneFacade.getInstance(null).removePhone(NUMBER + 1);
+        assertNotEquals(personTag, getETag("/person/id/" + personId));
+    }
+
+    @Test
+    public void testOutdatedWritesAreRefused() throws IOException, EntityNotFoundException, EntityFoundException, InternalErrorException {
+        PersonDTO person = new PersonDTO("Edited", "Person", "edited@mail.dk", new AddressDTO("Edit Street 1", 8000));
+        person.addPhone(new PhoneDTO(NUMBER + 10, "Home"));
+        personFacade.createPerson(person);
+        person.setId(personFacade.getPersonByNumber(NUMBER + 10).getId());
+        String path = "/person/id/" + person.getId();
+        String etag = getETag(path);
+        // Someone else changes the person
+        person.setFirstName("Changed");
+        personFacade.updatePerson(person);
+        person.setFirstName("Outdated");
+        assertEquals(412, write("PUT", "/person", etag, GSON.toJson(person)).getResponseCode());
+        assertEquals(412, write("DELETE", "/person/" + person.getId(), etag, null).getResponseCode());
+        assertEquals("Changed", personFacade.getPersonByNumber(NUMBER + 10).getFirstName());
+        // With the current tag (pretty printed or not) the changes are saved
+        etag = getETag(path + "?pretty");
+        assertEquals(200, write("PUT", "/person", etag, GSON.toJson(person)).getResponseCode());
+        assertEquals("Outdated", personFacade.getPersonByNumber(NUMBER + 10).getFirstName());
+        assertEquals(412, write("DELETE", "/person/" + person.getId(), etag, null).getResponseCode());
+        // The phones go with the person
+        assertEquals(200, write("DELETE", "/person/" + person.getId(), getETag(path), null).getResponseCode());
+        assertThrows(EntityNotFoundException.class, () -> personFacade.getPersonByNumber(NUMBER + 10));
+        assertEquals(404, write("DELETE", "/person/" + person.getId(), "*", null).getResponseCode());
+    }
+
+    @Test
+    public void testWeakTagsNeverMatch() throws IOException, EntityNotFoundException, EntityFoundException, InternalErrorException {
+        PersonDTO person = new PersonDTO("Weak", "Person", "weak@mail.dk", new AddressDTO("Edit Street 1", 8000));
+        person.addPhone(new PhoneDTO(NUMBER + 20, "Home"));
+        personFacade.createPerson(person);
+        person.setId(personFacade.getPersonByNumber(NUMBER + 20).getId());
+        String etag = getETag("/person/id/" + person.getId());
+        person.setFirstName("Weakened");
+        // If-Match compares strongly, so the current tag made weak does not match
+        assertEquals(412, write("PUT", "/person", "W/" + etag, GSON.toJson(person)).getResponseCode());
+        assertEquals(412, write("DELETE", "/person/" + person.getId(), "W/" + etag, null).getResponseCode());
+        assertEquals("Weak", personFacade.getPersonByNumber(NUMBER + 20).getFirstName());
+        // A strong tag further down the list does
+        assertEquals(200, write("PUT", "/person", "W/" + etag + ", " + etag, GSON.toJson(person)).getResponseCode());
+        assertEquals("Weakened", personFacade.getPersonByNumber(NUMBER + 20).getFirstName());
+    }
+
+    @Test
+    public void testUnchangedHobbiesAreNotModified() throws IOException {
+        String path = "/hobby/" + HOBBY + "/persons";
+        String etag = getETag(path);
+        int before = COUNTER.getStatements();
+        assertEquals(304, get(path, etag).getResponseCode());
+        assertEquals(1, COUNTER.getStatements() - before);
+        etag = getETag("/hobby");
+        before = COUNTER.getStatements();
+        assertEquals(304, get("/hobby", etag).getResponseCode());
+        assertEquals(1, COUNTER.getStatements() - before);
+        assertNotEquals(etag, getETag("/hobby?expand=persons"));
+        assertEquals(404, get("/hobby/No such hobby/persons", etag).getResponseCode());
+    }
+
+    private static String getETag(String path) throws IOException {
+        HttpURLConnection connection = get(path, null);
+        assertEquals(200, connection.getResponseCode());
+        String etag = connection.getHeaderField("ETag");
+        assertNotNull(etag);
+        return etag;
+    }
+
+    private static HttpURLConnection write(String method, String path, String ifMatch, String json) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("If-Match", ifMatch);
+        if (json != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(json.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        return connection;
+    }
+
+    private static HttpURLConnection get(String path, String ifNoneMatch) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + path.replace(" ", "%20")).openConnection();
+        if (ifNoneMatch != null) {
+            connection.setRequestProperty("If-None-Match", ifNoneMatch);
+        }
+        return connection;
+    }
+}
@@ -0,0 +1,125 @@
+package rest;
+
+import dtos.AddressDTO;
+import dtos.PersonDTO;
+import entities.Address;
+import entities.Hobby;
+import entities.Person;
+import facades.HobbyFacade;
+import facades.PersonFacade;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.EmbeddedDatabase;
+import utils.HobbyCatalog;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.ws.rs.core.UriBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure the count endpoints return the number of rows – and 0 for a hobby that does not exist.
+ * <p>
+ * Runs a Grizzly server against an in-memory H2 database, so no MySQL server is needed.
+ */
+class CountEndpointsTest {
+    private static final URI BASE_URI = UriBuilder.fromUri("http://localhost/api").port(7785).build();
+    private static final String HOBBY = "Counting";
+    private static final int MEMBERS = 3;
+    private static HttpServer httpServer;
+    private static EntityManagerFactory emf;
+    private static PersonFacade personFacade;
+
+    @BeforeAll
+    public static void setUpClass() {
+        // The facades keep the first factory they are given, so hand them the embedded database before the resources do
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        personFacade = PersonFacade.getInstance(emf);
+        HobbyFacade.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Hobby hobby = new Hobby("Generel", HOBBY, "Indendørs", "");
+            em.persist(hobby);
+            Address address = new Address("Count Street 1", 8300);
+            em.persist(address);
+            for (int i = 0; i < MEMBERS; i++) {
+                Person person = new Person("Count", "Member " + i, "member" + i + "@count.dk", address);
+                person.addHobby(hobby);
+                em.persist(person);
+            }
+            em.persist(new Person("Count", "Outsider", "outsider@count.dk", address));
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+        HobbyCatalog.invalidate();
+        // The resources create a factory of their own (which the facades ignore), so point it at the embedded database too
+        EmbeddedDatabase.getProperties().forEach(System::setProperty);
+        ResourceConfig rc = new ResourceConfig(PersonResource.class, HobbyResource.class, GsonMessageBodyWriter.class);
+        httpServer = GrizzlyHttpServerFactory.createHttpServer(BASE_URI, rc);
+    }
+
+    @AfterAll
+    public static void closeTestServer() {
+        httpServer.shutdownNow();
+        EmbeddedDatabase.getProperties().keySet().forEach(System::clearProperty);
+    }
+
+    @Test
+    public void testCountPersons() throws Exception {
+        long persons = count("SELECT COUNT(p) FROM Person p");
+        assertEquals(persons, countOf("/person/count"));
+        personFacade.createPerson(new PersonDTO("Count", "Newcomer", "newcomer@count.dk", new AddressDTO("Count Street 1", 8300)));
+        assertEquals(persons + 1, countOf("/person/count"));
+    }
+
+    @Test
+    public void testCountHobbies() throws IOException {
+        assertEquals(count("SELECT COUNT(h) FROM Hobby h"), countOf("/hobby/count"));
+    }
+
+    @Test
+    public void testCountPersonsByHobbyName() throws IOException {
+        assertEquals(MEMBERS, countOf("/person/has-hobby/" + HOBBY + "/count"));
+        assertEquals(MEMBERS, countOf("/hobby/" + HOBBY + "/persons/count"));
+        assertEquals(0, countOf("/person/has-hobby/No%20such%20hobby/count"));
+        assertEquals(0, countOf("/hobby/No%20such%20hobby/persons/count"));
+    }
+
+    private static long countOf(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + path).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream input = connection.getInputStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            for (int read; (read = input.read(buffer)) != -1; ) {
+                body.write(buffer, 0, read);
+            }
+            return Long.parseLong(new String(body.toByteArray(), StandardCharsets.UTF_8).trim());
+        }
+    }
+
+    private static long count(String jpql) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery(jpql, Long.class).getSingleResult();
+        }
+        finally {
+            em.close();
+        }
+    }
+}
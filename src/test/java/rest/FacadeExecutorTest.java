@@ -0,0 +1,148 @@
+package rest;
+
+import dtos.ResponseDTO;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.UnitOfWork;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure a suspended request is answered from the executor, and gets 503 Service Unavailable
+ * when the queue is full or the request takes too long.
+ */
+class FacadeExecutorTest {
+    private static final URI BASE_URI = UriBuilder.fromUri("http://localhost/api").port(7781).build();
+    // One thread and room for one waiting request
+    private static final FacadeExecutor EXECUTOR = new FacadeExecutor("test", 1, 1, 1000);
+    private static final AtomicInteger STARTED = new AtomicInteger();
+    private static volatile CountDownLatch release = new CountDownLatch(0);
+    private static HttpServer httpServer;
+
+    @Path("work")
+    public static class WorkResource {
+
+        @GET
+        @Produces({MediaType.APPLICATION_JSON})
+        public void work(@Suspended AsyncResponse asyncResponse) {
+            EXECUTOR.submit(asyncResponse, () -> {
+                STARTED.incrementAndGet();
+                release.await();
+                return Response.ok().entity(new ResponseDTO(200, Thread.currentThread().getName())).build();
+            });
+        }
+
+        @GET
+        @Path("/fail")
+        @Produces({MediaType.APPLICATION_JSON})
+        public void fail(@Suspended AsyncResponse asyncResponse) {
+            EXECUTOR.submit(asyncResponse, () -> {
+                throw new IllegalStateException("Broken!");
+            });
+        }
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+        ResourceConfig rc = new ResourceConfig(WorkResource.class, GsonMessageBodyWriter.class);
+        httpServer = GrizzlyHttpServerFactory.createHttpServer(BASE_URI, rc);
+    }
+
+    @AfterAll
+    public static void closeTestServer() {
+        release.countDown();
+        httpServer.shutdownNow();
+    }
+
+    @Test
+    public void testAnsweredFromExecutor() throws IOException {
+        int openBefore = UnitOfWork.getNumberOfOpenEntityManagers();
+        HttpURLConnection connection = get("/work");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(body(connection).contains("facade-test-"));
+        assertEquals(500, get("/work/fail").getResponseCode());
+        assertEquals(openBefore, UnitOfWork.getNumberOfOpenEntityManagers());
+    }
+
+    @Test
+    public void testFullQueueAndTimeout() throws Exception {
+        release = new CountDownLatch(1);
+        long rejectedBefore = EXECUTOR.getRejected();
+        long timedOutBefore = EXECUTOR.getTimedOut();
+        int startedBefore = STARTED.get();
+        try {
+            // The first request takes the thread, and the second one waits for it
+            CompletableFuture<Integer> running = CompletableFuture.supplyAsync(() -> statusOf("/work"));
+            waitFor(() -> STARTED.get() == startedBefore + 1);
+            CompletableFuture<Integer> waiting = CompletableFuture.supplyAsync(() -> statusOf("/work"));
+            waitFor(() -> EXECUTOR.getQueued() == 1);
+            HttpURLConnection rejected = get("/work");
+            assertEquals(503, rejected.getResponseCode());
+            assertEquals("1", rejected.getHeaderField(HttpHeaders.RETRY_AFTER));
+            assertEquals(1, EXECUTOR.getRejected() - rejectedBefore);
+            // Neither is answered before the timeout
+            assertEquals(503, running.get(5, TimeUnit.SECONDS));
+            assertEquals(503, waiting.get(5, TimeUnit.SECONDS));
+            assertEquals(2, EXECUTOR.getTimedOut() - timedOutBefore);
+            // The request that timed out in the queue gave up its place
+            assertEquals(0, EXECUTOR.getQueued());
+        }
+        finally {
+            release.countDown();
+        }
+        // The request that timed out in the queue is never run
+        assertEquals(200, get("/work").getResponseCode());
+        assertEquals(startedBefore + 2, STARTED.get());
+    }
+
+    private static HttpURLConnection get(String path) throws IOException {
+        return (HttpURLConnection) new URL(BASE_URI + path).openConnection();
+    }
+
+    private static int statusOf(String path) {
+        try {
+            return get(path).getResponseCode();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String body(HttpURLConnection connection) throws IOException {
+        try (Scanner scanner = new Scanner(connection.getInputStream(), "UTF-8")) {
+            return scanner.useDelimiter("\\A").next();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting");
+            Thread.sleep(10);
+        }
+    }
+}
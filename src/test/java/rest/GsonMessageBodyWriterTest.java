@@ -0,0 +1,97 @@
+package rest;
+
+import dtos.AddressDTO;
+import dtos.PersonDTO;
+import dtos.PhoneDTO;
+import json.GsonFactory;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure DTOs returned by resources are written by the {@link GsonMessageBodyWriter}.
+ * <p>
+ * Runs a Grizzly server with a stub resource, so no database is needed.
+ */
+class GsonMessageBodyWriterTest {
+    private static final URI BASE_URI = UriBuilder.fromUri("http://localhost/api").port(7778).build();
+    private static HttpServer httpServer;
+
+    @BeforeAll
+    public static void setUpClass() {
+        ResourceConfig rc = new ResourceConfig(StubResource.class, GsonMessageBodyWriter.class);
+        httpServer = GrizzlyHttpServerFactory.createHttpServer(BASE_URI, rc);
+    }
+
+    @AfterAll
+    public static void closeTestServer() {
+        httpServer.shutdownNow();
+    }
+
+    @Test
+    public void testCompactByDefault() throws IOException {
+        String json = get("/stub");
+        assertEquals(GsonFactory.getGson().toJson(StubResource.persons()), json);
+        assertFalse(json.contains("\n"));
+    }
+
+    @Test
+    public void testPrettyWhenAskedFor() throws IOException {
+        String json = get("/stub?pretty");
+        assertTrue(json.contains("\n  {\n    \"id\": 1,"));
+        assertEquals(get("/stub"), json.replaceAll("\\n\\s*", "").replace("\": ", "\":"));
+        assertFalse(get("/stub?pretty=false").contains("\n"));
+    }
+
+    private static String get(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + path).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith(MediaType.APPLICATION_JSON));
+        try (InputStream in = connection.getInputStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                body.write(buffer, 0, read);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Path("stub")
+    public static class StubResource {
+
+        static Set<PersonDTO> persons() {
+            PersonDTO person = new PersonDTO("Ann", "Smith", "ann@mail.dk", new AddressDTO("Main Street 1", 2800));
+            person.setId(1);
+            person.addPhone(new PhoneDTO(12345678, "Mobile"));
+            return Collections.singleton(person);
+        }
+
+        @GET
+        @Produces({MediaType.APPLICATION_JSON})
+        public Response getPersons() {
+            return Response.ok().entity(persons()).build();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package rest;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.Scanner;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure the requests are recorded by resource method and exposed in the Prometheus text format.
+ */
+class MetricsFilterTest {
+    private static final URI BASE_URI = UriBuilder.fromUri("http://localhost/api").port(7782).build();
+    private static final String LABELS = "method=\"GET\",endpoint=\"StatusResource.getStatus\"";
+    private static HttpServer httpServer;
+
+    @Path("status")
+    public static class StatusResource {
+
+        @GET
+        @Path("{status}")
+        @Produces({MediaType.APPLICATION_JSON})
+        public Response getStatus(@PathParam("status") int status) {
+            return Response.status(status).entity("{}").build();
+        }
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+        ResourceConfig rc = new ResourceConfig(StatusResource.class, MetricsResource.class, MetricsFilter.class);
+        httpServer = GrizzlyHttpServerFactory.createHttpServer(BASE_URI, rc);
+    }
+
+    @AfterAll
+    public static void closeTestServer() {
+        httpServer.shutdownNow();
+    }
+
+    @Test
+    public void testRequestsAreExposed() throws IOException {
+        String before = metrics();
+        long ok = valueOf(before, "http_server_responses_total{" + LABELS + ",code=\"200\"}");
+        long notFound = valueOf(before, "http_server_responses_total{" + LABELS + ",code=\"404\"}");
+        long count = valueOf(before, "http_server_requests_seconds_count{" + LABELS + "}");
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, get("/status/200").getResponseCode());
+        }
+        assertEquals(404, get("/status/404").getResponseCode());
+        // A request that matches no resource method is not recorded
+        assertEquals(404, get("/nothing").getResponseCode());
+        String after = metrics();
+        assertEquals(ok + 3, valueOf(after, "http_server_responses_total{" + LABELS + ",code=\"200\"}"));
+        assertEquals(notFound + 1, valueOf(after, "http_server_responses_total{" + LABELS + ",code=\"404\"}"));
+        assertEquals(count + 4, valueOf(after, "http_server_requests_seconds_count{" + LABELS + "}"));
+        assertEquals(count + 4, valueOf(after, "http_server_requests_seconds_bucket{" + LABELS + ",le=\"+Inf\"}"));
+        assertEquals(0, valueOf(after, "http_server_requests_in_flight{" + LABELS + "}"));
+        assertTrue(after.contains("# TYPE http_server_requests_seconds histogram\n"));
+        assertTrue(after.contains("\nhttp_compression_bytes_in_total "));
+        assertTrue(after.contains("\nfacade_executor_queued{pool=\"reads\"} "));
+        assertTrue(after.contains("\nfacade_executor_queued{pool=\"writes\"} "));
+        // A metric has one header, also when it has more than one sample
+        assertEquals(after.indexOf("# TYPE facade_executor_queued "), after.lastIndexOf("# TYPE facade_executor_queued "));
+        assertTrue(after.contains("\ndb_slow_statements_total "));
+    }
+
+    @Test
+    public void testContentType() throws IOException {
+        HttpURLConnection connection = get("/metrics");
+        assertEquals(200, connection.getResponseCode());
+        MediaType type = MediaType.valueOf(connection.getHeaderField(HttpHeaders.CONTENT_TYPE));
+        assertTrue(type.isCompatible(MediaType.TEXT_PLAIN_TYPE));
+        assertEquals("0.0.4", type.getParameters().get("version"));
+    }
+
+    private static long valueOf(String metrics, String sample) {
+        for (String line : metrics.split("\n")) {
+            if (line.startsWith(sample + " ")) {
+                return Long.parseLong(line.substring(sample.length() + 1));
+            }
+        }
+        return 0;
+    }
+
+    private static String metrics() throws IOException {
+        try (Scanner scanner = new Scanner(get("/metrics").getInputStream(), "UTF-8")) {
+            return scanner.useDelimiter("\\A").next();
+        }
+    }
+
+    private static HttpURLConnection get(String path) throws IOException {
+        return (HttpURLConnection) new URL(BASE_URI + path).openConnection();
+    }
+}
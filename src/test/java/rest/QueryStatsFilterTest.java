@@ -0,0 +1,152 @@
+package rest;
+
+import dtos.ResponseDTO;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.EmbeddedDatabase;
+import utils.UnitOfWork;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure the SQL statements of a request are reported in its headers – also when the request
+ * is answered from a {@link FacadeExecutor} – and that repeated statements are logged.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class QueryStatsFilterTest {
+    private static final URI BASE_URI = UriBuilder.fromUri("http://localhost/api").port(7783).build();
+    private static final FacadeExecutor EXECUTOR = new FacadeExecutor("stats", 1, 1, 5000);
+    private static final Logger LOGGER = Logger.getLogger(QueryStatsFilter.class.getName());
+    private static final List<String> WARNINGS = new CopyOnWriteArrayList<>();
+    private static final Handler HANDLER = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            WARNINGS.add(new java.text.MessageFormat(record.getMessage()).format(record.getParameters()));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+    private static EntityManagerFactory emf;
+    private static HttpServer httpServer;
+
+    @Path("lookups")
+    public static class LookupResource {
+
+        @GET
+        @Path("{n}")
+        @Produces({MediaType.APPLICATION_JSON})
+        public Response lookUp(@PathParam("n") int n) {
+            return Response.ok().entity(new ResponseDTO(200, "Looked up " + lookUps(n))).build();
+        }
+
+        @GET
+        @Path("async/{n}")
+        @Produces({MediaType.APPLICATION_JSON})
+        public void lookUpAsync(@PathParam("n") int n, @Suspended AsyncResponse asyncResponse) {
+            EXECUTOR.submit(asyncResponse, () -> Response.ok().entity(new ResponseDTO(200, "Looked up " + lookUps(n))).build());
+        }
+
+        /**
+         * Looks up the hobbies one id at a time, the way an N+1 pattern does.
+         */
+        private static int lookUps(int n) {
+            UnitOfWork uow = UnitOfWork.begin(emf);
+            try {
+                EntityManager em = uow.getEntityManager();
+                for (int id = 1; id <= n; id++) {
+                    em.createQuery("SELECT COUNT(h) FROM Hobby h WHERE h.id = :id", Long.class)
+                            .setParameter("id", id)
+                            .getSingleResult();
+                }
+                return n;
+            }
+            finally {
+                uow.close();
+            }
+        }
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        LOGGER.addHandler(HANDLER);
+        ResourceConfig rc = new ResourceConfig(LookupResource.class, QueryStatsFilter.class, UnitOfWorkFilter.class, GsonMessageBodyWriter.class);
+        httpServer = GrizzlyHttpServerFactory.createHttpServer(BASE_URI, rc);
+    }
+
+    @AfterAll
+    public static void closeTestServer() {
+        LOGGER.removeHandler(HANDLER);
+        httpServer.shutdownNow();
+    }
+
+    @Test
+    public void testStatementsAreReported() throws IOException {
+        HttpURLConnection connection = get("/lookups/3");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("3", connection.getHeaderField(QueryStatsFilter.STATEMENTS));
+        assertEquals("3", connection.getHeaderField(QueryStatsFilter.ROWS));
+        assertEquals("3", connection.getHeaderField(QueryStatsFilter.REPEATED));
+        assertTrue(Double.parseDouble(connection.getHeaderField(QueryStatsFilter.TIME)) > 0);
+    }
+
+    @Test
+    public void testStatementsOnTheExecutorAreReported() throws IOException {
+        HttpURLConnection connection = get("/lookups/async/2");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("2", connection.getHeaderField(QueryStatsFilter.STATEMENTS));
+        assertEquals("2", connection.getHeaderField(QueryStatsFilter.REPEATED));
+    }
+
+    @Test
+    public void testRepeatedStatementsAreLogged() throws IOException {
+        assertEquals(200, get("/lookups/" + QueryStatsFilter.DEFAULT_REPEATED_STATEMENT_LIMIT).getResponseCode());
+        assertTrue(WARNINGS.stream().anyMatch(warning -> warning.startsWith("GET lookups/" + QueryStatsFilter.DEFAULT_REPEATED_STATEMENT_LIMIT
+                + " executed the same SQL statement " + QueryStatsFilter.DEFAULT_REPEATED_STATEMENT_LIMIT + " times")), WARNINGS.toString());
+        int budget = QueryStatsFilter.DEFAULT_STATEMENT_BUDGET + 1;
+        assertEquals(200, get("/lookups/" + budget).getResponseCode());
+        assertTrue(WARNINGS.stream().anyMatch(warning -> warning.startsWith("GET lookups/" + budget + " executed " + budget + " SQL statements")), WARNINGS.toString());
+    }
+
+    @Test
+    public void testFewStatementsAreNotLogged() throws IOException {
+        assertEquals(200, get("/lookups/1").getResponseCode());
+        assertFalse(WARNINGS.stream().anyMatch(warning -> warning.startsWith("GET lookups/1 ")), WARNINGS.toString());
+    }
+
+    private static HttpURLConnection get(String path) throws IOException {
+        return (HttpURLConnection) new URL(BASE_URI + path).openConnection();
+    }
+}
@@ -0,0 +1,195 @@
+package rest;
+
+import dtos.PersonDTO;
+import entities.Address;
+import entities.Hobby;
+import entities.Person;
+import entities.Phone;
+import facades.PersonFacade;
+import json.GsonFactory;
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.EMF_Creator;
+import utils.EmbeddedDatabase;
+import utils.HobbyCatalog;
+import utils.PhoneIndex;
+import utils.ReadReplicas;
+import utils.UnitOfWork;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import javax.ws.rs.core.UriBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure GET requests read from the replica, and that a client reads from the primary
+ * for a while after it has changed something.
+ * <p>
+ * The primary and the replica are two in-memory H2 databases, which are never replicated,
+ * so a read shows which of them answered it.
+ */
+class ReadReplicaTest {
+    private static final URI BASE_URI = UriBuilder.fromUri("http://localhost/api").port(7784).build();
+    private static final String REPLICA_URL = "jdbc:h2:mem:information_replica;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final int NUMBER = 96000000;
+    private static HttpServer httpServer;
+    private static EntityManagerFactory primary;
+    private static EntityManagerFactory replicaSchema;
+    private static EntityManagerFactory replica;
+    private static PersonFacade facade;
+
+    @BeforeAll
+    public static void setUpClass() {
+        // The facades keep the first factory they are given, so hand them the embedded database before the resources do
+        primary = EmbeddedDatabase.getEntityManagerFactory();
+        facade = PersonFacade.getInstance(primary);
+        persistPerson(primary, "Primary");
+        // Create the replica's tables, and a person with the same number but another name
+        Map<String, String> replicaProperties = EmbeddedDatabase.getProperties();
+        replicaProperties.put("javax.persistence.jdbc.url", REPLICA_URL);
+        replicaSchema = Persistence.createEntityManagerFactory("puTest", replicaProperties);
+        persistPerson(replicaSchema, "Replica");
+        // The resources create a factory of their own (which the facades ignore), so point it at the embedded database too
+        EmbeddedDatabase.getProperties().forEach(System::setProperty);
+        System.setProperty("READ_CONNECTION_STR", REPLICA_URL);
+        replica = EMF_Creator.createReadEntityManagerFactory();
+        ReadReplicas.register(primary, replica);
+        ResourceConfig rc = new ResourceConfig(PersonResource.class, UnitOfWorkFilter.class, GsonMessageBodyWriter.class);
+        httpServer = GrizzlyHttpServerFactory.createHttpServer(BASE_URI, rc);
+    }
+
+    @AfterAll
+    public static void closeTestServer() {
+        httpServer.shutdownNow();
+        ReadReplicas.unregister(primary);
+        replica.close();
+        replicaSchema.close();
+        System.clearProperty("READ_CONNECTION_STR");
+        EmbeddedDatabase.getProperties().keySet().forEach(System::clearProperty);
+    }
+
+    @Test
+    public void testReadsGoToTheReplica() throws IOException {
+        assertTrue(read("/person/number/" + NUMBER, null).contains("Replica"));
+        // Also when the read runs on the facade executor
+        String page = read("/person?after=0&limit=1000", null);
+        assertTrue(page.contains("Replica"));
+        assertFalse(page.contains("Primary"));
+        // And when every person is streamed after the call
+        String all = read("/person", null);
+        assertTrue(all.contains("Replica"));
+        assertFalse(all.contains("Primary"));
+    }
+
+    @Test
+    public void testClientReadsItsOwnWrites() throws Exception {
+        PersonDTO person = facade.getPersonByNumber(NUMBER);
+        person.setLastName("Written");
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + "/person").openConnection();
+        connection.setRequestMethod("PUT");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream output = connection.getOutputStream()) {
+            output.write(GsonFactory.getGson().toJson(person).getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(200, connection.getResponseCode());
+        String cookie = connection.getHeaderField("Set-Cookie");
+        assertNotNull(cookie);
+        cookie = cookie.substring(0, cookie.indexOf(';'));
+        assertTrue(cookie.startsWith(UnitOfWorkFilter.READ_PRIMARY_UNTIL + "="));
+        // The writer reads from the primary, everybody else from the replica
+        assertTrue(read("/person/number/" + NUMBER, cookie).contains("Written"));
+        assertTrue(read("/person?after=0&limit=1000", cookie).contains("Written"));
+        assertTrue(read("/person", cookie).contains("Written"));
+        assertTrue(read("/person/number/" + NUMBER, null).contains("Replica"));
+        // Once the window has passed, the writer reads from the replica as well
+        String expired = UnitOfWorkFilter.READ_PRIMARY_UNTIL + "=" + (System.currentTimeMillis() - 1);
+        assertTrue(read("/person/number/" + NUMBER, expired).contains("Replica"));
+    }
+
+    @Test
+    public void testIndexesAreLoadedFromThePrimary() {
+        EntityManager em = primary.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new Hobby("Generel", "Only on the primary", "Indendørs", ""));
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+        PhoneIndex index = PhoneIndex.getInstance(primary);
+        HobbyCatalog catalog = HobbyCatalog.getInstance(primary);
+        PhoneIndex.invalidate();
+        HobbyCatalog.invalidate();
+        // Like a GET request, whose unit of work reads from the replica
+        UnitOfWork uow = UnitOfWork.start(true);
+        try {
+            assertEquals(idOf(primary, NUMBER), index.getPersonId(NUMBER));
+            assertNotNull(catalog.getHobby("Only on the primary"));
+        }
+        finally {
+            uow.close();
+        }
+    }
+
+    private static int idOf(EntityManagerFactory emf, int number) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return em.createQuery("SELECT t.person.id FROM Phone t WHERE t.number = :number", Integer.class)
+                    .setParameter("number", number)
+                    .getSingleResult();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    private static String read(String path, String cookie) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + path).openConnection();
+        if (cookie != null) {
+            connection.setRequestProperty("Cookie", cookie);
+        }
+        assertEquals(200, connection.getResponseCode());
+        assertNull(connection.getHeaderField("Set-Cookie"));
+        try (InputStream input = connection.getInputStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = input.read(buffer)) != -1; ) {
+                body.write(buffer, 0, read);
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void persistPerson(EntityManagerFactory emf, String firstName) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Address address = new Address("Replica Street 1", 8200);
+            em.persist(address);
+            Person person = new Person(firstName, "Person", firstName.toLowerCase() + "@replica.dk", address);
+            em.persist(person);
+            em.persist(new Phone(NUMBER, "Home", person));
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package rest;
+
+import org.glassfish.grizzly.http.server.HttpServer;
+import org.glassfish.jersey.grizzly2.httpserver.GrizzlyHttpServerFactory;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import utils.EmbeddedDatabase;
+import utils.UnitOfWork;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure the unit of work of a suspended request is closed on the request thread that started it,
+ * as soon as the resource method returns – not by the thread that answers the request.
+ * <p>
+ * Runs a Grizzly server against an in-memory H2 database, so no MySQL server is needed.
+ */
+class UnitOfWorkFilterTest {
+    private static final URI BASE_URI = UriBuilder.fromUri("http://localhost/api").port(7787).build();
+    private static final FacadeExecutor EXECUTOR = new FacadeExecutor("test", 1, 1, 10000);
+    private static final long WAIT_MILLIS = 5000;
+    private static EntityManagerFactory emf;
+    private static HttpServer httpServer;
+
+    @Path("work")
+    public static class WorkResource {
+
+        @GET
+        @Produces({MediaType.TEXT_PLAIN})
+        public void work(@Suspended AsyncResponse asyncResponse) {
+            // A cheap lookup opens the entity manager of the request on the request thread
+            UnitOfWork uow = UnitOfWork.begin(emf);
+            EntityManager em = uow.getEntityManager();
+            uow.close();
+            EXECUTOR.submit(asyncResponse, () -> {
+                // The request thread closes it once this method has returned, without waiting for the answer
+                long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+                while (em.isOpen() && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(10);
+                }
+                return Response.ok(em.isOpen() ? "open" : "closed").build();
+            });
+        }
+    }
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        ResourceConfig rc = new ResourceConfig(WorkResource.class, UnitOfWorkFilter.class);
+        httpServer = GrizzlyHttpServerFactory.createHttpServer(BASE_URI, rc);
+    }
+
+    @AfterAll
+    public static void closeTestServer() {
+        httpServer.shutdownNow();
+    }
+
+    @Test
+    public void testSuspendedRequestIsClosedOnItsOwnThread() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(BASE_URI + "/work").openConnection();
+        assertEquals(200, connection.getResponseCode());
+        try (InputStream input = connection.getInputStream()) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64];
+            for (int read; (read = input.read(buffer)) != -1; ) {
+                body.write(buffer, 0, read);
+            }
+            assertEquals("closed", new String(body.toByteArray(), StandardCharsets.UTF_8));
+        }
+        assertEquals(0, UnitOfWork.getNumberOfOpenEntityManagers());
+    }
+}
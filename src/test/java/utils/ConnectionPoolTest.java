@@ -0,0 +1,111 @@
+package utils;
+
+import com.zaxxer.hikari.HikariDataSource;
+import dtos.PoolStatsDTO;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs EclipseLink on top of the pool against an in-memory H2 database, so no MySQL server is needed.
+ */
+class ConnectionPoolTest {
+    private static final int POOL_MAX = 3;
+    private static ConnectionPool pool;
+    private static EntityManagerFactory emf;
+
+    @BeforeAll
+    public static void setUpClass() {
+        System.setProperty("DB_POOL_MIN", "1");
+        System.setProperty("DB_POOL_MAX", String.valueOf(POOL_MAX));
+        try {
+            pool = new ConnectionPool("org.h2.Driver", "jdbc:h2:mem:pool_test;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        }
+        finally {
+            System.clearProperty("DB_POOL_MIN");
+            System.clearProperty("DB_POOL_MAX");
+        }
+        Map<String, Object> props = new HashMap<>();
+        props.put(PersistenceUnitProperties.NON_JTA_DATASOURCE, pool.getDataSource());
+        props.put(PersistenceUnitProperties.SESSION_NAME, "pool_test");
+        props.put("eclipselink.logging.level", "WARNING");
+        props.put("eclipselink.logging.level.sql", "WARNING");
+        emf = Persistence.createEntityManagerFactory("puTest", props);
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        emf.close();
+        pool.close();
+    }
+
+    @Test
+    public void testSizedBySettings() {
+        PoolStatsDTO stats = pool.getStats();
+        assertEquals(1, stats.getMinimumIdle());
+        assertEquals(POOL_MAX, stats.getMaximumPoolSize());
+        assertEquals(ConnectionPool.DEFAULT_TIMEOUT, stats.getConnectionTimeoutMillis());
+    }
+
+    @Test
+    public void testRecordsAcquisitions() throws Exception {
+        long before = pool.getStats().getAcquisitions();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Long>> counts = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                counts.add(executor.submit(() -> {
+                    EntityManager em = emf.createEntityManager();
+                    try {
+                        return em.createQuery("SELECT COUNT(p) FROM Person p", Long.class).getSingleResult();
+                    }
+                    finally {
+                        em.close();
+                    }
+                }));
+            }
+            for (Future<Long> count : counts) {
+                assertEquals(0, (long) count.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+        PoolStatsDTO stats = pool.getStats();
+        assertTrue(stats.getAcquisitions() - before >= 200);
+        assertEquals(0, stats.getActive());
+        assertEquals(0, stats.getWaiting());
+        assertTrue(stats.getTotal() <= POOL_MAX);
+        assertEquals(0, stats.getTimeouts());
+        assertTrue(stats.getAcquisitionP50Millis() <= stats.getAcquisitionP99Millis());
+        assertTrue(stats.getAcquisitionP99Millis() <= stats.getAcquisitionMaxMillis());
+    }
+
+    @Test
+    public void testReadPoolIsNamedAndReadOnly() {
+        ConnectionPool readPool = new ConnectionPool("information-read", true, "org.h2.Driver", "jdbc:h2:mem:pool_test;MODE=MySQL;DB_CLOSE_DELAY=-1", "sa", "");
+        try {
+            HikariDataSource dataSource = (HikariDataSource) readPool.getDataSource();
+            assertEquals("information-read", dataSource.getPoolName());
+            assertTrue(dataSource.isReadOnly());
+            HikariDataSource primary = (HikariDataSource) pool.getDataSource();
+            assertEquals("information", primary.getPoolName());
+            assertFalse(primary.isReadOnly());
+        }
+        finally {
+            readPool.close();
+        }
+    }
+}
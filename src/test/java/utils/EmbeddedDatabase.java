@@ -0,0 +1,39 @@
+package utils;
+
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An in-memory H2 database for tests that must run without MySQL.
+ * <p>
+ * The facades only accept the first {@link EntityManagerFactory} they are given,
+ * so every test in the JVM shares the one returned by {@link #getEntityManagerFactory}.
+ */
+public class EmbeddedDatabase {
+    private static EntityManagerFactory EMF;
+
+    public static synchronized EntityManagerFactory getEntityManagerFactory() {
+        if (EMF == null) {
+            EMF = Persistence.createEntityManagerFactory("puTest", getProperties());
+        }
+        return EMF;
+    }
+
+    /**
+     * Returns the persistence unit properties that point at the embedded database.
+     *
+     * @return {@link Map}.
+     */
+    public static Map<String, String> getProperties() {
+        Map<String, String> props = new HashMap<>();
+        props.put("javax.persistence.jdbc.driver", "org.h2.Driver");
+        props.put("javax.persistence.jdbc.url", "jdbc:h2:mem:information_test;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        props.put("javax.persistence.jdbc.user", "sa");
+        props.put("javax.persistence.jdbc.password", "");
+        props.put("eclipselink.logging.level", "WARNING");
+        props.put("eclipselink.logging.level.sql", "WARNING");
+        return props;
+    }
+}
@@ -0,0 +1,131 @@
+package utils;
+
+import dtos.AddressDTO;
+import dtos.PersonDTO;
+import entities.Hobby;
+import errorhandling.EntityFoundException;
+import errorhandling.EntityNotFoundException;
+import errorhandling.InternalErrorException;
+import facades.HobbyFacade;
+import facades.PersonFacade;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure hobbies are resolved from memory instead of the database.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class HobbyCatalogTest {
+    private static final StatementCounter COUNTER = new StatementCounter();
+    private static final int HOBBIES = 10;
+    private static EntityManagerFactory emf;
+    private static PersonFacade personFacade;
+    private static HobbyFacade hobbyFacade;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        JpaHelper.getServerSession(emf).setProfiler(COUNTER);
+        personFacade = PersonFacade.getInstance(emf);
+        hobbyFacade = HobbyFacade.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (int i = 0; i < HOBBIES; i++) {
+                em.persist(new Hobby("Generel", "Catalog " + i, "Indendørs", ""));
+            }
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+        HobbyCatalog.invalidate();
+    }
+
+    @Test
+    public void testLookupsCostNoStatements() throws EntityNotFoundException {
+        hobbyFacade.getHobbyByName("Catalog 0");
+        int before = COUNTER.getStatements();
+        PersonDTO.InnerHobbyDTO hobby = hobbyFacade.getHobbyByName("catalog 3");
+        assertEquals("Catalog 3", hobby.getName());
+        assertThrows(EntityNotFoundException.class, () -> hobbyFacade.getHobbyByName("No such hobby"));
+        assertEquals(before, COUNTER.getStatements());
+    }
+
+    @Test
+    public void testHobbiesCostNoReadsWhenCreatingPersons() throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        // Warm up, so the address and the catalog already exist
+        countReadsToCreatePerson("warmup@catalog.dk", 1);
+        int oneHobbyReads = countReadsToCreatePerson("one@catalog.dk", 1);
+        int manyHobbiesReads = countReadsToCreatePerson("many@catalog.dk", HOBBIES);
+        assertEquals(oneHobbyReads, manyHobbiesReads);
+        PersonDTO created = personFacade.getPersonsByZipcode(4700).stream()
+                .filter(pdto -> pdto.getEmail().equals("many@catalog.dk"))
+                .findFirst()
+                .orElseThrow(AssertionError::new);
+        assertEquals(HOBBIES, created.getHobbies().size());
+    }
+
+    @Test
+    public void testEvictedHobbiesAreLoadedWithOneQuery() throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        countReadsToCreatePerson("warmup-evicted@catalog.dk", HOBBIES);
+        int cachedReads = countReadsToCreatePerson("cached@catalog.dk", HOBBIES);
+        // Like a shared cache that has dropped the hobbies, or was never filled because the catalog was loaded elsewhere
+        emf.getCache().evict(Hobby.class);
+        int evictedReads = countReadsToCreatePerson("evicted@catalog.dk", HOBBIES);
+        assertEquals(cachedReads + 1, evictedReads);
+    }
+
+    @Test
+    public void testUnknownHobbiesAreReportedTogether() {
+        PersonDTO pdto = new PersonDTO("Catalog", "Person", "unknown@catalog.dk", new AddressDTO("Catalog Street", 4700));
+        pdto.addHobby(new PersonDTO.InnerHobbyDTO("No such hobby"));
+        pdto.addHobby(new PersonDTO.InnerHobbyDTO("Catalog 1"));
+        pdto.addHobby(new PersonDTO.InnerHobbyDTO("Nor this one"));
+        pdto.addHobby(new PersonDTO.InnerHobbyDTO("Nor that one"));
+        EntityNotFoundException e = assertThrows(EntityNotFoundException.class, () -> personFacade.createPerson(pdto));
+        assertEquals("Could not find the No such hobby, Nor this one and Nor that one hobbies.", e.getMessage());
+        EntityManager em = emf.createEntityManager();
+        try {
+            assertEquals(0, em.createQuery("SELECT COUNT(p) FROM Person p WHERE p.email = 'unknown@catalog.dk'", Long.class).getSingleResult());
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    @Test
+    public void testInvalidateReloadsTheCatalog() {
+        HobbyCatalog catalog = HobbyCatalog.getInstance(emf);
+        assertNull(catalog.getHobby("Catalog new"));
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new Hobby("Generel", "Catalog new", "Indendørs", ""));
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+        HobbyCatalog.invalidate();
+        PersonDTO.InnerHobbyDTO hobby = catalog.getHobby("Catalog new");
+        assertNotNull(hobby);
+        assertSame(hobby, catalog.getHobby(hobby.getId()));
+    }
+
+    private static int countReadsToCreatePerson(String email, int numberOfHobbies) throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        PersonDTO pdto = new PersonDTO("Catalog", "Person", email, new AddressDTO("Catalog Street", 4700));
+        for (int i = 0; i < numberOfHobbies; i++) {
+            pdto.addHobby(new PersonDTO.InnerHobbyDTO("Catalog " + i));
+        }
+        int before = COUNTER.getReads();
+        personFacade.createPerson(pdto);
+        return COUNTER.getReads() - before;
+    }
+}
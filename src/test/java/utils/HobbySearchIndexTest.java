@@ -0,0 +1,59 @@
+package utils;
+
+import dtos.PersonDTO;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HobbySearchIndexTest {
+    private static final HobbySearchIndex INDEX = new HobbySearchIndex(Arrays.asList(
+            hobby(1, "Fodbold"),
+            hobby(2, "Amerikansk fodbold"),
+            hobby(3, "Bordfodbold"),
+            hobby(4, "Fod"),
+            hobby(5, "Håndbold"),
+            hobby(6, "Brætspil")));
+
+    @Test
+    public void testMatchesAreRanked() {
+        // Exact, prefix, word prefix and finally substring matches
+        assertEquals(Arrays.asList("Fod", "Fodbold", "Amerikansk fodbold", "Bordfodbold"), namesOf(INDEX.search("FOD", 10)));
+    }
+
+    @Test
+    public void testLimit() {
+        assertEquals(Arrays.asList("Fod", "Fodbold"), namesOf(INDEX.search("fod", 2)));
+        assertTrue(INDEX.search("fod", 0).isEmpty());
+    }
+
+    @Test
+    public void testShortAndLongQueries() {
+        assertEquals(Arrays.asList("Brætspil"), namesOf(INDEX.search("æ", 10)));
+        assertEquals(Arrays.asList("Håndbold"), namesOf(INDEX.search(" håndbold ", 10)));
+        assertEquals(Arrays.asList("Bordfodbold"), namesOf(INDEX.search("dfodb", 10)));
+    }
+
+    @Test
+    public void testNoMatches() {
+        assertTrue(INDEX.search("", 10).isEmpty());
+        assertTrue(INDEX.search("xyz", 10).isEmpty());
+        // Every trigram occurs in some name, but not the whole query
+        assertTrue(INDEX.search("fodbordf", 10).isEmpty());
+    }
+
+    private static PersonDTO.InnerHobbyDTO hobby(int id, String name) {
+        return new PersonDTO.InnerHobbyDTO(id, "Generel", name, "Indendørs", "");
+    }
+
+    private static List<String> namesOf(List<PersonDTO.InnerHobbyDTO> hobbies) {
+        List<String> names = new ArrayList<>();
+        for (PersonDTO.InnerHobbyDTO hobby : hobbies) {
+            names.add(hobby.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,73 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntIntMapTest {
+    private static final int MISSING = -1;
+
+    @Test
+    public void testPutGetRemove() {
+        IntIntMap map = new IntIntMap(4, MISSING);
+        assertEquals(MISSING, map.put(12345678, 1));
+        assertEquals(1, map.put(12345678, 2));
+        assertEquals(2, map.get(12345678));
+        assertEquals(MISSING, map.get(87654321));
+        assertEquals(2, map.remove(12345678));
+        assertEquals(MISSING, map.get(12345678));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void testZeroIsAKey() {
+        IntIntMap map = new IntIntMap(4, MISSING);
+        assertEquals(MISSING, map.get(0));
+        map.put(0, 7);
+        assertEquals(7, map.get(0));
+        assertEquals(1, map.size());
+        assertEquals(7, map.remove(0));
+        assertEquals(MISSING, map.get(0));
+    }
+
+    @Test
+    public void testAgreesWithHashMap() {
+        IntIntMap map = new IntIntMap(16, MISSING);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            // A small key range makes the probe chains collide, grow and shrink
+            int key = random.nextInt(5000) - 100;
+            int value = random.nextInt(1000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.getOrDefault(key, MISSING).intValue(), map.remove(key));
+                expected.remove(key);
+            }
+            else {
+                assertEquals(expected.getOrDefault(key, MISSING).intValue(), map.put(key, value));
+                expected.put(key, value);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = -100; key < 4900; key++) {
+            assertEquals(expected.getOrDefault(key, MISSING).intValue(), map.get(key));
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(MISSING, map.get(expected.keySet().iterator().next()));
+    }
+
+    @Test
+    public void testSizedForExpectedEntries() {
+        IntIntMap map = new IntIntMap(1000, MISSING);
+        long bytes = map.getTableBytes();
+        for (int i = 1; i <= 1000; i++) {
+            map.put(i * 31, i);
+        }
+        assertEquals(bytes, map.getTableBytes());
+    }
+}
@@ -0,0 +1,134 @@
+package utils;
+
+import dtos.AddressDTO;
+import dtos.PersonDTO;
+import dtos.PhoneDTO;
+import entities.Address;
+import entities.Person;
+import entities.Phone;
+import errorhandling.EntityFoundException;
+import errorhandling.EntityNotFoundException;
+import errorhandling.InternalErrorException;
+import facades.PersonFacade;
+import facades.PhoneFacade;
+import org.eclipse.persistence.jpa.JpaHelper;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure phone numbers are looked up in the {@link PhoneIndex} and that the write paths keep it in sync.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class PhoneIndexTest {
+    private static final StatementCounter COUNTER = new StatementCounter();
+    private static final int NUMBER = 91000000;
+    private static EntityManagerFactory emf;
+    private static PersonFacade personFacade;
+    private static PhoneFacade phoneFacade;
+    private static PhoneIndex index;
+    private static int personId;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        JpaHelper.getServerSession(emf).setProfiler(COUNTER);
+        personFacade = PersonFacade.getInstance(emf);
+        phoneFacade = PhoneFacade.getInstance(emf);
+        index = PhoneIndex.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Address address = new Address("Index Street", 6000);
+            em.persist(address);
+            Person person = new Person("Index", "Person", "index@mail.dk", address);
+            em.persist(person);
+            em.persist(new Phone(NUMBER, "Home", person));
+            em.persist(new Phone(NUMBER + 1, "Work", person));
+            em.getTransaction().commit();
+            personId = person.getId();
+        }
+        finally {
+            em.close();
+        }
+        PhoneIndex.setEnabled(true);
+        PhoneIndex.invalidate();
+    }
+
+    @AfterAll
+    public static void tearDownClass() {
+        PhoneIndex.setEnabled(false);
+    }
+
+    @Test
+    public void testLookupSkipsThePhoneTable() throws EntityNotFoundException {
+        // Load the index
+        assertEquals(personId, index.getPersonId(NUMBER));
+        PersonDTO indexed = personFacade.getPersonByNumber(NUMBER);
+        int indexedStatements = countStatementsToLookUp(NUMBER);
+        PhoneIndex.setEnabled(false);
+        try {
+            PersonDTO unindexed = personFacade.getPersonByNumber(NUMBER);
+            assertEquals(unindexed.getId(), indexed.getId());
+            assertEquals(unindexed.getPhones().size(), indexed.getPhones().size());
+            assertTrue(indexedStatements < countStatementsToLookUp(NUMBER));
+        }
+        finally {
+            PhoneIndex.setEnabled(true);
+        }
+        assertEquals(2, indexed.getPhones().size());
+    }
+
+    @Test
+    public void testUnknownNumber() {
+        assertEquals(PhoneIndex.NO_PERSON, index.getPersonId(NUMBER + 99));
+        assertThrows(EntityNotFoundException.class, () -> personFacade.getPersonByNumber(NUMBER + 99));
+    }
+
+    @Test
+    public void testWritesKeepTheIndexInSync() throws EntityNotFoundException, EntityFoundException, InternalErrorException {
+        int added = NUMBER + 10;
+        PersonDTO person = personFacade.getPersonByNumber(NUMBER);
+        // Add a phone and drop the work phone
+        person.getPhones().removeIf(phdto -> phdto.getNumber() == NUMBER + 1);
+        person.addPhone(new PhoneDTO(added, "Mobile"));
+        personFacade.updatePerson(person);
+        assertEquals(personId, index.getPersonId(added));
+        assertEquals(PhoneIndex.NO_PERSON, index.getPersonId(NUMBER + 1));
+        assertEquals(personId, personFacade.getPersonByNumber(added).getId());
+        // Remove the new phone again
+        phoneFacade.removePhone(added);
+        assertEquals(PhoneIndex.NO_PERSON, index.getPersonId(added));
+        assertThrows(EntityNotFoundException.class, () -> personFacade.getPersonByNumber(added));
+        // Restore the work phone for the other tests
+        person = personFacade.getPersonByNumber(NUMBER);
+        person.addPhone(new PhoneDTO(NUMBER + 1, "Work"));
+        personFacade.updatePerson(person);
+        assertEquals(personId, index.getPersonId(NUMBER + 1));
+    }
+
+    @Test
+    public void testCreatedPersonIsIndexed() throws EntityNotFoundException, EntityFoundException, InternalErrorException {
+        int created = NUMBER + 20;
+        PersonDTO person = new PersonDTO("Indexed", "Person", "indexed@mail.dk", new AddressDTO("Index Street", 6000));
+        person.addPhone(new PhoneDTO(created, "Mobile"));
+        person.addPhone(new PhoneDTO(created + 1, "Work"));
+        personFacade.createPerson(person);
+        int createdId = personFacade.getPersonByNumber(created).getId();
+        assertEquals(createdId, index.getPersonId(created));
+        assertEquals(createdId, index.getPersonId(created + 1));
+        assertEquals(2, personFacade.getPersonByNumber(created + 1).getPhones().size());
+    }
+
+    private int countStatementsToLookUp(int number) throws EntityNotFoundException {
+        // Most of the numbers looked up by caller-ID are not in the shared cache
+        emf.getCache().evictAll();
+        int before = COUNTER.getStatements();
+        personFacade.getPersonByNumber(number);
+        return COUNTER.getStatements() - before;
+    }
+}
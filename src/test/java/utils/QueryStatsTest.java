@@ -0,0 +1,167 @@
+package utils;
+
+import entities.Hobby;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure the statements of the current thread are counted, and that repeated statements share a shape.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class QueryStatsTest {
+    private static final int HOBBIES = 3;
+    private static EntityManagerFactory emf;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            for (int i = 0; i < HOBBIES; i++) {
+                em.persist(new Hobby("Generel", "QueryStats " + i, "Indendørs", ""));
+            }
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    @Test
+    public void testShapes() {
+        assertEquals("SELECT * FROM hobby WHERE name = ? AND id > ?", QueryStats.shapeOf("SELECT * FROM hobby WHERE name = 'Yoga' AND id > 17"));
+        assertEquals("SELECT * FROM person WHERE id IN (?)", QueryStats.shapeOf("SELECT * FROM person WHERE id IN (?, ?,?)"));
+        assertEquals("SELECT * FROM hobby WHERE name = ?", QueryStats.shapeOf("SELECT * FROM hobby WHERE name = 'It''s'"));
+        assertEquals("SELECT * FROM phone_2 WHERE number = ?", QueryStats.shapeOf("SELECT * FROM phone_2 WHERE number = 12345678"));
+    }
+
+    @Test
+    public void testStatementsAreCounted() {
+        QueryStats stats = QueryStats.start();
+        EntityManager em = emf.createEntityManager();
+        try {
+            List<Hobby> hobbies = em.createQuery("SELECT h FROM Hobby h WHERE h.name LIKE 'QueryStats %'", Hobby.class).getResultList();
+            assertEquals(HOBBIES, hobbies.size());
+            for (Hobby hobby : hobbies) {
+                em.createQuery("SELECT h.name FROM Hobby h WHERE h.id = :id", String.class)
+                        .setParameter("id", hobby.getId())
+                        .getSingleResult();
+            }
+        }
+        finally {
+            em.close();
+            stats.stop();
+        }
+        assertNull(QueryStats.current());
+        assertEquals(1 + HOBBIES, stats.getStatements());
+        assertEquals(2 * HOBBIES, stats.getRows());
+        assertEquals(HOBBIES, stats.getMostRepeatedCount());
+        assertEquals("SELECT name FROM hobby WHERE (hobby_id = ?)", stats.getMostRepeated());
+        assertTrue(stats.getDatabaseNanos() > 0);
+    }
+
+    @Test
+    public void testPlainJdbcStatementsAreCounted() throws SQLException {
+        QueryStats stats = QueryStats.start();
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = ProfiledConnection.wrap(em.unwrap(Connection.class));
+            try (PreparedStatement select = connection.prepareStatement("SELECT hobby_id FROM hobby WHERE name LIKE 'QueryStats %'")) {
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        try (PreparedStatement update = connection.prepareStatement("UPDATE hobby SET version = version + 1 WHERE hobby_id = ?")) {
+                            update.setInt(1, rs.getInt(1));
+                            update.executeUpdate();
+                        }
+                    }
+                }
+            }
+            try (PreparedStatement batch = connection.prepareStatement("UPDATE hobby SET version = version + 1 WHERE hobby_id = ?")) {
+                for (int i = 0; i < HOBBIES; i++) {
+                    batch.setInt(1, -i);
+                    batch.addBatch();
+                }
+                batch.executeBatch();
+            }
+            em.getTransaction().rollback();
+        }
+        finally {
+            em.close();
+            stats.stop();
+        }
+        // The select, an update per hobby, and the batch as one round trip
+        assertEquals(1 + HOBBIES + 1, stats.getStatements());
+        assertEquals(2 * HOBBIES, stats.getRows());
+        assertEquals(HOBBIES + 1, stats.getMostRepeatedCount());
+        assertEquals("UPDATE hobby SET version = version + ? WHERE hobby_id = ?", stats.getMostRepeated());
+        assertTrue(stats.getDatabaseNanos() > 0);
+    }
+
+    @Test
+    public void testStatsOfAnotherThreadAreAdded() throws Exception {
+        QueryStats stats = QueryStats.start();
+        try {
+            countHobbies();
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                QueryStats other = executor.submit(() -> {
+                    QueryStats callStats = QueryStats.start();
+                    countHobbies();
+                    countHobbies();
+                    callStats.stop();
+                    return callStats;
+                }).get();
+                stats.add(other);
+            }
+            finally {
+                executor.shutdown();
+            }
+        }
+        finally {
+            stats.stop();
+        }
+        assertEquals(3, stats.getStatements());
+        assertEquals(3, stats.getRows());
+        assertEquals(3, stats.getMostRepeatedCount());
+        assertEquals("SELECT COUNT(hobby_id) FROM hobby", stats.getMostRepeated());
+    }
+
+    @Test
+    public void testNothingIsCountedWithoutStats() {
+        QueryStats stats = QueryStats.start();
+        stats.stop();
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.createQuery("SELECT COUNT(h) FROM Hobby h", Long.class).getSingleResult();
+        }
+        finally {
+            em.close();
+        }
+        assertEquals(0, stats.getStatements());
+    }
+
+    private static void countHobbies() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.createQuery("SELECT COUNT(h) FROM Hobby h", Long.class).getSingleResult();
+        }
+        finally {
+            em.close();
+        }
+    }
+}
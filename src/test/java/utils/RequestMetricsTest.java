@@ -0,0 +1,58 @@
+package utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestMetricsTest {
+
+    @Test
+    public void testEndpointsAreKeptByMethod() throws NoSuchMethodException {
+        RequestMetrics metrics = new RequestMetrics();
+        Method method = RequestMetricsTest.class.getDeclaredMethod("testEndpointsAreKeptByMethod");
+        RequestMetrics.Endpoint endpoint = metrics.getEndpoint(method, "GET");
+        assertSame(endpoint, metrics.getEndpoint(method, "GET"));
+        assertEquals("RequestMetricsTest.testEndpointsAreKeptByMethod", endpoint.getName());
+        endpoint.start();
+        endpoint.start();
+        assertEquals(2, endpoint.getInFlight());
+        endpoint.end(1000, 200);
+        endpoint.end(2000000, 404);
+        assertEquals(0, endpoint.getInFlight());
+        assertEquals(2, endpoint.getLatency().getCount());
+        assertEquals(Arrays.asList(200, 404), endpoint.getStatuses());
+        assertEquals(1, endpoint.getStatusCount(404));
+        assertEquals(1, metrics.getEndpoints().size());
+    }
+
+    @Test
+    public void testRecordingDoesNotAllocate() throws NoSuchMethodException {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threads;
+        RequestMetrics metrics = new RequestMetrics();
+        Method method = RequestMetricsTest.class.getDeclaredMethod("testRecordingDoesNotAllocate");
+        long threadId = Thread.currentThread().getId();
+        // Warm up, so the endpoint exists and the code is compiled
+        record(metrics, method, 20000);
+        long before = allocations.getThreadAllocatedBytes(threadId);
+        record(metrics, method, 100000);
+        long allocated = allocations.getThreadAllocatedBytes(threadId) - before;
+        // A single object per request would be over a megabyte
+        assertTrue(allocated < 1024, "Recording 100,000 requests allocated " + allocated + " bytes");
+    }
+
+    private static void record(RequestMetrics metrics, Method method, int requests) {
+        for (int i = 0; i < requests; i++) {
+            RequestMetrics.Endpoint endpoint = metrics.getEndpoint(method, "GET");
+            endpoint.start();
+            endpoint.end(i * 1000L, i % 10 == 0 ? 404 : 200);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package utils;
+
+import entities.Hobby;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes sure slow statements are written to the file with their parameters, origin and plan.
+ * <p>
+ * Runs against an in-memory H2 database, so no MySQL server is needed.
+ */
+class SlowQueryLogTest {
+    private static EntityManagerFactory emf;
+    private SlowQueryLog previous;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new Hobby("Generel", "Slow query", "Indendørs", ""));
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        SlowQueryLog.setInstance(previous).close();
+    }
+
+    @Test
+    public void testSlowStatementsAreWritten() throws IOException, InterruptedException {
+        // Every statement is slow, and every select is explained
+        SlowQueryLog log = new SlowQueryLog(0, 0, directory.resolve("slow.%g.log").toString(), 1024 * 1024, 2);
+        previous = SlowQueryLog.setInstance(log);
+        lookUp("Slow query");
+        for (int i = 0; i < 100 && log.getWritten() < 1; i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(log.getWritten() >= 1);
+        String written = new String(Files.readAllBytes(directory.resolve("slow.0.log")), StandardCharsets.UTF_8);
+        assertTrue(written.contains("  SQL:  SELECT hobby_id, "), written);
+        assertTrue(written.contains(" 1 rows, SlowQueryLogTest.lookUp:"), written);
+        assertTrue(written.contains("  bind: [Slow query]"), written);
+        assertTrue(written.contains("  plan: "), written);
+        assertEquals(0, log.getDropped());
+    }
+
+    @Test
+    public void testSlowJdbcStatementsAreWritten() throws IOException, InterruptedException, SQLException {
+        SlowQueryLog log = new SlowQueryLog(0, -1, directory.resolve("slow.%g.log").toString(), 1024 * 1024, 2);
+        previous = SlowQueryLog.setInstance(log);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = ProfiledConnection.wrap(em.unwrap(Connection.class));
+            try (PreparedStatement update = connection.prepareStatement("UPDATE hobby SET version = version + 1 WHERE name = ?")) {
+                update.setString(1, "Slow query");
+                update.executeUpdate();
+            }
+            em.getTransaction().rollback();
+        }
+        finally {
+            em.close();
+        }
+        for (int i = 0; i < 100 && log.getWritten() < 1; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, log.getWritten());
+        String written = new String(Files.readAllBytes(directory.resolve("slow.0.log")), StandardCharsets.UTF_8);
+        assertTrue(written.contains("  SQL:  UPDATE hobby SET version = version + 1 WHERE name = ?"), written);
+        assertTrue(written.contains(" 1 rows, SlowQueryLogTest.testSlowJdbcStatementsAreWritten:"), written);
+        assertTrue(written.contains("  bind: [Slow query]"), written);
+    }
+
+    @Test
+    public void testFastStatementsAreNotRecorded() {
+        SlowQueryLog log = new SlowQueryLog(60000, -1, directory.resolve("slow.%g.log").toString(), 1024 * 1024, 2);
+        previous = SlowQueryLog.setInstance(log);
+        lookUp("Slow query");
+        assertEquals(0, log.getRecorded());
+        assertFalse(Files.exists(directory.resolve("slow.0.log")));
+    }
+
+    @Test
+    public void testOrigin() {
+        StackTraceElement[] stack = {
+                new StackTraceElement("utils.StatementProfiler", "finish", "StatementProfiler.java", 10),
+                new StackTraceElement("org.eclipse.persistence.internal.jpa.QueryImpl", "getResultList", "QueryImpl.java", 20),
+                new StackTraceElement("sun.reflect.Proxy", "invoke", null, -1),
+                new StackTraceElement("facades.PersonFacade", "getPerson", "PersonFacade.java", 30),
+                new StackTraceElement("rest.PersonResource", "getPerson", "PersonResource.java", 40)};
+        assertEquals("PersonFacade.getPerson:30", StatementProfiler.originOf(stack));
+    }
+
+    private static void lookUp(String name) {
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.createQuery("SELECT h FROM Hobby h WHERE h.name = :name", Hobby.class)
+                    .setParameter("name", name)
+                    .getSingleResult();
+        }
+        finally {
+            em.close();
+        }
+    }
+}
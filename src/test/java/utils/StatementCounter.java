@@ -0,0 +1,37 @@
+package utils;
+
+import org.eclipse.persistence.queries.DatabaseQuery;
+import org.eclipse.persistence.sessions.SessionProfiler;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counts every SQL statement executed by a session.
+ * <p>
+ * Install it with {@code JpaHelper.getServerSession(emf).setProfiler(counter)}.
+ * It replaces the {@link StatementProfiler}, so it keeps recording the {@link QueryStats} too.
+ */
+public class StatementCounter extends StatementProfiler {
+    private final AtomicInteger statements = new AtomicInteger();
+    private final AtomicInteger reads = new AtomicInteger();
+
+    @Override
+    public void startOperationProfile(String operationName, DatabaseQuery query, int weight) {
+        super.startOperationProfile(operationName, query, weight);
+        // Every statement is prepared once, but a select is timed as executing twice (before and after fetching)
+        if (SessionProfiler.SqlPrepare.equals(operationName)) {
+            statements.incrementAndGet();
+            if (query != null && query.isReadQuery()) {
+                reads.incrementAndGet();
+            }
+        }
+    }
+
+    public int getStatements() {
+        return statements.get();
+    }
+
+    public int getReads() {
+        return reads.get();
+    }
+}
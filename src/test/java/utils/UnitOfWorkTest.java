@@ -0,0 +1,140 @@
+package utils;
+
+import dtos.AddressDTO;
+import dtos.PersonDTO;
+import dtos.PhoneDTO;
+import entities.Hobby;
+import errorhandling.EntityFoundException;
+import errorhandling.EntityNotFoundException;
+import errorhandling.InternalErrorException;
+import facades.PersonFacade;
+import facades.PhoneFacade;
+import org.junit.jupiter.api.*;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Simulates many requests against an in-memory H2 database and makes sure that
+ * neither entity managers, database sessions nor heap pile up.
+ */
+class UnitOfWorkTest {
+    private static final int REQUESTS = 1000;
+    private static final int CHECKPOINT = 250;
+    private static final long MAX_HEAP_GROWTH = 32L * 1024 * 1024;
+    private static EntityManagerFactory emf;
+    private static PersonFacade personFacade;
+    private static PhoneFacade phoneFacade;
+
+    @BeforeAll
+    public static void setUpClass() {
+        emf = EmbeddedDatabase.getEntityManagerFactory();
+        personFacade = PersonFacade.getInstance(emf);
+        phoneFacade = PhoneFacade.getInstance(emf);
+        EntityManager em = emf.createEntityManager();
+        try {
+            em.getTransaction().begin();
+            em.persist(new Hobby("Generel", "Soak", "Indendørs", ""));
+            em.getTransaction().commit();
+        }
+        finally {
+            em.close();
+        }
+        HobbyCatalog.invalidate();
+    }
+
+    @Test
+    public void testLookupsShareTheEntityManager() {
+        UnitOfWork request = UnitOfWork.start();
+        try {
+            UnitOfWork first = UnitOfWork.begin(emf);
+            EntityManager em = first.getEntityManager();
+            first.close();
+            UnitOfWork second = UnitOfWork.begin(emf);
+            assertSame(em, second.getEntityManager());
+            second.close();
+            assertTrue(em.isOpen());
+            assertEquals(1, UnitOfWork.getNumberOfOpenEntityManagers());
+        }
+        finally {
+            request.close();
+        }
+        assertEquals(0, UnitOfWork.getNumberOfOpenEntityManagers());
+    }
+
+    @Test
+    public void testStaleUnitOfWorkIsClosed() {
+        UnitOfWork.begin(emf);// <-- Never closed
+        assertEquals(1, UnitOfWork.getNumberOfOpenEntityManagers());
+        UnitOfWork.start().close();
+        assertEquals(0, UnitOfWork.getNumberOfOpenEntityManagers());
+    }
+
+    @Test
+    public void testSoak() throws Exception {
+        int sessions = countSessions();
+        List<Long> heap = new ArrayList<>();
+        heap.add(usedHeapAfterGc());
+        for (int i = 1; i <= REQUESTS; i++) {
+            simulateRequests(i);
+            assertEquals(0, UnitOfWork.getNumberOfOpenEntityManagers());
+            if (i % CHECKPOINT == 0) {
+                heap.add(usedHeapAfterGc());
+                // The connection pool may warm up a little, but must not grow with the number of requests
+                assertTrue(countSessions() <= sessions + 4, "Database sessions are leaking");
+            }
+        }
+        System.out.println("Used heap after GC at every " + CHECKPOINT + " requests: " + heap);
+        assertTrue(heap.get(heap.size() - 1) - heap.get(1) < MAX_HEAP_GROWTH, "Heap is growing: " + heap);
+    }
+
+    /**
+     * Creates, reads, updates and deletes a person – one unit of work per request, like {@code rest.UnitOfWorkFilter}.
+     */
+    private void simulateRequests(int i) throws EntityFoundException, EntityNotFoundException, InternalErrorException {
+        int number = 70000000 + i;
+        PersonDTO pdto = new PersonDTO("Soak", "Person " + i, "soak" + i + "@mail.dk", new AddressDTO("Soak Street", 3700));
+        pdto.addHobby(new PersonDTO.InnerHobbyDTO("Soak"));
+        try (UnitOfWork ignored = UnitOfWork.start()) {
+            personFacade.createPerson(pdto);
+        }
+        try (UnitOfWork ignored = UnitOfWork.start()) {
+            PersonDTO created = personFacade.getPersonsByZipcode(3700).iterator().next();
+            created.addPhone(new PhoneDTO(number, "Mobile"));
+            personFacade.updatePerson(created);
+        }
+        PersonDTO updated;
+        try (UnitOfWork ignored = UnitOfWork.start()) {
+            updated = personFacade.getPersonByNumber(number);
+            assertEquals(1, updated.getPhones().size());
+            assertEquals(1, updated.getHobbies().size());
+        }
+        try (UnitOfWork ignored = UnitOfWork.start()) {
+            phoneFacade.removePhone(number);
+            personFacade.deletePerson(updated.getId());
+        }
+    }
+
+    private static int countSessions() {
+        EntityManager em = emf.createEntityManager();
+        try {
+            return ((Number) em.createNativeQuery("SELECT COUNT(*) FROM INFORMATION_SCHEMA.SESSIONS").getSingleResult()).intValue();
+        }
+        finally {
+            em.close();
+        }
+    }
+
+    private static long usedHeapAfterGc() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}